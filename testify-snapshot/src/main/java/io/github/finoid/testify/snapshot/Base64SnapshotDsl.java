@@ -1,15 +1,18 @@
 package io.github.finoid.testify.snapshot;
 
 import io.github.finoid.snapshots.Expect;
-import io.github.finoid.snapshots.serializers.v1.Base64SnapshotSerializer;
 import io.github.finoid.testify.core.internal.Precondition;
 import io.github.finoid.testify.snapshot.SnapshotDsl.ScenarioSnapshotDsl;
 
 public class Base64SnapshotDsl extends ScenarioSnapshotDsl {
-    private final Expect expect;
+    private final SnapshotMatcher matcher;
 
     public Base64SnapshotDsl(final Expect expect) {
-        this.expect = Precondition.nonNull(expect, "Expect must not be null");
+        this(SnapshotMatcher.ofExpect(expect));
+    }
+
+    private Base64SnapshotDsl(final SnapshotMatcher matcher) {
+        this.matcher = Precondition.nonNull(matcher, "Matcher must not be null");
     }
 
     /**
@@ -23,11 +26,20 @@ public class Base64SnapshotDsl extends ScenarioSnapshotDsl {
         return new Base64SnapshotDsl(expect);
     }
 
+    /**
+     * Factory method to create a {@link Base64SnapshotDsl} instance using the given {@link SnapshotMatcher}.
+     *
+     * @param matcher the snapshot matcher
+     * @return a new {@code Base64SnapshotDsl}
+     * @throws IllegalArgumentException if matcher is null
+     */
+    static Base64SnapshotDsl of(final SnapshotMatcher matcher) {
+        return new Base64SnapshotDsl(matcher);
+    }
+
     @Override
     @SuppressWarnings("NullAway")
     public <T> void snapshot(final T toBeSnapshotted) {
-        expect.serializer(new Base64SnapshotSerializer()) // TODO (nw) option to pass a simple module?
-            .scenario(scenario)
-            .toMatchSnapshot(toBeSnapshotted);
+        matcher.match(PlainSnapshotSerializer.base64(), scenario, toBeSnapshotted); // TODO (nw) option to pass a simple module?
     }
 }
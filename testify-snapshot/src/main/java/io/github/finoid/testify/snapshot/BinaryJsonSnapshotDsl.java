@@ -0,0 +1,181 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.Expect;
+import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.DeterministicCollectionModule.NonComparableOrdering;
+import io.github.finoid.testify.snapshot.JsonSnapshotSerializer.Options;
+import io.github.finoid.testify.snapshot.SnapshotDsl.MaskingSnapshotDsl;
+import tools.jackson.core.TokenStreamFactory;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * A DSL for snapshotting payloads of a binary Jackson format as JSON, e.g. CBOR with a {@code CBORFactory} or Smile with a
+ * {@code SmileFactory}. Schema based formats like Avro or Protobuf work with a factory whose parsers are configured with the
+ * schema.
+ * <p>
+ * The payload is streamed from the parser of the format into the JSON snapshot writer, so it isn't decoded into a tree or a
+ * JSON string first. The snapshot equals the JSON snapshot of the payload decoded into maps and lists: object members are
+ * ordered by name and null members are left out. Masked fields are applied while the tokens are written; paths outside the
+ * streamable subset of JsonPath, see {@link MaskingMode#STREAMING}, are applied to the written JSON instead.
+ * <p>
+ * Unlike {@link JsonSnapshotDsl}, the masking mode and the {@link NonComparableOrdering} can't be configured: masked fields
+ * are always applied as with {@link MaskingMode#STREAMING}, and as the payload isn't bound to objects, arrays keep the
+ * order of the payload. Every object is buffered until its end to order its members, see {@link CanonicalTokenCopier}.
+ */
+public class BinaryJsonSnapshotDsl extends MaskingSnapshotDsl {
+    private final SnapshotMatcher matcher;
+    private final TokenStreamFactory format;
+
+    private MaskProgram maskProgram = MaskProgram.EMPTY;
+    private PartialMaskProgram partialMaskProgram = PartialMaskProgram.EMPTY;
+    private int maxDifferences = JsonDiff.DEFAULT_MAX_DIFFERENCES;
+
+    private BinaryJsonSnapshotDsl(final SnapshotMatcher matcher, final TokenStreamFactory format) {
+        this.matcher = Precondition.nonNull(matcher, "Matcher must not be null");
+        this.format = Precondition.nonNull(format, "Format must not be null");
+    }
+
+    /**
+     * Factory method to create a {@link BinaryJsonSnapshotDsl} instance using the given {@link Expect}.
+     *
+     * @param expect the expect instance
+     * @param format the factory of the parsers of the binary format
+     * @return a new {@code BinaryJsonSnapshotDsl}
+     * @throws IllegalArgumentException if expect or format is null
+     */
+    public static BinaryJsonSnapshotDsl ofExpect(final Expect expect, final TokenStreamFactory format) {
+        return new BinaryJsonSnapshotDsl(SnapshotMatcher.ofExpect(expect), format);
+    }
+
+    /**
+     * Factory method to create a {@link BinaryJsonSnapshotDsl} instance using the given {@link SnapshotMatcher}.
+     *
+     * @param matcher the snapshot matcher
+     * @param format  the factory of the parsers of the binary format
+     * @return a new {@code BinaryJsonSnapshotDsl}
+     * @throws IllegalArgumentException if matcher or format is null
+     */
+    static BinaryJsonSnapshotDsl of(final SnapshotMatcher matcher, final TokenStreamFactory format) {
+        return new BinaryJsonSnapshotDsl(matcher, format);
+    }
+
+    /**
+     * Configures a single field to be masked. The path is compiled and validated immediately.
+     *
+     * @param fieldPath the JsonPath of the field to mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if fieldPath is null or not a valid JsonPath
+     */
+    @Override
+    public BinaryJsonSnapshotDsl withMaskedField(final String fieldPath) {
+        return withMaskedFields(List.of(Precondition.nonNull(fieldPath, "FieldPath must not be null")));
+    }
+
+    /**
+     * Configures multiple fields to be masked. The paths are compiled and validated immediately.
+     *
+     * @param fieldPaths the JsonPaths of the fields to mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if fieldPaths is null or any of the paths is not a valid JsonPath
+     */
+    @Override
+    public BinaryJsonSnapshotDsl withMaskedFields(final List<String> fieldPaths) {
+        this.maskProgram = MaskProgram.of(Precondition.nonNull(fieldPaths, "FieldPaths must not be null"));
+        this.maskedFieldPaths = maskProgram.expressions();
+
+        return this;
+    }
+
+    /**
+     * Configures a rule masking parts of string values, see {@link JsonSnapshotDsl#withPartialMask(PartialMask)}.
+     *
+     * @param partialMask the partial mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if partialMask is null
+     */
+    public BinaryJsonSnapshotDsl withPartialMask(final PartialMask partialMask) {
+        return withPartialMasks(List.of(Precondition.nonNull(partialMask, "PartialMask must not be null")));
+    }
+
+    /**
+     * Configures rules masking parts of string values, see {@link JsonSnapshotDsl#withPartialMasks(List)}.
+     *
+     * @param partialMasks the partial masks, in order of precedence
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if partialMasks or any of the masks is null
+     */
+    public BinaryJsonSnapshotDsl withPartialMasks(final List<PartialMask> partialMasks) {
+        this.partialMaskProgram = PartialMaskProgram.of(partialMasks);
+
+        return this;
+    }
+
+    /**
+     * Configures the maximum number of differences reported when the snapshot doesn't match. Defaults to 20.
+     *
+     * @param maxDifferences the maximum number of reported differences
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if maxDifferences isn't positive
+     */
+    public BinaryJsonSnapshotDsl withMaxDifferences(final int maxDifferences) {
+        if (maxDifferences < 1) {
+            throw new IllegalArgumentException("MaxDifferences must be positive");
+        }
+
+        this.maxDifferences = maxDifferences;
+
+        return this;
+    }
+
+    /**
+     * Captures or verifies a snapshot of the payload in the given file.
+     *
+     * @param path the file holding the payload
+     */
+    public void snapshot(final Path path) {
+        snapshot((Object) path);
+    }
+
+    /**
+     * Captures or verifies a snapshot of the payload read from the given stream. The stream is not closed.
+     *
+     * @param inputStream the stream holding the payload
+     */
+    public void snapshot(final InputStream inputStream) {
+        snapshot((Object) inputStream);
+    }
+
+    /**
+     * Captures or verifies a snapshot of the remaining content of the given buffer, without changing its position.
+     *
+     * @param buffer the buffer holding the payload
+     */
+    public void snapshot(final ByteBuffer buffer) {
+        snapshot((Object) buffer);
+    }
+
+    /**
+     * Captures or verifies a snapshot of the given payload.
+     *
+     * @param toBeSnapshotted a {@link Path}, {@link InputStream}, {@link ByteBuffer} or {@code byte[]} holding the payload
+     * @param <T>             the type of the payload source
+     * @throws IllegalArgumentException if the object isn't a supported payload source
+     */
+    @Override
+    @SuppressWarnings("NullAway")
+    public <T> void snapshot(final T toBeSnapshotted) {
+        Precondition.nonNull(toBeSnapshotted, "ToBeSnapshotted must not be null");
+
+        final JsonSnapshotSerializer json = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(maskProgram)
+            .withPartialMaskProgram(partialMaskProgram)
+            .withMaskingMode(MaskingMode.STREAMING)
+            .withMaxDifferences(maxDifferences));
+
+        matcher.match(new BinaryJsonSnapshotSerializer(format, json), scenario, toBeSnapshotted);
+    }
+}
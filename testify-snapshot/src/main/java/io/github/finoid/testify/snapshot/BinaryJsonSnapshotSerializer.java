@@ -0,0 +1,82 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.internal.Precondition;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.core.TokenStreamFactory;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Serializes payloads of a binary Jackson format, e.g. CBOR or Smile, into JSON snapshots.
+ * <p>
+ * The payload is read with the streaming parser of the format and its tokens are written straight to the JSON snapshot,
+ * see {@link JsonSnapshotSerializer#serialize(JsonParser, SnapshotTiming)}, so neither a tree nor a JSON string of the
+ * payload is built. Payloads are read from a {@link Path}, an {@link InputStream}, a {@link ByteBuffer} or a {@code byte[]}.
+ */
+final class BinaryJsonSnapshotSerializer implements SnapshotBodySerializer {
+    private final TokenStreamFactory format;
+    private final JsonSnapshotSerializer json;
+
+    BinaryJsonSnapshotSerializer(final TokenStreamFactory format, final JsonSnapshotSerializer json) {
+        this.format = Precondition.nonNull(format, "Format must not be null");
+        this.json = Precondition.nonNull(json, "Json must not be null");
+    }
+
+    @Override
+    public String serialize(final Object object) {
+        return serialize(object, SnapshotTiming.NONE);
+    }
+
+    @Override
+    public String serialize(final Object object, final SnapshotTiming timing) {
+        Precondition.nonNull(object, "Object must not be null");
+
+        try (JsonParser parser = parser(object)) {
+            return json.serialize(parser, timing);
+        } catch (final JacksonException e) {
+            throw new SnapshotExtensionException("Json snapshotting failed. Couldn't read the " + format.getFormatName()
+                + " payload. Cause: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String describeMismatch(final Reader expected, final Reader actual) {
+        return json.describeMismatch(expected, actual);
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return json.getOutputFormat();
+    }
+
+    private JsonParser parser(final Object object) {
+        final ObjectReadContext context = ObjectReadContext.empty();
+
+        if (object instanceof byte[] bytes) {
+            return format.createParser(context, bytes);
+        }
+
+        if (object instanceof ByteBuffer buffer) {
+            return buffer.hasArray()
+                ? format.createParser(context, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining())
+                : format.createParser(context, SnapshotFile.stream(buffer));
+        }
+
+        if (object instanceof InputStream in) {
+            return format.createParser(context, new NonClosingInputStream(in));
+        }
+
+        if (object instanceof Path path) {
+            return format.createParser(context, path);
+        }
+
+        throw new IllegalArgumentException("Unsupported " + format.getFormatName() + " source: " + object.getClass().getName()
+            + ", expected a Path, InputStream, ByteBuffer or byte[]");
+    }
+}
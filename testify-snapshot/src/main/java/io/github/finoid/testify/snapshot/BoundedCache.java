@@ -0,0 +1,76 @@
+package io.github.finoid.testify.snapshot;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A small concurrent cache with an upper bound on the number of entries.
+ * <p>
+ * Lookups are lock-free. When the bound is reached an arbitrary entry is evicted before the new one is added, which keeps
+ * memory flat for callers that (accidentally) produce an unbounded number of distinct keys, while the common case of a
+ * handful of hot keys is served without any coordination.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+final class BoundedCache<K, V> {
+    private final Map<K, V> entries = new ConcurrentHashMap<>();
+    private final int maximumSize;
+
+    BoundedCache(final int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be positive");
+        }
+
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Returns the cached value for the given key, computing and caching it if absent.
+     *
+     * @param key             the cache key
+     * @param mappingFunction the function computing the value of an absent key
+     * @return the cached or computed value
+     */
+    V computeIfAbsent(final K key, final Function<? super K, ? extends V> mappingFunction) {
+        final V cached = entries.get(key);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        if (entries.size() >= maximumSize) {
+            evictOne();
+        }
+
+        return entries.computeIfAbsent(key, mappingFunction);
+    }
+
+    /**
+     * Returns the cached value for the given key.
+     *
+     * @param key the cache key
+     * @return the cached value, or null if absent
+     */
+    @Nullable
+    V get(final K key) {
+        return entries.get(key);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private void evictOne() {
+        final Iterator<K> iterator = entries.keySet().iterator();
+
+        if (iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+}
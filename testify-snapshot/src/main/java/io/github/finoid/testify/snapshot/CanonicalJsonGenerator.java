@@ -0,0 +1,176 @@
+package io.github.finoid.testify.snapshot;
+
+import org.jspecify.annotations.Nullable;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.SerializableString;
+import tools.jackson.core.io.CharacterEscapes;
+import tools.jackson.core.io.SerializedString;
+import tools.jackson.core.util.JsonGeneratorDelegate;
+
+import java.math.BigDecimal;
+
+/**
+ * A {@link JsonGenerator} writing values the way snapshots have always been stored.
+ * <p>
+ * Historically every JSON snapshot was re-parsed and re-serialized by JsonPath (json-smart) before being formatted. To
+ * stay byte-for-byte compatible with existing snapshot files without that round trip, this generator reproduces its
+ * observable effects while writing:
+ * <ul>
+ *     <li>Floating point numbers are normalized, short ones through {@link Double} and long ones through {@link BigDecimal}</li>
+ *     <li>The characters {@code U+0080}-{@code U+009F} and {@code U+2000}-{@code U+20FF} are escaped, and {@code U+007F} is
+ *     dropped, see {@link #CHARACTER_ESCAPES}</li>
+ * </ul>
+ * Combined with the {@link CanonicalPrettyPrinter} the generator writes the final snapshot body directly.
+ */
+class CanonicalJsonGenerator extends JsonGeneratorDelegate {
+    /**
+     * Escapes the characters json-smart escapes in addition to the JSON standard escapes, and drops the characters it drops.
+     */
+    static final CharacterEscapes CHARACTER_ESCAPES = new SnapshotCharacterEscapes();
+
+    /**
+     * Floating point tokens longer than this are parsed into a {@link BigDecimal} rather than a {@link Double} by json-smart.
+     */
+    private static final int MAXIMUM_DOUBLE_TOKEN_LENGTH = 18;
+
+    CanonicalJsonGenerator(final JsonGenerator delegate) {
+        super(delegate, false);
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final double value) throws JacksonException {
+        if (!Double.isFinite(value)) {
+            delegate.writeNumber(value);
+            return this;
+        }
+
+        delegate.writeNumber(canonicalNumber(Double.toString(value)));
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final float value) throws JacksonException {
+        if (!Float.isFinite(value)) {
+            delegate.writeNumber(value);
+            return this;
+        }
+
+        delegate.writeNumber(canonicalNumber(Float.toString(value)));
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(@Nullable final BigDecimal value) throws JacksonException {
+        if (value == null) {
+            delegate.writeNull();
+            return this;
+        }
+
+        delegate.writeNumber(canonicalNumber(value.toString()));
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(@Nullable final String encodedValue) throws JacksonException {
+        if (encodedValue == null) {
+            delegate.writeNull();
+            return this;
+        }
+
+        delegate.writeNumber(canonicalNumber(encodedValue));
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final char[] encodedValueBuffer, final int offset, final int len) throws JacksonException {
+        return writeNumber(new String(encodedValueBuffer, offset, len));
+    }
+
+    /**
+     * Normalizes a number token the way json-smart parses and writes it back. Integral tokens are kept as they are.
+     *
+     * @param token the number token
+     * @return the normalized token
+     */
+    static String canonicalNumber(final String token) {
+        if (!isFloatingPoint(token)) {
+            return token;
+        }
+
+        try {
+            return token.length() > MAXIMUM_DOUBLE_TOKEN_LENGTH
+                ? new BigDecimal(token).toString()
+                : Double.toString(Double.parseDouble(token));
+        } catch (final NumberFormatException e) {
+            return token;
+        }
+    }
+
+    private static boolean isFloatingPoint(final String token) {
+        for (int i = 0; i < token.length(); i++) {
+            final char ch = token.charAt(i);
+
+            if (ch == '.' || ch == 'e' || ch == 'E') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The standard JSON escapes, plus {@code U+0080}-{@code U+009F} and {@code U+2000}-{@code U+20FF} as upper case
+     * {@code \}{@code uXXXX} sequences. The delete character {@code U+007F} is skipped by the json-smart parser and is
+     * therefore replaced by nothing.
+     */
+    private static final class SnapshotCharacterEscapes extends CharacterEscapes {
+        private static final int DELETE = 0x7F;
+        private static final SerializableString DELETE_ESCAPE = new SerializedString("");
+
+        private static final int[] ASCII_ESCAPES = asciiEscapes();
+
+        private static final SerializableString[] C1_ESCAPES = escapes(0x0080, 0x009F);
+        private static final SerializableString[] PUNCTUATION_ESCAPES = escapes(0x2000, 0x20FF);
+
+        @Override
+        public int[] getEscapeCodesForAscii() {
+            return ASCII_ESCAPES;
+        }
+
+        @Override
+        @Nullable
+        public SerializableString getEscapeSequence(final int ch) {
+            if (ch == DELETE) {
+                return DELETE_ESCAPE;
+            }
+
+            if (ch >= 0x0080 && ch <= 0x009F) {
+                return C1_ESCAPES[ch - 0x0080];
+            }
+
+            if (ch >= 0x2000 && ch <= 0x20FF) {
+                return PUNCTUATION_ESCAPES[ch - 0x2000];
+            }
+
+            return null;
+        }
+
+        private static int[] asciiEscapes() {
+            final int[] escapes = CharacterEscapes.standardAsciiEscapesForJSON();
+            escapes[DELETE] = CharacterEscapes.ESCAPE_CUSTOM;
+
+            return escapes;
+        }
+
+        private static SerializableString[] escapes(final int first, final int last) {
+            final SerializableString[] escapes = new SerializableString[last - first + 1];
+
+            for (int ch = first; ch <= last; ch++) {
+                escapes[ch - first] = new SerializedString(String.format("\\u%04X", ch));
+            }
+
+            return escapes;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.github.finoid.testify.snapshot;
+
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.PrettyPrinter;
+import tools.jackson.core.util.Instantiatable;
+
+/**
+ * A {@link PrettyPrinter} writing JSON in the on-disk snapshot format, the same output {@link JsonFormatter} produces for
+ * compact JSON: two-space indentation, {@code " : "} name separators and LF line endings.
+ * <p>
+ * Empty objects and arrays keep the formatter's layout of an indented blank line between the brackets, so snapshots written
+ * by this printer are byte-for-byte identical to existing snapshot files.
+ */
+class CanonicalPrettyPrinter implements PrettyPrinter, Instantiatable<CanonicalPrettyPrinter> {
+    private static final String NAME_VALUE_SEPARATOR = " : ";
+    private static final char ARRAY_START = '[';
+    private static final char ARRAY_END = ']';
+    private static final char VALUE_SEPARATOR = ',';
+    private static final int CACHED_INDENTS = 32;
+    private static final String[] NEW_LINES = new String[CACHED_INDENTS];
+
+    static {
+        for (int i = 0; i < CACHED_INDENTS; i++) {
+            NEW_LINES[i] = "\n" + "  ".repeat(i);
+        }
+    }
+
+    private int depth;
+
+    @Override
+    public CanonicalPrettyPrinter createInstance() {
+        return new CanonicalPrettyPrinter();
+    }
+
+    @Override
+    public void writeRootValueSeparator(final JsonGenerator g) throws JacksonException {
+        // Snapshots consist of a single root value
+    }
+
+    @Override
+    public void writeStartObject(final JsonGenerator g) throws JacksonException {
+        g.writeRaw('{');
+        g.writeRaw(newLine(++depth));
+    }
+
+    @Override
+    public void writeEndObject(final JsonGenerator g, final int nrOfEntries) throws JacksonException {
+        g.writeRaw(newLine(--depth));
+        g.writeRaw('}');
+    }
+
+    @Override
+    public void writeObjectEntrySeparator(final JsonGenerator g) throws JacksonException {
+        g.writeRaw(VALUE_SEPARATOR);
+        g.writeRaw(newLine(depth));
+    }
+
+    @Override
+    public void writeObjectNameValueSeparator(final JsonGenerator g) throws JacksonException {
+        g.writeRaw(NAME_VALUE_SEPARATOR);
+    }
+
+    @Override
+    public void writeStartArray(final JsonGenerator g) throws JacksonException {
+        g.writeRaw(ARRAY_START);
+        g.writeRaw(newLine(++depth));
+    }
+
+    @Override
+    public void writeEndArray(final JsonGenerator g, final int nrOfValues) throws JacksonException {
+        g.writeRaw(newLine(--depth));
+        g.writeRaw(ARRAY_END);
+    }
+
+    @Override
+    public void writeArrayValueSeparator(final JsonGenerator g) throws JacksonException {
+        g.writeRaw(VALUE_SEPARATOR);
+        g.writeRaw(newLine(depth));
+    }
+
+    /**
+     * Returns the text written when starting an array whose values are at the given depth.
+     *
+     * @param depth the depth of the values, 1 for the values of the root array
+     * @return the text before the first value
+     */
+    static String arrayStart(final int depth) {
+        return ARRAY_START + newLine(depth);
+    }
+
+    /**
+     * Returns the text written between two values of an array whose values are at the given depth.
+     *
+     * @param depth the depth of the values, 1 for the values of the root array
+     * @return the text between two values
+     */
+    static String arrayValueSeparator(final int depth) {
+        return VALUE_SEPARATOR + newLine(depth);
+    }
+
+    /**
+     * Returns the text written when ending an array whose values are at the given depth.
+     *
+     * @param depth the depth of the values, 1 for the values of the root array
+     * @return the text after the last value
+     */
+    static String arrayEnd(final int depth) {
+        return newLine(depth - 1) + ARRAY_END;
+    }
+
+    @Override
+    public void beforeArrayValues(final JsonGenerator g) throws JacksonException {
+        // The line break is written when the array is started, so empty arrays keep the formatter's layout
+    }
+
+    @Override
+    public void beforeObjectEntries(final JsonGenerator g) throws JacksonException {
+        // The line break is written when the object is started, so empty objects keep the formatter's layout
+    }
+
+    private static String newLine(final int depth) {
+        return depth < CACHED_INDENTS ? NEW_LINES[Math.max(depth, 0)] : "\n" + "  ".repeat(depth);
+    }
+}
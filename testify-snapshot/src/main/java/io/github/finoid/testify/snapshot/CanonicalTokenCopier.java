@@ -0,0 +1,125 @@
+package io.github.finoid.testify.snapshot;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.util.TokenBuffer;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Copies the tokens read by a parser of any Jackson format into a generator, the same way the snapshot mapper writes the
+ * maps the tokens would be bound to.
+ * <p>
+ * Object members are ordered by name, like {@link tools.jackson.databind.SerializationFeature#ORDER_MAP_ENTRIES_BY_KEYS}
+ * orders map entries, and members with a null value are left out. Scalars and the elements of root level arrays are copied
+ * as they are read.
+ * <p>
+ * As the last member of an object may be ordered first, an object can only be written once it has been read completely:
+ * the tokens of each member value are buffered in a {@link TokenBuffer} until the end of the object, so the largest root
+ * level object is held in memory as a whole. Objects nested in a buffered value are not replayed into the enclosing buffer,
+ * they are referenced from it and written when the enclosing object is, so every token is buffered and written once,
+ * however deeply it's nested.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class CanonicalTokenCopier {
+    /**
+     * Copies all root values read by the given parser as the elements of a single array.
+     *
+     * @param parser    the parser, before its first token
+     * @param generator the generator to copy the values to
+     */
+    static void copyRootValues(final JsonParser parser, final JsonGenerator generator) {
+        generator.writeStartArray();
+
+        while (parser.nextToken() != null) {
+            copyValue(parser, generator);
+        }
+
+        generator.writeEndArray();
+    }
+
+    /**
+     * Copies the value the given parser is positioned on, leaving the parser on its last token.
+     */
+    private static void copyValue(final JsonParser parser, final JsonGenerator generator) {
+        final JsonToken token = parser.currentToken();
+
+        if (token == JsonToken.START_OBJECT) {
+            copyObject(parser, generator);
+        } else if (token == JsonToken.START_ARRAY) {
+            generator.writeStartArray();
+
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                copyValue(parser, generator);
+            }
+
+            generator.writeEndArray();
+        } else {
+            generator.copyCurrentEvent(parser);
+        }
+    }
+
+    /**
+     * Copies the object the given parser is positioned on. Into a buffer of an enclosing object, the members are written as
+     * a reference, see {@link Members}.
+     */
+    private static void copyObject(final JsonParser parser, final JsonGenerator generator) {
+        final Map<String, TokenBuffer> members = new TreeMap<>();
+
+        while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+            final String name = parser.currentName();
+
+            // Like binding to a map, the last member of a name wins
+            if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                members.remove(name);
+
+                continue;
+            }
+
+            final TokenBuffer value = TokenBuffer.forGeneration();
+            copyValue(parser, value);
+            members.put(name, value);
+        }
+
+        if (generator instanceof TokenBuffer buffer) {
+            buffer.writeEmbeddedObject(new Members(members));
+        } else {
+            write(members, generator);
+        }
+    }
+
+    private static void write(final Map<String, TokenBuffer> members, final JsonGenerator generator) {
+        generator.writeStartObject();
+
+        for (final Map.Entry<String, TokenBuffer> member : members.entrySet()) {
+            generator.writeName(member.getKey());
+            write(member.getValue(), generator);
+        }
+
+        generator.writeEndObject();
+    }
+
+    private static void write(final TokenBuffer value, final JsonGenerator generator) {
+        try (JsonParser tokens = value.asParser()) {
+            while (tokens.nextToken() != null) {
+                if (tokens.currentToken() == JsonToken.VALUE_EMBEDDED_OBJECT && tokens.getEmbeddedObject() instanceof Members nested) {
+                    write(nested.members(), generator);
+                } else {
+                    generator.copyCurrentEvent(tokens);
+                }
+            }
+        }
+    }
+
+    /**
+     * The ordered members of an object nested in a buffered value.
+     *
+     * @param members the buffered member values by name
+     */
+    private record Members(Map<String, TokenBuffer> members) {
+    }
+}
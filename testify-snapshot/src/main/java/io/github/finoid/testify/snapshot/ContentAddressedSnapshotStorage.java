@@ -0,0 +1,105 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.SnapshotFile.Entry;
+import org.jspecify.annotations.Nullable;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores the snapshots of a test class as references to content-addressed blobs, so equal bodies are stored once per
+ * module no matter how many snapshots produce them, see {@link SnapshotBlobStore}.
+ * <p>
+ * The references of the test class are read into an in-memory index once, when the storage is opened. Identifiers are
+ * resolved from the index without touching any blob, including their hashes, which name the blobs. A blob is only opened
+ * once the body of its snapshot is needed, i.e. if the hash of a verified body differs, or the snapshot is described.
+ */
+final class ContentAddressedSnapshotStorage implements SnapshotStorage {
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path references;
+    private final SnapshotBlobStore blobs;
+
+    private volatile Map<String, String> index;
+
+    ContentAddressedSnapshotStorage(final Path references, final SnapshotBlobStore blobs) {
+        this.references = Precondition.nonNull(references, "References must not be null");
+        this.blobs = Precondition.nonNull(blobs, "Blobs must not be null");
+        this.index = Collections.unmodifiableMap(SnapshotBlobStore.readReferences(references));
+    }
+
+    /**
+     * Returns the path of the reference file.
+     *
+     * @return the path of the reference file
+     */
+    @Override
+    public Path path() {
+        return references;
+    }
+
+    @Override
+    public Set<String> identifiers() {
+        return index.keySet();
+    }
+
+    @Override
+    public boolean contains(final String identifier) {
+        return index.containsKey(identifier);
+    }
+
+    /**
+     * Returns the hash the blob of the snapshot is referenced by, without opening the blob.
+     *
+     * @param identifier the snapshot identifier
+     * @return the hash, or null if the snapshot doesn't exist
+     */
+    @Override
+    public byte @Nullable [] hash(final String identifier) {
+        final String hash = index.get(identifier);
+
+        return hash != null ? HEX.parseHex(hash) : null;
+    }
+
+    @Override
+    public boolean matches(final String identifier, final byte[] body) {
+        final String hash = index.get(identifier);
+
+        return hash != null && blobs.blob(hash).matches(hash, body);
+    }
+
+    @Override
+    @Nullable
+    public InputStream openBody(final String identifier) {
+        final String hash = index.get(identifier);
+
+        return hash != null ? blobs.blob(hash).openBody(hash) : null;
+    }
+
+    @Override
+    @Nullable
+    public String body(final String identifier) {
+        final String hash = index.get(identifier);
+
+        return hash != null ? blobs.blob(hash).body(hash) : null;
+    }
+
+    /**
+     * Stores the bodies that aren't stored yet and rewrites the reference file without the removed snapshots, see
+     * {@link SnapshotBlobStore#write(Path, Map, Set)}.
+     *
+     * @param snapshots the entries by identifier
+     * @param removed   the identifiers of the snapshots to remove
+     * @throws SnapshotExtensionException if a blob or the reference file can't be written
+     */
+    @Override
+    public void write(final Map<String, Entry> snapshots, final Set<String> removed) {
+        this.index = blobs.write(references, snapshots, removed);
+    }
+}
@@ -1,14 +1,34 @@
 package io.github.finoid.testify.snapshot;
 
+import io.github.finoid.testify.core.internal.Precondition;
 import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.Nullable;
 import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.TokenStreamContext;
 import tools.jackson.databind.SerializationContext;
 import tools.jackson.databind.ValueSerializer;
 import tools.jackson.databind.module.SimpleModule;
+import tools.jackson.databind.util.ClassUtil;
+import tools.jackson.databind.util.RawValue;
+import tools.jackson.databind.util.TokenBuffer;
 
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
 
 /**
  * A custom Jackson module that ensures collections are serialized in a **deterministic order**.
@@ -16,20 +36,166 @@ import java.util.Objects;
  * by converting them into sorted arrays before serialization. This helps create
  * consistent JSON snapshots, preventing variations due to unordered collections.
  * <p>
+ * Collections that are in natural order by type ({@link EnumSet}s and naturally ordered {@link SortedSet}s) are written as
+ * they are, and collections of {@link Integer}, {@link Long} or {@link Double} elements are sorted as primitive arrays.
+ * {@link String} and boxed numbers are written straight to the generator. Other collections, including {@link List}s, are
+ * sorted without checking whether they're sorted already, as sorting a sorted list takes a single pass of comparisons
+ * anyway. How a collection type is handled, and whether an element type is sortable at all, is decided once per type.
+ * Whether elements of different classes are sortable is decided once per set of element classes.
+ * <p>
  * If sorting is not possible (e.g., due to non-comparable elements), the collection
- * will be serialized in its original order, and a debug log will be emitted.
+ * will be serialized in its original order, and a warning will be logged once per element type.
  */
 @Slf4j
 public class DeterministicCollectionModule extends SimpleModule {
-    @SuppressWarnings("this-escape")
+    private final NonComparableOrdering nonComparableOrdering;
+
+    /**
+     * Creates a module writing collections of non-comparable elements in iteration order.
+     */
     public DeterministicCollectionModule() {
-        addSerializer(Collection.class, new CollectionSerializer());
+        this(NonComparableOrdering.ITERATION_ORDER);
+    }
+
+    /**
+     * Creates a module ordering collections of non-comparable elements as configured.
+     *
+     * @param nonComparableOrdering how collections of non-comparable elements are ordered
+     * @throws IllegalArgumentException if nonComparableOrdering is null
+     */
+    @SuppressWarnings("this-escape")
+    public DeterministicCollectionModule(final NonComparableOrdering nonComparableOrdering) {
+        this.nonComparableOrdering = Precondition.nonNull(nonComparableOrdering, "NonComparableOrdering must not be null");
+
+        addSerializer(Collection.class, new CollectionSerializer(nonComparableOrdering));
+    }
+
+    /**
+     * Returns the registration id, which differs per {@link NonComparableOrdering} so that mappers using different orderings
+     * are told apart.
+     *
+     * @return the registration id
+     */
+    @Override
+    public Object getRegistrationId() {
+        return nonComparableOrdering == NonComparableOrdering.ITERATION_ORDER
+            ? super.getRegistrationId()
+            : super.getRegistrationId() + "#" + nonComparableOrdering;
+    }
+
+    /**
+     * Returns the elements of the given collection in the order the module writes them, so that the elements can be written
+     * without the collection, e.g. in slices.
+     *
+     * @param value                 the collection
+     * @param nonComparableOrdering how collections of non-comparable elements are ordered
+     * @return the elements in written order, without the null elements sorting removes, or null if the order is only known
+     * once the elements have been serialized, see {@link NonComparableOrdering#CANONICAL_JSON}
+     */
+    @Nullable
+    static Object[] writtenOrder(final Collection<?> value, final NonComparableOrdering nonComparableOrdering) {
+        if (CollectionSerializer.isInNaturalOrder(value)) {
+            return value.toArray();
+        }
+
+        final Class<?> elementType = CollectionSerializer.commonElementType(value);
+        final Object[] sorted = CollectionSerializer.sort(value, elementType);
+
+        if (sorted != null) {
+            return sorted;
+        }
+
+        if (nonComparableOrdering == NonComparableOrdering.CANONICAL_JSON) {
+            return null;
+        }
+
+        CollectionSerializer.warnOnce(elementType != null ? elementType : Object.class, elementType != null
+            ? elementType.getName() + " is not Comparable"
+            : "The elements are not mutually comparable");
+
+        return value.toArray();
+    }
+
+    /**
+     * Determines how collections are ordered whose elements can't be sorted, because they aren't {@link Comparable} or not
+     * comparable with each other.
+     */
+    public enum NonComparableOrdering {
+        /**
+         * The elements are written in iteration order, which may not be deterministic, e.g. for a {@link java.util.HashSet}.
+         */
+        ITERATION_ORDER,
+        /**
+         * The elements are ordered by their serialized JSON. Null elements are removed, like when sorting. Each element is
+         * serialized once per snapshot and the result is reused when the element is written.
+         * <p>
+         * Elements are ordered by their JSON as it appears in the snapshot, so that masked values don't make the order
+         * random: masked field paths and partial masks of the snapshot are applied to the sort key, see {@link SortKeyMasks}.
+         * Masked field paths addressing elements by index are applied to every element, as the index of an element is only
+         * known once the elements are ordered. Embedded binary values are ordered by their Base64 encoding; elements
+         * embedding other objects can't be ordered and fail the snapshot.
+         */
+        CANONICAL_JSON
+    }
+
+    /**
+     * How a collection type is ordered before serialization.
+     */
+    private enum Strategy {
+        /**
+         * Iterates in natural order, e.g. an {@link EnumSet}.
+         */
+        ORDERED,
+        /**
+         * Iterates in natural order unless it has a comparator.
+         */
+        SORTED_SET,
+        /**
+         * Iterates in insertion order or an unspecified order, so it's sorted.
+         */
+        UNORDERED;
+
+        private static final ClassValue<Strategy> BY_TYPE = new ClassValue<>() {
+            @Override
+            protected Strategy computeValue(final Class<?> type) {
+                if (EnumSet.class.isAssignableFrom(type)) {
+                    return ORDERED;
+                }
+
+                if (SortedSet.class.isAssignableFrom(type)) {
+                    return SORTED_SET;
+                }
+
+                return UNORDERED;
+            }
+        };
     }
 
     /**
      * Collections get converted into a sorted Object[].  This then gets serialized using the default Array serializer.
      */
     private static class CollectionSerializer<T> extends ValueSerializer<Collection<T>> {
+        private static final ClassValue<Boolean> SORTABLE = new ClassValue<>() {
+            @Override
+            protected Boolean computeValue(final Class<?> type) {
+                return Comparable.class.isAssignableFrom(type);
+            }
+        };
+
+        private static final int MAXIMUM_UNSORTABLE_CLASS_SETS = 256;
+
+        /**
+         * The sets of element classes whose elements turned out not to be mutually comparable.
+         */
+        private static final BoundedCache<Set<Class<?>>, Boolean> UNSORTABLE_CLASS_SETS = new BoundedCache<>(MAXIMUM_UNSORTABLE_CLASS_SETS);
+        private static final Set<Class<?>> WARNED_ELEMENT_TYPES = ConcurrentHashMap.newKeySet();
+
+        private final NonComparableOrdering nonComparableOrdering;
+
+        private CollectionSerializer(final NonComparableOrdering nonComparableOrdering) {
+            this.nonComparableOrdering = nonComparableOrdering;
+        }
+
         /**
          * Serializes a {@link Collection} into a sorted {@code Object[]} for deterministic output.
          *
@@ -38,40 +204,465 @@ public class DeterministicCollectionModule extends SimpleModule {
          * @param ctxt  the serialization context
          */
         @Override
-        public void serialize(final Collection value, final tools.jackson.core.JsonGenerator gen, final SerializationContext ctxt)
+        public void serialize(final Collection value, final JsonGenerator gen, final SerializationContext ctxt)
             throws JacksonException {
-            Object[] sorted = convert(value);
-
             if (value == null) {
                 ctxt.getDefaultNullValueSerializer().serialize(null, gen, ctxt);
-            } else {
+                return;
+            }
+
+            if (isInNaturalOrder(value)) {
+                writeInOrder(value, gen, ctxt);
+                return;
+            }
+
+            final Class<?> elementType = commonElementType(value);
+
+            if (elementType != null && isStandard(elementType, ctxt) && writeSortedPrimitives(value, elementType, gen)) {
+                return;
+            }
+
+            final Object[] sorted = sort(value, elementType);
+
+            if (sorted != null) {
                 ctxt.findTypedValueSerializer(Object[].class, true).serialize(sorted, gen, ctxt);
+                return;
+            }
+
+            if (nonComparableOrdering == NonComparableOrdering.CANONICAL_JSON) {
+                writeInCanonicalOrder(value, gen, ctxt);
+                return;
+            }
+
+            warnOnce(elementType != null ? elementType : Object.class, elementType != null
+                ? elementType.getName() + " is not Comparable"
+                : "The elements are not mutually comparable");
+
+            ctxt.findTypedValueSerializer(Object[].class, true).serialize(value.toArray(), gen, ctxt);
+        }
+
+        /**
+         * Determines whether the collection iterates in natural order by its type, without null elements.
+         */
+        private static boolean isInNaturalOrder(final Collection<?> value) {
+            return switch (Strategy.BY_TYPE.get(value.getClass())) {
+                case ORDERED -> true;
+                case SORTED_SET -> ((SortedSet<?>) value).comparator() == null;
+                case UNORDERED -> false;
+            };
+        }
+
+        /**
+         * Returns the class shared by all non-null elements, or null if the elements are of different classes or there are
+         * none.
+         */
+        @Nullable
+        private static Class<?> commonElementType(final Collection<?> value) {
+            Class<?> type = null;
+
+            for (final Object element : value) {
+                if (element == null) {
+                    continue;
+                }
+
+                if (type == null) {
+                    type = element.getClass();
+                } else if (type != element.getClass()) {
+                    return null;
+                }
             }
+
+            return type;
+        }
+
+        /**
+         * Determines whether elements of the given type are serialized by the standard Jackson serializer, so they may be
+         * written straight to the generator.
+         */
+        private static boolean isStandard(final Class<?> elementType, final SerializationContext ctxt) {
+            return (elementType == Integer.class || elementType == Long.class || elementType == Double.class
+                || elementType == String.class)
+                && ClassUtil.isJacksonStdImpl(ctxt.findContentValueSerializer(elementType, null));
         }
 
         /**
-         * Converts a collection into a sorted array, or an unsorted array if sorting fails.
+         * Sorts and writes collections of boxed numbers as primitive arrays, and collections of strings as a plain string
+         * array. Elements are written one by one, so generator decorators see every value.
          *
-         * @param value the collection to be converted
-         * @return a sorted array or an unsorted array if sorting fails
+         * @return true if the collection has been written
+         */
+        private static boolean writeSortedPrimitives(final Collection<?> value, final Class<?> elementType, final JsonGenerator gen) {
+            if (elementType == Integer.class) {
+                final int[] sorted = value.stream().filter(Objects::nonNull).mapToInt(Integer.class::cast).sorted().toArray();
+
+                gen.writeStartArray(value, sorted.length);
+                for (final int element : sorted) {
+                    gen.writeNumber(element);
+                }
+                gen.writeEndArray();
+                return true;
+            }
+
+            if (elementType == Long.class) {
+                final long[] sorted = value.stream().filter(Objects::nonNull).mapToLong(Long.class::cast).sorted().toArray();
+
+                gen.writeStartArray(value, sorted.length);
+                for (final long element : sorted) {
+                    gen.writeNumber(element);
+                }
+                gen.writeEndArray();
+                return true;
+            }
+
+            if (elementType == Double.class) {
+                final double[] sorted = value.stream().filter(Objects::nonNull).mapToDouble(Double.class::cast).sorted().toArray();
+
+                gen.writeStartArray(value, sorted.length);
+                for (final double element : sorted) {
+                    gen.writeNumber(element);
+                }
+                gen.writeEndArray();
+                return true;
+            }
+
+            if (elementType == String.class) {
+                final String[] sorted = value.stream().filter(Objects::nonNull).toArray(String[]::new);
+                Arrays.sort(sorted);
+
+                gen.writeStartArray(value, sorted.length);
+                for (final String element : sorted) {
+                    gen.writeString(element);
+                }
+                gen.writeEndArray();
+                return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Writes the elements in iteration order, the same way the default array serializer writes them.
          */
-        private Object[] convert(final Collection<?> value) {
-            if (value == null || value.isEmpty()) {
-                return Collections.emptyList().toArray();
+        private static void writeInOrder(final Collection<?> value, final JsonGenerator gen, final SerializationContext ctxt) {
+            gen.writeStartArray(value, value.size());
+
+            Class<?> previousType = null;
+            ValueSerializer<Object> serializer = null;
+
+            for (final Object element : value) {
+                if (element == null) {
+                    ctxt.defaultSerializeNullValue(gen);
+                    continue;
+                }
+
+                if (element.getClass() != previousType) {
+                    previousType = element.getClass();
+                    serializer = ctxt.findContentValueSerializer(previousType, null);
+                }
+
+                serializer.serialize(element, gen, ctxt);
+            }
+
+            gen.writeEndArray();
+        }
+
+        /**
+         * Converts a collection into a sorted array without null elements.
+         *
+         * @param value       the collection to be converted
+         * @param elementType the class shared by all elements, or null if unknown
+         * @return a sorted array, or null if the elements aren't sortable
+         */
+        @Nullable
+        private static Object[] sort(final Collection<?> value, @Nullable final Class<?> elementType) {
+            if (value.isEmpty()) {
+                return new Object[0];
+            }
+
+            final Object[] elements = value.stream()
+                .filter(Objects::nonNull)
+                .toArray();
+
+            if (elements.length < 2) {
+                return elements;
+            }
+
+            if (elementType != null && !SORTABLE.get(elementType)) {
+                return null;
+            }
+
+            final Set<Class<?>> elementTypes = elementType == null ? elementTypes(elements) : null;
+
+            if (elementTypes != null && (!elementTypes.stream().allMatch(SORTABLE::get) || UNSORTABLE_CLASS_SETS.get(elementTypes) != null)) {
+                return null;
             }
 
             try {
-                return value.stream()
-                    .filter(Objects::nonNull)
-                    .sorted()
-                    .toArray();
+                Arrays.sort(elements);
+
+                return elements;
             } catch (ClassCastException ex) {
+                if (elementTypes != null) {
+                    UNSORTABLE_CLASS_SETS.computeIfAbsent(elementTypes, it -> Boolean.TRUE);
+                }
+
+                return null;
+            }
+        }
+
+        private static Set<Class<?>> elementTypes(final Object[] elements) {
+            final Set<Class<?>> types = new HashSet<>();
+
+            for (final Object element : elements) {
+                types.add(element.getClass());
+            }
+
+            return types;
+        }
+
+        /**
+         * Writes the non-null elements ordered by their canonical JSON. Every element is serialized once into a buffer, which
+         * provides the sort key and is replayed when writing.
+         */
+        private static void writeInCanonicalOrder(final Collection<?> value, final JsonGenerator gen, final SerializationContext ctxt) {
+            final CanonicalElements canonicalElements = CanonicalElements.of(ctxt);
+            final SortKeyMasks masks = SortKeyMasks.of(ctxt);
+            final MaskProgram.State elementState = masks != null ? canonicalElements.location(gen, masks).anyElement() : null;
+
+            final CanonicalElement[] elements = value.stream()
+                .filter(Objects::nonNull)
+                .map(it -> canonicalElements.canonical(it, ctxt, masks, elementState))
+                .toArray(CanonicalElement[]::new);
+
+            Arrays.sort(elements, Comparator.comparing(CanonicalElement::key));
+
+            gen.writeStartArray(value, elements.length);
+            for (final CanonicalElement element : elements) {
+                element.tokens().serialize(gen);
+            }
+            gen.writeEndArray();
+        }
+
+        private static void warnOnce(final Class<?> elementType, final String reason) {
+            if (WARNED_ELEMENT_TYPES.add(elementType)) {
                 log.warn(
                     "Unable to sort() collection - this may result in a non deterministic snapshot.\n"
                         + "Consider adding a custom serializer for this type via the JacksonSnapshotSerializer#configure() method.\n"
-                        + ex.getMessage());
-                return value.toArray();
+                        + reason);
+            }
+        }
+    }
+
+    /**
+     * The masks of a snapshot, applied to the canonical JSON elements are ordered by, so that elements are ordered as they
+     * appear in the snapshot. Passed as an attribute of the {@link tools.jackson.databind.ObjectWriter} writing the snapshot.
+     *
+     * @param maskProgram        the masked field paths, all of them streamable
+     * @param partialMaskProgram the rules masking parts of string values
+     */
+    record SortKeyMasks(MaskProgram maskProgram, PartialMaskProgram partialMaskProgram) {
+        /**
+         * Creates the masks of a snapshot.
+         *
+         * @throws IllegalArgumentException if maskProgram is not streamable, or any of the programs is null
+         */
+        SortKeyMasks {
+            if (!Precondition.nonNull(maskProgram, "MaskProgram must not be null").isEmpty() && !maskProgram.isStreamable()) {
+                throw new IllegalArgumentException("Masked fields must be streamable to order elements by canonical JSON. Paths: "
+                    + maskProgram.expressions());
+            }
+
+            Precondition.nonNull(partialMaskProgram, "PartialMaskProgram must not be null");
+        }
+
+        @Nullable
+        private static SortKeyMasks of(final SerializationContext ctxt) {
+            return ctxt.getAttribute(SortKeyMasks.class) instanceof SortKeyMasks masks ? masks : null;
+        }
+
+        private MaskProgram.State rootState() {
+            return maskProgram.isEmpty() ? MaskProgram.State.EMPTY : maskProgram.rootState();
+        }
+    }
+
+    /**
+     * The canonical JSON of the elements serialized during a single snapshot, memoized by identity. Stored as a per-call
+     * attribute of the {@link SerializationContext}, so it's discarded when the snapshot has been written.
+     * <p>
+     * With {@link SortKeyMasks}, the sort key of an element depends on where it's written, so elements aren't memoized.
+     */
+    private static final class CanonicalElements {
+        private final Map<Object, CanonicalElement> elements = new IdentityHashMap<>();
+        /**
+         * The state of the element written into each buffer of an element being serialized.
+         */
+        private final Map<JsonGenerator, MaskProgram.State> buffers = new IdentityHashMap<>();
+
+        private static CanonicalElements of(final SerializationContext ctxt) {
+            final Object existing = ctxt.getAttribute(CanonicalElements.class);
+
+            if (existing instanceof CanonicalElements canonicalElements) {
+                return canonicalElements;
+            }
+
+            final CanonicalElements canonicalElements = new CanonicalElements();
+            ctxt.setAttribute(CanonicalElements.class, canonicalElements);
+
+            return canonicalElements;
+        }
+
+        private CanonicalElement canonical(final Object element, final SerializationContext ctxt, @Nullable final SortKeyMasks masks,
+                                           final MaskProgram.@Nullable State state) {
+            final CanonicalElement existing = masks == null ? elements.get(element) : null;
+
+            if (existing != null) {
+                return existing;
+            }
+
+            // Not computeIfAbsent, nested collections of the element are memoized while it is serialized
+            final TokenBuffer tokens = ctxt.bufferForValueConversion();
+
+            if (masks == null) {
+                ctxt.findContentValueSerializer(element.getClass(), null).serialize(element, tokens, ctxt);
+
+                final CanonicalElement canonical = new CanonicalElement(tokens, key(tokens, MaskProgram.State.EMPTY, null, ctxt));
+                elements.put(element, canonical);
+
+                return canonical;
+            }
+
+            buffers.put(tokens, state);
+            try {
+                ctxt.findContentValueSerializer(element.getClass(), null).serialize(element, tokens, ctxt);
+            } finally {
+                buffers.remove(tokens);
+            }
+
+            return new CanonicalElement(tokens, key(tokens, state, masks.partialMaskProgram(), ctxt));
+        }
+
+        /**
+         * Determines the state of the collection written next to the given generator.
+         */
+        private MaskProgram.State location(final JsonGenerator gen, final SortKeyMasks masks) {
+            if (gen instanceof MaskingJsonGenerator masking) {
+                return masking.nextState();
+            }
+
+            final MaskProgram.State buffered = buffers.get(gen);
+
+            return location(gen.streamWriteContext(), buffered != null ? buffered : masks.rootState(), true);
+        }
+
+        /**
+         * Determines the state of the value written in the given context, which is the next value if it's the innermost
+         * context, or the value currently written otherwise.
+         */
+        private static MaskProgram.State location(final TokenStreamContext context, final MaskProgram.State root, final boolean next) {
+            if (context.inRoot()) {
+                return root;
+            }
+
+            final MaskProgram.State parent = location(context.getParent(), root, false);
+
+            if (context.inArray()) {
+                return parent.element(next ? context.getCurrentIndex() + 1 : context.getCurrentIndex());
+            }
+
+            return parent.property(context.currentName());
+        }
+
+        /**
+         * Builds the canonical JSON of the buffered element, as it's written to the snapshot by the given masks.
+         */
+        private static String key(final TokenBuffer tokens, final MaskProgram.State state, @Nullable final PartialMaskProgram partialMaskProgram,
+                                  final SerializationContext ctxt) {
+            final StringBuilder key = new StringBuilder();
+            final Matcher matcher = partialMaskProgram != null ? partialMaskProgram.matcher() : null;
+
+            try (JsonParser parser = tokens.asParser()) {
+                if (parser.nextToken() != null) {
+                    appendValue(parser, key, state, partialMaskProgram, matcher, ctxt);
+                }
+            }
+
+            return key.toString();
+        }
+
+        private static void appendValue(final JsonParser parser, final StringBuilder key, final MaskProgram.State state,
+                                        @Nullable final PartialMaskProgram partialMaskProgram, @Nullable final Matcher matcher,
+                                        final SerializationContext ctxt) {
+            if (state.isMasked()) {
+                parser.skipChildren();
+                appendQuoted(key, MaskingJsonGenerator.MASKED_VALUE).append(',');
+                return;
+            }
+
+            switch (parser.currentToken()) {
+                case START_OBJECT -> {
+                    key.append('{');
+                    while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+                        final String name = parser.currentName();
+                        appendQuoted(key, name).append(':');
+                        parser.nextToken();
+                        appendValue(parser, key, state.property(name), partialMaskProgram, matcher, ctxt);
+                    }
+                    key.append('}').append(',');
+                }
+                case START_ARRAY -> {
+                    key.append('[');
+                    for (int index = 0; parser.nextToken() != JsonToken.END_ARRAY; index++) {
+                        appendValue(parser, key, state.element(index), partialMaskProgram, matcher, ctxt);
+                    }
+                    key.append(']').append(',');
+                }
+                case VALUE_STRING -> appendQuoted(key, partialMaskProgram != null && matcher != null
+                    ? partialMaskProgram.apply(matcher, parser.getString())
+                    : parser.getString()).append(',');
+                case VALUE_EMBEDDED_OBJECT -> appendQuoted(key, embedded(parser.getEmbeddedObject(), ctxt)).append(',');
+                default -> key.append(parser.getString()).append(',');
+            }
+        }
+
+        /**
+         * Encodes an embedded value as it's written: binary values in Base64, raw values as they are.
+         */
+        private static String embedded(@Nullable final Object value, final SerializationContext ctxt) {
+            if (value instanceof byte[] binary) {
+                return Base64.getEncoder().encodeToString(binary);
+            }
+
+            if (value instanceof RawValue raw) {
+                return String.valueOf(raw.rawValue());
+            }
+
+            return ctxt.reportBadDefinition(value != null ? value.getClass() : Object.class,
+                "Unable to order elements by canonical JSON, as they embed a value of type "
+                    + ClassUtil.classNameOf(value) + " that has no canonical JSON");
+        }
+
+        private static StringBuilder appendQuoted(final StringBuilder key, final String text) {
+            key.append('"');
+
+            for (int i = 0; i < text.length(); i++) {
+                final char ch = text.charAt(i);
+
+                if (ch == '"' || ch == '\\') {
+                    key.append('\\');
+                }
+                key.append(ch);
             }
+
+            return key.append('"');
         }
     }
+
+    /**
+     * An element serialized into a token buffer, together with its canonical JSON used as sort key.
+     *
+     * @param tokens the serialized element
+     * @param key    the canonical JSON of the element
+     */
+    private record CanonicalElement(TokenBuffer tokens, String key) {
+    }
 }
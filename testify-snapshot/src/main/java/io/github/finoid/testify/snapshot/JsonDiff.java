@@ -0,0 +1,363 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.core.ObjectReadContext;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.util.TokenBuffer;
+
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A structural diff of two JSON documents, reporting the JSON pointers of the values that differ.
+ * <p>
+ * Both documents are read as token streams and walked together. Array elements are compared by index as they're read.
+ * Object members are joined by name, as their members aren't necessarily in the same order, e.g. creator properties or
+ * properties ordered by {@code @JsonPropertyOrder}. Members at the same position with the same name are compared as
+ * they're read. Only a member whose name differs from the member at the same position of the other object is buffered as
+ * a token sequence, until the other object reaches a member of the same name, or ends. Memory is therefore bounded by the
+ * members that are out of order, rather than by the documents or their objects. Differences are reported in the order in
+ * which they're found, and members only one of the objects has are reported once either object has ended. The walk stops
+ * as soon as the maximum number of differences has been found.
+ */
+final class JsonDiff {
+    /**
+     * The default maximum number of reported differences.
+     */
+    static final int DEFAULT_MAX_DIFFERENCES = 20;
+
+    private static final JsonMapper MAPPER = JsonMapper.builder()
+        .enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+        .build();
+    private static final int MAX_VALUE_LENGTH = 80;
+
+    private final JsonParser expected;
+    private final JsonParser actual;
+    private final int maxDifferences;
+
+    private final Deque<String> path = new ArrayDeque<>();
+    private final List<Difference> differences = new ArrayList<>();
+
+    private JsonDiff(final JsonParser expected, final JsonParser actual, final int maxDifferences) {
+        this.expected = expected;
+        this.actual = actual;
+        this.maxDifferences = maxDifferences;
+    }
+
+    /**
+     * The kind of difference.
+     */
+    enum Kind {
+        /**
+         * The value differs.
+         */
+        CHANGED,
+        /**
+         * The value only exists in the actual document.
+         */
+        ADDED,
+        /**
+         * The value only exists in the expected document.
+         */
+        REMOVED
+    }
+
+    /**
+     * A difference between the expected and the actual document.
+     *
+     * @param pointer  the JSON pointer of the value
+     * @param kind     the kind of difference
+     * @param expected the abbreviated expected value, or null if it was added
+     * @param actual   the abbreviated actual value, or null if it was removed
+     */
+    record Difference(String pointer, Kind kind, @Nullable String expected, @Nullable String actual) {
+        @Override
+        public String toString() {
+            final String location = pointer.isEmpty() ? "(root)" : pointer;
+
+            return switch (kind) {
+                case CHANGED -> location + ": expected " + expected + " but was " + actual;
+                case ADDED -> location + ": unexpected " + actual;
+                case REMOVED -> location + ": missing " + expected;
+            };
+        }
+    }
+
+    /**
+     * Diffs the given documents.
+     *
+     * @param expected       the expected document
+     * @param actual         the actual document
+     * @param maxDifferences the maximum number of differences to find
+     * @return the differences, in document order
+     * @throws IllegalArgumentException if maxDifferences isn't positive
+     * @throws JacksonException         if either document isn't valid JSON
+     */
+    static List<Difference> diff(final Reader expected, final Reader actual, final int maxDifferences) {
+        if (maxDifferences < 1) {
+            throw new IllegalArgumentException("MaxDifferences must be positive");
+        }
+
+        try (JsonParser expectedParser = MAPPER.createParser(Precondition.nonNull(expected, "Expected must not be null"));
+             JsonParser actualParser = MAPPER.createParser(Precondition.nonNull(actual, "Actual must not be null"))) {
+            final JsonDiff diff = new JsonDiff(expectedParser, actualParser, maxDifferences);
+
+            try {
+                diff.compareDocuments();
+            } catch (final LimitReached e) {
+                // The remaining tokens are never read
+            }
+
+            return Collections.unmodifiableList(diff.differences);
+        }
+    }
+
+    /**
+     * Describes the structural differences of the given documents for a mismatch report. Both readers are closed.
+     *
+     * @param expected       the expected document
+     * @param actual         the actual document
+     * @param maxDifferences the maximum number of differences to report
+     * @return the description, or an empty string if either document isn't valid JSON or can't be read
+     */
+    static String describe(final Reader expected, final Reader actual, final int maxDifferences) {
+        final List<Difference> differences;
+
+        try {
+            differences = diff(expected, actual, maxDifferences);
+        } catch (final JacksonException e) {
+            return "";
+        }
+
+        if (differences.isEmpty()) {
+            return "";
+        }
+
+        final StringBuilder description = new StringBuilder();
+
+        description.append(differences.size() < maxDifferences
+            ? "Found " + differences.size() + " difference(s):"
+            : "Found at least " + maxDifferences + " differences, showing the first " + maxDifferences + ":");
+
+        differences.forEach(difference -> description.append("\n  ").append(difference));
+
+        return description.toString();
+    }
+
+    private void compareDocuments() {
+        final JsonToken expectedToken = expected.nextToken();
+        final JsonToken actualToken = actual.nextToken();
+
+        if (expectedToken == null || actualToken == null) {
+            if (expectedToken != actualToken) {
+                report(expectedToken == null ? Kind.ADDED : Kind.REMOVED,
+                    expectedToken == null ? null : render(expected),
+                    actualToken == null ? null : render(actual));
+            }
+
+            return;
+        }
+
+        compareValues(expected, actual);
+    }
+
+    /**
+     * Compares the values the given parsers are positioned at, leaving both parsers at the last token of their value.
+     */
+    private void compareValues(final JsonParser expectedValue, final JsonParser actualValue) {
+        final JsonToken expectedToken = expectedValue.currentToken();
+        final JsonToken actualToken = actualValue.currentToken();
+
+        if (expectedToken == JsonToken.START_OBJECT && actualToken == JsonToken.START_OBJECT) {
+            compareObjects(expectedValue, actualValue);
+        } else if (expectedToken == JsonToken.START_ARRAY && actualToken == JsonToken.START_ARRAY) {
+            compareArrays(expectedValue, actualValue);
+        } else if (expectedToken != actualToken || expectedToken.isStructStart()
+            || !expectedValue.getString().equals(actualValue.getString())) {
+            report(Kind.CHANGED, render(expectedValue), render(actualValue));
+        }
+    }
+
+    /**
+     * Compares the members of the objects the given parsers are positioned at, joining them by name. Members with the same
+     * name at the same position are compared as they're read, all other members are buffered until the other object reaches
+     * a member of the same name.
+     */
+    private void compareObjects(final JsonParser expectedValue, final JsonParser actualValue) {
+        final Map<String, TokenBuffer> unmatchedExpected = new LinkedHashMap<>();
+        final Map<String, TokenBuffer> unmatchedActual = new LinkedHashMap<>();
+
+        JsonToken expectedToken = expectedValue.nextToken();
+        JsonToken actualToken = actualValue.nextToken();
+
+        while (expectedToken != JsonToken.END_OBJECT || actualToken != JsonToken.END_OBJECT) {
+            final String expectedName = expectedToken == JsonToken.END_OBJECT ? null : expectedValue.currentName();
+            final String actualName = actualToken == JsonToken.END_OBJECT ? null : actualValue.currentName();
+
+            if (expectedName != null && expectedName.equals(actualName)) {
+                expectedValue.nextToken();
+                actualValue.nextToken();
+
+                path.addLast(expectedName);
+                compareValues(expectedValue, actualValue);
+                path.removeLast();
+            } else {
+                if (expectedName != null) {
+                    expectedValue.nextToken();
+                    compareMember(expectedName, expectedValue, true, unmatchedExpected, unmatchedActual, actualName == null);
+                }
+
+                if (actualName != null) {
+                    actualValue.nextToken();
+                    compareMember(actualName, actualValue, false, unmatchedActual, unmatchedExpected, expectedName == null);
+                }
+            }
+
+            expectedToken = expectedName != null ? expectedValue.nextToken() : expectedToken;
+            actualToken = actualName != null ? actualValue.nextToken() : actualToken;
+        }
+
+        for (final Map.Entry<String, TokenBuffer> member : unmatchedExpected.entrySet()) {
+            path.addLast(member.getKey());
+            report(Kind.REMOVED, render(member.getValue()), null);
+            path.removeLast();
+        }
+
+        for (final Map.Entry<String, TokenBuffer> member : unmatchedActual.entrySet()) {
+            path.addLast(member.getKey());
+            report(Kind.ADDED, null, render(member.getValue()));
+            path.removeLast();
+        }
+    }
+
+    /**
+     * Compares the member value the parser is positioned at with the buffered member of the same name of the other object.
+     * Without such a member, the value is reported right away if the other object has ended, and buffered otherwise.
+     *
+     * @param name       the member name
+     * @param value      the parser positioned at the member value
+     * @param isExpected whether the member is a member of the expected object
+     * @param unmatched  the buffered members of the object of the member
+     * @param others     the buffered members of the other object
+     * @param otherEnded whether the other object has ended
+     */
+    private void compareMember(final String name, final JsonParser value, final boolean isExpected, final Map<String, TokenBuffer> unmatched,
+                               final Map<String, TokenBuffer> others, final boolean otherEnded) {
+        final TokenBuffer other = others.remove(name);
+
+        path.addLast(name);
+
+        if (other != null) {
+            try (JsonParser otherValue = other.asParserOnFirstToken(ObjectReadContext.empty())) {
+                compareValues(isExpected ? value : otherValue, isExpected ? otherValue : value);
+            }
+        } else if (otherEnded) {
+            report(isExpected ? Kind.REMOVED : Kind.ADDED, isExpected ? render(value) : null, isExpected ? null : render(value));
+        } else {
+            final TokenBuffer buffer = TokenBuffer.forBuffering(value, ObjectReadContext.empty());
+
+            buffer.copyCurrentStructure(value);
+            unmatched.put(name, buffer);
+        }
+
+        path.removeLast();
+    }
+
+    private void compareArrays(final JsonParser expectedValue, final JsonParser actualValue) {
+        JsonToken expectedToken = expectedValue.nextToken();
+        JsonToken actualToken = actualValue.nextToken();
+        int index = 0;
+
+        while (expectedToken != JsonToken.END_ARRAY || actualToken != JsonToken.END_ARRAY) {
+            path.addLast(Integer.toString(index++));
+
+            if (expectedToken == JsonToken.END_ARRAY) {
+                report(Kind.ADDED, null, render(actualValue));
+                actualToken = actualValue.nextToken();
+            } else if (actualToken == JsonToken.END_ARRAY) {
+                report(Kind.REMOVED, render(expectedValue), null);
+                expectedToken = expectedValue.nextToken();
+            } else {
+                compareValues(expectedValue, actualValue);
+                expectedToken = expectedValue.nextToken();
+                actualToken = actualValue.nextToken();
+            }
+
+            path.removeLast();
+        }
+    }
+
+    private void report(final Kind kind, @Nullable final String expectedValue, @Nullable final String actualValue) {
+        differences.add(new Difference(pointer(), kind, expectedValue, actualValue));
+
+        if (differences.size() >= maxDifferences) {
+            throw LimitReached.INSTANCE;
+        }
+    }
+
+    /**
+     * Renders the value the parser is positioned at, skipping the children of objects and arrays.
+     */
+    private static String render(final JsonParser parser) {
+        final JsonToken token = parser.currentToken();
+
+        if (token.isStructStart()) {
+            parser.skipChildren();
+
+            return token == JsonToken.START_OBJECT ? "{...}" : "[...]";
+        }
+
+        return abbreviate(token == JsonToken.VALUE_STRING
+            ? "\"" + parser.getString() + "\""
+            : parser.getString());
+    }
+
+    /**
+     * Renders the buffered value, without its children.
+     */
+    private static String render(final TokenBuffer buffer) {
+        try (JsonParser parser = buffer.asParserOnFirstToken(ObjectReadContext.empty())) {
+            return render(parser);
+        }
+    }
+
+    private static String abbreviate(final String value) {
+        return value.length() > MAX_VALUE_LENGTH
+            ? value.substring(0, MAX_VALUE_LENGTH) + "..."
+            : value;
+    }
+
+    private String pointer() {
+        final StringBuilder pointer = new StringBuilder();
+
+        for (final Iterator<String> segments = path.iterator(); segments.hasNext(); ) {
+            pointer.append('/')
+                .append(segments.next().replace("~", "~0").replace("/", "~1"));
+        }
+
+        return pointer.toString();
+    }
+
+    /**
+     * Stops the walk once the maximum number of differences has been found.
+     */
+    private static final class LimitReached extends RuntimeException {
+        private static final LimitReached INSTANCE = new LimitReached();
+
+        private LimitReached() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -3,14 +3,22 @@ package io.github.finoid.testify.snapshot;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
 /**
  * Inspired by com.jayway.jsonpath.internal.JsonFormatter.
+ * <p>
+ * The formatter is a small state machine that consumes the input one character at a time, so it can format from a
+ * {@link Reader} straight into a {@link Writer} without holding the whole document in memory.
  */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 @SuppressWarnings("MissingSwitchDefault")
 public class JsonFormatter {
     private static final String INDENT = "  ";
-    private static final String NEW_LINE = "\n";
+    private static final char NEW_LINE = '\n';
 
     private static final int MODE_SINGLE = 100;
     private static final int MODE_DOUBLE = 101;
@@ -18,41 +26,130 @@ public class JsonFormatter {
     private static final int MODE_ESCAPE_DOUBLE = 103;
     private static final int MODE_BETWEEN = 104;
 
-    private static void appendIndent(final StringBuilder sb, int count) {
-        for (; count > 0; --count) {
-            sb.append(INDENT);
+    private static final int CACHED_INDENTS = 32;
+    private static final String[] INDENTS = new String[CACHED_INDENTS];
+
+    static {
+        for (int i = 0; i < CACHED_INDENTS; i++) {
+            INDENTS[i] = INDENT.repeat(i);
+        }
+    }
+
+    private static String indent(final int depth) {
+        if (depth <= 0) {
+            return INDENTS[0];
+        }
+
+        return depth < CACHED_INDENTS ? INDENTS[depth] : INDENT.repeat(depth);
+    }
+
+    /**
+     * Pretty prints the given JSON.
+     *
+     * @param input the JSON to format
+     * @return the formatted JSON
+     */
+    public static String prettyPrint(final String input) {
+        final StringBuilder output = new StringBuilder(input.length() + (input.length() >> 1));
+
+        new Formatter(output).format(input, 0, input.length());
+
+        return output.toString();
+    }
+
+    /**
+     * Pretty prints the given JSON into the given output.
+     *
+     * @param input  the JSON to format
+     * @param output the output to append the formatted JSON to
+     * @throws IOException if appending to the output fails
+     */
+    public static void prettyPrint(final CharSequence input, final Appendable output) throws IOException {
+        try {
+            new Formatter(output).format(input, 0, input.length());
+        } catch (final UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Pretty prints the JSON read from the given reader into the given writer. The input is read in chunks and never held
+     * in memory as a whole.
+     *
+     * @param input  the reader to read the JSON from
+     * @param output the writer to write the formatted JSON to
+     * @throws IOException if reading or writing fails
+     */
+    public static void prettyPrint(final Reader input, final Writer output) throws IOException {
+        try (Writer formatting = formattingWriter(output)) {
+            input.transferTo(formatting);
         }
     }
 
-    public static String prettyPrint(String input) {
-        input = input.replaceAll("[\\r\\n]", "");
+    /**
+     * Returns a writer pretty printing all JSON written to it into the given writer. Closing the returned writer flushes,
+     * but does not close, the given writer.
+     *
+     * @param output the writer to write the formatted JSON to
+     * @return the formatting writer
+     */
+    public static Writer formattingWriter(final Writer output) {
+        return new FormattingWriter(new Formatter(output), output);
+    }
+
+    /**
+     * The formatting state machine. The state is kept between invocations, so input may be fed in arbitrary chunks.
+     */
+    private static final class Formatter {
+        private final Appendable output;
+
+        private int mode = MODE_BETWEEN;
+        private int depth;
 
-        StringBuilder output = new StringBuilder(input.length() * 2);
-        int mode = MODE_BETWEEN;
-        int depth = 0;
+        private Formatter(final Appendable output) {
+            this.output = output;
+        }
 
-        for (int i = 0; i < input.length(); ++i) {
-            char ch = input.charAt(i);
+        private void format(final CharSequence input, final int offset, final int length) {
+            try {
+                for (int i = offset; i < offset + length; ++i) {
+                    accept(input.charAt(i));
+                }
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void format(final char[] input, final int offset, final int length) throws IOException {
+            for (int i = offset; i < offset + length; ++i) {
+                accept(input[i]);
+            }
+        }
+
+        private void accept(final char ch) throws IOException {
+            if (ch == '\r' || ch == '\n') {
+                return;
+            }
 
             switch (mode) {
                 case MODE_BETWEEN:
                     switch (ch) {
                         case '{':
                         case '[':
-                            output.append(ch);
-                            output.append(NEW_LINE);
-                            appendIndent(output, ++depth);
+                            output.append(ch)
+                                .append(NEW_LINE)
+                                .append(indent(++depth));
                             break;
                         case '}':
                         case ']':
-                            output.append(NEW_LINE);
-                            appendIndent(output, --depth);
-                            output.append(ch);
+                            output.append(NEW_LINE)
+                                .append(indent(--depth))
+                                .append(ch);
                             break;
                         case ',':
-                            output.append(ch);
-                            output.append(NEW_LINE);
-                            appendIndent(output, depth);
+                            output.append(ch)
+                                .append(NEW_LINE)
+                                .append(indent(depth));
                             break;
                         case ':':
                             output.append(" : ");
@@ -104,6 +201,47 @@ public class JsonFormatter {
                     break;
             }
         }
-        return output.toString();
+    }
+
+    /**
+     * A writer feeding everything written to it through a {@link Formatter}.
+     */
+    private static final class FormattingWriter extends Writer {
+        private final Formatter formatter;
+        private final Writer output;
+
+        private FormattingWriter(final Formatter formatter, final Writer output) {
+            this.formatter = formatter;
+            this.output = output;
+        }
+
+        @Override
+        public void write(final int ch) throws IOException {
+            formatter.accept((char) ch);
+        }
+
+        @Override
+        public void write(final char[] buffer, final int offset, final int length) throws IOException {
+            formatter.format(buffer, offset, length);
+        }
+
+        @Override
+        public void write(final String text, final int offset, final int length) throws IOException {
+            try {
+                formatter.format(text, offset, length);
+            } catch (final UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.flush();
+        }
     }
 }
@@ -0,0 +1,125 @@
+package io.github.finoid.testify.snapshot;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import tools.jackson.databind.JacksonModule;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A process-wide cache of the {@link ObjectMapper}s used for JSON snapshots.
+ * <p>
+ * Building a mapper is expensive: module discovery scans the classpath through the {@link java.util.ServiceLoader}, and
+ * every new mapper starts out with cold serializer caches. Mappers are therefore shared across snapshots and test classes,
+ * keyed by their effective configuration - the registered modules and the configured features.
+ * <p>
+ * The modules of the snapshot serializers ({@link DeterministicCollectionModule} and {@link PropertyMaskingModule}) are told
+ * apart by their registration ids, which reflect their configuration. Any other module can only be told apart by
+ * identity, as modules sharing a registration id, e.g. two {@link tools.jackson.databind.module.SimpleModule}s with the
+ * same name, may register different serializers. Mappers with a custom module are therefore cached by the identity of the
+ * module, in a cache of their own, so custom modules created per serializer never evict the shared mappers. Serializers
+ * sharing a module instance, e.g. a constant, share its mapper. A custom module registering nothing, e.g. a
+ * {@code new SimpleModule()} left empty, adds nothing to a mapper, and is left out by the serializers altogether, see
+ * {@link #registersNothing(JacksonModule)}.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class JsonMapperCache {
+    private static final int MAXIMUM_SIZE = 32;
+
+    private static final BoundedCache<Key, CachedMapper> MAPPERS = new BoundedCache<>(MAXIMUM_SIZE);
+    private static final BoundedCache<Key, CachedMapper> CUSTOM_MAPPERS = new BoundedCache<>(MAXIMUM_SIZE);
+
+    /**
+     * Returns the cached mapper for the given configuration, building it with the factory on first use. Modules other than
+     * the modules of the snapshot serializers are told apart by identity, and their mappers cached separately.
+     *
+     * @param modules  the additional modules registered on the mapper
+     * @param features the features (and their state) configured on the mapper
+     * @param factory  the factory building the mapper on a cache miss
+     * @return the cached mapper
+     */
+    static CachedMapper mapperFor(final List<? extends JacksonModule> modules, final Map<? extends Enum<?>, Boolean> features,
+                                  final Supplier<ObjectMapper> factory) {
+        final Key key = new Key(modules.stream()
+            .map(it -> isKeyedByValue(it) ? it.getRegistrationId() : new Identity(it))
+            .toList(), Map.copyOf(features));
+        final BoundedCache<Key, CachedMapper> mappers = modules.stream().allMatch(JsonMapperCache::isKeyedByValue) ? MAPPERS : CUSTOM_MAPPERS;
+
+        return mappers.computeIfAbsent(key, it -> CachedMapper.of(factory.get()));
+    }
+
+    /**
+     * Determines if the given module registers nothing on setup, e.g. a {@link tools.jackson.databind.module.SimpleModule}
+     * without any serializers, deserializers, modifiers or mix-ins. Such a module leaves a mapper as it is.
+     *
+     * @param module the module
+     * @return true if setting up the module doesn't touch its context
+     */
+    static boolean registersNothing(final JacksonModule module) {
+        final AtomicBoolean touched = new AtomicBoolean();
+        final JacksonModule.SetupContext context = (JacksonModule.SetupContext) Proxy.newProxyInstance(
+            JacksonModule.SetupContext.class.getClassLoader(), new Class<?>[]{JacksonModule.SetupContext.class}, (proxy, method, args) -> {
+                touched.set(true);
+
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+        try {
+            module.setupModule(context);
+        } catch (final RuntimeException e) {
+            return false;
+        }
+
+        return !touched.get();
+    }
+
+    private static boolean isKeyedByValue(final JacksonModule module) {
+        return module.getClass() == DeterministicCollectionModule.class || module.getClass() == PropertyMaskingModule.class;
+    }
+
+    /**
+     * A module compared by identity.
+     */
+    private record Identity(JacksonModule module) {
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Identity identity && identity.module == module;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(module);
+        }
+    }
+
+    /**
+     * The effective configuration of a mapper.
+     *
+     * @param moduleIds the registration ids of the modules, in registration order
+     * @param features  the configured features
+     */
+    private record Key(List<Object> moduleIds, Map<? extends Enum<?>, Boolean> features) {
+    }
+
+    /**
+     * A shared mapper together with its writers.
+     *
+     * @param mapper          the mapper
+     * @param writer          the writer using the mapper's default pretty printer
+     * @param canonicalWriter the writer producing the on-disk snapshot format, to be used with a {@link CanonicalJsonGenerator}
+     */
+    record CachedMapper(ObjectMapper mapper, ObjectWriter writer, ObjectWriter canonicalWriter) {
+        static CachedMapper of(final ObjectMapper mapper) {
+            return new CachedMapper(mapper, mapper.writerWithDefaultPrettyPrinter(),
+                mapper.writer()
+                    .with(new CanonicalPrettyPrinter())
+                    .with(CanonicalJsonGenerator.CHARACTER_ESCAPES));
+        }
+    }
+}
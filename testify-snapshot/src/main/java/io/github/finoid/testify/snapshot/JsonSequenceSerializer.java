@@ -0,0 +1,107 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.internal.Precondition;
+import tools.jackson.core.JacksonException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.concurrent.Flow;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Serializes the elements of a {@link Stream} or a {@link Flow.Publisher} one at a time into the body of a JSON snapshot,
+ * see {@link JsonSnapshotSerializer#writeEach}, so the elements never need to be collected. The body has the format of the
+ * JSON snapshot of a list, but the elements keep the order they're produced in, and null elements are kept.
+ * <p>
+ * Verified against a {@link SnapshotStore}, every element is compared against the stored body as soon as it's written, and
+ * writing stops at the first element that doesn't match. The stream isn't closed; publishers are cancelled when writing
+ * stops early.
+ */
+final class JsonSequenceSerializer implements SnapshotBodySerializer {
+    private final JsonSnapshotSerializer json;
+    private final Duration publisherTimeout;
+
+    /**
+     * Creates a serializer writing the elements with the given JSON serializer, waiting at most
+     * {@link PublisherIterator#DEFAULT_TIMEOUT} for every element of a publisher.
+     *
+     * @param json the serializer of the elements
+     * @throws IllegalArgumentException if json is null, or its masked fields can't be applied while writing
+     */
+    JsonSequenceSerializer(final JsonSnapshotSerializer json) {
+        this(json, PublisherIterator.DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a serializer writing the elements with the given JSON serializer.
+     *
+     * @param json             the serializer of the elements
+     * @param publisherTimeout the time to wait at most for the subscription and for every element of a publisher
+     * @throws IllegalArgumentException if json or publisherTimeout is null, or the masked fields of json can't be applied
+     *                                  while writing
+     */
+    JsonSequenceSerializer(final JsonSnapshotSerializer json, final Duration publisherTimeout) {
+        this.json = Precondition.nonNull(json, "Json must not be null");
+        this.publisherTimeout = Precondition.nonNull(publisherTimeout, "PublisherTimeout must not be null");
+
+        if (!json.writesIncrementally()) {
+            throw new IllegalArgumentException("Incremental snapshots only support masked fields in the streamable subset of JsonPath");
+        }
+    }
+
+    @Override
+    public String serialize(final Object sequence) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        write(sequence, out, () -> false);
+
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the elements of the given sequence to the given stream, until the given condition is met.
+     *
+     * @param sequence the {@link Stream} or {@link Flow.Publisher} of the elements
+     * @param out      the stream the UTF-8 encoded body is written to
+     * @param failed   checked after every element; writing stops once it returns true
+     * @return the index of the element after which writing stopped, or -1 if all elements have been written
+     * @throws IllegalArgumentException   if the object isn't a supported sequence
+     * @throws SnapshotExtensionException if an element can't be serialized, or the publisher fails or times out
+     */
+    long write(final Object sequence, final OutputStream out, final BooleanSupplier failed) {
+        Precondition.nonNull(sequence, "Sequence must not be null");
+
+        try {
+            if (sequence instanceof Stream<?> stream) {
+                return json.writeEach(stream.iterator(), out, failed);
+            }
+
+            if (sequence instanceof Flow.Publisher<?> publisher) {
+                try (PublisherIterator<?> elements = PublisherIterator.subscribe(publisher, publisherTimeout)) {
+                    return json.writeEach(elements, out, failed);
+                }
+            }
+        } catch (final JacksonException e) {
+            throw new SnapshotExtensionException("Json snapshotting failed. Cause: " + e.getMessage(), e);
+        }
+
+        throw new IllegalArgumentException("Unsupported sequence: " + sequence.getClass().getName()
+            + ", expected a Stream or Flow.Publisher");
+    }
+
+    @Override
+    public String describeMismatch(final Reader expected, final Reader actual) {
+        return json.describeMismatch(expected, actual);
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return json.getOutputFormat();
+    }
+}
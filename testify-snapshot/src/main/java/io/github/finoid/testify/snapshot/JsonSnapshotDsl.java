@@ -2,17 +2,35 @@ package io.github.finoid.testify.snapshot;
 
 import io.github.finoid.snapshots.Expect;
 import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.DeterministicCollectionModule.NonComparableOrdering;
+import io.github.finoid.testify.snapshot.JsonSnapshotSerializer.Options;
 import io.github.finoid.testify.snapshot.SnapshotDsl.MaskingSnapshotDsl;
-import tools.jackson.databind.module.SimpleModule;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
 
 /**
  * A DSL for snapshotting JSON objects with optional masking of fields.
  */
 public class JsonSnapshotDsl extends MaskingSnapshotDsl {
-    private final Expect expect;
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 10_000;
+
+    private final SnapshotMatcher matcher;
+    private final List<PropertyMask> propertyMasks = new ArrayList<>();
 
-    private JsonSnapshotDsl(final Expect expect) {
-        this.expect = Precondition.nonNull(expect, "Expect must not be null");
+    private MaskingMode maskingMode = MaskingMode.JSON_PATH;
+    private MaskProgram maskProgram = MaskProgram.EMPTY;
+    private PartialMaskProgram partialMaskProgram = PartialMaskProgram.EMPTY;
+    private NonComparableOrdering nonComparableOrdering = NonComparableOrdering.ITERATION_ORDER;
+    private int maxDifferences = JsonDiff.DEFAULT_MAX_DIFFERENCES;
+    private int parallelThreshold = JsonSnapshotSerializer.SEQUENTIAL;
+    private Duration publisherTimeout = PublisherIterator.DEFAULT_TIMEOUT;
+
+    private JsonSnapshotDsl(final SnapshotMatcher matcher) {
+        this.matcher = Precondition.nonNull(matcher, "Matcher must not be null");
     }
 
     /**
@@ -23,15 +41,291 @@ public class JsonSnapshotDsl extends MaskingSnapshotDsl {
      * @throws IllegalArgumentException if expect is null
      */
     public static JsonSnapshotDsl ofExpect(final Expect expect) {
-        return new JsonSnapshotDsl(expect);
+        return new JsonSnapshotDsl(SnapshotMatcher.ofExpect(expect));
+    }
+
+    /**
+     * Factory method to create a {@link JsonSnapshotDsl} instance using the given {@link SnapshotMatcher}.
+     *
+     * @param matcher the snapshot matcher
+     * @return a new {@code JsonSnapshotDsl}
+     * @throws IllegalArgumentException if matcher is null
+     */
+    static JsonSnapshotDsl of(final SnapshotMatcher matcher) {
+        return new JsonSnapshotDsl(matcher);
+    }
+
+    /**
+     * Configures a single field to be masked. The path is compiled and validated immediately.
+     *
+     * @param fieldPath the field path to mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if fieldPath is null or not a valid JsonPath
+     */
+    @Override
+    public JsonSnapshotDsl withMaskedField(final String fieldPath) {
+        return withMaskedFields(List.of(Precondition.nonNull(fieldPath, "FieldPath must not be null")));
+    }
+
+    /**
+     * Configures multiple fields to be masked. The paths are compiled and validated immediately, and compiled programs are
+     * shared by all instances masking the same paths.
+     *
+     * @param fieldPaths the list of field paths to mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if fieldPaths is null or any of the paths is not a valid JsonPath
+     */
+    @Override
+    public JsonSnapshotDsl withMaskedFields(final List<String> fieldPaths) {
+        this.maskProgram = MaskProgram.of(Precondition.nonNull(fieldPaths, "FieldPaths must not be null"));
+        this.maskedFieldPaths = maskProgram.expressions();
+
+        return this;
+    }
+
+    /**
+     * Configures a property to be masked while the snapshot is written. The dotted path is matched against the end of the
+     * property's path, e.g. {@code password} masks every {@code password} property and {@code user.password} only those of a
+     * {@code user}. Segments may be the wildcard {@code *}.
+     * <p>
+     * Unlike masked fields, masked properties need no re-parsing of the serialized snapshot, and cost nothing for properties
+     * that don't match. Only bean properties are masked, map entries aren't.
+     *
+     * @param propertyPath the dotted property path to mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if propertyPath is null or invalid
+     */
+    public JsonSnapshotDsl withMaskedProperty(final String propertyPath) {
+        propertyMasks.add(PropertyMask.ofPath(propertyPath));
+
+        return this;
+    }
+
+    /**
+     * Configures multiple properties to be masked while the snapshot is written, see {@link #withMaskedProperty(String)}.
+     *
+     * @param propertyPaths the dotted property paths to mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if propertyPaths is null or any of the paths is invalid
+     */
+    public JsonSnapshotDsl withMaskedProperties(final List<String> propertyPaths) {
+        Precondition.nonNull(propertyPaths, "PropertyPaths must not be null").forEach(this::withMaskedProperty);
+
+        return this;
+    }
+
+    /**
+     * Configures every property whose value is an instance of the given type to be masked while the snapshot is written,
+     * including properties declared as a supertype such as {@link Object}, and {@link java.util.Optional} properties holding
+     * such a value. Elements of collections, maps and arrays aren't properties and aren't masked, e.g. the elements of a
+     * {@code List<Instant>}; mask those with {@link #withMaskedField(String)} instead.
+     *
+     * @param type the type to mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if type is null
+     */
+    public JsonSnapshotDsl withMaskedType(final Class<?> type) {
+        return withMaskedType(type, "");
+    }
+
+    /**
+     * Configures every property whose value is an instance of the given type at any depth below a property matching the
+     * dotted scope path to be masked while the snapshot is written, e.g. every {@link java.time.Instant} under {@code audit}.
+     * Like {@link #withMaskedType(Class)}, elements of collections, maps and arrays aren't masked.
+     *
+     * @param type      the type to mask
+     * @param scopePath the dotted path of the properties below which the type is masked
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if type or scopePath is null, or scopePath is invalid
+     */
+    public JsonSnapshotDsl withMaskedType(final Class<?> type, final String scopePath) {
+        propertyMasks.add(PropertyMask.ofType(type, scopePath));
+
+        return this;
+    }
+
+    /**
+     * Configures a rule masking parts of string values, e.g. {@link PartialMask#UUID} to mask the UUIDs within URLs.
+     *
+     * @param partialMask the partial mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if partialMask is null
+     */
+    public JsonSnapshotDsl withPartialMask(final PartialMask partialMask) {
+        return withPartialMasks(List.of(Precondition.nonNull(partialMask, "PartialMask must not be null")));
+    }
+
+    /**
+     * Configures rules masking parts of string values. The rules are compiled into a single pattern, shared by all instances
+     * configuring the same rules, and every string value is scanned once. Where matches of several rules start at the same
+     * position, the rule configured first wins.
+     *
+     * @param partialMasks the partial masks, in order of precedence
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if partialMasks or any of the masks is null
+     */
+    public JsonSnapshotDsl withPartialMasks(final List<PartialMask> partialMasks) {
+        this.partialMaskProgram = PartialMaskProgram.of(partialMasks);
+
+        return this;
+    }
+
+    /**
+     * Configures how the masked fields are applied. Defaults to {@link MaskingMode#JSON_PATH}, which fails the snapshot if a
+     * masked field path doesn't match any value; {@link MaskingMode#STREAMING} ignores such paths.
+     *
+     * @param maskingMode the masking mode
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if maskingMode is null
+     */
+    public JsonSnapshotDsl withMaskingMode(final MaskingMode maskingMode) {
+        this.maskingMode = Precondition.nonNull(maskingMode, "MaskingMode must not be null");
+
+        return this;
+    }
+
+    /**
+     * Configures how collections of non-comparable elements are ordered. Defaults to
+     * {@link NonComparableOrdering#ITERATION_ORDER}; use {@link NonComparableOrdering#CANONICAL_JSON} for deterministic
+     * snapshots of e.g. a {@link java.util.HashSet} of records. Elements are then ordered as they appear masked, which
+     * requires all masked field paths to be streamable.
+     *
+     * @param nonComparableOrdering the ordering of non-comparable elements
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if nonComparableOrdering is null
+     */
+    public JsonSnapshotDsl withNonComparableOrdering(final NonComparableOrdering nonComparableOrdering) {
+        this.nonComparableOrdering = Precondition.nonNull(nonComparableOrdering, "NonComparableOrdering must not be null");
+
+        return this;
+    }
+
+    /**
+     * Configures the maximum number of differences reported when the snapshot doesn't match. The comparison stops once that
+     * many differences have been found. Defaults to 20.
+     *
+     * @param maxDifferences the maximum number of reported differences
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if maxDifferences isn't positive
+     */
+    public JsonSnapshotDsl withMaxDifferences(final int maxDifferences) {
+        if (maxDifferences < 1) {
+            throw new IllegalArgumentException("MaxDifferences must be positive");
+        }
+
+        this.maxDifferences = maxDifferences;
+
+        return this;
+    }
+
+    /**
+     * Serializes snapshotted collections of at least 10,000 elements in parallel, see {@link #withParallelSerialization(int)}.
+     *
+     * @return this instance for fluent chaining
+     */
+    public JsonSnapshotDsl withParallelSerialization() {
+        return withParallelSerialization(DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Serializes snapshotted collections of at least the given number of elements in parallel. The collection is ordered
+     * first, split into slices that are serialized on the common {@link java.util.concurrent.ForkJoinPool}, and the slices are
+     * joined in order, so the snapshot is the same as when serialized sequentially.
+     * <p>
+     * Only applies to the snapshotted object itself, and only when it's written in a single pass, i.e. without masked fields
+     * or with {@link MaskingMode#STREAMING}. Collections of non-comparable elements ordered by
+     * {@link NonComparableOrdering#CANONICAL_JSON} are serialized sequentially.
+     *
+     * @param minimumSize the minimum number of elements of a collection serialized in parallel
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if minimumSize isn't positive
+     */
+    public JsonSnapshotDsl withParallelSerialization(final int minimumSize) {
+        if (minimumSize < 1) {
+            throw new IllegalArgumentException("MinimumSize must be positive");
+        }
+
+        this.parallelThreshold = minimumSize;
+
+        return this;
+    }
+
+    /**
+     * Configures how long {@link #snapshotPublisher(Flow.Publisher)} waits at most for the subscription and for every element
+     * of the publisher before failing and cancelling the subscription. Defaults to 30 seconds.
+     *
+     * @param publisherTimeout the time to wait at most
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if publisherTimeout is null or isn't positive
+     */
+    public JsonSnapshotDsl withPublisherTimeout(final Duration publisherTimeout) {
+        Precondition.nonNull(publisherTimeout, "PublisherTimeout must not be null");
+
+        if (publisherTimeout.isNegative() || publisherTimeout.isZero()) {
+            throw new IllegalArgumentException("PublisherTimeout must be positive");
+        }
+
+        this.publisherTimeout = publisherTimeout;
+
+        return this;
     }
 
     @Override
     @SuppressWarnings("NullAway")
     public <T> void snapshot(final T toBeSnapshotted) {
         // TODO (nw) use the JsonSnapshotSerializer from java-snapshot-testing instead?
-        expect.serializer(new JsonSnapshotSerializer(maskedFieldPaths, new SimpleModule())) // TODO (nw) option to pass a simple module?
-            .scenario(scenario)
-            .toMatchSnapshot(toBeSnapshotted);
+        matcher.match(serializer(), scenario, toBeSnapshotted); // TODO (nw) option to pass a simple module?
+    }
+
+    /**
+     * Captures or verifies a snapshot of the elements of the given stream, one element at a time. The elements are never
+     * collected: each element is compared against the stored snapshot as soon as it's serialized, and the first element that
+     * doesn't match fails the snapshot with its index.
+     * <p>
+     * The elements are written in the order the stream produces them, including null elements. Unlike the snapshot of a
+     * list, the sequence itself isn't sorted, see {@link DeterministicCollectionModule}, so the stream must produce its
+     * elements in a stable order, and switching an existing snapshot of a collection to this method may change its body.
+     * Collections within the elements are still ordered as usual.
+     * <p>
+     * The stream is consumed, but not closed. Masked fields must be in the streamable subset of JsonPath, see
+     * {@link MaskingMode#STREAMING}.
+     *
+     * @param elements the stream of the elements
+     * @param <T>      the type of the elements
+     * @throws IllegalArgumentException if elements is null, or a masked field isn't streamable
+     */
+    @SuppressWarnings("NullAway")
+    public <T> void snapshotEach(final Stream<T> elements) {
+        Precondition.nonNull(elements, "Elements must not be null");
+
+        matcher.matchEach(new JsonSequenceSerializer(serializer()), scenario, elements);
+    }
+
+    /**
+     * Captures or verifies a snapshot of the elements of the given publisher, one element at a time, like
+     * {@link #snapshotEach(Stream)}. Elements are requested one at a time and the subscription is cancelled at the first
+     * element that doesn't match, or once the publisher doesn't signal within the timeout, see
+     * {@link #withPublisherTimeout(Duration)}.
+     *
+     * @param publisher the publisher of the elements
+     * @param <T>       the type of the elements
+     * @throws IllegalArgumentException if publisher is null, or a masked field isn't streamable
+     */
+    @SuppressWarnings("NullAway")
+    public <T> void snapshotPublisher(final Flow.Publisher<T> publisher) {
+        Precondition.nonNull(publisher, "Publisher must not be null");
+
+        matcher.matchEach(new JsonSequenceSerializer(serializer(), publisherTimeout), scenario, publisher);
+    }
+
+    private JsonSnapshotSerializer serializer() {
+        return new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(maskProgram)
+            .withPropertyMasks(propertyMasks)
+            .withPartialMaskProgram(partialMaskProgram)
+            .withMaskingMode(maskingMode)
+            .withNonComparableOrdering(nonComparableOrdering)
+            .withMaxDifferences(maxDifferences)
+            .withParallelThreshold(parallelThreshold));
     }
 }
@@ -6,24 +6,51 @@ import com.jayway.jsonpath.DocumentContext;
 import com.jayway.jsonpath.InvalidPathException;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.JsonPathException;
+import com.jayway.jsonpath.PathNotFoundException;
 import io.github.finoid.snapshots.Snapshot;
 import io.github.finoid.snapshots.SnapshotSerializerContext;
 import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
 import io.github.finoid.snapshots.serializers.SerializerType;
 import io.github.finoid.snapshots.serializers.SnapshotSerializer;
 import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.DeterministicCollectionModule.NonComparableOrdering;
+import io.github.finoid.testify.snapshot.DeterministicCollectionModule.SortKeyMasks;
+import io.github.finoid.testify.snapshot.JsonMapperCache.CachedMapper;
+import io.github.finoid.testify.snapshot.SnapshotTiming.Phase;
+import lombok.AccessLevel;
+import lombok.With;
+import org.jspecify.annotations.Nullable;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.JsonParser;
 import tools.jackson.core.util.DefaultIndenter;
 import tools.jackson.core.util.DefaultPrettyPrinter;
 import tools.jackson.core.util.Separators;
 import tools.jackson.databind.MapperFeature;
 import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectWriter;
 import tools.jackson.databind.SerializationFeature;
 import tools.jackson.databind.cfg.DateTimeFeature;
 import tools.jackson.databind.json.JsonMapper;
 import tools.jackson.databind.module.SimpleModule;
 
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * A custom JSON serializer for snapshot testing using the {@link SnapshotSerializer} interface.
@@ -35,20 +62,74 @@ import java.util.List;
  *     <li>Ordering map entries by keys</li>
  *     <li>Applying consistent formatting using a custom pretty printer</li>
  * </ul>
- * Additionally, it supports field masking for sensitive data.
+ * Additionally, it supports field masking for sensitive data, either by JsonPath or by masking bean properties while they
+ * are written (see {@link PropertyMaskingModule}), which needs no re-parsing of the serialized JSON.
  * </p>
+ * The underlying {@link ObjectMapper} is shared by all serializers with the same effective configuration, see
+ * {@link JsonMapperCache}.
  */
-public class JsonSnapshotSerializer implements SnapshotSerializer {
-    private final List<String> maskedFieldPaths;
-    private final ObjectMapper objectMapper;
+public class JsonSnapshotSerializer implements SnapshotBodySerializer {
+    private static final Map<Enum<?>, Boolean> FEATURES = Map.of(
+        SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true,
+        DateTimeFeature.WRITE_DATES_WITH_ZONE_ID, true,
+        MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true,
+        DateTimeFeature.WRITE_DATES_AS_TIMESTAMPS, false,
+        SerializationFeature.FAIL_ON_EMPTY_BEANS, false,
+        MapperFeature.SORT_CREATOR_PROPERTIES_FIRST, false
+    );
+
+    /**
+     * The parallel threshold disabling parallel serialization.
+     */
+    static final int SEQUENTIAL = Integer.MAX_VALUE;
+
+    /**
+     * The minimum number of elements serialized by a single task, so that tasks outweigh their scheduling.
+     */
+    private static final int MINIMUM_SLICE_SIZE = 1024;
+    /**
+     * The number of slices per thread of the common pool, so threads finishing early can pick up more work.
+     */
+    private static final int SLICES_PER_THREAD = 4;
+    /**
+     * How the canonical writer surrounds and separates the elements of a collection in a snapshot body, i.e. in the list
+     * wrapping the snapshotted collection.
+     */
+    private static final CollectionLayout COLLECTION_LAYOUT = new CollectionLayout(
+        CanonicalPrettyPrinter.arrayStart(1) + CanonicalPrettyPrinter.arrayStart(2),
+        CanonicalPrettyPrinter.arrayValueSeparator(2),
+        CanonicalPrettyPrinter.arrayEnd(2) + CanonicalPrettyPrinter.arrayEnd(1));
+
+    private final MaskProgram maskProgram;
+    private final PartialMaskProgram partialMaskProgram;
+    private final ObjectWriter objectWriter;
+    private final ObjectWriter canonicalObjectWriter;
+    private final boolean canonical;
+    private final int maxDifferences;
+    private final NonComparableOrdering nonComparableOrdering;
+    private final int parallelThreshold;
 
     /**
      * Creates a new {@code JsonSnapshotSerializer} with a list of masked fields.
      *
      * @param maskedFieldPaths A list of field names to mask in the serialized JSON output.
+     * @throws IllegalArgumentException if any of the maskedFieldPaths is not a valid JsonPath.
      */
     public JsonSnapshotSerializer(final List<String> maskedFieldPaths) {
-        this(maskedFieldPaths, new SimpleModule());
+        this(maskedFieldPaths, MaskingMode.JSON_PATH);
+    }
+
+    /**
+     * Creates a new {@code JsonSnapshotSerializer} with a list of masked fields applied using the given masking mode.
+     *
+     * @param maskedFieldPaths A list of field names to mask in the serialized JSON output.
+     * @param maskingMode      The mode used to apply the masked field paths.
+     * @throws IllegalArgumentException if the maskedFieldPaths or maskingMode is null, or any of the paths is invalid.
+     */
+    public JsonSnapshotSerializer(final List<String> maskedFieldPaths, final MaskingMode maskingMode) {
+        this(Options.DEFAULT
+            .withMaskProgram(MaskProgram.of(Precondition.nonNull(maskedFieldPaths, "MaskedFieldPaths must not be null")))
+            .withMaskingMode(maskingMode));
     }
 
     /**
@@ -56,11 +137,96 @@ public class JsonSnapshotSerializer implements SnapshotSerializer {
      *
      * @param maskedFieldPaths A list of field names to mask in the serialized JSON output.
      * @param simpleModule     A custom {@link SimpleModule} for additional Jackson configuration.
-     * @throws IllegalArgumentException if the maskedFieldPaths or simpleModule is null.
+     * @throws IllegalArgumentException if the maskedFieldPaths or simpleModule is null, or any of the paths is invalid.
      */
     public JsonSnapshotSerializer(final List<String> maskedFieldPaths, final SimpleModule simpleModule) {
-        this.maskedFieldPaths = Precondition.nonNull(List.copyOf(maskedFieldPaths));
-        this.objectMapper = Precondition.nonNull(createObjectMapper(simpleModule));
+        this(Options.DEFAULT
+            .withMaskProgram(MaskProgram.of(Precondition.nonNull(maskedFieldPaths, "MaskedFieldPaths must not be null")))
+            .withCustomModules(List.of(Precondition.nonNull(simpleModule, "SimpleModule must not be null"))));
+    }
+
+    /**
+     * Creates a new {@code JsonSnapshotSerializer} with the given options.
+     *
+     * @param options The options of the serializer.
+     * @throws IllegalArgumentException if options is null, or collections are ordered by canonical JSON and a masked field
+     *                                  path isn't streamable.
+     */
+    JsonSnapshotSerializer(final Options options) {
+        Precondition.nonNull(options, "Options must not be null");
+
+        this.maskProgram = options.maskProgram();
+        this.partialMaskProgram = options.partialMaskProgram();
+        this.maxDifferences = options.maxDifferences();
+        this.nonComparableOrdering = options.nonComparableOrdering();
+        final List<SimpleModule> modules = options.customModules().stream()
+            .filter(it -> !JsonMapperCache.registersNothing(it))
+            .collect(Collectors.toCollection(ArrayList::new));
+
+        // Custom modules may serialize collections on their own
+        this.parallelThreshold = modules.isEmpty() ? options.parallelThreshold() : SEQUENTIAL;
+
+        if (!options.propertyMasks().isEmpty()) {
+            modules.add(new PropertyMaskingModule(options.propertyMasks()));
+        }
+        // TODO (nw) use the one from java-snapshot-testing
+        modules.add(new DeterministicCollectionModule(nonComparableOrdering));
+
+        final CachedMapper cachedMapper = JsonMapperCache.mapperFor(modules, FEATURES, () -> createObjectMapper(modules));
+
+        // Elements ordered by canonical JSON are ordered as they appear masked in the snapshot
+        final SortKeyMasks sortKeyMasks = nonComparableOrdering == NonComparableOrdering.CANONICAL_JSON
+            && !(maskProgram.isEmpty() && partialMaskProgram.isEmpty()) ? new SortKeyMasks(maskProgram, partialMaskProgram) : null;
+
+        this.objectWriter = withSortKeyMasks(Precondition.nonNull(cachedMapper.writer()), sortKeyMasks);
+        this.canonicalObjectWriter = withSortKeyMasks(Precondition.nonNull(cachedMapper.canonicalWriter()), sortKeyMasks);
+        // Without masked fields there is nothing for JsonPath to do. Falls back to JsonPath for paths outside the streamable subset
+        this.canonical = maskProgram.isEmpty() || (options.maskingMode() == MaskingMode.STREAMING && maskProgram.isStreamable());
+    }
+
+    /**
+     * The options of a {@link JsonSnapshotSerializer}. Start from {@link #DEFAULT} and override options with the
+     * {@code with} methods, e.g. {@code Options.DEFAULT.withMaskProgram(maskProgram).withMaskingMode(MaskingMode.STREAMING)}.
+     *
+     * @param maskProgram           The compiled mask field paths.
+     * @param customModules         The custom Jackson modules; collections are serialized sequentially when there are any.
+     * @param propertyMasks         The properties masked while written, see {@link PropertyMaskingModule}.
+     * @param partialMaskProgram    The compiled rules masking parts of string values.
+     * @param maskingMode           The mode used to apply the masked field paths.
+     * @param nonComparableOrdering How collections of non-comparable elements are ordered.
+     * @param maxDifferences        The maximum number of differences reported on a mismatch.
+     * @param parallelThreshold     The minimum size of a collection serialized in parallel slices on the common
+     *                              {@link ForkJoinPool}, or {@link #SEQUENTIAL}. The output is the same as serializing
+     *                              sequentially.
+     */
+    @With(AccessLevel.PACKAGE)
+    record Options(MaskProgram maskProgram, List<SimpleModule> customModules, List<PropertyMask> propertyMasks,
+                   PartialMaskProgram partialMaskProgram, MaskingMode maskingMode, NonComparableOrdering nonComparableOrdering,
+                   int maxDifferences, int parallelThreshold) {
+        /**
+         * No masks nor custom modules, masked field paths applied by {@link MaskingMode#JSON_PATH}, collections of
+         * non-comparable elements in iteration order, at most {@link JsonDiff#DEFAULT_MAX_DIFFERENCES} reported differences
+         * and sequential serialization.
+         */
+        static final Options DEFAULT = new Options(MaskProgram.EMPTY, List.of(), List.of(), PartialMaskProgram.EMPTY,
+            MaskingMode.JSON_PATH, NonComparableOrdering.ITERATION_ORDER, JsonDiff.DEFAULT_MAX_DIFFERENCES, SEQUENTIAL);
+
+        Options {
+            Precondition.nonNull(maskProgram, "MaskProgram must not be null");
+            customModules = List.copyOf(Precondition.nonNull(customModules, "CustomModules must not be null"));
+            propertyMasks = List.copyOf(Precondition.nonNull(propertyMasks, "PropertyMasks must not be null"));
+            Precondition.nonNull(partialMaskProgram, "PartialMaskProgram must not be null");
+            Precondition.nonNull(maskingMode, "MaskingMode must not be null");
+            Precondition.nonNull(nonComparableOrdering, "NonComparableOrdering must not be null");
+
+            if (maxDifferences < 1) {
+                throw new IllegalArgumentException("MaxDifferences must be positive");
+            }
+
+            if (parallelThreshold < 1) {
+                throw new IllegalArgumentException("ParallelThreshold must be positive");
+            }
+        }
     }
 
     /**
@@ -73,25 +239,85 @@ public class JsonSnapshotSerializer implements SnapshotSerializer {
      */
     @Override
     public Snapshot apply(final Object object, final SnapshotSerializerContext gen) {
-        try {
-            final List<?> objects = Collections.singletonList(object);
+        return gen.toSnapshot(serialize(object));
+    }
+
+    /**
+     * Serializes the given object into the body of a JSON snapshot.
+     *
+     * @param object The object to be serialized.
+     * @return The masked and formatted JSON representation.
+     * @throws SnapshotExtensionException if JSON serialization fails.
+     */
+    @Override
+    public String serialize(final Object object) {
+        return serialize(object, SnapshotTiming.NONE);
+    }
+
+    /**
+     * Serializes the given object into the body of a JSON snapshot, reporting the serialization, JsonPath masking and
+     * formatting as separate phases. The canonical single pass is reported as serialization only.
+     *
+     * @param object The object to be serialized.
+     * @param timing The timing of the snapshot verification.
+     * @return The masked and formatted JSON representation.
+     * @throws SnapshotExtensionException if JSON serialization fails.
+     */
+    @Override
+    public String serialize(final Object object, final SnapshotTiming timing) {
+        final List<?> objects = Collections.singletonList(object);
 
-            final String body = objectMapper.writerWithDefaultPrettyPrinter()
-                .writeValueAsString(objects);
+        // TODO (nw) option to pass a custom objectmapper
 
-            final DocumentContext documentContext = JsonPath.parse(body);
+        final Object[] elements = canonical && object instanceof Collection<?> collection && collection.size() >= parallelThreshold
+            && !masksCollection() ? DeterministicCollectionModule.writtenOrder(collection, nonComparableOrdering) : null;
 
-            // TODO (nw) mask whole or parts of the values
-            // TODO (nw) refactor squiggly and use instead of json path?
-            // TODO (nw) option to pass a custom objectmapper
+        if (elements != null && elements.length >= parallelThreshold) {
+            return serialize(() -> writeParallel(elements), () -> writeBody(objects), timing);
+        }
+
+        return serialize(() -> writeCanonical(generator -> canonicalObjectWriter.writeValue(generator, objects), maskProgram),
+            () -> writeBody(objects), timing);
+    }
+
+    /**
+     * Serializes the values read by the given parser into the body of a JSON snapshot, without binding them to objects. The
+     * tokens are copied into the snapshot as the mapper would write them bound to maps and lists, see
+     * {@link CanonicalTokenCopier}, and every root value becomes an element of the snapshot.
+     *
+     * @param parser The parser of the values, before its first token.
+     * @param timing The timing of the snapshot verification.
+     * @return The masked and formatted JSON representation.
+     * @throws SnapshotExtensionException if the values can't be read or JSON serialization fails.
+     */
+    String serialize(final JsonParser parser, final SnapshotTiming timing) {
+        final Consumer<JsonGenerator> tokens = generator -> CanonicalTokenCopier.copyRootValues(parser, generator);
+
+        return serialize(() -> writeCanonical(tokens, maskProgram), () -> writeCanonical(tokens, MaskProgram.EMPTY), timing);
+    }
 
-            maskedFieldPaths.forEach(it -> documentContext.set(it, "***MASKED***"));
+    /**
+     * Writes the body in a single canonical pass, or writes the unmasked body and masks it using JsonPath.
+     *
+     * @param canonicalBody writes the final body in a single canonical pass
+     * @param body          writes the unmasked body for JsonPath masking
+     * @param timing        the timing of the snapshot verification
+     */
+    private String serialize(final Supplier<String> canonicalBody, final Supplier<String> body, final SnapshotTiming timing) {
+        try {
+            if (canonical) {
+                return timing.time(Phase.SERIALIZATION, canonicalBody);
+            }
 
-            final String masked = documentContext.jsonString();
+            final String unmasked = timing.time(Phase.SERIALIZATION, body);
+            final DocumentContext masked = timing.time(Phase.MASKING, () -> maskWithJsonPath(unmasked));
 
-            return gen.toSnapshot(JsonFormatter.prettyPrint(masked));
+            return timing.time(Phase.FORMATTING, () -> JsonFormatter.prettyPrint(masked.jsonString()));
+        } catch (final PathNotFoundException e) {
+            throw new SnapshotExtensionException("Json snapshotting failed. A masked field path doesn't match any value of the snapshot, "
+                + "use MaskingMode.STREAMING to ignore such paths. Paths: " + maskProgram.expressions(), e);
         } catch (final InvalidPathException e) {
-            throw new SnapshotExtensionException("Json snapshotting failed. Invalid mask field paths, please verify the paths. Paths: " + maskedFieldPaths, e);
+            throw new SnapshotExtensionException("Json snapshotting failed. Invalid mask field paths, please verify the paths. Paths: " + maskProgram.expressions(), e);
         } catch (final JsonPathException e) {
             throw new SnapshotExtensionException("Json snapshotting failed. Couldn't mask field paths. Cause: " + e.getMessage(), e);
         } catch (final Exception e) {
@@ -99,21 +325,195 @@ public class JsonSnapshotSerializer implements SnapshotSerializer {
         }
     }
 
+    /**
+     * Describes the structural differences of the expected and actual JSON, by the JSON pointers of the values that differ.
+     *
+     * @param expected the reader of the stored body
+     * @param actual   the reader of the serialized body
+     * @return the differences, or an empty string if either body isn't valid JSON
+     */
+    @Override
+    public String describeMismatch(final Reader expected, final Reader actual) {
+        return JsonDiff.describe(expected, actual, maxDifferences);
+    }
+
     @Override
     public String getOutputFormat() {
         return SerializerType.JSON.name();
     }
 
-    private static ObjectMapper createObjectMapper(final SimpleModule simpleModule) {
+    private String writeBody(final List<?> objects) {
+        if (partialMaskProgram.isEmpty()) {
+            return objectWriter.writeValueAsString(objects);
+        }
+
+        final StringWriter writer = new StringWriter();
+
+        try (JsonGenerator generator = new PartialMaskingJsonGenerator(objectWriter.createGenerator(writer), partialMaskProgram)) {
+            objectWriter.writeValue(generator, objects);
+        }
+
+        return writer.toString();
+    }
+
+    private DocumentContext maskWithJsonPath(final String body) {
+        final DocumentContext documentContext = JsonPath.parse(body);
+
+        maskProgram.jsonPaths().forEach(it -> documentContext.set(it, MaskingJsonGenerator.MASKED_VALUE));
+
+        return documentContext;
+    }
+
+    /**
+     * Writes the elements of a sequence in the format of the body of the snapshot of a list, one element at a time. The
+     * generator is flushed after every element, so the output can be compared while it's written and the elements are never
+     * held together. As the elements are never held together, they're written in iteration order, including null elements,
+     * rather than in the order {@link DeterministicCollectionModule} writes a list.
+     *
+     * @param elements The elements of the sequence.
+     * @param out      The stream the UTF-8 encoded body is written to.
+     * @param failed   Checked after every element; writing stops once it returns true.
+     * @return The index of the element after which writing stopped, or -1 if all elements have been written.
+     * @throws IllegalStateException if the masked field paths can't be applied while writing.
+     */
+    long writeEach(final Iterator<?> elements, final OutputStream out, final BooleanSupplier failed) {
+        if (!writesIncrementally()) {
+            throw new IllegalStateException("Masked fields of incremental snapshots must be streamable. Paths: " + maskProgram.expressions());
+        }
+
+        try (JsonGenerator generator = canonicalGenerator(new OutputStreamWriter(out, StandardCharsets.UTF_8), maskProgram)) {
+            generator.writeStartArray();
+            generator.writeStartArray();
+
+            for (long index = 0; elements.hasNext(); index++) {
+                canonicalObjectWriter.writeValue(generator, elements.next());
+                generator.flush();
+
+                if (failed.getAsBoolean()) {
+                    return index;
+                }
+            }
+
+            generator.writeEndArray();
+            generator.writeEndArray();
+        }
+
+        return -1;
+    }
+
+    /**
+     * Writes the body of the snapshot of a collection with the given elements in slices, serialized in parallel on the common
+     * {@link ForkJoinPool}, and joins the slices in order. Every slice is written as the body of a collection of its own
+     * elements, continuing the masking state at the index of its first element, and stripped of the surrounding brackets as
+     * written by the {@link CanonicalPrettyPrinter}, see {@link #COLLECTION_LAYOUT}.
+     */
+    private String writeParallel(final Object[] elements) {
+        final int slices = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * SLICES_PER_THREAD, elements.length / MINIMUM_SLICE_SIZE));
+        final int sliceSize = (elements.length + slices - 1) / slices;
+
+        final List<String> written = IntStream.range(0, slices)
+            .parallel()
+            .mapToObj(slice -> writeSlice(elements, slice * sliceSize, Math.min(elements.length, (slice + 1) * sliceSize)))
+            .toList();
+
+        final StringBuilder body = new StringBuilder(COLLECTION_LAYOUT.head().length() + COLLECTION_LAYOUT.tail().length()
+            + written.stream().mapToInt(String::length).sum() + (slices - 1) * COLLECTION_LAYOUT.separator().length());
+
+        body.append(COLLECTION_LAYOUT.head());
+
+        for (int i = 0; i < written.size(); i++) {
+            if (i > 0) {
+                body.append(COLLECTION_LAYOUT.separator());
+            }
+            body.append(written.get(i));
+        }
+
+        return body.append(COLLECTION_LAYOUT.tail()).toString();
+    }
+
+    /**
+     * Whether the snapshotted object is masked as a whole, which leaves nothing to be written in slices.
+     */
+    private boolean masksCollection() {
+        return !maskProgram.isEmpty() && (maskProgram.rootState().isMasked() || maskProgram.rootState().element(0).isMasked());
+    }
+
+    private String writeSlice(final Object[] elements, final int from, final int to) {
+        final String slice = writeCanonical(generator -> {
+            generator.writeStartArray();
+            generator.writeStartArray();
+
+            if (generator instanceof MaskingJsonGenerator masking) {
+                masking.continueArrayAt(from);
+            }
+
+            for (int i = from; i < to; i++) {
+                canonicalObjectWriter.writeValue(generator, elements[i]);
+            }
+
+            generator.writeEndArray();
+            generator.writeEndArray();
+        }, maskProgram);
+
+        if (!slice.startsWith(COLLECTION_LAYOUT.head()) || !slice.endsWith(COLLECTION_LAYOUT.tail())) {
+            throw new IllegalStateException("The slice of elements " + from + " to " + to + " isn't surrounded like the body of a collection");
+        }
+
+        return slice.substring(COLLECTION_LAYOUT.head().length(), slice.length() - COLLECTION_LAYOUT.tail().length());
+    }
+
+    /**
+     * Whether the masked field paths can be applied while the snapshot is written, see {@link #writeEach}. Streamable paths
+     * are applied while writing in either masking mode, as the output is the same.
+     *
+     * @return true if there are no masked fields, or all of them are streamable
+     */
+    boolean writesIncrementally() {
+        return maskProgram.isEmpty() || maskProgram.isStreamable();
+    }
+
+    /**
+     * Writes the final snapshot body in a single pass, masking whole values and parts of string values while writing. The
+     * output is byte-for-byte identical to formatting the JsonPath serialized JSON, see {@link CanonicalJsonGenerator}.
+     */
+    private String writeCanonical(final Consumer<JsonGenerator> content, final MaskProgram masks) {
+        final StringWriter writer = new StringWriter();
+
+        try (JsonGenerator generator = canonicalGenerator(writer, masks)) {
+            content.accept(generator);
+        }
+
+        return writer.toString();
+    }
+
+    private JsonGenerator canonicalGenerator(final Writer writer, final MaskProgram masks) {
+        final JsonGenerator canonicalGenerator = partialMaskProgram.isEmpty()
+            ? new CanonicalJsonGenerator(canonicalObjectWriter.createGenerator(writer))
+            : new PartialMaskingJsonGenerator(new CanonicalJsonGenerator(canonicalObjectWriter.createGenerator(writer)), partialMaskProgram);
+
+        return masks.isEmpty()
+            ? canonicalGenerator
+            : new MaskingJsonGenerator(canonicalGenerator, masks);
+    }
+
+    /**
+     * How the body of the snapshot of a collection is written: the head, the elements joined by the separator, and the tail.
+     *
+     * @param head      the text before the first element
+     * @param separator the text between two elements
+     * @param tail      the text after the last element
+     */
+    private record CollectionLayout(String head, String separator, String tail) {
+    }
+
+    private static ObjectWriter withSortKeyMasks(final ObjectWriter writer, @Nullable final SortKeyMasks sortKeyMasks) {
+        return sortKeyMasks != null ? writer.withAttribute(SortKeyMasks.class, sortKeyMasks) : writer;
+    }
+
+    private static ObjectMapper createObjectMapper(final List<SimpleModule> modules) {
         final JsonMapper.Builder builder =
             JsonMapper.builder()
                 .defaultPrettyPrinter(new SnapshotPrettyPrinter())
-                .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
-                .enable(DateTimeFeature.WRITE_DATES_WITH_ZONE_ID)
-                .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
-                .disable(DateTimeFeature.WRITE_DATES_AS_TIMESTAMPS)
-                .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
-                .disable(MapperFeature.SORT_CREATOR_PROPERTIES_FIRST)
                 .findAndAddModules()
                 .changeDefaultPropertyInclusion(incl -> incl.withValueInclusion(JsonInclude.Include.NON_NULL))
                 .changeDefaultPropertyInclusion(incl -> incl.withContentInclusion(JsonInclude.Include.NON_NULL))
@@ -124,12 +524,22 @@ public class JsonSnapshotSerializer implements SnapshotSerializer {
                         .withCreatorVisibility(JsonAutoDetect.Visibility.NONE)
                         .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE));
 
-        builder.addModule(simpleModule);
-        builder.addModule(new DeterministicCollectionModule()); // TODO (nw) use the one from java-snapshot-testing
+        FEATURES.forEach((feature, state) -> configure(builder, feature, state));
+
+        modules.forEach(builder::addModule);
 
         return builder.build();
     }
 
+    private static void configure(final JsonMapper.Builder builder, final Enum<?> feature, final boolean state) {
+        switch (feature) {
+            case MapperFeature it -> builder.configure(it, state);
+            case SerializationFeature it -> builder.configure(it, state);
+            case DateTimeFeature it -> builder.configure(it, state);
+            default -> throw new IllegalArgumentException("Unsupported mapper feature: " + feature);
+        }
+    }
+
     /**
      * Custom pretty printer for consistent JSON formatting in snapshots.
      * <p>
@@ -0,0 +1,202 @@
+package io.github.finoid.testify.snapshot;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * A mask field path compiled from the streamable subset of the JsonPath syntax.
+ * <p>
+ * Supported segments are properties ({@code .name}, {@code ['name']}, {@code ['a','b']}), indexes ({@code [0]},
+ * {@code [0,1]}), wildcards ({@code .*}, {@code [*]}) and deep scans of a property ({@code ..name}). Anything else, such as
+ * filters, slices, negative indexes or functions, is not streamable and must be evaluated by JsonPath.
+ *
+ * @param expression the original path expression
+ * @param segments   the compiled segments, excluding the root {@code $}
+ */
+record MaskPath(String expression, List<Segment> segments) {
+    /**
+     * Compiles the given JsonPath expression.
+     *
+     * @param expression the path expression
+     * @return the compiled path, or empty if the expression is outside the streamable subset
+     */
+    static Optional<MaskPath> compile(final String expression) {
+        return new Parser(expression).parse()
+            .map(segments -> new MaskPath(expression, segments));
+    }
+
+    /**
+     * A single step of a path.
+     */
+    sealed interface Segment {
+    }
+
+    /**
+     * Matches any of the given property names.
+     */
+    record Properties(Set<String> names) implements Segment {
+    }
+
+    /**
+     * Matches any of the given array indexes.
+     */
+    record Indexes(Set<Integer> indexes) implements Segment {
+    }
+
+    /**
+     * Matches any property or array element.
+     */
+    record Wildcard() implements Segment {
+    }
+
+    /**
+     * Matches the inner segment at the current location or at any location below it.
+     */
+    record DeepScan(Segment inner) implements Segment {
+    }
+
+    /**
+     * A small recursive descent parser for the streamable JsonPath subset.
+     */
+    private static final class Parser {
+        private final String expression;
+        private int position;
+
+        private Parser(final String expression) {
+            this.expression = expression.trim();
+        }
+
+        private Optional<List<Segment>> parse() {
+            if (!expression.startsWith("$")) {
+                return Optional.empty();
+            }
+
+            position = 1;
+
+            final List<Segment> segments = new ArrayList<>();
+
+            while (position < expression.length()) {
+                final Segment segment = nextSegment();
+
+                if (segment == null) {
+                    return Optional.empty();
+                }
+
+                segments.add(segment);
+            }
+
+            return Optional.of(List.copyOf(segments));
+        }
+
+        @Nullable
+        private Segment nextSegment() {
+            if (expression.startsWith("..", position)) {
+                position += 2;
+
+                final Segment inner = expression.startsWith("[", position) ? bracket() : dotName();
+
+                return inner instanceof Properties ? new DeepScan(inner) : null;
+            }
+
+            if (expression.startsWith(".", position)) {
+                position++;
+
+                return dotName();
+            }
+
+            if (expression.startsWith("[", position)) {
+                return bracket();
+            }
+
+            return null;
+        }
+
+        @Nullable
+        private Segment dotName() {
+            final int start = position;
+
+            while (position < expression.length() && expression.charAt(position) != '.' && expression.charAt(position) != '[') {
+                position++;
+            }
+
+            final String name = expression.substring(start, position);
+
+            if (name.equals("*")) {
+                return new Wildcard();
+            }
+
+            if (name.isEmpty() || name.contains("(") || name.contains(" ")) {
+                return null;
+            }
+
+            return new Properties(Set.of(name));
+        }
+
+        @Nullable
+        private Segment bracket() {
+            final int end = expression.indexOf(']', position);
+
+            if (end < 0) {
+                return null;
+            }
+
+            final String content = expression.substring(position + 1, end).trim();
+            position = end + 1;
+
+            if (content.equals("*")) {
+                return new Wildcard();
+            }
+
+            if (content.startsWith("'") || content.startsWith("\"")) {
+                return quotedNames(content);
+            }
+
+            return indexes(content);
+        }
+
+        @Nullable
+        private static Segment quotedNames(final String content) {
+            final Set<String> names = new LinkedHashSet<>();
+
+            for (final String part : content.split(",")) {
+                final String trimmed = part.trim();
+
+                if (trimmed.length() < 2) {
+                    return null;
+                }
+
+                final char quote = trimmed.charAt(0);
+
+                if ((quote != '\'' && quote != '"') || trimmed.charAt(trimmed.length() - 1) != quote) {
+                    return null;
+                }
+
+                names.add(trimmed.substring(1, trimmed.length() - 1));
+            }
+
+            return new Properties(Set.copyOf(names));
+        }
+
+        @Nullable
+        private static Segment indexes(final String content) {
+            final Set<Integer> indexes = new LinkedHashSet<>();
+
+            for (final String part : content.split(",")) {
+                final String trimmed = part.trim();
+
+                if (trimmed.isEmpty() || trimmed.length() > 9 || !trimmed.chars().allMatch(Character::isDigit)) {
+                    return null;
+                }
+
+                indexes.add(Integer.parseInt(trimmed));
+            }
+
+            return new Indexes(Set.copyOf(indexes));
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package io.github.finoid.testify.snapshot;
+
+import com.jayway.jsonpath.InvalidPathException;
+import com.jayway.jsonpath.JsonPath;
+import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.MaskPath.DeepScan;
+import io.github.finoid.testify.snapshot.MaskPath.Indexes;
+import io.github.finoid.testify.snapshot.MaskPath.Properties;
+import io.github.finoid.testify.snapshot.MaskPath.Segment;
+import io.github.finoid.testify.snapshot.MaskPath.Wildcard;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An immutable, pre-compiled set of mask field paths.
+ * <p>
+ * Paths are validated once when the program is compiled, and programs are cached so that the same paths configured by
+ * many {@link JsonSnapshotDsl} instances are compiled only once. Streamable paths (see {@link MaskPath}) are merged into a
+ * single trie, so a document is walked once no matter how many paths are masked. The pre-compiled {@link JsonPath}s are
+ * kept for {@link MaskingMode#JSON_PATH} and for programs containing paths outside the streamable subset.
+ */
+final class MaskProgram {
+    static final MaskProgram EMPTY = new MaskProgram(List.of(), List.of(), new Node());
+
+    private static final int MAXIMUM_CACHED_PROGRAMS = 256;
+
+    private static final BoundedCache<List<String>, MaskProgram> PROGRAMS = new BoundedCache<>(MAXIMUM_CACHED_PROGRAMS);
+
+    private final List<String> expressions;
+    private final List<JsonPath> jsonPaths;
+    @Nullable
+    private final Node root;
+
+    private MaskProgram(final List<String> expressions, final List<JsonPath> jsonPaths, @Nullable final Node root) {
+        this.expressions = expressions;
+        this.jsonPaths = jsonPaths;
+        this.root = root;
+    }
+
+    /**
+     * Returns the (cached) program for the given mask field paths.
+     *
+     * @param expressions the JsonPath expressions of the fields to mask
+     * @return the compiled program
+     * @throws IllegalArgumentException if any of the expressions is null or not a valid JsonPath
+     */
+    static MaskProgram of(final List<String> expressions) {
+        if (expressions.isEmpty()) {
+            return EMPTY;
+        }
+
+        expressions.forEach(it -> Precondition.nonNull(it, "Masked field path must not be null"));
+
+        return PROGRAMS.computeIfAbsent(List.copyOf(expressions), MaskProgram::compile);
+    }
+
+    private static MaskProgram compile(final List<String> expressions) {
+        final List<JsonPath> jsonPaths = expressions.stream()
+            .map(MaskProgram::compileJsonPath)
+            .toList();
+
+        final Node root = new Node();
+
+        for (final String expression : expressions) {
+            final Optional<MaskPath> maskPath = MaskPath.compile(expression);
+
+            if (maskPath.isEmpty()) {
+                return new MaskProgram(expressions, jsonPaths, null);
+            }
+
+            root.insert(maskPath.get().segments(), 0);
+        }
+
+        return new MaskProgram(expressions, jsonPaths, root);
+    }
+
+    private static JsonPath compileJsonPath(final String expression) {
+        try {
+            return JsonPath.compile(expression);
+        } catch (final InvalidPathException e) {
+            throw new IllegalArgumentException("Invalid mask field path, please verify the path. Path: " + expression, e);
+        }
+    }
+
+    List<String> expressions() {
+        return expressions;
+    }
+
+    List<JsonPath> jsonPaths() {
+        return jsonPaths;
+    }
+
+    boolean isEmpty() {
+        return expressions.isEmpty();
+    }
+
+    /**
+     * Determines whether all paths of this program can be applied while streaming.
+     *
+     * @return true if the program can be evaluated by {@link MaskingJsonGenerator}
+     */
+    boolean isStreamable() {
+        return root != null;
+    }
+
+    /**
+     * Returns the state of the root value of a document.
+     *
+     * @return the root state
+     * @throws IllegalStateException if the program is not streamable
+     */
+    State rootState() {
+        if (root == null) {
+            throw new IllegalStateException("Mask program is not streamable: " + expressions);
+        }
+
+        return State.EMPTY.with(root);
+    }
+
+    /**
+     * The set of trie nodes matching a location in a document. A state is computed for every value as it is written, and
+     * the state of an object or array is used to compute the states of its members.
+     */
+    static final class State {
+        static final State EMPTY = new State(new Node[0], false);
+
+        private final Node[] nodes;
+        private final boolean masked;
+
+        private State(final Node[] nodes, final boolean masked) {
+            this.nodes = nodes;
+            this.masked = masked;
+        }
+
+        /**
+         * Determines whether the value at this location is masked.
+         *
+         * @return true if masked
+         */
+        boolean isMasked() {
+            return masked;
+        }
+
+        /**
+         * Returns the state of the property with the given name of the object at this location.
+         *
+         * @param name the property name
+         * @return the state of the property
+         */
+        State property(final String name) {
+            if (nodes.length == 0) {
+                return EMPTY;
+            }
+
+            State next = EMPTY;
+
+            for (final Node node : nodes) {
+                next = next.with(node.properties.get(name))
+                    .with(node.wildcard)
+                    .withScan(node);
+            }
+
+            return next;
+        }
+
+        /**
+         * Returns the state of the element with the given index of the array at this location.
+         *
+         * @param index the element index
+         * @return the state of the element
+         */
+        State element(final int index) {
+            if (nodes.length == 0) {
+                return EMPTY;
+            }
+
+            State next = EMPTY;
+
+            for (final Node node : nodes) {
+                next = next.with(node.indexes.isEmpty() ? null : node.indexes.get(index))
+                    .with(node.wildcard)
+                    .withScan(node);
+            }
+
+            return next;
+        }
+
+        /**
+         * Returns the state matching every element of the array at this location, whatever its index. Used where the index
+         * of an element isn't known yet, like while elements are ordered.
+         *
+         * @return the union of the states of all elements
+         */
+        State anyElement() {
+            if (nodes.length == 0) {
+                return EMPTY;
+            }
+
+            State next = EMPTY;
+
+            for (final Node node : nodes) {
+                for (final Node indexed : node.indexes.values()) {
+                    next = next.with(indexed);
+                }
+
+                next = next.with(node.wildcard)
+                    .withScan(node);
+            }
+
+            return next;
+        }
+
+        /**
+         * Adds the node, and the deep scan below it, to this state.
+         */
+        private State with(@Nullable final Node node) {
+            if (node == null) {
+                return this;
+            }
+
+            final State state = add(node);
+
+            return node.scan == null ? state : state.add(node.scan);
+        }
+
+        /**
+         * Keeps a deep scan node active for the members of this location.
+         */
+        private State withScan(final Node node) {
+            return node.scanning ? add(node) : this;
+        }
+
+        private State add(final Node node) {
+            for (final Node existing : nodes) {
+                if (existing == node) {
+                    return this;
+                }
+            }
+
+            final Node[] extended = Arrays.copyOf(nodes, nodes.length + 1);
+            extended[nodes.length] = node;
+
+            return new State(extended, masked || node.masked);
+        }
+    }
+
+    /**
+     * A node of the path trie. The children of a node match the members of the value matched by the node itself.
+     */
+    private static final class Node {
+        private final Map<String, Node> properties = new HashMap<>();
+        private final Map<Integer, Node> indexes = new HashMap<>();
+        @Nullable
+        private Node wildcard;
+        /**
+         * The deep scan node whose children match the members of this node's value, or of any value below it.
+         */
+        @Nullable
+        private Node scan;
+        private boolean scanning;
+        private boolean masked;
+
+        private void insert(final List<Segment> segments, final int index) {
+            if (index == segments.size()) {
+                masked = true;
+                return;
+            }
+
+            final Segment segment = segments.get(index);
+
+            switch (segment) {
+                case Properties(var names) -> names.forEach(name ->
+                    properties.computeIfAbsent(name, it -> new Node()).insert(segments, index + 1));
+                case Indexes(var values) -> values.forEach(value ->
+                    indexes.computeIfAbsent(value, it -> new Node()).insert(segments, index + 1));
+                case Wildcard() -> {
+                    if (wildcard == null) {
+                        wildcard = new Node();
+                    }
+                    wildcard.insert(segments, index + 1);
+                }
+                case DeepScan(var inner) -> {
+                    if (scan == null) {
+                        scan = new Node();
+                        scan.scanning = true;
+                    }
+                    scan.insert(withInner(segments, index, inner), index);
+                }
+            }
+        }
+
+        /**
+         * Replaces the deep scan segment at the given index with its inner segment.
+         */
+        private static List<Segment> withInner(final List<Segment> segments, final int index, final Segment inner) {
+            final Segment[] replaced = segments.toArray(Segment[]::new);
+            replaced[index] = inner;
+
+            return List.of(replaced);
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package io.github.finoid.testify.snapshot;
+
+import tools.jackson.core.Base64Variant;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.SerializableString;
+import tools.jackson.core.util.JsonGeneratorDelegate;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * A {@link JsonGenerator} that masks values at configured paths while they are written.
+ * <p>
+ * The generator tracks the {@link MaskProgram.State} of every open object and array. When a value starts at a masked
+ * location the masked replacement is written instead, and for objects and arrays the remaining tokens of the value are
+ * swallowed. This replaces the serialize, re-parse, mutate and re-serialize cycle of JsonPath based masking with a single
+ * pass, and values outside of any masked path are written without further matching.
+ */
+class MaskingJsonGenerator extends JsonGeneratorDelegate {
+    static final String MASKED_VALUE = "***MASKED***";
+
+    private static final int INITIAL_DEPTH = 16;
+
+    /**
+     * The state of the open object or array on each level.
+     */
+    private MaskProgram.State[] states = new MaskProgram.State[INITIAL_DEPTH];
+    /**
+     * The index of the next element of the open array on each level, or -1 for objects.
+     */
+    private int[] indexes = new int[INITIAL_DEPTH];
+    private int depth;
+
+    /**
+     * The state of the next value to be written.
+     */
+    private MaskProgram.State next;
+
+    /**
+     * The nesting depth of the masked value currently being swallowed, or zero if not masking.
+     */
+    private int skipDepth;
+
+    MaskingJsonGenerator(final JsonGenerator delegate, final MaskProgram maskProgram) {
+        super(delegate, false);
+        this.next = maskProgram.rootState();
+    }
+
+    @Override
+    public JsonGenerator writeStartArray() throws JacksonException {
+        if (beforeStructure()) {
+            delegate.writeStartArray();
+            push(true);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeStartArray(final Object forValue) throws JacksonException {
+        if (beforeStructure()) {
+            delegate.writeStartArray(forValue);
+            push(true);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeStartArray(final Object forValue, final int size) throws JacksonException {
+        if (beforeStructure()) {
+            delegate.writeStartArray(forValue, size);
+            push(true);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeEndArray() throws JacksonException {
+        if (afterStructure()) {
+            delegate.writeEndArray();
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeStartObject() throws JacksonException {
+        if (beforeStructure()) {
+            delegate.writeStartObject();
+            push(false);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeStartObject(final Object forValue) throws JacksonException {
+        if (beforeStructure()) {
+            delegate.writeStartObject(forValue);
+            push(false);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeStartObject(final Object forValue, final int size) throws JacksonException {
+        if (beforeStructure()) {
+            delegate.writeStartObject(forValue, size);
+            push(false);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeEndObject() throws JacksonException {
+        if (afterStructure()) {
+            delegate.writeEndObject();
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeName(final String name) throws JacksonException {
+        if (skipDepth == 0) {
+            next = states[depth - 1].property(name);
+            delegate.writeName(name);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeName(final SerializableString name) throws JacksonException {
+        if (skipDepth == 0) {
+            next = states[depth - 1].property(name.getValue());
+            delegate.writeName(name);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writePropertyId(final long id) throws JacksonException {
+        return writeName(Long.toString(id));
+    }
+
+    @Override
+    public JsonGenerator writeOmittedProperty(final String propName) throws JacksonException {
+        if (skipDepth == 0) {
+            delegate.writeOmittedProperty(propName);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeArray(final int[] array, final int offset, final int length) throws JacksonException {
+        writeStartArray(array, length);
+        for (int i = offset; i < offset + length; i++) {
+            writeNumber(array[i]);
+        }
+        return writeEndArray();
+    }
+
+    @Override
+    public JsonGenerator writeArray(final long[] array, final int offset, final int length) throws JacksonException {
+        writeStartArray(array, length);
+        for (int i = offset; i < offset + length; i++) {
+            writeNumber(array[i]);
+        }
+        return writeEndArray();
+    }
+
+    @Override
+    public JsonGenerator writeArray(final double[] array, final int offset, final int length) throws JacksonException {
+        writeStartArray(array, length);
+        for (int i = offset; i < offset + length; i++) {
+            writeNumber(array[i]);
+        }
+        return writeEndArray();
+    }
+
+    @Override
+    public JsonGenerator writeArray(final String[] array, final int offset, final int length) throws JacksonException {
+        writeStartArray(array, length);
+        for (int i = offset; i < offset + length; i++) {
+            writeString(array[i]);
+        }
+        return writeEndArray();
+    }
+
+    @Override
+    public JsonGenerator writeString(final String text) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeString(text);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeString(final Reader reader, final int len) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeString(reader, len);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeString(final char[] text, final int offset, final int len) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeString(text, offset, len);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeString(final SerializableString text) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeString(text);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeRawUTF8String(final byte[] text, final int offset, final int length) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeRawUTF8String(text, offset, length);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeUTF8String(final byte[] text, final int offset, final int length) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeUTF8String(text, offset, length);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeRawValue(final String text) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeRawValue(text);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeRawValue(final String text, final int offset, final int len) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeRawValue(text, offset, len);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeRawValue(final char[] text, final int offset, final int len) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeRawValue(text, offset, len);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeBinary(final Base64Variant variant, final byte[] data, final int offset, final int len)
+        throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeBinary(variant, data, offset, len);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public int writeBinary(final Base64Variant variant, final InputStream data, final int dataLength) throws JacksonException {
+        if (beforeScalar()) {
+            final int written = delegate.writeBinary(variant, data, dataLength);
+            afterValue();
+            return written;
+        }
+        return 0;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final short value) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNumber(value);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final int value) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNumber(value);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final long value) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNumber(value);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final BigInteger value) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNumber(value);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final double value) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNumber(value);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final float value) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNumber(value);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final BigDecimal value) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNumber(value);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final String encodedValue) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNumber(encodedValue);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNumber(final char[] encodedValueBuffer, final int offset, final int len) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNumber(encodedValueBuffer, offset, len);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeBoolean(final boolean state) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeBoolean(state);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeNull() throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeNull();
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeEmbeddedObject(final Object object) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeEmbeddedObject(object);
+            afterValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeTypeId(final Object id) throws JacksonException {
+        if (skipDepth == 0) {
+            delegate.writeTypeId(id);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeObjectId(final Object id) throws JacksonException {
+        if (skipDepth == 0) {
+            delegate.writeObjectId(id);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeObjectRef(final Object referenced) throws JacksonException {
+        if (beforeScalar()) {
+            delegate.writeObjectRef(referenced);
+            afterValue();
+        }
+        return this;
+    }
+
+    /**
+     * Continues the innermost open array at the given element index, as if the preceding elements had been written. Allows
+     * a slice of an array to be written on its own.
+     *
+     * @param index the index of the next element
+     * @throws IllegalStateException if no array is open
+     */
+    void continueArrayAt(final int index) {
+        if (depth == 0 || indexes[depth - 1] < 0 || skipDepth > 0) {
+            throw new IllegalStateException("No array is open");
+        }
+
+        indexes[depth - 1] = index;
+        next = states[depth - 1].element(index);
+    }
+
+    /**
+     * Returns the state of the next value to be written.
+     *
+     * @return the state of the next value
+     */
+    MaskProgram.State nextState() {
+        return next;
+    }
+
+    /**
+     * Invoked before a scalar value is written.
+     *
+     * @return true if the value should be written, false if it is swallowed or has been replaced by the mask
+     */
+    private boolean beforeScalar() {
+        if (skipDepth > 0) {
+            return false;
+        }
+
+        if (next.isMasked()) {
+            delegate.writeString(MASKED_VALUE);
+            afterValue();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Invoked before an object or array is started.
+     *
+     * @return true if the structure should be written, false if it is swallowed or has been replaced by the mask
+     */
+    private boolean beforeStructure() {
+        if (skipDepth > 0) {
+            skipDepth++;
+            return false;
+        }
+
+        if (next.isMasked()) {
+            delegate.writeString(MASKED_VALUE);
+            afterValue();
+            skipDepth = 1;
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Invoked before an object or array is ended.
+     *
+     * @return true if the end marker should be written, false if it belongs to a swallowed value
+     */
+    private boolean afterStructure() {
+        if (skipDepth > 0) {
+            skipDepth--;
+            return false;
+        }
+
+        depth--;
+        return true;
+    }
+
+    /**
+     * Invoked after a value has been written, prepares the state of the next element if inside an array.
+     */
+    private void afterValue() {
+        if (depth > 0 && indexes[depth - 1] >= 0) {
+            next = states[depth - 1].element(++indexes[depth - 1]);
+        }
+    }
+
+    private void push(final boolean array) {
+        if (depth == states.length) {
+            states = Arrays.copyOf(states, depth * 2);
+            indexes = Arrays.copyOf(indexes, depth * 2);
+        }
+
+        states[depth] = next;
+        indexes[depth] = array ? 0 : -1;
+        depth++;
+
+        if (array) {
+            next = next.element(0);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.github.finoid.testify.snapshot;
+
+/**
+ * Determines how masked field paths are applied to JSON snapshots.
+ * <p>
+ * Both modes mask the same values, but they differ for paths that don't match any value of the snapshot: {@link #JSON_PATH}
+ * fails the snapshot, while {@link #STREAMING} ignores them. This holds whether only the last property of the path is
+ * missing, e.g. {@code $.customer.nickname}, or a property in between, e.g. {@code $.customer.address.street} without an
+ * address, and for wildcard and deep scan paths matching nothing. Switching a snapshot to {@link #JSON_PATH} can therefore
+ * make it fail where a masked path doesn't resolve, e.g. a path into an optional property that is absent.
+ */
+public enum MaskingMode {
+    /**
+     * The snapshot is serialized, re-parsed with JsonPath, masked and written again. Supports the complete JsonPath syntax.
+     * Fails if a path doesn't match any value of the snapshot, be it a missing property at the end of the path or in between.
+     * <p>
+     * Snapshots without masked fields skip the round trip and are written directly in their final format.
+     */
+    JSON_PATH,
+    /**
+     * Masked values are replaced while the snapshot is written, without re-parsing the serialized output.
+     * <p>
+     * Supports the JsonPath subset of property ({@code .name}, {@code ['name']}), index ({@code [0]}), wildcard
+     * ({@code .*}, {@code [*]}) and deep scan ({@code ..name}) segments. Paths outside that subset (e.g. filters or slices)
+     * transparently fall back to {@link #JSON_PATH}, including its failure for paths that don't match any value. Streamable
+     * paths that don't match any value of the snapshot are ignored, be it a missing property at the end of the path or in
+     * between.
+     */
+    STREAMING
+}
@@ -0,0 +1,18 @@
+package io.github.finoid.testify.snapshot;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+/**
+ * Leaves streams owned by the caller open.
+ */
+final class NonClosingInputStream extends FilterInputStream {
+    NonClosingInputStream(final InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public void close() {
+        // The stream is owned by the caller
+    }
+}
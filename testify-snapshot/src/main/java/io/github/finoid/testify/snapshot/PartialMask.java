@@ -0,0 +1,204 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A rule masking the parts of string values that match a regular expression, e.g. a UUID within a URL.
+ * <p>
+ * A match is either replaced as a whole with {@code ***MASKED***}, or has its letters and digits replaced with {@code *}
+ * except for the last few, e.g. {@code **** **** **** 1111}. Rules are combined into a single pattern per set of rules, see
+ * {@link PartialMaskProgram}. Patterns may use non-capturing and named groups, but no numbered back references, as the
+ * groups of a rule are renumbered once combined; refer back to a named group with {@code \k<name>} instead.
+ * <p>
+ * Every match must mask at least one character. Patterns matching the empty string are rejected when created; patterns that
+ * only match an empty part of some values, such as {@code \b} or {@code (?=\d)}, are rejected when they do so, see
+ * {@link PartialMaskProgram#apply}.
+ */
+public final class PartialMask {
+    /**
+     * Masks UUIDs, e.g. {@code /orders/3f2b8c1e-9a4d-4e6f-8b7a-1c2d3e4f5a6b/lines}.
+     */
+    public static final PartialMask UUID = replacing("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    /**
+     * Masks ISO-8601 date-times, with optional seconds, fractions and offset, e.g. {@code created at 2024-01-01T12:00:00Z}.
+     */
+    public static final PartialMask TIMESTAMP =
+        replacing("\\d{4}-\\d{2}-\\d{2}[T ]\\d{2}:\\d{2}(?::\\d{2}(?:\\.\\d{1,9})?)?(?:Z|[+-]\\d{2}:?\\d{2})?");
+
+    /**
+     * Masks the digits of card numbers of 13 to 19 digits, optionally grouped by spaces or dashes, except the last 4.
+     */
+    public static final PartialMask CARD_NUMBER = keepingLast("(?<!\\d)\\d(?:[ -]?\\d){12,18}(?!\\d)", 4);
+
+    private static final int REPLACE = -1;
+    private static final char MASK_CHARACTER = '*';
+
+    private final String regex;
+    private final int keepLast;
+    private final int groupCount;
+    private final Set<String> groupNames;
+
+    private PartialMask(final String regex, final int keepLast) {
+        this.regex = Precondition.nonNull(regex, "Regex must not be null");
+        this.keepLast = keepLast;
+
+        final Pattern pattern = compile(regex);
+
+        this.groupCount = pattern.matcher("").groupCount();
+        this.groupNames = Set.copyOf(pattern.namedGroups().keySet());
+    }
+
+    /**
+     * Creates a rule replacing every match of the given regular expression with {@code ***MASKED***}.
+     *
+     * @param regex the regular expression
+     * @return the rule
+     * @throws IllegalArgumentException if regex is null, invalid, matches the empty string or has a numbered back reference
+     */
+    public static PartialMask replacing(final String regex) {
+        return new PartialMask(regex, REPLACE);
+    }
+
+    /**
+     * Creates a rule replacing the letters and digits of every match of the given regular expression with {@code *}, except
+     * for the last given number of them.
+     *
+     * @param regex    the regular expression
+     * @param keepLast the number of trailing letters and digits to keep
+     * @return the rule
+     * @throws IllegalArgumentException if regex is null, invalid, matches the empty string or has a numbered back reference, or
+     *                                  keepLast is negative
+     */
+    public static PartialMask keepingLast(final String regex, final int keepLast) {
+        if (keepLast < 0) {
+            throw new IllegalArgumentException("KeepLast must not be negative");
+        }
+
+        return new PartialMask(regex, keepLast);
+    }
+
+    /**
+     * Returns the regular expression.
+     *
+     * @return the regular expression
+     */
+    public String regex() {
+        return regex;
+    }
+
+    /**
+     * The number of capturing groups of the regular expression, which shift the groups of the rules combined after it.
+     */
+    int groupCount() {
+        return groupCount;
+    }
+
+    /**
+     * The names of the named groups of the regular expression, which must be unique among the rules combined with it.
+     */
+    Set<String> groupNames() {
+        return groupNames;
+    }
+
+    /**
+     * Appends the masked form of the given match.
+     *
+     * @param value the masked string value
+     * @param start the start of the match
+     * @param end   the end of the match
+     * @param out   the masked value built so far
+     */
+    void mask(final String value, final int start, final int end, final StringBuilder out) {
+        if (keepLast == REPLACE) {
+            out.append(MaskingJsonGenerator.MASKED_VALUE);
+
+            return;
+        }
+
+        int kept = 0;
+        int maskedEnd = end;
+
+        while (maskedEnd > start && kept < keepLast) {
+            if (Character.isLetterOrDigit(value.charAt(--maskedEnd))) {
+                kept++;
+            }
+        }
+
+        for (int i = start; i < maskedEnd; i++) {
+            final char c = value.charAt(i);
+
+            out.append(Character.isLetterOrDigit(c) ? MASK_CHARACTER : c);
+        }
+
+        out.append(value, maskedEnd, end);
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object other) {
+        return other instanceof PartialMask that && keepLast == that.keepLast && regex.equals(that.regex);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(regex, keepLast);
+    }
+
+    @Override
+    public String toString() {
+        return keepLast == REPLACE ? regex : regex + " (keeping last " + keepLast + ")";
+    }
+
+    private static Pattern compile(final String regex) {
+        final Pattern pattern;
+
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (final PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid partial mask, please verify the pattern. Pattern: " + regex, e);
+        }
+
+        if (pattern.matcher("").matches()) {
+            throw new IllegalArgumentException("Invalid partial mask, the pattern must not match an empty value. Pattern: " + regex);
+        }
+
+        if (hasNumberedBackReference(regex)) {
+            throw new IllegalArgumentException("Invalid partial mask, numbered back references aren't supported, use a named group "
+                + "and \\k<name> instead. Pattern: " + regex);
+        }
+
+        return pattern;
+    }
+
+    /**
+     * Whether the given valid pattern has a back reference such as {@code \1}, skipping escaped backslashes and quotes.
+     * Octal escapes start with {@code \0} and aren't back references.
+     */
+    private static boolean hasNumberedBackReference(final String regex) {
+        for (int i = 0; i < regex.length() - 1; i++) {
+            if (regex.charAt(i) != '\\') {
+                continue;
+            }
+
+            final char escaped = regex.charAt(++i);
+
+            if (escaped >= '1' && escaped <= '9') {
+                return true;
+            }
+
+            if (escaped == 'Q') {
+                final int end = regex.indexOf("\\E", i);
+
+                i = end < 0 ? regex.length() : end + 1;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * An immutable, pre-compiled set of {@link PartialMask}s.
+ * <p>
+ * The patterns of all rules are combined into a single alternation, one capturing group per rule, and compiled once. Named
+ * groups therefore must be unique among the rules of a program.
+ * Programs are cached, so the same rules configured by many {@link JsonSnapshotDsl} instances are compiled only once. A
+ * string value is masked in a single scan over the value, no matter how many rules are configured; where the matches of
+ * several rules start at the same position, the rule configured first wins.
+ */
+final class PartialMaskProgram {
+    static final PartialMaskProgram EMPTY = new PartialMaskProgram(List.of(), null, new int[0]);
+
+    private static final int MAXIMUM_CACHED_PROGRAMS = 256;
+
+    private static final BoundedCache<List<PartialMask>, PartialMaskProgram> PROGRAMS = new BoundedCache<>(MAXIMUM_CACHED_PROGRAMS);
+
+    private final List<PartialMask> masks;
+    @Nullable
+    private final Pattern pattern;
+    /**
+     * The index of the capturing group of each rule in the combined pattern.
+     */
+    private final int[] groups;
+
+    private PartialMaskProgram(final List<PartialMask> masks, @Nullable final Pattern pattern, final int[] groups) {
+        this.masks = masks;
+        this.pattern = pattern;
+        this.groups = groups;
+    }
+
+    /**
+     * Returns the (cached) program for the given rules.
+     *
+     * @param masks the partial masks, in order of precedence
+     * @return the compiled program
+     * @throws IllegalArgumentException if masks or any of the masks is null, or several masks have a named group of the same
+     *                                  name
+     */
+    static PartialMaskProgram of(final List<PartialMask> masks) {
+        if (Precondition.nonNull(masks, "PartialMasks must not be null").isEmpty()) {
+            return EMPTY;
+        }
+
+        masks.forEach(it -> Precondition.nonNull(it, "Partial mask must not be null"));
+
+        return PROGRAMS.computeIfAbsent(List.copyOf(masks), PartialMaskProgram::compile);
+    }
+
+    private static PartialMaskProgram compile(final List<PartialMask> masks) {
+        final int[] groups = new int[masks.size()];
+        final Map<String, PartialMask> groupNames = new HashMap<>();
+
+        int group = 1;
+
+        for (int i = 0; i < masks.size(); i++) {
+            final PartialMask mask = masks.get(i);
+
+            for (final String groupName : mask.groupNames()) {
+                final PartialMask previous = groupNames.putIfAbsent(groupName, mask);
+
+                if (previous != null) {
+                    throw new IllegalArgumentException("Invalid partial masks, the named group " + groupName + " is declared by several "
+                        + "patterns, please rename it in one of them. Patterns: " + previous.regex() + ", " + mask.regex());
+                }
+            }
+
+            groups[i] = group;
+            group += 1 + mask.groupCount();
+        }
+
+        final String alternation = masks.stream()
+            .map(it -> "(" + it.regex() + ")")
+            .collect(Collectors.joining("|"));
+
+        return new PartialMaskProgram(masks, Pattern.compile(alternation), groups);
+    }
+
+    boolean isEmpty() {
+        return pattern == null;
+    }
+
+    /**
+     * Creates a matcher to be reused for the values written by a single generator, as matchers aren't thread-safe.
+     *
+     * @return a new matcher, or null if the program is empty
+     */
+    @Nullable
+    Matcher matcher() {
+        return pattern != null ? pattern.matcher("") : null;
+    }
+
+    /**
+     * Masks the parts of the given value matching any of the rules.
+     *
+     * @param matcher a matcher created by {@link #matcher()}
+     * @param value   the string value
+     * @return the masked value, or the same instance if no rule matches
+     * @throws IllegalArgumentException if a rule matches an empty part of the value, which can't be ruled out by
+     *                                  {@link PartialMask} up front
+     */
+    String apply(final Matcher matcher, final String value) {
+        matcher.reset(value);
+
+        if (!matcher.find()) {
+            return value;
+        }
+
+        final StringBuilder masked = new StringBuilder(value.length() + MaskingJsonGenerator.MASKED_VALUE.length());
+
+        int last = 0;
+
+        do {
+            final PartialMask rule = rule(matcher);
+
+            if (matcher.start() == matcher.end()) {
+                throw new IllegalArgumentException("Invalid partial mask, the pattern must not match an empty part of a value, such as "
+                    + "a lookaround or boundary on its own. Pattern: " + rule.regex());
+            }
+
+            masked.append(value, last, matcher.start());
+            rule.mask(value, matcher.start(), matcher.end(), masked);
+            last = matcher.end();
+        } while (matcher.find());
+
+        return masked.append(value, last, value.length()).toString();
+    }
+
+    private PartialMask rule(final Matcher matcher) {
+        for (int i = 0; i < groups.length - 1; i++) {
+            if (matcher.start(groups[i]) >= 0) {
+                return masks.get(i);
+            }
+        }
+
+        return masks.get(groups.length - 1);
+    }
+}
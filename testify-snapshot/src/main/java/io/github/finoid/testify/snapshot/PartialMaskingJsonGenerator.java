@@ -0,0 +1,64 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.internal.Precondition;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.SerializableString;
+import tools.jackson.core.util.JsonGeneratorDelegate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+
+/**
+ * A {@link JsonGenerator} that masks parts of string values while they are written, see {@link PartialMaskProgram}.
+ * <p>
+ * Property names are written as they are. A single matcher is reused for all values written by the generator.
+ */
+class PartialMaskingJsonGenerator extends JsonGeneratorDelegate {
+    private final PartialMaskProgram program;
+    private final Matcher matcher;
+
+    PartialMaskingJsonGenerator(final JsonGenerator delegate, final PartialMaskProgram program) {
+        super(delegate, false);
+        this.program = program;
+        this.matcher = Precondition.nonNull(program.matcher(), "PartialMaskProgram must not be empty");
+    }
+
+    @Override
+    public JsonGenerator writeArray(final String[] array, final int offset, final int length) throws JacksonException {
+        writeStartArray(array, length);
+        for (int i = offset; i < offset + length; i++) {
+            writeString(array[i]);
+        }
+        return writeEndArray();
+    }
+
+    @Override
+    public JsonGenerator writeString(final String text) throws JacksonException {
+        delegate.writeString(text == null ? null : program.apply(matcher, text));
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeString(final char[] text, final int offset, final int len) throws JacksonException {
+        return writeString(new String(text, offset, len));
+    }
+
+    @Override
+    public JsonGenerator writeString(final SerializableString text) throws JacksonException {
+        final String value = text.getValue();
+        final String masked = program.apply(matcher, value);
+
+        if (masked == value) {
+            delegate.writeString(text);
+        } else {
+            delegate.writeString(masked);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonGenerator writeUTF8String(final byte[] text, final int offset, final int length) throws JacksonException {
+        return writeString(new String(text, offset, length, StandardCharsets.UTF_8));
+    }
+}
@@ -1,7 +1,6 @@
 package io.github.finoid.testify.snapshot;
 
 import io.github.finoid.snapshots.Expect;
-import io.github.finoid.snapshots.serializers.v1.ToStringSnapshotSerializer;
 import io.github.finoid.testify.core.internal.Precondition;
 import io.github.finoid.testify.snapshot.SnapshotDsl.ScenarioSnapshotDsl;
 
@@ -9,10 +8,10 @@ import io.github.finoid.testify.snapshot.SnapshotDsl.ScenarioSnapshotDsl;
  * A DSL for snapshotting plain objects to string.
  */
 public class PlainSnapshotDsl extends ScenarioSnapshotDsl {
-    private final Expect expect;
+    private final SnapshotMatcher matcher;
 
-    private PlainSnapshotDsl(final Expect expect) {
-        this.expect = Precondition.nonNull(expect, "Expect must not be null");
+    private PlainSnapshotDsl(final SnapshotMatcher matcher) {
+        this.matcher = Precondition.nonNull(matcher, "Matcher must not be null");
     }
 
     /**
@@ -23,14 +22,23 @@ public class PlainSnapshotDsl extends ScenarioSnapshotDsl {
      * @throws IllegalArgumentException if expect is null
      */
     public static PlainSnapshotDsl ofExpect(final Expect expect) {
-        return new PlainSnapshotDsl(expect);
+        return new PlainSnapshotDsl(SnapshotMatcher.ofExpect(expect));
+    }
+
+    /**
+     * Factory method to create a {@link PlainSnapshotDsl} instance using the given {@link SnapshotMatcher}.
+     *
+     * @param matcher the snapshot matcher
+     * @return a new {@code PlainSnapshotDsl}
+     * @throws IllegalArgumentException if matcher is null
+     */
+    static PlainSnapshotDsl of(final SnapshotMatcher matcher) {
+        return new PlainSnapshotDsl(matcher);
     }
 
     @Override
     @SuppressWarnings("NullAway")
     public <T> void snapshot(final T toBeSnapshotted) {
-        expect.serializer(new ToStringSnapshotSerializer()) // TODO (nw) option to pass simple module?
-            .scenario(scenario)
-            .toMatchSnapshot(toBeSnapshotted);
+        matcher.match(PlainSnapshotSerializer.text(), scenario, toBeSnapshotted); // TODO (nw) option to pass simple module?
     }
 }
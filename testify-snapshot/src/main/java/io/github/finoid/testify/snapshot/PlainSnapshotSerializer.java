@@ -0,0 +1,80 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.serializers.SerializerType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Serializes objects by their {@link Object#toString()}, in the same format as the {@code ToStringSnapshotSerializer} and
+ * {@code Base64SnapshotSerializer} of the underlying library.
+ */
+@Slf4j
+final class PlainSnapshotSerializer implements SnapshotBodySerializer {
+    private static final String REDUCED_SEPARATOR = "\n\n";
+
+    private final boolean base64;
+
+    private PlainSnapshotSerializer(final boolean base64) {
+        this.base64 = base64;
+    }
+
+    /**
+     * Creates a serializer writing the {@link Object#toString()} of the snapshotted object.
+     *
+     * @return the serializer
+     */
+    static PlainSnapshotSerializer text() {
+        return new PlainSnapshotSerializer(false);
+    }
+
+    /**
+     * Creates a serializer writing the base64 encoded {@link Object#toString()}, or the base64 encoded bytes of a
+     * {@code byte[]}.
+     *
+     * @return the serializer
+     */
+    static PlainSnapshotSerializer base64() {
+        return new PlainSnapshotSerializer(true);
+    }
+
+    @Override
+    public String serialize(final Object object) {
+        final String text = base64
+            ? Base64.getEncoder().encodeToString(bytes(object))
+            : String.valueOf(object);
+
+        return wrap(text);
+    }
+
+    /**
+     * Wraps the given text into a snapshot body, reducing 3 consecutive line breaks to 2 so the body never contains the
+     * separator of the snapshot file.
+     *
+     * @param text the text
+     * @return the snapshot body
+     */
+    static String wrap(final String text) {
+        final String body = "[\n" + text + "\n]";
+
+        if (!body.contains(SnapshotFile.SEPARATOR)) {
+            return body;
+        }
+
+        log.warn("Found 3 consecutive line breaks in the snapshot, they will be reduced to 2");
+
+        return body.replace(SnapshotFile.SEPARATOR, REDUCED_SEPARATOR);
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return base64 ? SerializerType.BASE64.name() : SerializerType.TEXT.name();
+    }
+
+    private static byte[] bytes(final Object object) {
+        return object instanceof byte[] bytes
+            ? bytes
+            : String.valueOf(object).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,182 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+import tools.jackson.core.TokenStreamContext;
+import tools.jackson.databind.JavaType;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A mask applied by the mapper while a bean property is written, see {@link PropertyMaskingModule}.
+ * <p>
+ * A property mask either masks properties by their dotted path or by their declared type:
+ * <ul>
+ *     <li>A dotted path is matched against the end of the property's path, so {@code password} masks every property named
+ *     {@code password} and {@code user.password} only those directly within a {@code user} property. A segment may be the
+ *     wildcard {@code *}. Array elements don't add a segment.</li>
+ *     <li>A type masks every property whose value is an instance of it, optionally only at any depth below a property
+ *     matching the dotted scope path, e.g. every {@link java.time.Instant} under {@code audit}. The value of an
+ *     {@link Optional} property is matched instead of the optional itself, so an {@code Optional<Instant>} is masked as a
+ *     whole. Elements of collections, maps and arrays aren't properties, so a {@code List<Instant>} isn't masked.</li>
+ * </ul>
+ *
+ * @param scope the dotted path segments preceding the property name, or of the scope of a type mask
+ * @param name  the property name, {@code *} to match any name, or null for a type mask
+ * @param type  the masked type, or null for a path mask
+ */
+record PropertyMask(List<String> scope, @Nullable String name, @Nullable Class<?> type) {
+    private static final String WILDCARD = "*";
+
+    /**
+     * Compiles a mask of the properties matching the given dotted path.
+     *
+     * @param path the dotted property path
+     * @return the compiled mask
+     * @throws IllegalArgumentException if the path is null or invalid
+     */
+    static PropertyMask ofPath(final String path) {
+        final List<String> segments = segments(Precondition.nonNull(path, "Masked property path must not be null"));
+
+        if (segments.isEmpty()) {
+            throw invalid(path);
+        }
+
+        return new PropertyMask(segments.subList(0, segments.size() - 1), segments.get(segments.size() - 1), null);
+    }
+
+    /**
+     * Compiles a mask of the properties of the given type below the given dotted scope path.
+     *
+     * @param type  the masked type
+     * @param scope the dotted scope path, or an empty string to mask the type everywhere
+     * @return the compiled mask
+     * @throws IllegalArgumentException if the type or scope is null, or the scope is invalid
+     */
+    static PropertyMask ofType(final Class<?> type, final String scope) {
+        return new PropertyMask(segments(Precondition.nonNull(scope, "Scope must not be null")), null,
+            Precondition.nonNull(type, "Type must not be null"));
+    }
+
+    /**
+     * Whether the mask may apply to a property, decided once per bean property. A type mask may apply to a property whose
+     * declared type, or the content type of an {@link Optional}, is a subtype or a supertype of the masked type, e.g.
+     * {@link Object}; whether it does is decided by the value, see {@link #matchesValue(Object)}.
+     *
+     * @param propertyName the name of the property
+     * @param propertyType the declared type of the property
+     * @return true if the property needs to be checked while written
+     */
+    boolean appliesTo(final String propertyName, final JavaType propertyType) {
+        if (type == null) {
+            return matches(name, propertyName);
+        }
+
+        final JavaType valueType = propertyType.hasRawClass(Optional.class)
+            ? propertyType.containedTypeOrUnknown(0)
+            : propertyType;
+
+        return type.isAssignableFrom(valueType.getRawClass()) || valueType.getRawClass().isAssignableFrom(type);
+    }
+
+    /**
+     * Whether the mask matches the value of a property it applies to.
+     *
+     * @param value the non-null value of the property
+     * @return true if the mask is a path mask, or the value is an instance of the masked type
+     */
+    boolean matchesValue(final Object value) {
+        if (type == null) {
+            return true;
+        }
+
+        return value instanceof Optional<?> optional
+            ? type.isInstance(optional.orElse(null))
+            : type.isInstance(value);
+    }
+
+    /**
+     * Whether the mask is unconditional for the properties it applies to, so no path needs to be resolved while writing.
+     *
+     * @return true if the mask has no scope
+     */
+    boolean unscoped() {
+        return scope.isEmpty();
+    }
+
+    /**
+     * Whether the scope of the mask matches the path of a property being written.
+     *
+     * @param context the write context of the object the property belongs to
+     * @return true if the property is masked
+     */
+    boolean matchesScope(final TokenStreamContext context) {
+        if (scope.isEmpty()) {
+            return true;
+        }
+
+        if (type == null) {
+            return endsWith(enclosingObject(context.getParent()), scope);
+        }
+
+        for (TokenStreamContext ancestor = enclosingObject(context.getParent()); ancestor != null;
+             ancestor = enclosingObject(ancestor.getParent())) {
+            if (endsWith(ancestor, scope)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean endsWith(@Nullable final TokenStreamContext context, final List<String> segments) {
+        TokenStreamContext current = context;
+
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (current == null || !matches(segments.get(i), current.currentName())) {
+                return false;
+            }
+
+            current = enclosingObject(current.getParent());
+        }
+
+        return true;
+    }
+
+    @Nullable
+    private static TokenStreamContext enclosingObject(@Nullable final TokenStreamContext context) {
+        TokenStreamContext current = context;
+
+        while (current != null && !current.inObject()) {
+            current = current.getParent();
+        }
+
+        return current;
+    }
+
+    private static boolean matches(@Nullable final String segment, @Nullable final String name) {
+        return WILDCARD.equals(segment) || segment != null && segment.equals(name);
+    }
+
+    private static List<String> segments(final String path) {
+        final String trimmed = path.trim();
+
+        if (trimmed.isEmpty()) {
+            return List.of();
+        }
+
+        final List<String> segments = List.of(trimmed.split("\\.", -1));
+
+        if (segments.stream().anyMatch(it -> it.isEmpty() || it.contains("*") && !it.equals(WILDCARD)
+            || it.chars().anyMatch(c -> c == '[' || c == ']' || c == '$' || Character.isWhitespace(c)))) {
+            throw invalid(path);
+        }
+
+        return segments;
+    }
+
+    private static IllegalArgumentException invalid(final String path) {
+        return new IllegalArgumentException("Invalid masked property path, please verify the path. Path: " + path);
+    }
+}
@@ -0,0 +1,155 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.internal.Precondition;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.BeanDescription;
+import tools.jackson.databind.SerializationConfig;
+import tools.jackson.databind.SerializationContext;
+import tools.jackson.databind.ValueSerializer;
+import tools.jackson.databind.module.SimpleModule;
+import tools.jackson.databind.ser.BeanPropertyWriter;
+import tools.jackson.databind.ser.ValueSerializerModifier;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Jackson module masking bean properties while they are written, see {@link PropertyMask}.
+ * <p>
+ * The masks are matched against the name and declared type of every bean property once, when the mapper builds the
+ * serializer of a bean class. Only the writers of properties a mask may apply to are replaced, so properties that can't be
+ * masked are written exactly as without the module. Type masks are matched against the value of those properties again
+ * while they're written, so a type is masked within properties declared as e.g. {@link Object}. Scoped masks resolve the path of the property from the write context
+ * of the generator. Within collections ordered by
+ * {@link DeterministicCollectionModule.NonComparableOrdering#CANONICAL_JSON}, elements are buffered on their own and scopes
+ * only see the path within the element.
+ */
+final class PropertyMaskingModule extends SimpleModule {
+    private final List<PropertyMask> masks;
+
+    /**
+     * Creates a module applying the given masks.
+     *
+     * @param masks the property masks
+     * @throws IllegalArgumentException if masks is null
+     */
+    @SuppressWarnings("this-escape")
+    PropertyMaskingModule(final List<PropertyMask> masks) {
+        this.masks = List.copyOf(Precondition.nonNull(masks, "Masks must not be null"));
+
+        setSerializerModifier(new MaskingSerializerModifier(this.masks));
+    }
+
+    /**
+     * Returns the registration id, which differs per set of masks so that mappers masking different properties are told
+     * apart.
+     *
+     * @return the registration id
+     */
+    @Override
+    public Object getRegistrationId() {
+        return List.of(super.getRegistrationId(), masks);
+    }
+
+    private static final class MaskingSerializerModifier extends ValueSerializerModifier {
+        private static final long serialVersionUID = 1L;
+
+        private final List<PropertyMask> masks;
+
+        private MaskingSerializerModifier(final List<PropertyMask> masks) {
+            this.masks = masks;
+        }
+
+        @Override
+        public List<BeanPropertyWriter> changeProperties(final SerializationConfig config, final BeanDescription.Supplier beanDesc,
+                                                         final List<BeanPropertyWriter> beanProperties) {
+            final List<BeanPropertyWriter> properties = new ArrayList<>(beanProperties.size());
+
+            for (final BeanPropertyWriter property : beanProperties) {
+                final List<PropertyMask> applicable = masks.stream()
+                    .filter(it -> it.appliesTo(property.getName(), property.getType()))
+                    .toList();
+
+                properties.add(applicable.isEmpty() ? property : new MaskingPropertyWriter(property, applicable));
+            }
+
+            return properties;
+        }
+    }
+
+    /**
+     * Writes the masked value instead of the property value when any of its masks matches. The value is read once; values
+     * that aren't masked are written like {@link BeanPropertyWriter#serializeAsProperty} does, so properties excluded by the
+     * inclusion rules stay excluded.
+     */
+    private static final class MaskingPropertyWriter extends BeanPropertyWriter {
+        private static final long serialVersionUID = 1L;
+
+        private final List<PropertyMask> masks;
+        private final boolean unconditional;
+
+        private MaskingPropertyWriter(final BeanPropertyWriter base, final List<PropertyMask> masks) {
+            super(base);
+
+            this.masks = masks;
+            this.unconditional = masks.stream().anyMatch(it -> it.unscoped() && it.type() == null);
+        }
+
+        @Override
+        public void serializeAsProperty(final Object bean, final JsonGenerator g, final SerializationContext ctxt) throws Exception {
+            final Object value = get(bean);
+
+            if (value == null) {
+                serializeNull(g, ctxt);
+            } else if (masked(value, g)) {
+                g.writeName(_name);
+                g.writeString(MaskingJsonGenerator.MASKED_VALUE);
+            } else {
+                serializeValue(bean, value, g, ctxt);
+            }
+        }
+
+        private boolean masked(final Object value, final JsonGenerator g) {
+            return unconditional || masks.stream().anyMatch(it -> it.matchesValue(value) && it.matchesScope(g.streamWriteContext()));
+        }
+
+        private void serializeNull(final JsonGenerator g, final SerializationContext ctxt) {
+            if (_suppressableValue != null && ctxt.includeFilterSuppressNulls(_suppressableValue) || _nullSerializer == null) {
+                return;
+            }
+
+            g.writeName(_name);
+            _nullSerializer.serialize(null, g, ctxt);
+        }
+
+        private void serializeValue(final Object bean, final Object value, final JsonGenerator g, final SerializationContext ctxt)
+            throws Exception {
+            ValueSerializer<Object> serializer = _serializer;
+
+            if (serializer == null) {
+                serializer = _dynamicSerializers.serializerFor(value.getClass());
+
+                if (serializer == null) {
+                    serializer = _findAndAddDynamic(_dynamicSerializers, value.getClass(), ctxt);
+                }
+            }
+
+            if (_suppressableValue != null
+                && (MARKER_FOR_EMPTY == _suppressableValue ? serializer.isEmpty(ctxt, value) : _suppressableValue.equals(value))) {
+                return;
+            }
+
+            if (value == bean && _handleSelfReference(bean, g, ctxt, serializer)) {
+                return;
+            }
+
+            g.writeName(_name);
+
+            if (_typeSerializer == null) {
+                serializer.serialize(value, g, ctxt);
+            } else {
+                serializer.serializeWithType(value, g, ctxt, _typeSerializer);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Iterates the elements of a {@link Flow.Publisher} on the calling thread.
+ * <p>
+ * Elements are requested one at a time, only once the previous element has been consumed, so at most a single element of
+ * the publisher is held at any time. Waiting for the subscription and for every element is bounded by a timeout, after
+ * which the subscription is cancelled. An iteration that stops early must be {@link #close() closed} to cancel the
+ * subscription.
+ *
+ * @param <T> the type of the elements
+ */
+final class PublisherIterator<T> implements Iterator<T>, Flow.Subscriber<T>, AutoCloseable {
+    /**
+     * The default time to wait for the subscription and for every element.
+     */
+    static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * Signals the completion of the publisher.
+     */
+    private static final Terminal COMPLETE = new Terminal(null);
+
+    /**
+     * The pending signal, i.e. an element or a {@link Terminal} signal.
+     */
+    private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+
+    private final CompletableFuture<Flow.Subscription> subscription = new CompletableFuture<>();
+    private final Duration timeout;
+
+    private volatile boolean cancelled;
+    @Nullable
+    private Object next;
+    private long index;
+
+    private PublisherIterator(final Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Subscribes to the given publisher, waiting at most {@link #DEFAULT_TIMEOUT} for the subscription and every element.
+     *
+     * @param publisher the publisher
+     * @param <T>       the type of the elements
+     * @return the iterator of the elements of the publisher
+     * @throws IllegalArgumentException if publisher is null
+     */
+    static <T> PublisherIterator<T> subscribe(final Flow.Publisher<T> publisher) {
+        return subscribe(publisher, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Subscribes to the given publisher.
+     *
+     * @param publisher the publisher
+     * @param timeout   the time to wait at most for the subscription and for every element
+     * @param <T>       the type of the elements
+     * @return the iterator of the elements of the publisher
+     * @throws IllegalArgumentException if publisher or timeout is null, or timeout isn't positive
+     */
+    static <T> PublisherIterator<T> subscribe(final Flow.Publisher<T> publisher, final Duration timeout) {
+        Precondition.nonNull(timeout, "Timeout must not be null");
+
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+
+        final PublisherIterator<T> iterator = new PublisherIterator<>(timeout);
+
+        Precondition.nonNull(publisher, "Publisher must not be null").subscribe(iterator);
+
+        return iterator;
+    }
+
+    @Override
+    public void onSubscribe(final Flow.Subscription subscription) {
+        if (!this.subscription.complete(subscription) || cancelled) {
+            subscription.cancel();
+        }
+    }
+
+    @Override
+    public void onNext(final T item) {
+        signals.add(item);
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        signals.add(new Terminal(throwable));
+    }
+
+    @Override
+    public void onComplete() {
+        signals.add(COMPLETE);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = take();
+        }
+
+        return next != COMPLETE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        final Object element = Precondition.nonNull(next);
+        next = null;
+        index++;
+
+        return (T) element;
+    }
+
+    /**
+     * Cancels the subscription, unless the publisher has completed.
+     */
+    @Override
+    public void close() {
+        if (next == COMPLETE || cancelled) {
+            return;
+        }
+
+        cancelled = true;
+
+        final Flow.Subscription subscribed = subscription.getNow(null);
+
+        if (subscribed != null) {
+            subscribed.cancel();
+        }
+    }
+
+    private Object take() {
+        final Object signal;
+
+        try {
+            // The publisher may subscribe asynchronously
+            subscription.get(timeout.toNanos(), TimeUnit.NANOSECONDS).request(1);
+
+            signal = signals.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            close();
+
+            throw new SnapshotExtensionException("The publisher didn't subscribe within " + timeout, e);
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException("Unreachable, the subscription is never completed exceptionally", e);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+
+            throw new SnapshotExtensionException("Interrupted while waiting for the element at index " + index + " of the publisher", e);
+        }
+
+        if (signal == null) {
+            close();
+
+            throw new SnapshotExtensionException("The publisher didn't signal the element at index " + index + " within " + timeout
+                + ", neither completing nor failing");
+        }
+
+        if (signal instanceof Terminal(Throwable error) && error != null) {
+            throw new SnapshotExtensionException("The publisher failed after " + index + " elements. Cause: " + error.getMessage(), error);
+        }
+
+        return signal;
+    }
+
+    /**
+     * The completion of the publisher, or the error it failed with. Kept apart from the elements, which may be throwables.
+     *
+     * @param error the error, or null if the publisher completed
+     */
+    private record Terminal(@Nullable Throwable error) {
+    }
+}
@@ -0,0 +1,286 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.SnapshotFile.Entry;
+import org.jspecify.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Stores every snapshot of a test class in a file of its own, {@code <Class>/<method>[<scenario>].snap}, so updating a
+ * snapshot only rewrites its own file, and tests running in parallel never write the same file.
+ * <p>
+ * Each shard is a {@link SnapshotFile} holding a single entry, opened the first time its snapshot is accessed. File names
+ * are the method name and scenario, with characters that aren't safe in file names percent-encoded, so the stored
+ * identifiers are listed from the directory without reading any file. Names that would exceed the file name limits of
+ * common file systems, and names that only differ in case from the name of another file of the class, which would share
+ * the file on case-insensitive file systems, are shortened if needed and suffixed with {@code ~} and a hash; only those
+ * shards are read to list their identifier.
+ * <p>
+ * The files are listed once, when the identifiers are first listed or a snapshot is first accessed, and snapshots are
+ * looked up by the file listed for their identifier, so a suffixed file is still found once the file it collided with has
+ * been deleted.
+ */
+final class ShardedSnapshotStorage implements SnapshotStorage {
+    static final String EXTENSION = ".snap";
+
+    private static final int MAX_NAME_LENGTH = 200;
+    private static final int HASH_LENGTH = 16;
+    private static final char HASH_MARKER = '~';
+    private static final HexFormat HEX = HexFormat.of().withUpperCase();
+
+    private final String prefix;
+    private final Path directory;
+    private final int compressThreshold;
+
+    private final Map<String, SnapshotFile> shards = new ConcurrentHashMap<>();
+
+    // The file names by identifier, and the lowercase file names, of the listed and written files
+    private final Map<String, String> fileNames = new ConcurrentHashMap<>();
+    private final Set<String> lowercaseFileNames = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean listed;
+
+    ShardedSnapshotStorage(final Class<?> testClass, final Path directory, final int compressThreshold) {
+        this.prefix = Precondition.nonNull(testClass, "TestClass must not be null").getName() + ".";
+        this.directory = Precondition.nonNull(directory, "Directory must not be null");
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public Path path() {
+        return directory;
+    }
+
+    /**
+     * Returns the identifiers of the snapshot files in the directory, listing the directory on first use.
+     *
+     * @return the identifiers
+     * @throws SnapshotExtensionException if the directory can't be listed
+     */
+    @Override
+    public Set<String> identifiers() {
+        list();
+
+        return Set.copyOf(fileNames.keySet());
+    }
+
+    @Override
+    public boolean contains(final String identifier) {
+        final SnapshotFile shard = stored(identifier);
+
+        return shard != null && shard.contains(identifier);
+    }
+
+    @Override
+    public byte @Nullable [] hash(final String identifier) {
+        final SnapshotFile shard = stored(identifier);
+
+        return shard != null ? shard.hash(identifier) : null;
+    }
+
+    @Override
+    public boolean matches(final String identifier, final byte[] body) {
+        final SnapshotFile shard = stored(identifier);
+
+        return shard != null && shard.matches(identifier, body);
+    }
+
+    @Override
+    @Nullable
+    public InputStream openBody(final String identifier) {
+        final SnapshotFile shard = stored(identifier);
+
+        return shard != null ? shard.openBody(identifier) : null;
+    }
+
+    @Override
+    @Nullable
+    public String body(final String identifier) {
+        final SnapshotFile shard = stored(identifier);
+
+        return shard != null ? shard.body(identifier) : null;
+    }
+
+    /**
+     * Writes every snapshot to its own file, and deletes the files of the removed snapshots. Each file is replaced
+     * atomically, see {@link SnapshotFile#write(Map, Set)}. New snapshots are named in order of their identifiers, so of
+     * two new names colliding ignoring case, the same one is suffixed on every run.
+     *
+     * @param snapshots the entries by identifier
+     * @param removed   the identifiers of the snapshots to remove
+     * @throws SnapshotExtensionException if a snapshot file can't be written
+     */
+    @Override
+    public void write(final Map<String, Entry> snapshots, final Set<String> removed) {
+        new TreeMap<>(snapshots).forEach((identifier, entry) -> shard(identifier).write(Map.of(identifier, entry)));
+        removed.forEach(identifier -> {
+            final SnapshotFile shard = stored(identifier);
+
+            if (shard != null) {
+                shard.write(Map.of(), Set.of(identifier));
+                release(identifier);
+            }
+        });
+    }
+
+    /**
+     * Resolves the file name of the snapshot with the given identifier: the listed file of a stored snapshot, or a new
+     * file name that doesn't collide with the name of another file ignoring case.
+     *
+     * @param identifier the snapshot identifier
+     * @return the file name
+     */
+    String fileName(final String identifier) {
+        list();
+
+        final String known = fileNames.get(identifier);
+
+        if (known != null) {
+            return known;
+        }
+
+        synchronized (this) {
+            return fileNames.computeIfAbsent(identifier, key -> {
+                final String name = key.startsWith(prefix) ? key.substring(prefix.length()) : key;
+                final String encoded = encode(name);
+                final String fileName = encoded.length() <= MAX_NAME_LENGTH && !lowercaseFileNames.contains(lowercase(encoded + EXTENSION))
+                    ? encoded + EXTENSION
+                    : hashed(encoded, name);
+
+                lowercaseFileNames.add(lowercase(fileName));
+
+                return fileName;
+            });
+        }
+    }
+
+    private SnapshotFile shard(final String identifier) {
+        return shards.computeIfAbsent(identifier, key -> SnapshotFile.open(directory.resolve(fileName(key)), compressThreshold));
+    }
+
+    /**
+     * Returns the shard of a stored snapshot, or null if no file has been listed or written for the identifier.
+     */
+    @Nullable
+    private SnapshotFile stored(final String identifier) {
+        list();
+
+        return fileNames.containsKey(identifier) ? shard(identifier) : null;
+    }
+
+    /**
+     * Lists the snapshot files of the directory, once.
+     */
+    private void list() {
+        if (listed) {
+            return;
+        }
+
+        synchronized (this) {
+            if (listed) {
+                return;
+            }
+
+            if (Files.isDirectory(directory)) {
+                try (Stream<Path> files = Files.list(directory)) {
+                    files.filter(file -> file.getFileName().toString().endsWith(EXTENSION) && Files.isRegularFile(file))
+                        .forEach(file -> identifiers(file).forEach(identifier -> {
+                            fileNames.put(identifier, file.getFileName().toString());
+                            lowercaseFileNames.add(lowercase(file.getFileName().toString()));
+                        }));
+                } catch (final IOException e) {
+                    throw new SnapshotExtensionException("Unable to list snapshot files in " + directory, e);
+                }
+            }
+
+            listed = true;
+        }
+    }
+
+    /**
+     * Forgets the file of a removed snapshot, so its name may be reused.
+     */
+    private synchronized void release(final String identifier) {
+        final String fileName = fileNames.remove(identifier);
+
+        if (fileName != null) {
+            lowercaseFileNames.remove(lowercase(fileName));
+        }
+
+        shards.remove(identifier);
+    }
+
+    private Stream<String> identifiers(final Path file) {
+        final String fileName = file.getFileName().toString();
+        final String name = fileName.substring(0, fileName.length() - EXTENSION.length());
+
+        if (name.indexOf(HASH_MARKER) >= 0) {
+            return SnapshotFile.open(file).identifiers().stream();
+        }
+
+        return Stream.of(prefix + decode(name));
+    }
+
+    private static String hashed(final String encoded, final String name) {
+        final String hash = HEX.formatHex(SnapshotHash.of(name)).substring(0, HASH_LENGTH);
+
+        return encoded.substring(0, Math.min(encoded.length(), MAX_NAME_LENGTH - HASH_LENGTH - 1)) + HASH_MARKER + hash + EXTENSION;
+    }
+
+    private static String lowercase(final String fileName) {
+        return fileName.toLowerCase(Locale.ROOT);
+    }
+
+    private static String encode(final String name) {
+        final StringBuilder encoded = new StringBuilder(name.length());
+
+        for (final byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            if (isSafe(b)) {
+                encoded.append((char) b);
+            } else {
+                encoded.append('%').append(HEX.toHexDigits(b));
+            }
+        }
+
+        return encoded.toString();
+    }
+
+    private static String decode(final String name) {
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream(name.length());
+
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+
+            if (c == '%' && i + 2 < name.length()) {
+                decoded.write(HexFormat.fromHexDigits(name, i + 1, i + 3));
+                i += 2;
+            } else {
+                decoded.write(c);
+            }
+        }
+
+        return decoded.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Letters, digits and {@code _ - . [ ] $} are kept, as they're valid in file names on all common file systems.
+     */
+    private static boolean isSafe(final byte b) {
+        return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9'
+            || b == '_' || b == '-' || b == '.' || b == '[' || b == ']' || b == '$';
+    }
+}
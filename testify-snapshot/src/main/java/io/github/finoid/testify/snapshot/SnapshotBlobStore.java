@@ -0,0 +1,351 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.SnapshotFile.Entry;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The snapshot bodies of a module, each stored once in a file named by its SHA-256 hash,
+ * {@code __snapshots__/blobs/<hh>/<hash>.snap}, see {@link ContentAddressedSnapshotStorage}.
+ * <p>
+ * Test classes refer to blobs by hash from their reference files, {@code <Class>.refs}, one {@code identifier=hash} line
+ * per snapshot. Blob files are opened once per hash and shared by all test classes of the module, so the bodies of
+ * equal snapshots are read and mapped once. Blobs are {@link SnapshotFile}s holding a single entry identified by its hash,
+ * so large bodies are compressed like any other snapshot.
+ * <p>
+ * The store counts the references to every blob. The counts are built from the reference files in the snapshot
+ * directories of the module the first time snapshots are written, and kept up to date by every write; a blob is deleted
+ * once its last reference is replaced. Writes of all test classes of a module are serialized, also across JVMs by a file
+ * lock in the temporary directory, so a blob is never deleted while another class adds a reference to it. Reading is
+ * lock-free.
+ */
+final class SnapshotBlobStore {
+    static final String REFERENCES_EXTENSION = ".refs";
+
+    private static final String BLOB_DIRECTORY = "blobs";
+    private static final String LOCK_FILE_PREFIX = "testify-snapshot-blobs-";
+    private static final String LOCK_FILE_EXTENSION = ".lock";
+    private static final int LOCK_NAME_HASH_LENGTH = 16;
+    private static final char REFERENCE_SEPARATOR = '=';
+    private static final int FAN_OUT_LENGTH = 2;
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static final Map<Path, SnapshotBlobStore> STORES = new ConcurrentHashMap<>();
+
+    private final Path outputDir;
+    private final String snapshotDir;
+    private final Path directory;
+    private final int compressThreshold;
+
+    private final Map<String, SnapshotFile> blobs = new ConcurrentHashMap<>();
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * The number of references to each blob, by hash, or null until snapshots are first written. Guarded by the lock.
+     */
+    @Nullable
+    private Map<String, Integer> counts;
+
+    private SnapshotBlobStore(final Path outputDir, final String snapshotDir, final int compressThreshold) {
+        this.outputDir = outputDir;
+        this.snapshotDir = snapshotDir;
+        this.directory = outputDir.resolve(snapshotDir).resolve(BLOB_DIRECTORY);
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * Returns the (shared) blob store of the module of the given settings.
+     *
+     * @param settings the snapshot settings
+     * @return the blob store
+     * @throws IllegalArgumentException if settings is null
+     */
+    static SnapshotBlobStore of(final SnapshotSettings settings) {
+        Precondition.nonNull(settings, "Settings must not be null");
+
+        final Path outputDir = settings.outputDir().toAbsolutePath().normalize();
+
+        return STORES.computeIfAbsent(outputDir.resolve(settings.snapshotDir()),
+            key -> new SnapshotBlobStore(outputDir, settings.snapshotDir(), settings.compressThreshold()));
+    }
+
+    /**
+     * Returns the directory of the blob files.
+     *
+     * @return the path of the directory
+     */
+    Path directory() {
+        return directory;
+    }
+
+    /**
+     * Returns the blob with the given hash, opening it the first time it's accessed.
+     *
+     * @param hash the hex encoded hash of the body
+     * @return the blob file, holding a single entry identified by the hash
+     * @throws SnapshotExtensionException if the blob can't be read
+     */
+    SnapshotFile blob(final String hash) {
+        return blobs.computeIfAbsent(hash, key -> SnapshotFile.open(path(key), compressThreshold));
+    }
+
+    /**
+     * Stores the bodies of the given snapshots, then adds or replaces their references in the given reference file, and
+     * removes the references of the removed snapshots, e.g. orphan snapshots no test verifies anymore. Blobs whose last
+     * reference is replaced or removed are deleted once the reference file has been written. A reference file without any
+     * references left is deleted.
+     * <p>
+     * The counts are updated by all added references before any replaced or removed reference is subtracted, so a body moving between
+     * snapshots of the same write is never deleted. Writes hold a file lock of the blob directory, as test classes of the
+     * module may be written by several JVMs, e.g. surefire forks. The in-memory counts of a JVM don't see the references
+     * written by other JVMs, so blobs whose count drops to zero are only deleted once the counts have been rebuilt from the
+     * reference files under the lock.
+     *
+     * @param references the reference file
+     * @param snapshots  the entries by identifier
+     * @param removed    the identifiers of the snapshots to remove
+     * @return the references of the written file, by identifier
+     * @throws SnapshotExtensionException if a blob or the reference file can't be written
+     */
+    Map<String, String> write(final Path references, final Map<String, Entry> snapshots, final Set<String> removed) {
+        lock.lock();
+
+        try (FileChannel channel = lockChannel(); FileLock ignored = channel.lock()) {
+            final Map<String, Integer> current = counts();
+            final Map<String, String> previous = readReferences(references);
+            final Map<String, String> written = new TreeMap<>(previous);
+
+            snapshots.forEach((identifier, entry) -> written.put(identifier, store(entry)));
+            written.keySet().removeAll(removed);
+
+            writeReferences(references, written);
+
+            snapshots.keySet().stream()
+                .filter(written::containsKey)
+                .forEach(identifier -> current.merge(written.get(identifier), 1, Integer::sum));
+
+            final Set<String> unreferenced = new TreeSet<>();
+            final Set<String> changed = new TreeSet<>(snapshots.keySet());
+
+            changed.addAll(removed);
+            changed.forEach(identifier -> {
+                final String replaced = previous.get(identifier);
+
+                if (replaced != null && current.merge(replaced, -1, Integer::sum) <= 0) {
+                    unreferenced.add(replaced);
+                }
+            });
+
+            if (!unreferenced.isEmpty()) {
+                final Map<String, Integer> counted = count();
+
+                this.counts = counted;
+
+                unreferenced.stream()
+                    .filter(hash -> !counted.containsKey(hash))
+                    .forEach(this::delete);
+            }
+
+            return Collections.unmodifiableMap(written);
+        } catch (final IOException e) {
+            throw new SnapshotExtensionException("Unable to lock snapshot blobs in " + directory, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the given reference file. A file that doesn't exist is treated as an empty file.
+     *
+     * @param references the reference file
+     * @return the hex encoded hashes of the referenced bodies, by identifier
+     * @throws SnapshotExtensionException if the file can't be read or is malformed
+     */
+    static Map<String, String> readReferences(final Path references) {
+        if (!Files.isRegularFile(references)) {
+            return Map.of();
+        }
+
+        final List<String> lines;
+
+        try {
+            lines = Files.readAllLines(references, StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new SnapshotExtensionException("Unable to read snapshot references " + references, e);
+        }
+
+        final Map<String, String> parsed = new HashMap<>(lines.size() * 2);
+
+        for (final String line : lines) {
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            final int separator = line.lastIndexOf(REFERENCE_SEPARATOR);
+            final String hash = separator > 0 ? line.substring(separator + 1) : "";
+
+            if (hash.length() != SnapshotHash.LENGTH * 2 || !hash.chars().allMatch(HexFormat::isHexDigit)) {
+                throw new SnapshotExtensionException("Invalid snapshot reference, expected identifier=sha256. File: " + references + ", line: " + line);
+            }
+
+            parsed.put(line.substring(0, separator), hash);
+        }
+
+        return parsed;
+    }
+
+    /**
+     * Writes the blob of the given entry unless it exists. The file is checked rather than the opened blob, as another JVM
+     * may have deleted it since.
+     */
+    private String store(final Entry entry) {
+        final String hash = HEX.formatHex(entry.hash());
+
+        if (!Files.isRegularFile(path(hash))) {
+            blobs.remove(hash);
+            blob(hash).write(Map.of(hash, entry));
+        }
+
+        return hash;
+    }
+
+    private Map<String, Integer> counts() {
+        if (counts == null) {
+            this.counts = count();
+        }
+
+        return counts;
+    }
+
+    /**
+     * Counts the references of the reference files in the snapshot directories under the output directory. Only the
+     * directories are walked; the files of a directory are only listed if it's a snapshot directory, and the subtrees of
+     * snapshot directories, e.g. the blobs, aren't walked at all.
+     */
+    private Map<String, Integer> count() {
+        final Map<String, Integer> counted = new HashMap<>();
+
+        if (Files.isDirectory(outputDir)) {
+            try {
+                Files.walkFileTree(outputDir, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attributes) throws IOException {
+                        if (dir.getFileName() == null || !dir.getFileName().toString().equals(snapshotDir)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + REFERENCES_EXTENSION)) {
+                            for (final Path file : files) {
+                                if (Files.isRegularFile(file)) {
+                                    readReferences(file).values().forEach(hash -> counted.merge(hash, 1, Integer::sum));
+                                }
+                            }
+                        }
+
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                });
+            } catch (final IOException e) {
+                throw new SnapshotExtensionException("Unable to count snapshot references in " + outputDir, e);
+            }
+        }
+
+        return counted;
+    }
+
+    /**
+     * Opens the lock file of the blob directory. It's kept in the temporary directory rather than next to the blobs, so it's
+     * never picked up by version control, and named after the blob directory, so all JVMs writing the same blobs share it.
+     */
+    private FileChannel lockChannel() throws IOException {
+        final String name = HEX.formatHex(SnapshotHash.of(directory.toString())).substring(0, LOCK_NAME_HASH_LENGTH);
+
+        return FileChannel.open(Path.of(System.getProperty("java.io.tmpdir")).resolve(LOCK_FILE_PREFIX + name + LOCK_FILE_EXTENSION),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private void delete(final String hash) {
+        final Path path = path(hash);
+
+        blobs.remove(hash);
+
+        try {
+            for (final Path sidecar : SnapshotFile.sidecars(path)) {
+                Files.deleteIfExists(sidecar);
+            }
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(path.getParent());
+        } catch (final DirectoryNotEmptyException e) {
+            // Other blobs share the directory
+        } catch (final IOException e) {
+            throw new SnapshotExtensionException("Unable to delete unreferenced snapshot blob " + path, e);
+        }
+    }
+
+    private Path path(final String hash) {
+        return directory.resolve(hash.substring(0, FAN_OUT_LENGTH)).resolve(hash + ShardedSnapshotStorage.EXTENSION);
+    }
+
+    /**
+     * Writes the reference file sorted by identifier, replacing it atomically like a {@link SnapshotFile}, or deletes it if
+     * there are no references.
+     */
+    private static void writeReferences(final Path references, final Map<String, String> written) {
+        try {
+            if (written.isEmpty()) {
+                Files.deleteIfExists(references);
+
+                return;
+            }
+
+            final Path parent = references.toAbsolutePath().getParent();
+
+            Files.createDirectories(parent);
+
+            final Path temporary = Files.createTempFile(parent, references.getFileName().toString(), ".tmp");
+
+            try {
+                try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                    for (final Map.Entry<String, String> reference : written.entrySet()) {
+                        writer.write(reference.getKey());
+                        writer.write(REFERENCE_SEPARATOR);
+                        writer.write(reference.getValue());
+                        writer.write('\n');
+                    }
+                }
+
+                SnapshotFile.replace(temporary, references);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (final IOException e) {
+            throw new SnapshotExtensionException("Unable to write snapshot references " + references, e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.Snapshot;
+import io.github.finoid.snapshots.SnapshotSerializerContext;
+import io.github.finoid.snapshots.serializers.SnapshotSerializer;
+
+import java.io.Reader;
+
+/**
+ * A {@link SnapshotSerializer} that serializes the snapshot body on its own, so the body can be verified against a
+ * {@link SnapshotStore} as well as through an {@code Expect}.
+ */
+interface SnapshotBodySerializer extends SnapshotSerializer {
+    /**
+     * Serializes the given object into a snapshot body.
+     *
+     * @param object the object to serialize
+     * @return the snapshot body
+     */
+    String serialize(Object object);
+
+    /**
+     * Serializes the given object into a snapshot body, adding the time spent to the phases of the given timing. Serializers
+     * with separate masking or formatting steps report them as phases of their own.
+     *
+     * @param object the object to serialize
+     * @param timing the timing of the snapshot verification
+     * @return the snapshot body
+     */
+    default String serialize(final Object object, final SnapshotTiming timing) {
+        return timing.time(SnapshotTiming.Phase.SERIALIZATION, () -> serialize(object));
+    }
+
+    /**
+     * Describes how the actual body differs from the expected body, for the report of a snapshot mismatch. The bodies are
+     * read from the given readers, so the stored body is read from the snapshot file rather than decoded into a string.
+     *
+     * @param expected the reader of the stored body, closed by the caller
+     * @param actual   the reader of the serialized body, closed by the caller
+     * @return the description, or an empty string if there is nothing to add to the report
+     */
+    default String describeMismatch(final Reader expected, final Reader actual) {
+        return "";
+    }
+
+    @Override
+    default Snapshot apply(final Object object, final SnapshotSerializerContext gen) {
+        return gen.toSnapshot(serialize(object));
+    }
+}
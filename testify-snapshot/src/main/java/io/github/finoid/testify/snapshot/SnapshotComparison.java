@@ -0,0 +1,246 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * A stream comparing a streamed snapshot body chunk by chunk against the stored body, keeping only the comparison state and
+ * a single chunk of the stored body in memory.
+ * <p>
+ * If the body has to be stored, it's spooled to a temporary file while it's compared and hashed, and handed out as a
+ * read-only mapping of that file, so even new and updated snapshots of large artifacts never occupy the heap.
+ */
+final class SnapshotComparison extends OutputStream {
+    private static final int CHUNK_SIZE = 8192;
+
+    @Nullable
+    private final InputStream expected;
+    @Nullable
+    private final Spool spool;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final byte[] single = new byte[1];
+
+    private long position;
+    private long mismatch = -1;
+    private boolean closed;
+
+    private SnapshotComparison(@Nullable final InputStream expected, @Nullable final Spool spool) {
+        this.expected = expected;
+        this.spool = spool;
+    }
+
+    /**
+     * Creates a comparison against the given stored body.
+     *
+     * @param expected the stream of the stored UTF-8 encoded body, closed with the comparison, or null if the snapshot
+     *                 doesn't exist
+     * @param store    whether the streamed body should be spooled, so it can be stored
+     * @return the comparison
+     * @throws SnapshotExtensionException if the spool file can't be created
+     */
+    static SnapshotComparison of(@Nullable final InputStream expected, final boolean store) {
+        return new SnapshotComparison(expected, store ? Spool.create() : null);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        single[0] = (byte) b;
+
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (expected != null && mismatch < 0) {
+            compare(b, off, len, expected);
+        }
+
+        if (spool != null) {
+            spool.write(b, off, len);
+        }
+
+        position += len;
+    }
+
+    private void compare(final byte[] b, final int off, final int len, final InputStream stored) throws IOException {
+        for (int compared = 0; compared < len; compared += chunk.length) {
+            final int length = Math.min(chunk.length, len - compared);
+            final int read = stored.readNBytes(chunk, 0, length);
+            final int chunkMismatch = Arrays.mismatch(b, off + compared, off + compared + read, chunk, 0, read);
+
+            if (chunkMismatch >= 0 || read < length) {
+                mismatch = position + compared + (chunkMismatch >= 0 ? chunkMismatch : read);
+
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try {
+            if (expected != null) {
+                try (expected) {
+                    if (mismatch < 0 && expected.read() >= 0) {
+                        mismatch = position;
+                    }
+                }
+            }
+        } finally {
+            if (spool != null) {
+                spool.close();
+            }
+        }
+    }
+
+    /**
+     * Whether the streamed body matches the stored body. Only valid once the comparison is closed.
+     *
+     * @return true if the snapshot exists and the bodies are equal
+     */
+    boolean matches() {
+        return expected != null && mismatch < 0;
+    }
+
+    /**
+     * Whether the body written so far differs from the stored body and won't be stored, so writing the rest of the body can't
+     * change the outcome.
+     *
+     * @return true if the comparison has already failed
+     */
+    boolean failed() {
+        return spool == null && mismatch >= 0;
+    }
+
+    /**
+     * Returns the number of bytes written to the comparison.
+     *
+     * @return the size of the streamed body
+     */
+    long size() {
+        return position;
+    }
+
+    /**
+     * Describes where the streamed body starts to differ from the stored body.
+     *
+     * @return the description
+     */
+    String describeMismatch() {
+        return "The bodies differ at byte offset " + mismatch + " (streamed body has " + position + " bytes)";
+    }
+
+    /**
+     * Describes where the body, written element by element until the comparison failed, starts to differ from the stored
+     * body.
+     *
+     * @param element the index of the element the comparison failed in
+     * @return the description
+     */
+    String describeMismatch(final long element) {
+        return "The bodies differ at byte offset " + mismatch + ", in the element at index " + element
+            + ". The remaining elements haven't been compared";
+    }
+
+    /**
+     * Returns the spooled body. Only valid once the comparison is closed.
+     *
+     * @return the entry of the spooled body
+     * @throws IllegalStateException if the body hasn't been spooled
+     */
+    SnapshotFile.Entry spooled() {
+        if (spool == null) {
+            throw new IllegalStateException("The body hasn't been spooled");
+        }
+
+        return spool.entry();
+    }
+
+    /**
+     * A temporary file receiving the streamed body, hashed while it's written.
+     */
+    private static final class Spool {
+        private final Path path;
+        private final FileChannel channel;
+        private final MessageDigest digest;
+
+        private SnapshotFile.@Nullable Entry entry;
+
+        private Spool(final Path path, final FileChannel channel, final MessageDigest digest) {
+            this.path = path;
+            this.channel = channel;
+            this.digest = digest;
+        }
+
+        private static Spool create() {
+            try {
+                final Path path = Files.createTempFile("snapshot", ".spool");
+
+                return new Spool(path, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE), MessageDigest.getInstance("SHA-256"));
+            } catch (final IOException e) {
+                throw new SnapshotExtensionException("Unable to create a spool file for the snapshot", e);
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not supported by the JVM", e);
+            }
+        }
+
+        private void write(final byte[] b, final int off, final int len) throws IOException {
+            final ByteBuffer chunk = ByteBuffer.wrap(b, off, len);
+
+            digest.update(b, off, len);
+
+            while (chunk.hasRemaining()) {
+                channel.write(chunk);
+            }
+        }
+
+        /**
+         * Maps the spooled body and deletes the file. The mapping stays valid after the file is deleted, so nothing is left
+         * behind once the mapping is garbage collected.
+         */
+        private void close() {
+            try (channel) {
+                final MappedByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                entry = new SnapshotFile.Entry(body, digest.digest());
+            } catch (final IOException e) {
+                throw new SnapshotExtensionException("Unable to map the spooled snapshot " + path, e);
+            } finally {
+                delete();
+            }
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (final IOException e) {
+                // Mapped files can't be deleted on every platform
+                path.toFile().deleteOnExit();
+            }
+        }
+
+        private SnapshotFile.Entry entry() {
+            return Precondition.nonNull(entry, "Entry must not be null");
+        }
+    }
+}
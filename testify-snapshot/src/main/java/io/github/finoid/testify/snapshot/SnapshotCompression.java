@@ -0,0 +1,193 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Streamed deflate compression of snapshot bodies, primed with a preset dictionary of tokens common to snapshot bodies.
+ * <p>
+ * Bodies are compressed from and decompressed into fixed-size chunks, so neither side ever holds a whole body in memory.
+ * The dictionary is part of the storage format, so it's versioned: the id of the dictionary a body has been compressed
+ * with is recorded next to the pointer to the body, see {@link SnapshotFile}. A changed dictionary gets a new id, and the
+ * dictionaries of previous ids are kept, so existing compressed snapshots stay readable. Bodies compressed with a
+ * dictionary of an unknown id, e.g. by a newer version, are rejected rather than decompressed into garbage.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class SnapshotCompression {
+    /**
+     * The id of the dictionary new bodies are compressed with.
+     */
+    static final int DICTIONARY_ID = 1;
+    /**
+     * The id of the dictionary of bodies compressed before dictionaries had ids.
+     */
+    static final int UNVERSIONED_DICTIONARY_ID = 1;
+
+    /**
+     * The preset dictionary of id 1. Deflate prefers matches close to the end of the dictionary, so the most frequent tokens
+     * come last.
+     */
+    private static final byte[] DICTIONARY_1 = ("""
+        </ns1:Body></ns1:Envelope>xmlns:ns1="http://schemas.xmlsoap.org/soap/envelope/"\
+        <?xml version="1.0" encoding="UTF-8"?>***MASKED***\
+        "createdAt" : "updatedAt" : "timestamp" : "status" : "amount" : "currency" : "version" : \
+        "type" : "value" : "items" : "description" : "email" : "name" : "id" : \
+        null, true, false, "",
+              },
+            },
+          },
+          {
+            "
+        ]
+        """).getBytes(StandardCharsets.UTF_8);
+
+    private static final Map<Integer, byte[]> DICTIONARIES = Map.of(1, DICTIONARY_1);
+
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Compresses the remaining bytes of the given body into the given channel with the dictionary of {@link #DICTIONARY_ID},
+     * without changing the position of the body.
+     *
+     * @param body the body to compress
+     * @param out  the channel to write the compressed body to
+     * @return the number of compressed bytes written
+     * @throws IOException if the compressed body can't be written
+     */
+    static long deflate(final ByteBuffer body, final WritableByteChannel out) throws IOException {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+        long written = 0;
+
+        try {
+            deflater.setDictionary(dictionary(DICTIONARY_ID));
+            deflater.setInput(body.duplicate());
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                deflater.deflate(chunk);
+                chunk.flip();
+                written += chunk.remaining();
+
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+
+                chunk.clear();
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return written;
+    }
+
+    /**
+     * Opens a stream decompressing the given compressed body.
+     *
+     * @param compressed   the compressed body, read from its position without changing it
+     * @param dictionaryId the id of the dictionary the body has been compressed with
+     * @return the stream of the decompressed body
+     * @throws SnapshotExtensionException if the dictionary id is unknown
+     */
+    static InputStream inflate(final ByteBuffer compressed, final int dictionaryId) {
+        return new InflatingInputStream(compressed.duplicate(), dictionary(dictionaryId));
+    }
+
+    private static byte[] dictionary(final int id) {
+        final byte[] dictionary = DICTIONARIES.get(id);
+
+        if (dictionary == null) {
+            throw new SnapshotExtensionException("The compressed snapshot body has been compressed with the unknown dictionary " + id
+                + ", e.g. by a newer version. Known dictionaries: " + new TreeSet<>(DICTIONARIES.keySet()));
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * Decompresses a body chunk by chunk, releasing the inflater once the body is complete or the stream is closed.
+     */
+    private static final class InflatingInputStream extends InputStream {
+        private final Inflater inflater = new Inflater();
+        private final byte[] dictionary;
+
+        private boolean done;
+
+        private InflatingInputStream(final ByteBuffer compressed, final byte[] dictionary) {
+            this.dictionary = dictionary;
+
+            inflater.setInput(compressed);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            while (!done) {
+                final int inflated = inflate(b, off, len);
+
+                if (inflated > 0) {
+                    return inflated;
+                }
+
+                if (inflater.finished()) {
+                    close();
+                } else if (inflater.needsDictionary()) {
+                    setDictionary();
+                } else if (inflater.needsInput()) {
+                    throw new ZipException("Unexpected end of compressed snapshot body");
+                }
+            }
+
+            return -1;
+        }
+
+        private int inflate(final byte[] b, final int off, final int len) throws ZipException {
+            try {
+                return inflater.inflate(b, off, len);
+            } catch (final DataFormatException e) {
+                throw new ZipException("Corrupt compressed snapshot body: " + e.getMessage());
+            }
+        }
+
+        private void setDictionary() throws ZipException {
+            try {
+                inflater.setDictionary(dictionary);
+            } catch (final IllegalArgumentException e) {
+                throw new ZipException("Compressed snapshot body expects a different dictionary than the one recorded in its header");
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!done) {
+                done = true;
+                inflater.end();
+            }
+        }
+    }
+}
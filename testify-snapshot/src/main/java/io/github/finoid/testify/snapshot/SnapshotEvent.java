@@ -0,0 +1,67 @@
+package io.github.finoid.testify.snapshot;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * A JDK Flight Recorder event of a single snapshot verification, with the time spent in each {@link SnapshotTiming.Phase}.
+ * <p>
+ * The event is recorded by {@code -XX:StartFlightRecording} or any other recording enabling
+ * {@code io.github.finoid.testify.Snapshot}. The duration of the event is the total time of the verification.
+ */
+@Name(SnapshotEvent.NAME)
+@Label("Snapshot")
+@Category({"Testify", "Snapshot"})
+@Description("The verification of a snapshot, with the time spent in each phase")
+@StackTrace(false)
+@SuppressWarnings("NullAway.Init")
+final class SnapshotEvent extends Event {
+    static final String NAME = "io.github.finoid.testify.Snapshot";
+
+    @Label("Test Class")
+    String testClass;
+
+    @Label("Test Method")
+    String testMethod;
+
+    @Label("Scenario")
+    @Nullable
+    String scenario;
+
+    @Label("Format")
+    String format;
+
+    @Label("Payload Size")
+    @DataAmount
+    long payloadSize;
+
+    @Label("Serialization")
+    @Timespan
+    long serialization;
+
+    @Label("Masking")
+    @Timespan
+    long masking;
+
+    @Label("Formatting")
+    @Timespan
+    long formatting;
+
+    @Label("Comparison")
+    @Timespan
+    long comparison;
+
+    @Label("File I/O")
+    @Timespan
+    long io;
+
+    @Label("Passed")
+    boolean passed;
+}
@@ -0,0 +1,136 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.Snapshot;
+import io.github.finoid.snapshots.SnapshotHeader;
+import io.github.finoid.snapshots.comparators.SnapshotComparator;
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.snapshots.reporters.SnapshotReporter;
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The {@code comparator} and {@code reporters} configured in the {@code snapshot.properties} file, consulted by the
+ * {@link SnapshotStore} once a body doesn't match the stored body byte by byte.
+ * <p>
+ * Bodies equal byte by byte always match, so the comparator only decides about the bodies that differ, e.g. to ignore
+ * whitespace. The reporters report the snapshots the comparator rejects, before the store fails the verification itself.
+ * The default plain text comparator and reporter add nothing to the byte comparison and the report of the store, so they
+ * aren't consulted.
+ *
+ * @param comparator the configured comparator, or null if the bodies are compared byte by byte only
+ * @param reporters  the configured reporters
+ */
+record SnapshotFallbackComparison(@Nullable SnapshotComparator comparator, List<SnapshotReporter> reporters) {
+    /**
+     * Compares byte by byte only, and reports mismatches by the store alone.
+     */
+    static final SnapshotFallbackComparison NONE = new SnapshotFallbackComparison(null, List.of());
+
+    private static final Set<String> DEFAULT_COMPARATORS = Set.of(
+        "io.github.finoid.snapshots.comparators.v1.PlainTextEqualsComparator",
+        "io.github.finoid.snapshots.comparators.PlainTextEqualsComparator"
+    );
+    private static final Set<String> DEFAULT_REPORTERS = Set.of(
+        "io.github.finoid.snapshots.reporters.v1.PlainTextSnapshotReporter",
+        "io.github.finoid.snapshots.reporters.PlainTextSnapshotReporter"
+    );
+
+    SnapshotFallbackComparison {
+        reporters = List.copyOf(Precondition.nonNull(reporters, "Reporters must not be null"));
+    }
+
+    /**
+     * Resolves the comparator and reporters of the given class names.
+     *
+     * @param comparator  the class name of the comparator, blank for the default comparator
+     * @param reporters   the comma separated class names of the reporters, blank for the default reporter
+     * @param classLoader the class loader of the classes
+     * @return the fallback comparison
+     * @throws SnapshotExtensionException if a class can't be instantiated or isn't a comparator or reporter
+     */
+    static SnapshotFallbackComparison of(final String comparator, final String reporters, final ClassLoader classLoader) {
+        final String comparatorName = comparator.trim();
+        final List<SnapshotReporter> configuredReporters = Arrays.stream(reporters.split(","))
+            .map(String::trim)
+            .filter(it -> !it.isEmpty() && !DEFAULT_REPORTERS.contains(it))
+            .map(it -> instantiate("reporters", it, SnapshotReporter.class, classLoader))
+            .toList();
+
+        if ((comparatorName.isEmpty() || DEFAULT_COMPARATORS.contains(comparatorName)) && configuredReporters.isEmpty()) {
+            return NONE;
+        }
+
+        final SnapshotComparator configuredComparator = comparatorName.isEmpty() || DEFAULT_COMPARATORS.contains(comparatorName)
+            ? null
+            : instantiate("comparator", comparatorName, SnapshotComparator.class, classLoader);
+
+        return new SnapshotFallbackComparison(configuredComparator, configuredReporters);
+    }
+
+    /**
+     * Whether a comparator or reporters are configured, so a streamed body has to be kept to consult them.
+     *
+     * @return true if a comparator or reporters are configured
+     */
+    boolean isConfigured() {
+        return comparator != null || !reporters.isEmpty();
+    }
+
+    /**
+     * Consults the comparator about bodies that differ byte by byte.
+     *
+     * @param identifier the snapshot identifier
+     * @param expected   the stored body
+     * @param actual     the verified body
+     * @return true if a comparator is configured and matches the bodies
+     */
+    boolean matches(final String identifier, final String expected, final String actual) {
+        return comparator != null && comparator.matches(snapshot(identifier, expected), snapshot(identifier, actual));
+    }
+
+    /**
+     * Hands the mismatching snapshots to the reporters supporting the given format, which typically fail the verification
+     * with a report of their own.
+     *
+     * @param identifier the snapshot identifier
+     * @param format     the output format of the serializer
+     * @param expected   the stored body
+     * @param actual     the verified body
+     */
+    void report(final String identifier, final String format, final String expected, final String actual) {
+        for (final SnapshotReporter reporter : reporters) {
+            if (reporter.supportsFormat(format)) {
+                reporter.report(snapshot(identifier, expected), snapshot(identifier, actual));
+            }
+        }
+    }
+
+    /**
+     * Creates the snapshot handed to the comparator and reporters, splitting the scenario off the identifier.
+     */
+    private static Snapshot snapshot(final String identifier, final String body) {
+        final int scenario = identifier.endsWith("]") ? identifier.indexOf('[') : -1;
+
+        return Snapshot.builder()
+            .name(scenario < 0 ? identifier : identifier.substring(0, scenario))
+            .scenario(scenario < 0 ? null : identifier.substring(scenario + 1, identifier.length() - 1))
+            .header(new SnapshotHeader())
+            .body(body)
+            .build();
+    }
+
+    private static <T> T instantiate(final String key, final String className, final Class<T> type, final ClassLoader classLoader) {
+        try {
+            return type.cast(Class.forName(className, true, classLoader).getConstructor().newInstance());
+        } catch (final ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException
+                       | InvocationTargetException | ClassCastException e) {
+            throw new SnapshotExtensionException("Invalid " + key + ", expected a " + type.getSimpleName() + " with a public no-arg "
+                + "constructor. " + key + "=" + className, e);
+        }
+    }
+}
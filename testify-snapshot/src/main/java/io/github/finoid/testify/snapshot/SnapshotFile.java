@@ -0,0 +1,957 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.IntStream;
+
+/**
+ * A snapshot file, memory-mapped once and indexed by snapshot identifier.
+ * <p>
+ * The file consists of {@code identifier=header body} entries separated by two blank lines. The optional header is a JSON
+ * object holding the SHA-256 hash and the length of the body, e.g. {@code {"sha256": "...", "length": 42}}. Opening the
+ * file maps it read-only and records the hash, offset and length of every body, so looking up a snapshot is a constant
+ * time index lookup, and a matching snapshot is recognized by its hash without reading its body again. Bodies are only
+ * compared byte by byte for entries without a header, and decoded when they are actually needed, e.g. to report a
+ * mismatch, so memory stays flat regardless of the size of the file.
+ * <p>
+ * Indexing the file skips the bodies by the length in their header, rather than scanning them for the separator, and
+ * trusts the hashes in the headers without reading the bodies. A header whose length doesn't end its body at a separator,
+ * e.g. because the body has been edited by hand, is dropped, so the body is compared byte by byte and the header is
+ * recomputed when the file is written. A header whose hash is stale while its length still fits is noticed once the hash
+ * doesn't match and the body is compared, or once the body is checked against its header, see {@link SnapshotStore}.
+ * <p>
+ * Writing the file adds a header to every written snapshot. Unchanged entries without a header, e.g. of files written
+ * before headers were introduced, are copied without one, so updating a single snapshot doesn't add headers to the whole
+ * file. The hashes of the remaining unchanged entries are carried forward from the headers verified when indexing, so they
+ * are neither hashed nor decompressed again. Only the entries whose header has been dropped are hashed. A header whose hash
+ * is stale while its length still fits is corrected once its snapshot is verified, and fails the verification on CI
+ * environments, see {@link SnapshotStore}.
+ * <p>
+ * Bodies of at least {@code compress-threshold} bytes are stored deflated in a binary sidecar file next to the snapshot
+ * file, {@code <Class>.snap.<version>.deflate}. Their entry keeps the header, extended by a pointer into the sidecar, and a
+ * short placeholder body, so small snapshots stay readable in reviews and large ones don't bloat the repository. Compressed
+ * bodies are streamed in both directions, see {@link SnapshotCompression}. The version of a sidecar is derived from its
+ * content and recorded in the pointers, so a sidecar is never replaced while a snapshot file points into it. Pointers
+ * without a version refer to the sidecar {@code <Class>.snap.deflate} of files written before sidecars were versioned. The
+ * pointer is followed by the id of the compression dictionary, so a body compressed with an unknown dictionary is rejected
+ * when it's read; pointers without one were written with the first dictionary.
+ * <p>
+ * Files checked out with CRLF line endings are normalized into a heap buffer instead of being mapped. On Windows, where a
+ * file can't be replaced or deleted while it's mapped, files are read into the heap as well.
+ * <p>
+ * Reading is thread-safe and lock-free, also while the file is rewritten: a rewrite swaps in a new mapping once it's
+ * complete. Rewrites of the same path are serialized by a fixed set of lock stripes.
+ */
+final class SnapshotFile implements SnapshotStorage {
+    static final String SEPARATOR = "\n\n\n";
+
+    /**
+     * The extension appended to the path of a snapshot file and the version of its sidecar file to get the path of the
+     * sidecar file.
+     */
+    static final String SIDECAR_EXTENSION = ".deflate";
+
+    /**
+     * The number of hex digits of the SHA-256 hash of a sidecar file used as its version.
+     */
+    private static final int SIDECAR_VERSION_LENGTH = 16;
+    /**
+     * The version of the sidecar file of files written before sidecars were versioned.
+     */
+    private static final String UNVERSIONED = "";
+
+    // A mapped file can't be replaced or deleted on Windows until its mapping has been garbage collected
+    private static final boolean MAP_FILES = !System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+
+    private static final byte[] SEPARATOR_BYTES = SEPARATOR.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ENTRY_SEPARATOR_BYTES = "=".getBytes(StandardCharsets.UTF_8);
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static final String HEADER_START = "{\n  \"sha256\": \"";
+    private static final String HEADER_LENGTH = "\",\n  \"length\": ";
+    private static final String HEADER_POINTER = ",\n  \"deflate\": \"";
+    private static final String HEADER_DICTIONARY = ",\n  \"dictionary\": ";
+    private static final String HEADER_END = "\n}";
+    private static final byte[] HEADER_END_BYTES = "\n}".getBytes(StandardCharsets.UTF_8);
+    private static final Pattern HEADER_HASH = Pattern.compile("\"sha256\"\\s*:\\s*\"([0-9a-fA-F]{64})\"");
+    private static final Pattern HEADER_BODY_LENGTH = Pattern.compile("\"length\"\\s*:\\s*(\\d+)");
+    private static final Pattern HEADER_DICTIONARY_ID = Pattern.compile("\"dictionary\"\\s*:\\s*(\\d+)");
+    private static final Pattern HEADER_DEFLATE = Pattern.compile("\"deflate\"\\s*:\\s*\"(?:([0-9a-f]+):)?(\\d+):(\\d+):(\\d+)\"");
+    private static final HexFormat HEX = HexFormat.of();
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final int LOCK_STRIPES = 64;
+    private static final Lock[] LOCKS = IntStream.range(0, LOCK_STRIPES)
+        .mapToObj(it -> new ReentrantLock())
+        .toArray(Lock[]::new);
+
+    private final Path path;
+    private final int compressThreshold;
+
+    private volatile Mapping mapping;
+
+    private SnapshotFile(final Path path, final int compressThreshold) {
+        this.path = path;
+        this.compressThreshold = compressThreshold;
+        this.mapping = Mapping.of(path);
+    }
+
+    /**
+     * Maps and indexes the snapshot file at the given path, writing all bodies uncompressed. A file that doesn't exist is
+     * treated as an empty file.
+     *
+     * @param path the path of the snapshot file
+     * @return the opened snapshot file
+     * @throws SnapshotExtensionException if the file can't be read
+     */
+    static SnapshotFile open(final Path path) {
+        return open(path, 0);
+    }
+
+    /**
+     * Maps and indexes the snapshot file at the given path. A file that doesn't exist is treated as an empty file.
+     *
+     * @param path              the path of the snapshot file
+     * @param compressThreshold the body size in bytes from which bodies are written compressed, or 0 to never compress
+     * @return the opened snapshot file
+     * @throws IllegalArgumentException   if path is null or compressThreshold is negative
+     * @throws SnapshotExtensionException if the file can't be read
+     */
+    static SnapshotFile open(final Path path, final int compressThreshold) {
+        Precondition.nonNull(path, "Path must not be null");
+
+        if (compressThreshold < 0) {
+            throw new IllegalArgumentException("CompressThreshold must not be negative");
+        }
+
+        return new SnapshotFile(path, compressThreshold);
+    }
+
+    /**
+     * Returns the sidecar files of the given snapshot file, i.e. the current one, and those of previous versions that
+     * couldn't be deleted yet.
+     *
+     * @param path the path of the snapshot file
+     * @return the paths of the existing sidecar files
+     * @throws IOException if the directory of the snapshot file can't be listed
+     */
+    static List<Path> sidecars(final Path path) throws IOException {
+        final Path directory = path.toAbsolutePath().getParent();
+
+        if (directory == null || !Files.isDirectory(directory)) {
+            return List.of();
+        }
+
+        final Pattern sidecar = Pattern.compile(Pattern.quote(path.getFileName().toString()) + "(\\.[0-9a-f]+)?"
+            + Pattern.quote(SIDECAR_EXTENSION));
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(it -> sidecar.matcher(it.getFileName().toString()).matches())
+                .sorted()
+                .toList();
+        }
+    }
+
+    private static Path sidecar(final Path path, final String version) {
+        return path.resolveSibling(path.getFileName() + (version.isEmpty() ? "" : "." + version) + SIDECAR_EXTENSION);
+    }
+
+    /**
+     * Returns the path of the snapshot file.
+     *
+     * @return the path
+     */
+    @Override
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Returns the identifiers of all snapshots in the file.
+     *
+     * @return an unmodifiable view of the identifiers
+     */
+    @Override
+    public Set<String> identifiers() {
+        return Collections.unmodifiableSet(mapping.index().keySet());
+    }
+
+    /**
+     * Determines if the file contains a snapshot with the given identifier.
+     *
+     * @param identifier the snapshot identifier
+     * @return true if the snapshot exists
+     */
+    @Override
+    public boolean contains(final String identifier) {
+        return mapping.index().containsKey(identifier);
+    }
+
+    /**
+     * Returns the hash stored in the header of the snapshot with the given identifier.
+     *
+     * @param identifier the snapshot identifier
+     * @return the hash, or null if the snapshot doesn't exist or has no header
+     */
+    @Override
+    public byte @Nullable [] hash(final String identifier) {
+        final Region region = mapping.index().get(identifier);
+
+        return region == null ? null : region.hash();
+    }
+
+    /**
+     * Compares the stored snapshot body with the given body, without decoding the stored body. Compressed bodies are
+     * decompressed chunk by chunk while they're compared.
+     *
+     * @param identifier the snapshot identifier
+     * @param body       the UTF-8 encoded body to compare
+     * @return true if the snapshot exists and its body is equal to the given body
+     * @throws SnapshotExtensionException if a compressed body is corrupt
+     */
+    @Override
+    public boolean matches(final String identifier, final byte[] body) {
+        final Mapping current = mapping;
+        final Region region = current.index().get(identifier);
+
+        if (region == null || current.size(region) != body.length) {
+            return false;
+        }
+
+        if (region.deflated() == null) {
+            return current.slice(region).mismatch(ByteBuffer.wrap(body)) == -1;
+        }
+
+        try (InputStream stored = current.open(region)) {
+            final byte[] chunk = new byte[CHUNK_SIZE];
+
+            for (int offset = 0; offset < body.length; offset += chunk.length) {
+                final int length = Math.min(chunk.length, body.length - offset);
+
+                if (stored.readNBytes(chunk, 0, length) != length
+                    || Arrays.mismatch(chunk, 0, length, body, offset, offset + length) >= 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        } catch (final IOException e) {
+            throw new SnapshotExtensionException("Unable to read compressed snapshot " + identifier + " of " + path, e);
+        }
+    }
+
+    /**
+     * Opens a stream of the stored body of the snapshot with the given identifier, without decoding it. Compressed bodies
+     * are decompressed while the stream is read.
+     *
+     * @param identifier the snapshot identifier
+     * @return the stream of the UTF-8 encoded body, or null if the snapshot doesn't exist
+     */
+    @Override
+    @Nullable
+    public InputStream openBody(final String identifier) {
+        final Mapping current = mapping;
+        final Region region = current.index().get(identifier);
+
+        return region == null ? null : current.open(region);
+    }
+
+    /**
+     * Decodes the stored body of the snapshot with the given identifier.
+     *
+     * @param identifier the snapshot identifier
+     * @return the body, or null if the snapshot doesn't exist
+     */
+    @Override
+    @Nullable
+    public String body(final String identifier) {
+        final Mapping current = mapping;
+        final Region region = current.index().get(identifier);
+
+        if (region == null) {
+            return null;
+        }
+
+        if (region.deflated() == null) {
+            return StandardCharsets.UTF_8.decode(current.slice(region)).toString();
+        }
+
+        try (InputStream stored = current.open(region)) {
+            return new String(stored.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (final IOException e) {
+            throw new SnapshotExtensionException("Unable to read compressed snapshot " + identifier + " of " + path, e);
+        }
+    }
+
+    /**
+     * Opens a stream of the remaining bytes of the given buffer, without changing its position.
+     *
+     * @param buffer the buffer
+     * @return the stream
+     */
+    static InputStream stream(final ByteBuffer buffer) {
+        return new ByteBufferInputStream(buffer.duplicate());
+    }
+
+    /**
+     * Writes the file with the given snapshots added or replaced, and the given identifiers removed, sorted by identifier,
+     * and remaps it. Unchanged snapshots are copied from the mapped file as they are. A file without any snapshots left is
+     * deleted, along with its sidecars.
+     * <p>
+     * The file is remapped while holding the lock stripe of its path before the snapshots are merged, so snapshots written
+     * concurrently to the same path by another instance aren't lost.
+     * <p>
+     * The file is written and synced to a temporary file in the same directory, which then atomically replaces the snapshot
+     * file. A crash while writing therefore never leaves a half-written snapshot file, and the mapping of the previous
+     * content stays valid while it's copied. The compressed bodies are written first, to a sidecar file named after its
+     * content, which is moved in place before the snapshot file. Replacing the snapshot file therefore switches to the new
+     * sidecar in a single move; sidecars no longer pointed into are deleted afterward. Compressed bodies that stay
+     * compressed are copied without being decompressed.
+     *
+     * @param snapshots the entries by identifier
+     * @param removed   the identifiers of the snapshots to remove
+     * @throws SnapshotExtensionException if the file can't be written
+     */
+    @Override
+    public void write(final Map<String, Entry> snapshots, final Set<String> removed) {
+        final Lock lock = lock(path);
+
+        lock.lock();
+
+        try {
+            final Mapping current = Mapping.of(path);
+
+            writeMerged(current, snapshots, removed);
+
+            this.mapping = Mapping.of(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeMerged(final Mapping current, final Map<String, Entry> snapshots, final Set<String> removed) {
+        final SortedSet<String> identifiers = new TreeSet<>(current.index().keySet());
+
+        identifiers.addAll(snapshots.keySet());
+        identifiers.removeAll(removed);
+
+        try {
+            if (identifiers.isEmpty()) {
+                Files.deleteIfExists(path);
+                deleteSidecarsExcept(null);
+
+                return;
+            }
+
+            final Path directory = path.toAbsolutePath().getParent();
+
+            Files.createDirectories(directory);
+
+            final Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            final Path temporarySidecar = Files.createTempFile(directory, path.getFileName() + SIDECAR_EXTENSION, ".tmp");
+
+            try {
+                final Map<String, Deflated> compressed = writeSidecar(current, snapshots, identifiers, temporarySidecar);
+                final String version = compressed.isEmpty() ? null : HEX.formatHex(hash(Files.newInputStream(temporarySidecar)))
+                    .substring(0, SIDECAR_VERSION_LENGTH);
+
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    final EntryWriter writer = new EntryWriter(channel);
+
+                    for (final String identifier : identifiers) {
+                        final Entry entry = snapshots.get(identifier);
+                        final Region region = current.index().get(identifier);
+                        final Deflated deflated = compressed.get(identifier);
+
+                        if (version != null && deflated != null) {
+                            writer.writeCompressed(identifier, entry != null ? entry.hash() : hash(current, region), version, deflated);
+                        } else if (entry != null) {
+                            writer.write(identifier, entry);
+                        } else {
+                            writer.write(identifier, current, region);
+                        }
+                    }
+
+                    channel.force(true);
+                }
+
+                // A sidecar of the same version has the same content, and may be mapped
+                if (version != null && !Files.isRegularFile(sidecar(path, version))) {
+                    replace(temporarySidecar, sidecar(path, version));
+                }
+
+                replace(temporary, path);
+                deleteSidecarsExcept(version);
+            } finally {
+                Files.deleteIfExists(temporary);
+                Files.deleteIfExists(temporarySidecar);
+            }
+        } catch (final IOException e) {
+            throw new SnapshotExtensionException("Unable to write snapshot file " + path, e);
+        }
+    }
+
+    /**
+     * Writes the bodies that are stored compressed into the given sidecar file, in order of their identifiers.
+     *
+     * @return the compressed bodies by identifier, without a version
+     */
+    private Map<String, Deflated> writeSidecar(final Mapping current, final Map<String, Entry> snapshots, final SortedSet<String> identifiers,
+                                               final Path sidecar) throws IOException {
+        final Map<String, Deflated> compressed = new HashMap<>();
+
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (final String identifier : identifiers) {
+                final Entry entry = snapshots.get(identifier);
+                final Region region = current.index().get(identifier);
+                final long offset = channel.position();
+
+                if (entry != null && compress(entry.body().remaining())) {
+                    compressed.put(identifier, deflated(offset, SnapshotCompression.deflate(entry.body(), channel), entry.body().remaining(),
+                        SnapshotCompression.DICTIONARY_ID));
+                } else if (entry == null && region.deflated() != null && compress(region.deflated().size())) {
+                    writeFully(channel, current.compressed(region.deflated()));
+                    compressed.put(identifier, deflated(offset, region.deflated().length(), region.deflated().size(), region.deflated().dictionary()));
+                } else if (entry == null && region.deflated() == null && compress(region.length())) {
+                    compressed.put(identifier, deflated(offset, SnapshotCompression.deflate(current.slice(region), channel), region.length(),
+                        SnapshotCompression.DICTIONARY_ID));
+                }
+            }
+
+            channel.force(true);
+        }
+
+        return compressed;
+    }
+
+    private Deflated deflated(final long offset, final long length, final int size, final int dictionary) {
+        if (offset + length > Integer.MAX_VALUE) {
+            throw new SnapshotExtensionException("Snapshot sidecar file of " + path + " exceeds the maximum size of 2 GB");
+        }
+
+        return new Deflated(UNVERSIONED, (int) offset, (int) length, size, dictionary);
+    }
+
+    /**
+     * Deletes the sidecar files other than the one of the given version. Files that can't be deleted yet, e.g. as they're
+     * still mapped, are left for the next write.
+     */
+    private void deleteSidecarsExcept(@Nullable final String version) throws IOException {
+        final Path current = version != null ? sidecar(path, version).toAbsolutePath() : null;
+
+        for (final Path sidecar : sidecars(path)) {
+            if (!sidecar.toAbsolutePath().equals(current)) {
+                try {
+                    Files.deleteIfExists(sidecar);
+                } catch (final IOException e) {
+                    // Deleted by the next write
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the hash in the header of the given region, hashing its body only if it has no header that survived indexing.
+     */
+    private static byte[] hash(final Mapping current, final Region region) throws IOException {
+        if (region.hash() != null) {
+            return region.hash();
+        }
+
+        return region.deflated() == null ? SnapshotHash.of(current.slice(region)) : hash(current.open(region));
+    }
+
+    private static byte[] hash(final InputStream body) throws IOException {
+        try (body) {
+            return SnapshotHash.of(body);
+        }
+    }
+
+    private boolean compress(final long size) {
+        return compressThreshold > 0 && size >= compressThreshold;
+    }
+
+    private static Lock lock(final Path path) {
+        return LOCKS[Math.floorMod(path.toAbsolutePath().normalize().hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * Moves the given file over the target, atomically where the file system supports it.
+     *
+     * @param source the file to move
+     * @param target the file to replace
+     * @throws IOException if the file can't be moved
+     */
+    static void replace(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer map(final Path path, final boolean text) {
+        if (!Files.isRegularFile(path)) {
+            return EMPTY;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+
+            if (size > Integer.MAX_VALUE) {
+                throw new SnapshotExtensionException("Snapshot file " + path + " exceeds the maximum size of 2 GB");
+            }
+
+            final ByteBuffer mapped = MAP_FILES ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : read(channel, (int) size);
+
+            return text && containsCarriageReturn(mapped) ? normalizeLineEndings(mapped) : mapped;
+        } catch (final IOException e) {
+            throw new SnapshotExtensionException("Unable to read snapshot file " + path, e);
+        }
+    }
+
+    private static ByteBuffer read(final FileChannel channel, final int size) throws IOException {
+        final ByteBuffer content = ByteBuffer.allocate(size);
+
+        for (int read = 0; content.hasRemaining() && read >= 0; ) {
+            read = channel.read(content);
+        }
+
+        return content.flip();
+    }
+
+    private static boolean containsCarriageReturn(final ByteBuffer content) {
+        for (int i = 0; i < content.limit(); i++) {
+            if (content.get(i) == '\r') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static ByteBuffer normalizeLineEndings(final ByteBuffer content) {
+        final ByteBuffer normalized = ByteBuffer.allocate(content.limit());
+
+        for (int i = 0; i < content.limit(); i++) {
+            final byte current = content.get(i);
+
+            if (current == '\r' && i + 1 < content.limit() && content.get(i + 1) == '\n') {
+                continue;
+            }
+
+            normalized.put(current);
+        }
+
+        return normalized.flip();
+    }
+
+    /**
+     * Scans the content once, recording the body region and the hash of every entry. Identifiers end at the first {@code =}, or
+     * at the {@code ]=} closing the scenario if the identifier has one. Headers start with a {@code {} right after the
+     * {@code =} and end at the first closing brace on a line of its own; bodies never start with a brace. Bodies end after
+     * the length in their header, and are only scanned for the separator if their header has no length, or a length that
+     * doesn't end at a separator, in which case the header is dropped.
+     */
+    private static Map<String, Region> index(final ByteBuffer content) {
+        final Map<String, Region> index = new HashMap<>();
+
+        final int end = trimmedEnd(content);
+        int position = skipNewLines(content, 0, end);
+
+        while (position < end) {
+            final int identifierEnd = identifierEnd(content, position, end);
+
+            if (identifierEnd < 0) {
+                throw new SnapshotExtensionException("Malformed snapshot entry at offset " + position + ", expected identifier=body");
+            }
+
+            final int headerStart = identifierEnd + 1;
+            final int headerEnd = headerStart < end && content.get(headerStart) == '{'
+                ? indexOf(content, HEADER_END_BYTES, headerStart, end)
+                : -1;
+
+            final int bodyStart = headerEnd < 0 ? headerStart : headerEnd + HEADER_END_BYTES.length;
+
+            final String identifier = StandardCharsets.UTF_8.decode(content.slice(position, identifierEnd - position)).toString();
+            final String header = headerEnd < 0 ? "" : StandardCharsets.UTF_8.decode(content.slice(headerStart, bodyStart - headerStart)).toString();
+
+            final long length = headerLength(header);
+            final boolean skippable = length >= 0 && endsBody(content, bodyStart + length, end);
+            final int separator = skippable
+                ? (bodyStart + length == end ? -1 : (int) (bodyStart + length))
+                : indexOf(content, SEPARATOR_BYTES, bodyStart, end);
+            final int bodyEnd = separator < 0 ? end : separator;
+
+            final Deflated deflated = headerDeflated(header);
+            final byte[] hash = headerHash(header);
+            final boolean stale = length >= 0 && !skippable;
+
+            index.put(identifier.trim(), new Region(bodyStart, bodyEnd - bodyStart, stale ? null : hash, headerEnd >= 0, deflated));
+
+            position = separator < 0 ? end : skipNewLines(content, separator + SEPARATOR_BYTES.length, end);
+        }
+
+        return index;
+    }
+
+    /**
+     * Determines if a body ending at the given position is followed by a separator or the end of the content.
+     */
+    private static boolean endsBody(final ByteBuffer content, final long bodyEnd, final int end) {
+        if (bodyEnd == end) {
+            return true;
+        }
+
+        return bodyEnd + SEPARATOR_BYTES.length <= end
+            && content.slice((int) bodyEnd, SEPARATOR_BYTES.length).equals(ByteBuffer.wrap(SEPARATOR_BYTES));
+    }
+
+    private static long headerLength(final String header) {
+        final Matcher matcher = HEADER_BODY_LENGTH.matcher(header);
+
+        try {
+            return matcher.find() ? Long.parseLong(matcher.group(1)) : -1;
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte @Nullable [] headerHash(final String header) {
+        final Matcher matcher = HEADER_HASH.matcher(header);
+
+        return matcher.find() ? HEX.parseHex(matcher.group(1)) : null;
+    }
+
+    @Nullable
+    private static Deflated headerDeflated(final String header) {
+        final Matcher matcher = HEADER_DEFLATE.matcher(header);
+
+        if (!matcher.find()) {
+            return null;
+        }
+
+        final Matcher dictionary = HEADER_DICTIONARY_ID.matcher(header);
+
+        try {
+            return new Deflated(matcher.group(1) != null ? matcher.group(1) : UNVERSIONED, Integer.parseInt(matcher.group(2)),
+                Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)),
+                dictionary.find() ? Integer.parseInt(dictionary.group(1)) : SnapshotCompression.UNVERSIONED_DICTIONARY_ID);
+        } catch (final NumberFormatException e) {
+            throw new SnapshotExtensionException("Malformed snapshot header, the compressed body exceeds the maximum size of 2 GB: " + header, e);
+        }
+    }
+
+    private static int identifierEnd(final ByteBuffer content, final int from, final int end) {
+        for (int i = from; i < end; i++) {
+            final byte current = content.get(i);
+
+            if (current == '=') {
+                return i;
+            }
+
+            if (current == '[') {
+                final int scenarioEnd = indexOf(content, new byte[]{']', '='}, i, end);
+
+                return scenarioEnd < 0 ? -1 : scenarioEnd + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int indexOf(final ByteBuffer content, final byte[] pattern, final int from, final int end) {
+        outer:
+        for (int i = from; i <= end - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (content.get(i + j) != pattern[j]) {
+                    continue outer;
+                }
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    private static int skipNewLines(final ByteBuffer content, final int from, final int end) {
+        int position = from;
+
+        while (position < end && content.get(position) == '\n') {
+            position++;
+        }
+
+        return position;
+    }
+
+    private static int trimmedEnd(final ByteBuffer content) {
+        int end = content.limit();
+
+        while (end > 0 && Character.isWhitespace(content.get(end - 1))) {
+            end--;
+        }
+
+        return end;
+    }
+
+    /**
+     * The mapped content of the file and its sidecars by version, and the index of its snapshot bodies.
+     */
+    private record Mapping(ByteBuffer content, Map<String, ByteBuffer> sidecars, Map<String, Region> index) {
+        private static Mapping of(final Path path) {
+            final Mapping mapping = map(path, false);
+
+            // The file may have been rewritten, and the sidecar it pointed into deleted, after it was read
+            return mapping != null ? mapping : Objects.requireNonNull(map(path, true));
+        }
+
+        /**
+         * Maps the file and its sidecars.
+         *
+         * @return the mapping, or null if a sidecar is missing and not required
+         * @throws SnapshotExtensionException if a required sidecar is missing
+         */
+        @Nullable
+        private static Mapping map(final Path path, final boolean required) {
+            final ByteBuffer content = SnapshotFile.map(path, true);
+            final Map<String, Region> index = SnapshotFile.index(content);
+            final Map<String, ByteBuffer> sidecars = new HashMap<>();
+
+            for (final Region region : index.values()) {
+                if (region.deflated() != null && !sidecars.containsKey(region.deflated().version())) {
+                    final Path sidecar = sidecar(path, region.deflated().version());
+
+                    if (!Files.isRegularFile(sidecar) && !required) {
+                        return null;
+                    }
+
+                    if (!Files.isRegularFile(sidecar)) {
+                        throw new SnapshotExtensionException("Snapshot file " + path + " has compressed snapshots, but its sidecar file "
+                            + sidecar + " is missing");
+                    }
+
+                    sidecars.put(region.deflated().version(), SnapshotFile.map(sidecar, false));
+                }
+            }
+
+            return new Mapping(content, sidecars, index);
+        }
+
+        /**
+         * Returns the body region in the snapshot file, i.e. the placeholder body of a compressed snapshot.
+         */
+        private ByteBuffer slice(final Region region) {
+            return content.slice(region.offset(), region.length());
+        }
+
+        private ByteBuffer compressed(final Deflated deflated) {
+            final ByteBuffer sidecar = sidecars.getOrDefault(deflated.version(), EMPTY);
+
+            if ((long) deflated.offset() + deflated.length() > sidecar.limit()) {
+                throw new SnapshotExtensionException("Compressed snapshot body exceeds its sidecar file, the sidecar file is out of date");
+            }
+
+            return sidecar.slice(deflated.offset(), deflated.length());
+        }
+
+        private int size(final Region region) {
+            return region.deflated() == null ? region.length() : region.deflated().size();
+        }
+
+        private InputStream open(final Region region) {
+            final Deflated deflated = region.deflated();
+
+            return deflated == null ? stream(slice(region)) : SnapshotCompression.inflate(compressed(deflated), deflated.dictionary());
+        }
+    }
+
+    /**
+     * The region of a snapshot body within the file content, the hash of its header, whether it has a header at all, and
+     * where its compressed body is stored if it's compressed.
+     */
+    private record Region(int offset, int length, byte @Nullable [] hash, boolean header, @Nullable Deflated deflated) {
+    }
+
+    /**
+     * The region of a compressed body within a sidecar file.
+     *
+     * @param version    the version of the sidecar file
+     * @param offset     the offset of the compressed body
+     * @param length     the length of the compressed body
+     * @param size       the length of the decompressed body
+     * @param dictionary the id of the dictionary the body has been compressed with, see {@link SnapshotCompression}
+     */
+    private record Deflated(String version, int offset, int length, int size, int dictionary) {
+    }
+
+    /**
+     * Writes the entries of a snapshot file.
+     */
+    private static final class EntryWriter {
+        private final FileChannel channel;
+
+        private boolean first = true;
+
+        private EntryWriter(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void write(final String identifier, final Entry entry) throws IOException {
+            writeHeader(identifier, header(entry.hash(), entry.body().remaining()) + HEADER_END);
+            writeFully(channel, entry.body().duplicate());
+        }
+
+        private void write(final String identifier, final Mapping current, final Region region) throws IOException {
+            if (region.deflated() == null && !region.header()) {
+                writeHeader(identifier, "");
+                writeFully(channel, current.slice(region));
+
+                return;
+            }
+
+            if (region.deflated() == null) {
+                write(identifier, Entry.of(current.slice(region), SnapshotFile.hash(current, region)));
+
+                return;
+            }
+
+            writeHeader(identifier, header(SnapshotFile.hash(current, region), region.deflated().size()) + HEADER_END);
+
+            try (InputStream body = current.open(region)) {
+                body.transferTo(Channels.newOutputStream(channel));
+            }
+        }
+
+        private void writeCompressed(final String identifier, final byte[] hash, final String version, final Deflated deflated) throws IOException {
+            final byte[] placeholder = ("[\ncompressed, " + deflated.size() + " bytes\n]").getBytes(StandardCharsets.UTF_8);
+
+            writeHeader(identifier, header(hash, placeholder.length) + HEADER_POINTER + version + ":" + deflated.offset() + ":"
+                + deflated.length() + ":" + deflated.size() + "\"" + HEADER_DICTIONARY + deflated.dictionary() + HEADER_END);
+            writeFully(channel, ByteBuffer.wrap(placeholder));
+        }
+
+        private static String header(final byte[] hash, final int length) {
+            return HEADER_START + HEX.formatHex(hash) + HEADER_LENGTH + length;
+        }
+
+        private void writeHeader(final String identifier, final String header) throws IOException {
+            if (!first) {
+                writeFully(channel, ByteBuffer.wrap(SEPARATOR_BYTES));
+            }
+
+            writeFully(channel, ByteBuffer.wrap(identifier.getBytes(StandardCharsets.UTF_8)));
+            writeFully(channel, ByteBuffer.wrap(ENTRY_SEPARATOR_BYTES));
+            writeFully(channel, ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8)));
+
+            first = false;
+        }
+    }
+
+    /**
+     * Streams the remaining bytes of a buffer.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+
+            final int length = Math.min(len, buffer.remaining());
+
+            buffer.get(b, off, length);
+
+            return length;
+        }
+    }
+
+    /**
+     * A snapshot body and its hash.
+     *
+     * @param body the UTF-8 encoded body
+     * @param hash the SHA-256 hash of the body
+     */
+    record Entry(ByteBuffer body, byte[] hash) {
+        /**
+         * Creates an entry of the given body, hashing it unless the hash is given.
+         *
+         * @param body the UTF-8 encoded body
+         * @param hash the hash of the body, or null to hash the body
+         * @return the entry
+         */
+        static Entry of(final ByteBuffer body, final byte @Nullable [] hash) {
+            return new Entry(body, hash != null ? hash : SnapshotHash.of(body));
+        }
+
+        /**
+         * Creates an entry of the given body and its hash.
+         *
+         * @param body the body
+         * @param hash the hash of the UTF-8 encoded body
+         * @return the entry
+         */
+        static Entry of(final String body, final byte[] hash) {
+            return new Entry(ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)), hash);
+        }
+
+        /**
+         * Decodes the body.
+         *
+         * @return the decoded body
+         */
+        String text() {
+            return StandardCharsets.UTF_8.decode(body.duplicate()).toString();
+        }
+    }
+}
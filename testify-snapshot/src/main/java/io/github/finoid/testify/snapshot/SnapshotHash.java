@@ -0,0 +1,142 @@
+package io.github.finoid.testify.snapshot;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 content hashes of snapshot bodies, as stored in the snapshot headers.
+ * <p>
+ * Bodies are hashed as UTF-8 while they are encoded in small chunks, so hashing a body never materializes its encoded
+ * bytes.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class SnapshotHash {
+    /**
+     * The length of a hash in bytes.
+     */
+    static final int LENGTH = 32;
+
+    private static final String ALGORITHM = "SHA-256";
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Hashes the UTF-8 encoding of the given body. Malformed surrogates are replaced the same way
+     * {@link String#getBytes(java.nio.charset.Charset)} replaces them.
+     *
+     * @param body the body to hash
+     * @return the hash
+     */
+    static byte[] of(final CharSequence body) {
+        final MessageDigest digest = digest();
+        final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+        final CharBuffer input = CharBuffer.wrap(body);
+        final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+
+        CoderResult result;
+
+        do {
+            result = encoder.encode(input, chunk, true);
+            update(digest, chunk);
+        } while (result.isOverflow());
+
+        while (encoder.flush(chunk).isOverflow()) {
+            update(digest, chunk);
+        }
+
+        update(digest, chunk);
+
+        return digest.digest();
+    }
+
+    /**
+     * Computes the length of the UTF-8 encoding of the given body, as hashed by {@link #of(CharSequence)}, without encoding it.
+     *
+     * @param body the body
+     * @return the length in bytes
+     */
+    static long encodedLength(final CharSequence body) {
+        long length = 0;
+
+        for (int i = 0; i < body.length(); i++) {
+            final char c = body.charAt(i);
+
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < body.length() && Character.isLowSurrogate(body.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Malformed surrogates are replaced with '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Hashes the remaining bytes of the given buffer, without changing its position.
+     *
+     * @param body the UTF-8 encoded body to hash
+     * @return the hash
+     */
+    static byte[] of(final ByteBuffer body) {
+        final MessageDigest digest = digest();
+
+        digest.update(body.duplicate());
+
+        return digest.digest();
+    }
+
+    /**
+     * Hashes the remaining bytes of the given stream, reading it in chunks.
+     *
+     * @param body the UTF-8 encoded body to hash, not closed
+     * @return the hash
+     * @throws IOException if the stream can't be read
+     */
+    static byte[] of(final InputStream body) throws IOException {
+        final MessageDigest digest = digest();
+        final byte[] chunk = new byte[CHUNK_SIZE];
+
+        int read;
+
+        while ((read = body.read(chunk)) >= 0) {
+            digest.update(chunk, 0, read);
+        }
+
+        return digest.digest();
+    }
+
+    private static void update(final MessageDigest digest, final ByteBuffer chunk) {
+        chunk.flip();
+        digest.update(chunk);
+        chunk.clear();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not supported by the JVM", e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.Expect;
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Matches snapshotted objects against the stored snapshots of a test method.
+ * <p>
+ * Snapshots are timed per phase and recorded as {@link SnapshotEvent}s. Only the snapshots verified against a
+ * {@link SnapshotStore} are part of the summary of the slowest snapshots of their class, see {@link SnapshotReport}.
+ */
+interface SnapshotMatcher {
+    /**
+     * Serializes the given object and matches it against the stored snapshot.
+     *
+     * @param serializer the serializer of the snapshot body
+     * @param scenario   the scenario, or null if none
+     * @param object     the object to snapshot
+     */
+    void match(SnapshotBodySerializer serializer, @Nullable String scenario, Object object);
+
+    /**
+     * Streams the given byte source into a snapshot body and matches it against the stored snapshot. Matchers that can't
+     * compare streamed bodies serialize the source into a single body instead.
+     *
+     * @param serializer the serializer of the snapshot body
+     * @param scenario   the scenario, or null if none
+     * @param source     the byte source to snapshot
+     */
+    default void matchStream(final StreamSnapshotSerializer serializer, @Nullable final String scenario, final Object source) {
+        match(serializer, scenario, source);
+    }
+
+    /**
+     * Serializes the elements of the given sequence one at a time into a snapshot body and matches them against the stored
+     * snapshot, failing on the first element that doesn't match. Matchers that can't compare streamed bodies serialize the
+     * whole sequence into a single body instead.
+     *
+     * @param serializer the serializer of the snapshot body
+     * @param scenario   the scenario, or null if none
+     * @param sequence   the sequence to snapshot
+     */
+    default void matchEach(final JsonSequenceSerializer serializer, @Nullable final String scenario, final Object sequence) {
+        match(serializer, scenario, sequence);
+    }
+
+    /**
+     * Creates a matcher verifying snapshots through the given {@link Expect}.
+     *
+     * @param expect the expect instance
+     * @return the matcher
+     * @throws IllegalArgumentException if expect is null
+     */
+    static SnapshotMatcher ofExpect(final Expect expect) {
+        Precondition.nonNull(expect, "Expect must not be null");
+
+        return (serializer, scenario, object) -> {
+            final TimedSnapshotSerializer timed = new TimedSnapshotSerializer(serializer);
+
+            boolean passed = false;
+
+            try {
+                expect.serializer(timed)
+                    .scenario(scenario)
+                    .toMatchSnapshot(object);
+                passed = true;
+            } finally {
+                timed.commit(scenario, passed);
+            }
+        };
+    }
+
+    /**
+     * Creates a matcher verifying the snapshots of the given test method against the given store.
+     *
+     * @param store  the snapshot store of the test class
+     * @param method the test method
+     * @return the matcher
+     * @throws IllegalArgumentException if store or method is null
+     */
+    static SnapshotMatcher ofStore(final SnapshotStore store, final Method method) {
+        Precondition.nonNull(store, "Store must not be null");
+
+        return ofStore(() -> store, method);
+    }
+
+    /**
+     * Creates a matcher verifying the snapshots of the given test method against the store of the given supplier. The store
+     * is only requested once the first snapshot is matched, so tests that never snapshot never open it.
+     *
+     * @param store  supplies the snapshot store of the test class
+     * @param method the test method
+     * @return the matcher
+     * @throws IllegalArgumentException if store or method is null
+     */
+    static SnapshotMatcher ofStore(final Supplier<SnapshotStore> store, final Method method) {
+        Precondition.nonNull(store, "Store must not be null");
+        Precondition.nonNull(method, "Method must not be null");
+
+        return new SnapshotMatcher() {
+            @Override
+            public void match(final SnapshotBodySerializer serializer, @Nullable final String scenario, final Object object) {
+                final SnapshotStore opened = store.get();
+
+                timed(opened, method, scenario, serializer, (identifier, timing) ->
+                    opened.verify(identifier, serializer.serialize(object, timing), serializer, timing));
+            }
+
+            @Override
+            public void matchStream(final StreamSnapshotSerializer serializer, @Nullable final String scenario, final Object source) {
+                final SnapshotStore opened = store.get();
+
+                timed(opened, method, scenario, serializer, (identifier, timing) ->
+                    opened.verify(identifier, out -> serializer.write(source, out), serializer.getOutputFormat(), timing));
+            }
+
+            @Override
+            public void matchEach(final JsonSequenceSerializer serializer, @Nullable final String scenario, final Object sequence) {
+                final SnapshotStore opened = store.get();
+
+                timed(opened, method, scenario, serializer, (identifier, timing) ->
+                    opened.verifyEach(identifier, out -> serializer.write(sequence, out, out::failed), serializer.getOutputFormat(),
+                        timing));
+            }
+        };
+    }
+
+    /**
+     * Verifies a snapshot, recording its timing in the report of the store whether it passes or not.
+     */
+    private static void timed(final SnapshotStore store, final Method method, @Nullable final String scenario,
+                              final SnapshotBodySerializer serializer, final BiConsumer<String, SnapshotTiming> verification) {
+        final String identifier = store.identifier(method, scenario);
+        final SnapshotTiming timing = SnapshotTiming.start();
+
+        boolean passed = false;
+
+        try {
+            verification.accept(identifier, timing);
+            passed = true;
+        } finally {
+            store.report().record(identifier, method.getName(), scenario, serializer.getOutputFormat(), passed, timing);
+        }
+    }
+}
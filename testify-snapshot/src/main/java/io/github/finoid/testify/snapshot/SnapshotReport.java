@@ -0,0 +1,153 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.SnapshotTiming.Phase;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Records the timings of the snapshots of a single test class, committing a {@link SnapshotEvent} per snapshot and keeping
+ * the slowest snapshots for the summary logged once the class has finished.
+ * <p>
+ * Only the configured number of slowest snapshots is kept, so recording doesn't grow with the number of snapshots. The
+ * report is safe for concurrent recording by the tests of its class.
+ * <p>
+ * The report covers the snapshots verified against the {@link SnapshotStore} of the class. Snapshots verified through an
+ * {@code Expect} commit their event without being part of the summary, see {@link TimedSnapshotSerializer}.
+ */
+@Slf4j
+final class SnapshotReport {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Class<?> testClass;
+    private final int limit;
+    private final PriorityQueue<Sample> slowest = new PriorityQueue<>(Comparator.comparingLong(Sample::totalNanos));
+
+    /**
+     * Creates a report of the given test class.
+     *
+     * @param testClass the test class
+     * @param limit     the number of slowest snapshots listed by the summary, or 0 to disable the summary
+     * @throws IllegalArgumentException if testClass is null or limit is negative
+     */
+    SnapshotReport(final Class<?> testClass, final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+
+        this.testClass = Precondition.nonNull(testClass, "TestClass must not be null");
+        this.limit = limit;
+    }
+
+    /**
+     * Records a finished snapshot verification.
+     *
+     * @param identifier the snapshot identifier
+     * @param testMethod the name of the test method
+     * @param scenario   the scenario, or null if none
+     * @param format     the output format of the serializer
+     * @param passed     whether the snapshot matched or was stored
+     * @param timing     the timing of the verification
+     */
+    void record(final String identifier, final String testMethod, @Nullable final String scenario, final String format,
+                final boolean passed, final SnapshotTiming timing) {
+        timing.commit(testClass, testMethod, scenario, format, passed);
+
+        if (limit == 0 || timing == SnapshotTiming.NONE) {
+            return;
+        }
+
+        final Sample sample = Sample.of(identifier, timing);
+
+        synchronized (slowest) {
+            if (slowest.size() < limit) {
+                slowest.add(sample);
+            } else if (Precondition.nonNull(slowest.peek()).totalNanos() < sample.totalNanos()) {
+                slowest.poll();
+                slowest.add(sample);
+            }
+        }
+    }
+
+    /**
+     * Returns the slowest recorded snapshots, slowest first.
+     *
+     * @return the slowest snapshots
+     */
+    List<Sample> slowest() {
+        final List<Sample> samples;
+
+        synchronized (slowest) {
+            samples = new ArrayList<>(slowest);
+        }
+
+        samples.sort(Comparator.comparingLong(Sample::totalNanos).reversed());
+
+        return samples;
+    }
+
+    /**
+     * Logs the slowest snapshots of the class. Does nothing if no snapshots have been recorded.
+     */
+    void log() {
+        final List<Sample> samples = slowest();
+
+        if (samples.isEmpty()) {
+            return;
+        }
+
+        final StringBuilder summary = new StringBuilder("Slowest snapshots of ").append(testClass.getName()).append(':');
+
+        samples.forEach(it -> summary.append("\n  ").append(it.describe()));
+
+        log.info(summary.toString());
+    }
+
+    /**
+     * The timing of a single snapshot.
+     *
+     * @param identifier  the snapshot identifier
+     * @param totalNanos  the total time of the verification
+     * @param phaseNanos  the time spent in each phase, indexed by {@link Phase#ordinal()}
+     * @param payloadSize the size of the body in bytes
+     */
+    record Sample(String identifier, long totalNanos, long[] phaseNanos, long payloadSize) {
+        private static Sample of(final String identifier, final SnapshotTiming timing) {
+            final long[] phaseNanos = new long[Phase.values().length];
+
+            for (final Phase phase : Phase.values()) {
+                phaseNanos[phase.ordinal()] = timing.nanos(phase);
+            }
+
+            return new Sample(identifier, timing.totalNanos(), phaseNanos, timing.payloadSize());
+        }
+
+        /**
+         * Describes the sample, e.g. {@code 12.40 ms  MyTest.test (serialization 10.10 ms, comparison 2.20 ms, 4096 bytes)}.
+         *
+         * @return the description
+         */
+        String describe() {
+            final StringBuilder description = new StringBuilder(millis(totalNanos)).append("  ").append(identifier).append(" (");
+
+            for (final Phase phase : Phase.values()) {
+                if (phaseNanos[phase.ordinal()] > 0) {
+                    description.append(phase.name().toLowerCase(Locale.ROOT)).append(' ')
+                        .append(millis(phaseNanos[phase.ordinal()])).append(", ");
+                }
+            }
+
+            return description.append(payloadSize).append(" bytes)").toString();
+        }
+
+        private static String millis(final long nanos) {
+            return String.format(Locale.ROOT, "%.2f ms", nanos / NANOS_PER_MILLI);
+        }
+    }
+}
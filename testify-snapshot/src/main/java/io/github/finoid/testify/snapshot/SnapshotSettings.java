@@ -0,0 +1,323 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The snapshot settings, resolved from the {@code snapshot.properties} file on the classpath. System properties take
+ * precedence over the file, so e.g. {@code -Dupdate-snapshot=MyTest} re-baselines the snapshots of {@code MyTest}. The
+ * deprecated {@code -DupdateSnapshot} override is still honored, and {@code update-snapshot=all} updates all snapshots.
+ * <p>
+ * The {@code comparator} and {@code reporters} keys apply to the {@link SnapshotterExtension} as well: bodies are compared
+ * byte by byte first, and only a mismatch is handed to the configured comparator and reporters, see
+ * {@link SnapshotFallbackComparison}. The {@code serializer} and {@code serializer.*} keys only configure snapshots verified
+ * through an {@code Expect}, as the extension serializes snapshots by the DSL in use, so loading the settings fails if any
+ * of them is set to a value other than its default.
+ *
+ * @param outputDir         the directory the snapshot directories are resolved against, e.g. {@code src/test/java}
+ * @param snapshotDir       the name of the snapshot directory next to the test class, e.g. {@code __snapshots__}
+ * @param updateSnapshot    the filter of snapshots to update, empty to update all snapshots, or {@code null} if snapshots
+ *                          aren't updated
+ * @param ci                whether the tests run on a CI environment, where missing snapshots aren't created
+ * @param compressThreshold the body size in bytes from which snapshots are stored compressed in a sidecar file, or 0 to
+ *                          never compress, see {@link SnapshotFile}
+ * @param layout            how the snapshots of a test class are laid out in files
+ * @param slowestSnapshots  the number of slowest snapshots logged once a test class has finished, or 0 to log none, see
+ *                          {@link SnapshotReport}
+ * @param removeOrphans     whether updating snapshots removes the orphan snapshots matching the update filter, only once
+ *                          every test method of the class has run and passed, see {@link SnapshotStore#flush(boolean)}
+ * @param fallbackComparison the configured comparator and reporters, consulted once a body doesn't match byte by byte
+ */
+record SnapshotSettings(Path outputDir, String snapshotDir, @Nullable String updateSnapshot, boolean ci, int compressThreshold,
+                        Layout layout, int slowestSnapshots, boolean removeOrphans, SnapshotFallbackComparison fallbackComparison) {
+    static final String PROPERTIES_FILE = "snapshot.properties";
+
+    private static final String DEFAULT_OUTPUT_DIR = "src/test/java";
+    private static final String DEFAULT_SNAPSHOT_DIR = "__snapshots__";
+    private static final String NO_UPDATE = "none";
+    private static final String UPDATE_ALL = "all";
+    private static final String LEGACY_UPDATE_SNAPSHOT = "updateSnapshot";
+    private static final int DEFAULT_SLOWEST_SNAPSHOTS = 5;
+
+    /**
+     * The serializer keys only used by snapshots verified through an {@code Expect}, and their default values.
+     */
+    private static final Map<String, String> SERIALIZER_DEFAULTS = Map.of(
+        "serializer", "io.github.finoid.snapshots.serializers.v1.ToStringSnapshotSerializer",
+        "serializer.base64", "io.github.finoid.snapshots.serializers.v1.Base64SnapshotSerializer",
+        "serializer.json", "io.github.finoid.snapshots.jackson2.serializers.v1.JacksonSnapshotSerializer",
+        "serializer.orderedJson", "io.github.finoid.snapshots.jackson2.serializers.v1.DeterministicJacksonSnapshotSerializer"
+    );
+
+    SnapshotSettings {
+        Precondition.nonNull(outputDir, "OutputDir must not be null");
+        Precondition.nonBlank(snapshotDir, "SnapshotDir must not be blank");
+        Precondition.nonNull(layout, "Layout must not be null");
+        Precondition.nonNull(fallbackComparison, "FallbackComparison must not be null");
+
+        if (compressThreshold < 0) {
+            throw new IllegalArgumentException("CompressThreshold must not be negative");
+        }
+
+        if (slowestSnapshots < 0) {
+            throw new IllegalArgumentException("SlowestSnapshots must not be negative");
+        }
+    }
+
+    SnapshotSettings(final Path outputDir, final String snapshotDir, @Nullable final String updateSnapshot, final boolean ci) {
+        this(outputDir, snapshotDir, updateSnapshot, ci, 0, Layout.FILE);
+    }
+
+    SnapshotSettings(final Path outputDir, final String snapshotDir, @Nullable final String updateSnapshot, final boolean ci,
+                     final int compressThreshold, final Layout layout) {
+        this(outputDir, snapshotDir, updateSnapshot, ci, compressThreshold, layout, DEFAULT_SLOWEST_SNAPSHOTS, false,
+            SnapshotFallbackComparison.NONE);
+    }
+
+    /**
+     * How the snapshots of a test class are laid out in files, configured by {@code snapshot-layout}.
+     */
+    enum Layout {
+        /**
+         * All snapshots of a test class in a single file, {@code __snapshots__/<Class>.snap}. The default.
+         */
+        FILE,
+        /**
+         * Every snapshot in a file of its own under a directory per test class,
+         * {@code __snapshots__/<Class>/<method>[<scenario>].snap}.
+         */
+        SHARDED,
+        /**
+         * Every distinct body once per module, {@code __snapshots__/blobs/<hh>/<hash>.snap} under the output directory,
+         * referenced by hash from a file per test class, {@code __snapshots__/<Class>.refs}. Configured as
+         * {@code content-addressed}.
+         */
+        CONTENT_ADDRESSED
+    }
+
+    /**
+     * Resolves the settings from the {@code snapshot.properties} file and the system properties.
+     *
+     * @return the snapshot settings
+     * @throws SnapshotExtensionException if the properties file can't be read, a setting is invalid, or a serializer key is set
+     *                                    to a value other than its default
+     */
+    static SnapshotSettings load() {
+        final Properties properties = readProperties();
+
+        rejectUnsupported(properties);
+
+        final String ciEnvVar = property(properties, "ci-env-var", "");
+
+        return new SnapshotSettings(
+            Path.of(property(properties, "output-dir", DEFAULT_OUTPUT_DIR)),
+            property(properties, "snapshot-dir", DEFAULT_SNAPSHOT_DIR),
+            updateSnapshot(properties),
+            Precondition.isNotBlank(ciEnvVar) && Precondition.isNotBlank(System.getenv(ciEnvVar)),
+            compressThreshold(property(properties, "compress-threshold", "0")),
+            layout(property(properties, "snapshot-layout", "file")),
+            slowestSnapshots(property(properties, "slowest-snapshots", String.valueOf(DEFAULT_SLOWEST_SNAPSHOTS))),
+            removeOrphans(property(properties, "remove-orphans", "false")),
+            SnapshotFallbackComparison.of(property(properties, "comparator", ""), property(properties, "reporters", ""), classLoader())
+        );
+    }
+
+    /**
+     * Resolves the snapshot file of the given test class.
+     *
+     * @param testClass the test class
+     * @return the path of the snapshot file
+     */
+    Path snapshotFile(final Class<?> testClass) {
+        return snapshotDirectory(testClass).resolve(testClass.getSimpleName() + ".snap");
+    }
+
+    /**
+     * Resolves the directory of the snapshot files of the given test class in the {@link Layout#SHARDED sharded} layout.
+     *
+     * @param testClass the test class
+     * @return the path of the directory
+     */
+    Path shardDirectory(final Class<?> testClass) {
+        return snapshotDirectory(testClass).resolve(testClass.getSimpleName());
+    }
+
+    /**
+     * Resolves the reference file of the given test class in the {@link Layout#CONTENT_ADDRESSED content-addressed}
+     * layout.
+     *
+     * @param testClass the test class
+     * @return the path of the reference file
+     */
+    Path referenceFile(final Class<?> testClass) {
+        return snapshotDirectory(testClass).resolve(testClass.getSimpleName() + SnapshotBlobStore.REFERENCES_EXTENSION);
+    }
+
+    private Path snapshotDirectory(final Class<?> testClass) {
+        return outputDir.resolve(testClass.getPackageName().replace('.', '/'))
+            .resolve(snapshotDir);
+    }
+
+    /**
+     * Determines if the snapshot with the given identifier should be updated rather than verified. Snapshots are never
+     * updated on a CI environment, see {@link #rejectUpdateOnCi(String)}.
+     *
+     * @param identifier the snapshot identifier
+     * @return true if the snapshot should be updated
+     */
+    boolean shouldUpdate(final String identifier) {
+        return updateSnapshot != null && !ci && identifier.contains(updateSnapshot);
+    }
+
+    /**
+     * Fails a mismatching snapshot if snapshots are configured to be updated on a CI environment, where updating snapshots
+     * is not allowed.
+     *
+     * @param mismatch the description of the mismatch, reported with the failure
+     * @throws SnapshotExtensionException if snapshots are configured to be updated on a CI environment
+     */
+    void rejectUpdateOnCi(final String mismatch) {
+        if (ci && updateSnapshot != null) {
+            throw new SnapshotExtensionException("Updating snapshots on a CI environment is not allowed. update-snapshot=" + updateSnapshot
+                + "\n\n" + mismatch);
+        }
+    }
+
+    /**
+     * Returns the serializer keys of the given properties, which only configure snapshots verified through an
+     * {@code Expect}, that are set to a value other than their default.
+     *
+     * @param properties the properties of the {@code snapshot.properties} file
+     * @return the keys, sorted
+     */
+    static List<String> unsupportedKeys(final Properties properties) {
+        return properties.stringPropertyNames().stream()
+            .filter(key -> key.equals("serializer") || key.startsWith("serializer."))
+            .filter(key -> !properties.getProperty(key).trim().equals(SERIALIZER_DEFAULTS.get(key)))
+            .sorted()
+            .toList();
+    }
+
+    /**
+     * Fails on serializer keys the extension can't honor, rather than silently serializing the snapshots differently than
+     * configured.
+     */
+    private static void rejectUnsupported(final Properties properties) {
+        final List<String> keys = unsupportedKeys(properties);
+
+        if (keys.isEmpty()) {
+            return;
+        }
+
+        throw new SnapshotExtensionException(String.join(", ", keys) + " in " + PROPERTIES_FILE + " isn't supported by the "
+            + "SnapshotterExtension, which serializes snapshots by the DSL in use, e.g. Snapshotter#json(). Remove the keys, or "
+            + "verify the snapshots through an Expect, e.g. JsonSnapshotDsl#ofExpect(Expect), for them to apply");
+    }
+
+    /**
+     * Resolves the filter of snapshots to update, an empty filter updating all snapshots. The deprecated
+     * {@code updateSnapshot} system property applies unless {@code update-snapshot} is set as a system property, where an
+     * empty value updates all snapshots and {@code false} none.
+     */
+    @Nullable
+    private static String updateSnapshot(final Properties properties) {
+        final String legacy = System.getProperty(LEGACY_UPDATE_SNAPSHOT);
+        final String value;
+
+        if (legacy != null && System.getProperty("update-snapshot") == null) {
+            value = Precondition.isBlank(legacy) ? UPDATE_ALL : "false".equals(legacy.trim()) ? NO_UPDATE : legacy.trim();
+        } else {
+            value = property(properties, "update-snapshot", NO_UPDATE);
+        }
+
+        if (Precondition.isBlank(value) || NO_UPDATE.equals(value)) {
+            return null;
+        }
+
+        return UPDATE_ALL.equals(value) ? "" : value;
+    }
+
+    private static int compressThreshold(final String value) {
+        try {
+            final int compressThreshold = Integer.parseInt(value);
+
+            if (compressThreshold >= 0) {
+                return compressThreshold;
+            }
+        } catch (final NumberFormatException e) {
+            // Reported below
+        }
+
+        throw new SnapshotExtensionException("Invalid compress-threshold, expected a number of bytes or 0 to disable compression. compress-threshold=" + value);
+    }
+
+    private static int slowestSnapshots(final String value) {
+        try {
+            final int slowestSnapshots = Integer.parseInt(value);
+
+            if (slowestSnapshots >= 0) {
+                return slowestSnapshots;
+            }
+        } catch (final NumberFormatException e) {
+            // Reported below
+        }
+
+        throw new SnapshotExtensionException("Invalid slowest-snapshots, expected a number of snapshots or 0 to disable the summary. slowest-snapshots=" + value);
+    }
+
+    private static boolean removeOrphans(final String value) {
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.parseBoolean(value);
+        }
+
+        throw new SnapshotExtensionException("Invalid remove-orphans, expected true or false. remove-orphans=" + value);
+    }
+
+    private static Layout layout(final String value) {
+        for (final Layout layout : Layout.values()) {
+            if (layout.name().replace('_', '-').equalsIgnoreCase(value)) {
+                return layout;
+            }
+        }
+
+        throw new SnapshotExtensionException("Invalid snapshot-layout, expected file, sharded or content-addressed. snapshot-layout=" + value);
+    }
+
+    private static Properties readProperties() {
+        final Properties properties = new Properties();
+
+        try (InputStream inputStream = classLoader().getResourceAsStream(PROPERTIES_FILE)) {
+            if (inputStream != null) {
+                properties.load(inputStream);
+            }
+        } catch (final IOException e) {
+            throw new SnapshotExtensionException("Unable to read " + PROPERTIES_FILE, e);
+        }
+
+        return properties;
+    }
+
+    private static String property(final Properties properties, final String key, final String defaultValue) {
+        final String systemProperty = System.getProperty(key);
+
+        if (systemProperty != null) {
+            return systemProperty.trim();
+        }
+
+        return properties.getProperty(key, defaultValue).trim();
+    }
+
+    private static ClassLoader classLoader() {
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+        return contextClassLoader != null ? contextClassLoader : SnapshotSettings.class.getClassLoader();
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.snapshot.SnapshotFile.Entry;
+import org.jspecify.annotations.Nullable;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The stored snapshots of a single test class, either in a single {@link SnapshotFile}, sharded into one file per
+ * snapshot, see {@link ShardedSnapshotStorage}, or as references to bodies stored once per module, see
+ * {@link ContentAddressedSnapshotStorage}.
+ */
+interface SnapshotStorage {
+    /**
+     * Opens the storage of the given test class in the layout of the given settings.
+     *
+     * @param testClass the test class
+     * @param settings  the snapshot settings
+     * @return the snapshot storage
+     * @throws SnapshotExtensionException if the stored snapshots can't be read
+     */
+    static SnapshotStorage open(final Class<?> testClass, final SnapshotSettings settings) {
+        return switch (settings.layout()) {
+            case FILE -> SnapshotFile.open(settings.snapshotFile(testClass), settings.compressThreshold());
+            case SHARDED -> new ShardedSnapshotStorage(testClass, settings.shardDirectory(testClass), settings.compressThreshold());
+            case CONTENT_ADDRESSED -> new ContentAddressedSnapshotStorage(settings.referenceFile(testClass), SnapshotBlobStore.of(settings));
+        };
+    }
+
+    /**
+     * Returns the path of the storage, for reports.
+     *
+     * @return the snapshot file, the directory of the snapshot files, or the reference file
+     */
+    Path path();
+
+    /**
+     * Returns the identifiers of all stored snapshots.
+     *
+     * @return an unmodifiable view of the identifiers
+     */
+    Set<String> identifiers();
+
+    /**
+     * Determines if a snapshot with the given identifier is stored.
+     *
+     * @param identifier the snapshot identifier
+     * @return true if the snapshot exists
+     */
+    boolean contains(String identifier);
+
+    /**
+     * Returns the hash stored in the header of the snapshot with the given identifier.
+     *
+     * @param identifier the snapshot identifier
+     * @return the hash, or null if the snapshot doesn't exist or has no header
+     */
+    byte @Nullable [] hash(String identifier);
+
+    /**
+     * Compares the stored snapshot body with the given body, without decoding the stored body.
+     *
+     * @param identifier the snapshot identifier
+     * @param body       the UTF-8 encoded body to compare
+     * @return true if the snapshot exists and its body is equal to the given body
+     */
+    boolean matches(String identifier, byte[] body);
+
+    /**
+     * Opens a stream of the stored body of the snapshot with the given identifier, without decoding it.
+     *
+     * @param identifier the snapshot identifier
+     * @return the stream of the UTF-8 encoded body, or null if the snapshot doesn't exist
+     */
+    @Nullable
+    InputStream openBody(String identifier);
+
+    /**
+     * Decodes the stored body of the snapshot with the given identifier.
+     *
+     * @param identifier the snapshot identifier
+     * @return the body, or null if the snapshot doesn't exist
+     */
+    @Nullable
+    String body(String identifier);
+
+    /**
+     * Stores the given snapshots, adding or replacing them.
+     *
+     * @param snapshots the entries by identifier
+     * @throws SnapshotExtensionException if the snapshots can't be written
+     */
+    default void write(final Map<String, Entry> snapshots) {
+        write(snapshots, Set.of());
+    }
+
+    /**
+     * Stores the given snapshots, adding or replacing them, and removes the snapshots with the given identifiers, e.g.
+     * orphan snapshots no test verifies anymore.
+     *
+     * @param snapshots the entries by identifier
+     * @param removed   the identifiers of the snapshots to remove
+     * @throws SnapshotExtensionException if the snapshots can't be written
+     */
+    void write(Map<String, Entry> snapshots, Set<String> removed);
+}
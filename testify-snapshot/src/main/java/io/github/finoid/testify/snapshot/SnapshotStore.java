@@ -0,0 +1,460 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.snapshots.exceptions.SnapshotMatchException;
+import io.github.finoid.snapshots.serializers.SerializerType;
+import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.SnapshotFile.Entry;
+import io.github.finoid.testify.snapshot.SnapshotTiming.Phase;
+import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.Nullable;
+import org.opentest4j.AssertionFailedError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The snapshots of a single test class, backed by a {@link SnapshotStorage}, i.e. an indexed {@link SnapshotFile} or one
+ * file per snapshot.
+ * <p>
+ * Existing snapshots are compared against the mapped file content. New snapshots, and snapshots matching the
+ * {@code update-snapshot} filter, are buffered and written once by {@link #flush()}, so re-baselining a class rewrites its
+ * snapshot file a single time. Streamed snapshots are buffered in temporary files rather than in memory.
+ * <p>
+ * Bodies are compared byte by byte. Only a body that differs is handed to the comparator and reporters configured in the
+ * {@code snapshot.properties} file, if any, see {@link SnapshotFallbackComparison}.
+ * <p>
+ * The store is safe for concurrent verification by the tests of its class. Verifications of the same identifier are
+ * serialized by a lock of their own, so verifications of different identifiers never wait for each other, however long
+ * it takes to write, compare or describe a body. Only the resulting snapshot is published to the buffer.
+ */
+@Slf4j
+final class SnapshotStore {
+    private final Class<?> testClass;
+    private final SnapshotSettings settings;
+    private final SnapshotStorage storage;
+    private final SnapshotReport report;
+    private final SnapshotUsage usage;
+
+    private final Map<String, Entry> pendingSnapshots = new ConcurrentHashMap<>();
+    private final Map<String, Lock> locks = new ConcurrentHashMap<>();
+    private final Set<String> removedOrphans = ConcurrentHashMap.newKeySet();
+
+    SnapshotStore(final Class<?> testClass, final SnapshotSettings settings) {
+        this.testClass = Precondition.nonNull(testClass, "TestClass must not be null");
+        this.settings = Precondition.nonNull(settings, "Settings must not be null");
+        this.storage = SnapshotStorage.open(testClass, settings);
+        this.report = new SnapshotReport(testClass, settings.slowestSnapshots());
+        this.usage = SnapshotUsage.of(storage.identifiers());
+    }
+
+    /**
+     * Opens the store of the given test class, using the settings of the {@code snapshot.properties} file.
+     *
+     * @param testClass the test class
+     * @return the snapshot store
+     * @throws IllegalArgumentException   if testClass is null
+     * @throws SnapshotExtensionException if the settings or the snapshot file can't be read
+     */
+    static SnapshotStore of(final Class<?> testClass) {
+        return new SnapshotStore(testClass, SnapshotSettings.load());
+    }
+
+    /**
+     * Resolves the identifier of the snapshot of the given test method and scenario.
+     *
+     * @param method   the test method
+     * @param scenario the scenario, or null if none
+     * @return the snapshot identifier
+     */
+    String identifier(final Method method, @Nullable final String scenario) {
+        final String identifier = testClass.getName() + "." + method.getName();
+
+        return scenario == null ? identifier : identifier + "[" + scenario + "]";
+    }
+
+    /**
+     * Verifies the given body against the stored snapshot, or buffers it if the snapshot doesn't exist yet or should be
+     * updated. Buffered snapshots are verified like stored snapshots until they are flushed.
+     * <p>
+     * The body is hashed and compared with the hash in the header of the stored snapshot, so the stored body is only compared
+     * if the hashes differ, or the stored snapshot has no valid header. A stored body matching the body despite a differing
+     * hash has a stale header, which is rewritten by {@link #flush()} outside of CI environments. A stored snapshot without a
+     * header, e.g. of a file written before headers were introduced, keeps being compared byte by byte until it's updated,
+     * so verifying matching snapshots never rewrites a committed file.
+     * <p>
+     * On CI environments, and for snapshots matching the {@code update-snapshot} filter, the stored body is compared even if
+     * the hashes are equal, so a body edited by hand while keeping its header fails the verification or is re-baselined
+     * rather than passing against its stale header.
+     *
+     * @param identifier the snapshot identifier
+     * @param body       the snapshot body
+     * @param serializer the serializer of the body, describing mismatches
+     * @throws AssertionFailedError   if the body doesn't match the stored snapshot
+     * @throws SnapshotMatchException if the snapshot doesn't exist on a CI environment
+     */
+    void verify(final String identifier, final String body, final SnapshotBodySerializer serializer) {
+        verify(identifier, body, serializer, SnapshotTiming.NONE);
+    }
+
+    /**
+     * Verifies the given body against the stored snapshot like {@link #verify(String, String, SnapshotBodySerializer)},
+     * adding the time spent to the comparison and I/O phases of the given timing.
+     *
+     * @param identifier the snapshot identifier
+     * @param body       the snapshot body
+     * @param serializer the serializer of the body, describing mismatches
+     * @param timing     the timing of the snapshot verification
+     * @throws AssertionFailedError   if the body doesn't match the stored snapshot
+     * @throws SnapshotMatchException if the snapshot doesn't exist on a CI environment
+     */
+    void verify(final String identifier, final String body, final SnapshotBodySerializer serializer, final SnapshotTiming timing) {
+        usage.mark(identifier);
+
+        timing.payloadSize(SnapshotHash.encodedLength(body));
+
+        final byte[] hash = timing.time(Phase.COMPARISON, () -> SnapshotHash.of(body));
+
+        verifyLocked(identifier, pending -> verify(identifier, pending, hash, body, serializer, timing));
+    }
+
+    /**
+     * Verifies the body of a single identifier, returning the buffered snapshot afterwards.
+     */
+    @Nullable
+    private Entry verify(final String identifier, @Nullable final Entry pending, final byte[] hash, final String body,
+                         final SnapshotBodySerializer serializer, final SnapshotTiming timing) {
+        if (pending == null && !timing.time(Phase.IO, () -> storage.contains(identifier))) {
+            if (settings.ci()) {
+                throw new SnapshotMatchException("Snapshot [" + identifier + "] not found. Has this snapshot been committed?");
+            }
+
+            return Entry.of(body, hash);
+        }
+
+        if (pending != null && Arrays.equals(pending.hash(), hash)) {
+            return pending;
+        }
+
+        boolean staleHeader = false;
+
+        if (pending == null) {
+            final byte[] storedHash = timing.time(Phase.IO, () -> storage.hash(identifier));
+            final boolean hashMatches = storedHash != null && Arrays.equals(storedHash, hash);
+
+            if (hashMatches && !settings.ci() && !settings.shouldUpdate(identifier)) {
+                return null;
+            }
+
+            if (timing.time(Phase.COMPARISON, () -> storage.matches(identifier, body.getBytes(StandardCharsets.UTF_8)))) {
+                // A stale header, e.g. of a body edited by hand, is corrected by the flush. A missing header, e.g. of a file
+                // predating headers, is only added once the snapshot is updated, so matching snapshots never rewrite a file
+                return hashMatches || storedHash == null || settings.ci() ? null : Entry.of(body, hash);
+            }
+
+            staleHeader = hashMatches;
+        }
+
+        if (settings.shouldUpdate(identifier)) {
+            return Entry.of(body, hash);
+        }
+
+        final String expected = pending != null
+            ? pending.text()
+            : Precondition.nonNull(timing.time(Phase.IO, () -> storage.body(identifier)));
+
+        if (timing.time(Phase.COMPARISON, () -> settings.fallbackComparison().matches(identifier, expected, body))) {
+            return pending;
+        }
+
+        final String description = timing.time(Phase.COMPARISON, () -> describeMismatch(identifier, pending, body, serializer));
+        final String mismatch = "Error on: " + identifier + "\n\n"
+            + (description.isEmpty() ? "" : description + "\n\n")
+            + (staleHeader ? "The stored snapshot has been edited without updating the hash in its header.\n\n" : "")
+            + "The snapshot doesn't match the stored snapshot in " + storage.path();
+
+        settings.rejectUpdateOnCi(mismatch);
+        settings.fallbackComparison().report(identifier, serializer.getOutputFormat(), expected, body);
+
+        throw new AssertionFailedError(mismatch, expected, body);
+    }
+
+    /**
+     * Describes the mismatch of the given body, reading the stored body from the snapshot file, or the buffered snapshot.
+     */
+    private String describeMismatch(final String identifier, @Nullable final Entry pending, final String body,
+                                    final SnapshotBodySerializer serializer) {
+        final InputStream stored = pending != null
+            ? SnapshotFile.stream(pending.body())
+            : Precondition.nonNull(storage.openBody(identifier));
+
+        try (Reader expected = new InputStreamReader(stored, StandardCharsets.UTF_8); Reader actual = new StringReader(body)) {
+            return serializer.describeMismatch(expected, actual);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to read the snapshot " + identifier, e);
+        }
+    }
+
+    /**
+     * Verifies a streamed body against the stored snapshot, like {@link #verify(String, String, SnapshotBodySerializer)}.
+     * <p>
+     * The body is compared chunk by chunk against the stored body while it's written, so its memory use doesn't depend on
+     * its size. New and updated bodies are spooled to a temporary file instead of being buffered in memory, as are all
+     * bodies if a comparator or reporters are configured, so a mismatch can be handed to them. Mismatches are reported in
+     * the {@code TEXT} format.
+     *
+     * @param identifier the snapshot identifier
+     * @param body       writes the UTF-8 encoded body to the given stream
+     * @throws AssertionFailedError   if the body doesn't match the stored snapshot
+     * @throws SnapshotMatchException if the snapshot doesn't exist on a CI environment
+     * @throws UncheckedIOException   if the body can't be written
+     */
+    void verify(final String identifier, final BodyWriter body) {
+        verify(identifier, body, SerializerType.TEXT.name(), SnapshotTiming.NONE);
+    }
+
+    /**
+     * Verifies a streamed body against the stored snapshot like {@link #verify(String, BodyWriter)}, adding the time spent
+     * to the comparison and I/O phases of the given timing.
+     *
+     * @param identifier the snapshot identifier
+     * @param body       writes the UTF-8 encoded body to the given stream
+     * @param format     the output format of the serializer, selecting the configured reporters
+     * @param timing     the timing of the snapshot verification
+     * @throws AssertionFailedError   if the body doesn't match the stored snapshot
+     * @throws SnapshotMatchException if the snapshot doesn't exist on a CI environment
+     * @throws UncheckedIOException   if the body can't be written
+     */
+    void verify(final String identifier, final BodyWriter body, final String format, final SnapshotTiming timing) {
+        verifyEach(identifier, out -> {
+            body.writeTo(out);
+
+            return -1;
+        }, format, timing);
+    }
+
+    /**
+     * Verifies a body written element by element against the stored snapshot, like {@link #verify(String, BodyWriter)}. The
+     * writer stops at the first element that doesn't match the stored body, unless the body is stored anyway, and the
+     * mismatch is reported with the index of that element.
+     *
+     * @param identifier the snapshot identifier
+     * @param body       writes the UTF-8 encoded body element by element to the given comparison
+     * @param format     the output format of the serializer, selecting the configured reporters
+     * @param timing     the timing of the snapshot verification
+     * @throws AssertionFailedError   if the body doesn't match the stored snapshot
+     * @throws SnapshotMatchException if the snapshot doesn't exist on a CI environment
+     * @throws UncheckedIOException   if the body can't be written
+     */
+    void verifyEach(final String identifier, final ElementWriter body, final String format, final SnapshotTiming timing) {
+        usage.mark(identifier);
+
+        verifyLocked(identifier, pending -> verify(identifier, pending, body, format, timing));
+    }
+
+    /**
+     * Runs the given verification of a single identifier while holding the lock of the identifier, and buffers the snapshot
+     * it returns. The verification runs outside of the buffer, so it may take as long as it needs.
+     */
+    private void verifyLocked(final String identifier, final Function<@Nullable Entry, @Nullable Entry> verification) {
+        final Lock lock = locks.computeIfAbsent(identifier, key -> new ReentrantLock());
+
+        lock.lock();
+
+        try {
+            final Entry pending = pendingSnapshots.get(identifier);
+            final Entry verified = verification.apply(pending);
+
+            if (verified != null && verified != pending) {
+                pendingSnapshots.put(identifier, verified);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Nullable
+    private Entry verify(final String identifier, @Nullable final Entry pending, final ElementWriter body, final String format,
+                         final SnapshotTiming timing) {
+        final InputStream stored = pending != null
+            ? SnapshotFile.stream(pending.body())
+            : timing.time(Phase.IO, () -> storage.openBody(identifier));
+
+        if (stored == null && settings.ci()) {
+            throw new SnapshotMatchException("Snapshot [" + identifier + "] not found. Has this snapshot been committed?");
+        }
+
+        final SnapshotFallbackComparison fallback = settings.fallbackComparison();
+        final boolean store = stored == null || settings.shouldUpdate(identifier);
+        final SnapshotComparison comparison = SnapshotComparison.of(stored, store || fallback.isConfigured());
+
+        final long failedElement = timing.time(Phase.COMPARISON, () -> write(identifier, body, comparison));
+        timing.payloadSize(comparison.size());
+
+        if (comparison.matches()) {
+            return pending;
+        }
+
+        if (store) {
+            return comparison.spooled();
+        }
+
+        final String expected = fallback.isConfigured()
+            ? pending != null ? pending.text() : Precondition.nonNull(timing.time(Phase.IO, () -> storage.body(identifier)))
+            : "";
+        final String actual = fallback.isConfigured() ? comparison.spooled().text() : "";
+
+        if (timing.time(Phase.COMPARISON, () -> fallback.matches(identifier, expected, actual))) {
+            return pending;
+        }
+
+        final String mismatch = "Error on: " + identifier + "\n\n"
+            + (failedElement < 0 ? comparison.describeMismatch() : comparison.describeMismatch(failedElement)) + "\n\n"
+            + "The snapshot doesn't match the stored snapshot in " + storage.path();
+
+        settings.rejectUpdateOnCi(mismatch);
+        fallback.report(identifier, format, expected, actual);
+
+        throw new AssertionFailedError(mismatch);
+    }
+
+    private static long write(final String identifier, final ElementWriter body, final SnapshotComparison comparison) {
+        try (comparison) {
+            return body.writeTo(comparison);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to write the snapshot " + identifier, e);
+        }
+    }
+
+    /**
+     * Writes the buffered snapshots to the storage, merged with the stored snapshots and sorted by identifier. Snapshot
+     * files are replaced atomically, so they're never left half-written. Does nothing if no snapshots are buffered.
+     * <p>
+     * Must only be called once all tests of the class have finished.
+     *
+     * @throws SnapshotExtensionException if the snapshot file can't be written
+     */
+    void flush() {
+        flush(false);
+    }
+
+    /**
+     * Writes the buffered snapshots to the storage like {@link #flush()}. Orphan snapshots are only removed when opted in by
+     * {@code remove-orphans=true}, while snapshots are updated, and only after a complete run, i.e. every test method of the
+     * class ran and passed: a partial run, a disabled or aborted test, or a test failing before it snapshots leaves snapshots
+     * unverified that are still in use. The removed orphans are those matching the {@code update-snapshot} filter, and
+     * aren't reported by {@link #validate(boolean)}.
+     *
+     * @param completeRun whether every test method of the class ran and passed
+     * @throws SnapshotExtensionException if the snapshot file can't be written
+     */
+    void flush(final boolean completeRun) {
+        final Set<String> orphans = completeRun && settings.removeOrphans()
+            ? usage.unused().stream().filter(settings::shouldUpdate).collect(Collectors.toCollection(TreeSet::new))
+            : Set.of();
+
+        if (pendingSnapshots.isEmpty() && orphans.isEmpty()) {
+            return;
+        }
+
+        storage.write(new TreeMap<>(pendingSnapshots), orphans);
+
+        pendingSnapshots.clear();
+        removedOrphans.addAll(orphans);
+    }
+
+    /**
+     * Returns the storage of the snapshots.
+     *
+     * @return the snapshot storage
+     */
+    SnapshotStorage storage() {
+        return storage;
+    }
+
+    /**
+     * Returns the report of the snapshot timings.
+     *
+     * @return the snapshot report
+     */
+    SnapshotReport report() {
+        return report;
+    }
+
+    /**
+     * Validates that every stored snapshot has been verified. Orphan snapshots are reported as a warning, or fail the
+     * validation if {@code failOnOrphans} is set. The orphans are found by a single scan over the usage bitset of the stored
+     * snapshots, see {@link SnapshotUsage}.
+     *
+     * @param failOnOrphans whether orphan snapshots fail the validation
+     * @throws SnapshotMatchException if orphan snapshots are found and {@code failOnOrphans} is set
+     */
+    void validate(final boolean failOnOrphans) {
+        final List<String> orphans = usage.unused().stream()
+            .filter(orphan -> !removedOrphans.contains(orphan))
+            .toList();
+
+        if (orphans.isEmpty()) {
+            return;
+        }
+
+        final String message = "All unused snapshots:\n" + String.join("\n", orphans)
+            + "\n\nHaving orphan snapshots is a bad practice as it may lead to confusion. Please remove them from " + storage.path();
+
+        if (failOnOrphans) {
+            log.error(message);
+
+            throw new SnapshotMatchException("ERROR: Found orphan snapshots");
+        }
+
+        log.warn(message);
+    }
+
+    /**
+     * Writes a snapshot body to a stream.
+     */
+    @FunctionalInterface
+    interface BodyWriter {
+        /**
+         * Writes the UTF-8 encoded body to the given stream.
+         *
+         * @param out the stream, closed by the caller
+         * @throws IOException if the body can't be written
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes a snapshot body element by element to a comparison.
+     */
+    @FunctionalInterface
+    interface ElementWriter {
+        /**
+         * Writes the UTF-8 encoded body to the given comparison, stopping after the first element once the comparison has
+         * {@link SnapshotComparison#failed() failed}.
+         *
+         * @param out the comparison, closed by the caller
+         * @return the index of the element after which writing stopped, or -1 if the whole body has been written
+         * @throws IOException if the body can't be written
+         */
+        long writeTo(SnapshotComparison out) throws IOException;
+    }
+}
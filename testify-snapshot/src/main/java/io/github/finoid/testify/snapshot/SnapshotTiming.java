@@ -0,0 +1,178 @@
+package io.github.finoid.testify.snapshot;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.function.Supplier;
+
+/**
+ * The time spent in each {@link Phase} of a single snapshot verification, and the size of its payload.
+ * <p>
+ * A timing is confined to the thread verifying the snapshot. It begins the {@link SnapshotEvent} of the verification when
+ * started, and commits it once the verification has finished, see {@link SnapshotReport#record}.
+ */
+final class SnapshotTiming {
+    /**
+     * A timing that records nothing, for snapshots verified outside a {@link SnapshotStore}.
+     */
+    static final SnapshotTiming NONE = new SnapshotTiming(null, 0);
+
+    private final long[] nanos = new long[Phase.values().length];
+    @Nullable
+    private final SnapshotEvent event;
+    private final long startNanos;
+
+    private long payloadSize;
+    private long totalNanos = -1;
+
+    private SnapshotTiming(@Nullable final SnapshotEvent event, final long startNanos) {
+        this.event = event;
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * Starts timing a snapshot verification.
+     *
+     * @return the timing
+     */
+    static SnapshotTiming start() {
+        final SnapshotEvent event = new SnapshotEvent();
+
+        event.begin();
+
+        return new SnapshotTiming(event, System.nanoTime());
+    }
+
+    /**
+     * The phases of a snapshot verification. Serializers that mask and format while they serialize, e.g. the canonical JSON
+     * serialization, report their time as {@link #SERIALIZATION} only.
+     */
+    enum Phase {
+        /**
+         * Serializing the snapshotted object into the snapshot body.
+         */
+        SERIALIZATION,
+        /**
+         * Masking fields of the serialized body.
+         */
+        MASKING,
+        /**
+         * Formatting the masked body.
+         */
+        FORMATTING,
+        /**
+         * Hashing the body and comparing it with the stored snapshot. Streamed bodies are compared while they are written,
+         * so their serialization is reported as comparison. Snapshots verified through an {@code Expect} report all but
+         * their serialization as comparison, including reading the stored snapshot.
+         */
+        COMPARISON,
+        /**
+         * Looking up and reading the stored snapshot.
+         */
+        IO
+    }
+
+    /**
+     * Runs the given action, adding its duration to the given phase.
+     *
+     * @param phase  the phase
+     * @param action the action
+     * @param <T>    the type of the result
+     * @return the result of the action
+     */
+    <T> T time(final Phase phase, final Supplier<T> action) {
+        if (event == null) {
+            return action.get();
+        }
+
+        final long start = System.nanoTime();
+
+        try {
+            return action.get();
+        } finally {
+            nanos[phase.ordinal()] += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Adds the time elapsed since the timing started that isn't part of any phase yet to the given phase, for verifications
+     * whose remaining steps can't be timed one by one.
+     *
+     * @param phase the phase
+     */
+    void attributeRemainder(final Phase phase) {
+        if (event == null) {
+            return;
+        }
+
+        long remainder = System.nanoTime() - startNanos;
+
+        for (final long phaseNanos : nanos) {
+            remainder -= phaseNanos;
+        }
+
+        nanos[phase.ordinal()] += Math.max(0, remainder);
+    }
+
+    /**
+     * Sets the size of the verified body.
+     *
+     * @param payloadSize the size of the UTF-8 encoded body in bytes
+     */
+    void payloadSize(final long payloadSize) {
+        this.payloadSize = payloadSize;
+    }
+
+    long payloadSize() {
+        return payloadSize;
+    }
+
+    long nanos(final Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /**
+     * The total time of the verification. Only valid once the timing has been committed.
+     *
+     * @return the total time in nanoseconds
+     */
+    long totalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Stops the timing and commits its event, if the event is enabled.
+     *
+     * @param testClass  the test class
+     * @param testMethod the name of the test method
+     * @param scenario   the scenario, or null if none
+     * @param format     the output format of the serializer
+     * @param passed     whether the snapshot matched or was stored
+     */
+    void commit(final Class<?> testClass, final String testMethod, @Nullable final String scenario, final String format,
+                final boolean passed) {
+        if (event == null) {
+            return;
+        }
+
+        totalNanos = System.nanoTime() - startNanos;
+
+        event.end();
+
+        if (!event.shouldCommit()) {
+            return;
+        }
+
+        event.testClass = testClass.getName();
+        event.testMethod = testMethod;
+        event.scenario = scenario;
+        event.format = format;
+        event.payloadSize = payloadSize;
+        event.serialization = nanos(Phase.SERIALIZATION);
+        event.masking = nanos(Phase.MASKING);
+        event.formatting = nanos(Phase.FORMATTING);
+        event.comparison = nanos(Phase.COMPARISON);
+        event.io = nanos(Phase.IO);
+        event.passed = passed;
+        event.commit();
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.finoid.testify.snapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks which of the stored snapshots of a test class have been verified, to detect orphan snapshots.
+ * <p>
+ * The stored identifiers are sorted and numbered once, and every verification sets the bit of its identifier in a
+ * concurrent bitset. Finding the orphans is then a single scan over the bitset, in the order of the identifiers. Identifiers
+ * that aren't stored, i.e. new snapshots, are ignored.
+ */
+final class SnapshotUsage {
+    private static final int WORD_BITS = Long.SIZE;
+
+    private final String[] identifiers;
+    private final Map<String, Integer> ordinals;
+    private final AtomicLongArray used;
+
+    private SnapshotUsage(final String[] identifiers) {
+        this.identifiers = identifiers;
+        this.ordinals = new HashMap<>(identifiers.length * 4 / 3 + 1);
+        this.used = new AtomicLongArray((identifiers.length + WORD_BITS - 1) / WORD_BITS);
+
+        for (int i = 0; i < identifiers.length; i++) {
+            ordinals.put(identifiers[i], i);
+        }
+    }
+
+    /**
+     * Creates the usage of the given stored identifiers, none of which is used yet.
+     *
+     * @param identifiers the identifiers of the stored snapshots
+     * @return the usage
+     */
+    static SnapshotUsage of(final Set<String> identifiers) {
+        return new SnapshotUsage(identifiers.stream()
+            .sorted()
+            .toArray(String[]::new));
+    }
+
+    /**
+     * Marks the snapshot with the given identifier as used. Safe for concurrent use.
+     *
+     * @param identifier the snapshot identifier
+     */
+    void mark(final String identifier) {
+        final Integer ordinal = ordinals.get(identifier);
+
+        if (ordinal == null) {
+            return;
+        }
+
+        final int word = ordinal / WORD_BITS;
+        final long bit = 1L << ordinal;
+
+        // Snapshots are usually verified once, but a plain read avoids contended writes for those verified repeatedly
+        if ((used.get(word) & bit) == 0) {
+            used.accumulateAndGet(word, bit, (current, mask) -> current | mask);
+        }
+    }
+
+    /**
+     * Returns the stored snapshots that haven't been marked as used.
+     *
+     * @return the identifiers of the unused snapshots, sorted
+     */
+    List<String> unused() {
+        final List<String> unused = new ArrayList<>();
+
+        for (int word = 0; word < used.length(); word++) {
+            long unmarked = ~used.get(word);
+
+            while (unmarked != 0) {
+                final int ordinal = word * WORD_BITS + Long.numberOfTrailingZeros(unmarked);
+
+                if (ordinal >= identifiers.length) {
+                    break;
+                }
+
+                unused.add(identifiers[ordinal]);
+                unmarked &= unmarked - 1;
+            }
+        }
+
+        return unused;
+    }
+}
@@ -2,17 +2,32 @@ package io.github.finoid.testify.snapshot;
 
 import io.github.finoid.snapshots.Expect;
 import io.github.finoid.snapshots.junit5.SnapshotExtension;
-import lombok.RequiredArgsConstructor;
+import io.github.finoid.testify.core.internal.Precondition;
+import tools.jackson.core.TokenStreamFactory;
 
 /**
  * A convenience class that provides access to various snapshot DSLs.
  * <p>
- * This class is meant to be injected as a parameter in JUnit 5 tests, and it wraps a shared
- * {@link Expect} instance provided by the {@link SnapshotExtension}.
+ * This class is meant to be injected as a parameter in JUnit 5 tests by the {@link SnapshotterExtension}, which verifies
+ * the snapshots against the snapshot store of the test class. It can also wrap a shared {@link Expect} instance provided
+ * by the {@link SnapshotExtension}.
  */
-@RequiredArgsConstructor
 public class Snapshotter {
-    private final Expect expect;
+    private final SnapshotMatcher matcher;
+
+    /**
+     * Creates a {@link Snapshotter} verifying snapshots through the given {@link Expect}.
+     *
+     * @param expect the expect instance
+     * @throws IllegalArgumentException if expect is null
+     */
+    public Snapshotter(final Expect expect) {
+        this(SnapshotMatcher.ofExpect(expect));
+    }
+
+    Snapshotter(final SnapshotMatcher matcher) {
+        this.matcher = Precondition.nonNull(matcher, "Matcher must not be null");
+    }
 
     /**
      * Creates a DSL for JSON-based snapshot testing.
@@ -20,7 +35,18 @@ public class Snapshotter {
      * @return a configured {@link JsonSnapshotDsl} instance
      */
     public JsonSnapshotDsl json() {
-        return JsonSnapshotDsl.ofExpect(expect);
+        return JsonSnapshotDsl.of(matcher);
+    }
+
+    /**
+     * Creates a DSL for snapshot testing of payloads of a binary Jackson format, e.g. CBOR or Smile, as JSON.
+     *
+     * @param format the factory of the parsers of the format, e.g. a {@code CBORFactory}
+     * @return a configured {@link BinaryJsonSnapshotDsl} instance
+     * @throws IllegalArgumentException if format is null
+     */
+    public BinaryJsonSnapshotDsl binaryJson(final TokenStreamFactory format) {
+        return BinaryJsonSnapshotDsl.of(matcher, format);
     }
 
     /**
@@ -29,7 +55,7 @@ public class Snapshotter {
      * @return a configured {@link PlainSnapshotDsl} instance
      */
     public PlainSnapshotDsl plain() {
-        return PlainSnapshotDsl.ofExpect(expect);
+        return PlainSnapshotDsl.of(matcher);
     }
 
     /**
@@ -38,7 +64,16 @@ public class Snapshotter {
      * @return a configured {@link Base64SnapshotDsl} instance
      */
     public Base64SnapshotDsl base64() {
-        return Base64SnapshotDsl.ofExpect(expect);
+        return Base64SnapshotDsl.of(matcher);
+    }
+
+    /**
+     * Creates a DSL for snapshot testing of large artifacts, streamed from a file, stream or buffer.
+     *
+     * @return a configured {@link StreamSnapshotDsl} instance
+     */
+    public StreamSnapshotDsl stream() {
+        return StreamSnapshotDsl.of(matcher);
     }
 
     /**
@@ -47,6 +82,6 @@ public class Snapshotter {
      * @return a configured {@link XmlSnapshotDsl} instance
      */
     public XmlSnapshotDsl xml() {
-        return XmlSnapshotDsl.ofExpect(expect);
+        return XmlSnapshotDsl.of(matcher);
     }
 }
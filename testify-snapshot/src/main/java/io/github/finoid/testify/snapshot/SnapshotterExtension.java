@@ -1,70 +1,70 @@
 package io.github.finoid.testify.snapshot;
 
-import io.github.finoid.snapshots.Expect;
-import io.github.finoid.snapshots.SnapshotVerifier;
-import io.github.finoid.snapshots.config.PropertyResolvingSnapshotConfig;
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
 import io.github.finoid.snapshots.exceptions.SnapshotMatchException;
-import io.github.finoid.snapshots.utils.ReflectionUtils;
-import lombok.Value;
+import org.jspecify.annotations.Nullable;
 import org.junit.jupiter.api.extension.AfterAllCallback;
+import org.junit.jupiter.api.extension.AfterTestExecutionCallback;
 import org.junit.jupiter.api.extension.BeforeAllCallback;
 import org.junit.jupiter.api.extension.BeforeTestExecutionCallback;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ParameterContext;
 import org.junit.jupiter.api.extension.ParameterResolutionException;
 import org.junit.jupiter.api.extension.ParameterResolver;
+import org.junit.platform.commons.annotation.Testable;
+import org.junit.platform.commons.support.AnnotationSupport;
+import org.junit.platform.commons.support.HierarchyTraversalMode;
 
-import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * JUnit 5 extension that provides an instance of {@link Snapshotter} for parameter injection.
+ * <p>
+ * The snapshot store and the executed test methods of each test class are kept in the store of the class'
+ * {@link ExtensionContext}, so classes and methods executed in parallel never share mutable extension state. The snapshot
+ * store is only opened once the first snapshot is matched, so classes that never snapshot anything don't touch the file
+ * system.
+ * <p>
+ * Orphan snapshots are never removed implicitly. With {@code remove-orphans=true}, updating snapshots removes the orphans
+ * of a class only once every test method of the class has run and passed, see {@link SnapshotStore#flush(boolean)}.
  */
-public class SnapshotterExtension implements ParameterResolver, BeforeAllCallback, AfterAllCallback, BeforeTestExecutionCallback {
+public class SnapshotterExtension implements ParameterResolver, BeforeAllCallback, AfterAllCallback, BeforeTestExecutionCallback,
+                                             AfterTestExecutionCallback {
     private static final ExtensionContext.Namespace NS = ExtensionContext.Namespace.create("run-state");
     private static final String KEY_STATE = "state";
 
-    @SuppressWarnings("NullAway.Init")
-    private SnapshotVerifier verifier;
-
     @Override
     public void beforeAll(final ExtensionContext context) {
         final Class<?> testClass = context.getTestClass()
             .orElseThrow(() -> new SnapshotMatchException("Unable to locate Test class"));
 
-        final PropertyResolvingSnapshotConfig snapshotConfig = new PropertyResolvingSnapshotConfig();
-
-        verifier = new SnapshotVerifier(snapshotConfig, testClass, false);
+        context.getStore(NS)
+            .put(KEY_STATE, new State(testClass));
     }
 
     @Override
-    public void afterAll(final ExtensionContext context) throws IllegalAccessException {
-        final State state = context.getRoot()
-            .getStore(NS)
-            .getOrDefault(KEY_STATE, State.class, new State());
-
-        // Brittle hack - upsource a fix or re-write SnapshotVerifier
-        final Field field = ReflectionUtils.findFieldByPredicate(SnapshotVerifier.class, f -> f.getName().equalsIgnoreCase("failOnOrphans"))
-            .orElseThrow(() -> new SnapshotMatchException("Unable to locate failOnOrphans field - please open a issue"));
-        ReflectionUtils.makeAccessible(field);
-
-        if (state.getExecutedMethodCount() > 1) {
-            field.set(verifier, true);
-        } else {
-            field.set(verifier, false);
+    public void afterAll(final ExtensionContext context) {
+        final State state = state(context);
+        final SnapshotStore store = state.openedStore();
+
+        // Classes that never snapshot anything never open their store, and have nothing to flush or validate
+        if (store == null) {
+            return;
         }
 
-        verifier.validateSnapshots();
+        store.report().log();
+        store.flush(state.isCompleteRun());
+
+        // Orphans can only be detected reliably when more than a single test method has been executed
+        store.validate(state.getExecutedMethodCount() > 1);
     }
 
     @Override
     public void beforeTestExecution(final ExtensionContext context) {
-        final ExtensionContext.Store store = context.getRoot()
-            .getStore(NS);
-
-        final State state = store.computeIfAbsent(KEY_STATE, k -> new State(), State.class);
+        final State state = state(context);
 
         final String commonMethodName = context.getTestMethod()
             .map(Method::getName)
@@ -73,6 +73,13 @@ public class SnapshotterExtension implements ParameterResolver, BeforeAllCallbac
         state.addExecutedTestMethod(commonMethodName);
     }
 
+    @Override
+    public void afterTestExecution(final ExtensionContext context) {
+        if (context.getExecutionException().isPresent()) {
+            state(context).markIncomplete();
+        }
+    }
+
     /**
      * Determines if the {@link Snapshotter} should be injected into the test method.
      */
@@ -86,22 +93,101 @@ public class SnapshotterExtension implements ParameterResolver, BeforeAllCallbac
      */
     @Override
     public Object resolveParameter(final ParameterContext parameterContext, final ExtensionContext extensionContext) throws ParameterResolutionException {
-        final Expect expect = Expect.of(verifier, extensionContext.getTestMethod()
-            .orElseThrow(() -> new SnapshotMatchException("Unable to locate test method")));
+        final Method method = extensionContext.getTestMethod()
+            .orElseThrow(() -> new SnapshotMatchException("Unable to locate test method"));
 
-        return new Snapshotter(expect);
+        return new Snapshotter(SnapshotMatcher.ofStore(state(extensionContext)::store, method));
     }
 
-    @Value
-    private static class State {
-        Set<String> executedTestMethods = ConcurrentHashMap.newKeySet();
+    /**
+     * Looks up the state of the current test class. Method contexts resolve it from their class context.
+     */
+    private static State state(final ExtensionContext context) {
+        final State state = context.getStore(NS)
+            .get(KEY_STATE, State.class);
+
+        if (state == null) {
+            throw new SnapshotExtensionException("Snapshot state not found, the SnapshotterExtension must be registered on the test class");
+        }
 
-        public void addExecutedTestMethod(final String testMethod) {
+        return state;
+    }
+
+    /**
+     * The state of a test class. The snapshot store is opened when the first snapshot is matched, so classes that never
+     * snapshot anything don't read the settings or touch the snapshot files.
+     */
+    private static final class State {
+        private final Class<?> testClass;
+        private final Set<String> executedTestMethods = ConcurrentHashMap.newKeySet();
+
+        private volatile boolean incomplete;
+
+        @Nullable
+        private volatile SnapshotStore store;
+
+        private State(final Class<?> testClass) {
+            this.testClass = testClass;
+        }
+
+        /**
+         * Returns the snapshot store of the class, opening it on first use.
+         */
+        SnapshotStore store() {
+            SnapshotStore opened = store;
+
+            if (opened == null) {
+                synchronized (this) {
+                    opened = store;
+
+                    if (opened == null) {
+                        opened = SnapshotStore.of(testClass);
+                        store = opened;
+                    }
+                }
+            }
+
+            return opened;
+        }
+
+        /**
+         * Returns the snapshot store of the class, or null if it hasn't been opened.
+         */
+        @Nullable
+        SnapshotStore openedStore() {
+            return store;
+        }
+
+        void addExecutedTestMethod(final String testMethod) {
             executedTestMethods.add(testMethod);
         }
 
-        public int getExecutedMethodCount() {
+        int getExecutedMethodCount() {
             return executedTestMethods.size();
         }
+
+        /**
+         * Marks the run of the class incomplete, as a test failed or was aborted, possibly before it snapshotted anything.
+         */
+        void markIncomplete() {
+            incomplete = true;
+        }
+
+        /**
+         * Whether every test method of the class, including inherited ones, has run and none failed or was aborted. Disabled
+         * tests, and tests filtered out of the run, never run, so their snapshots are never taken for orphans.
+         */
+        boolean isCompleteRun() {
+            if (incomplete) {
+                return false;
+            }
+
+            final Set<String> testMethods = AnnotationSupport.findAnnotatedMethods(testClass, Testable.class, HierarchyTraversalMode.TOP_DOWN)
+                .stream()
+                .map(Method::getName)
+                .collect(Collectors.toSet());
+
+            return executedTestMethods.containsAll(testMethods);
+        }
     }
 }
@@ -0,0 +1,103 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.Expect;
+import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.SnapshotDsl.ScenarioSnapshotDsl;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * A DSL for snapshots of large artifacts, e.g. generated PDF exports or CSV reports, read from a {@link Path}, an
+ * {@link InputStream}, a {@link ByteBuffer} or a {@code byte[]}.
+ * <p>
+ * The content is streamed in fixed-size chunks and compared chunk by chunk against the stored snapshot, so memory use
+ * doesn't depend on the size of the artifact. By default the content is stored base64 encoded on a single line, the same
+ * snapshot as the {@link Base64SnapshotDsl} writes for the same bytes; textual artifacts can be stored as is with
+ * {@link #asText()}.
+ */
+public class StreamSnapshotDsl extends ScenarioSnapshotDsl {
+    private final SnapshotMatcher matcher;
+    private StreamSnapshotSerializer serializer = StreamSnapshotSerializer.base64();
+
+    private StreamSnapshotDsl(final SnapshotMatcher matcher) {
+        this.matcher = Precondition.nonNull(matcher, "Matcher must not be null");
+    }
+
+    /**
+     * Factory method to create a {@link StreamSnapshotDsl} instance using the given {@link Expect}.
+     *
+     * @param expect the expect instance
+     * @return a new {@code StreamSnapshotDsl}
+     * @throws IllegalArgumentException if expect is null
+     */
+    public static StreamSnapshotDsl ofExpect(final Expect expect) {
+        return new StreamSnapshotDsl(SnapshotMatcher.ofExpect(expect));
+    }
+
+    /**
+     * Factory method to create a {@link StreamSnapshotDsl} instance using the given {@link SnapshotMatcher}.
+     *
+     * @param matcher the snapshot matcher
+     * @return a new {@code StreamSnapshotDsl}
+     * @throws IllegalArgumentException if matcher is null
+     */
+    static StreamSnapshotDsl of(final SnapshotMatcher matcher) {
+        return new StreamSnapshotDsl(matcher);
+    }
+
+    /**
+     * Stores the content as UTF-8 text instead of base64, with line breaks normalized to {@code \n}.
+     *
+     * @return this instance for fluent chaining
+     */
+    public StreamSnapshotDsl asText() {
+        this.serializer = StreamSnapshotSerializer.text();
+
+        return this;
+    }
+
+    /**
+     * Captures or verifies a snapshot of the content of the given file.
+     *
+     * @param path the file to snapshot
+     */
+    public void snapshot(final Path path) {
+        snapshot((Object) path);
+    }
+
+    /**
+     * Captures or verifies a snapshot of the remaining content of the given stream. The stream is read to its end, but not
+     * closed.
+     *
+     * @param inputStream the stream to snapshot
+     */
+    public void snapshot(final InputStream inputStream) {
+        snapshot((Object) inputStream);
+    }
+
+    /**
+     * Captures or verifies a snapshot of the remaining content of the given buffer, without changing its position.
+     *
+     * @param buffer the buffer to snapshot
+     */
+    public void snapshot(final ByteBuffer buffer) {
+        snapshot((Object) buffer);
+    }
+
+    /**
+     * Captures or verifies a snapshot of the given byte source.
+     *
+     * @param toBeSnapshotted a {@link Path}, {@link InputStream}, {@link ByteBuffer} or {@code byte[]}
+     * @param <T>             the type of the byte source
+     * @throws IllegalArgumentException if the object isn't a supported byte source
+     */
+    @Override
+    @SuppressWarnings("NullAway")
+    public <T> void snapshot(final T toBeSnapshotted) {
+        Precondition.nonNull(toBeSnapshotted, "ToBeSnapshotted must not be null");
+
+        matcher.matchStream(serializer, scenario, toBeSnapshotted);
+    }
+}
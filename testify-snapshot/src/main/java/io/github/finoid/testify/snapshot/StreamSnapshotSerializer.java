@@ -0,0 +1,268 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.serializers.SerializerType;
+import io.github.finoid.testify.core.internal.Precondition;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+/**
+ * Serializes byte sources, i.e. a {@link Path}, an {@link InputStream}, a {@link ByteBuffer} or a {@code byte[]}, into a
+ * snapshot body without materializing their content.
+ * <p>
+ * In base64 mode, the content is encoded incrementally into a single line, in the format of the base64
+ * {@link PlainSnapshotSerializer}, so the same bytes produce the same snapshot through either serializer. In text mode, the content is written as UTF-8 text in the format of the
+ * {@link PlainSnapshotSerializer}, with line breaks normalized to {@code \n}.
+ */
+final class StreamSnapshotSerializer implements SnapshotBodySerializer {
+    private static final int CHUNK_SIZE = 8192;
+    private static final byte[] HEAD = "[\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TAIL = "\n]".getBytes(StandardCharsets.UTF_8);
+
+    private final boolean base64;
+
+    private StreamSnapshotSerializer(final boolean base64) {
+        this.base64 = base64;
+    }
+
+    /**
+     * Creates a serializer writing the content as UTF-8 text.
+     *
+     * @return the serializer
+     */
+    static StreamSnapshotSerializer text() {
+        return new StreamSnapshotSerializer(false);
+    }
+
+    /**
+     * Creates a serializer writing the content base64 encoded on a single line.
+     *
+     * @return the serializer
+     */
+    static StreamSnapshotSerializer base64() {
+        return new StreamSnapshotSerializer(true);
+    }
+
+    /**
+     * Writes the snapshot body of the given source to the given stream, reading the source in fixed-size chunks.
+     *
+     * @param source the source to snapshot
+     * @param out    the stream to write the UTF-8 encoded body to, left open
+     * @throws IOException              if the source can't be read or the body can't be written
+     * @throws IllegalArgumentException if the source isn't a supported byte source
+     */
+    void write(final Object source, final OutputStream out) throws IOException {
+        Precondition.nonNull(source, "Source must not be null");
+
+        if (base64) {
+            out.write(HEAD);
+
+            try (OutputStream encoder = Base64.getEncoder().wrap(new NonClosingOutputStream(out))) {
+                copy(source, encoder);
+            }
+
+            out.write(TAIL);
+
+            return;
+        }
+
+        try (TextOutputStream text = new TextOutputStream(new BufferedOutputStream(new NonClosingOutputStream(out), CHUNK_SIZE))) {
+            text.write(HEAD);
+            copy(source, text);
+            text.releaseCarriageReturn();
+            text.write(TAIL);
+        }
+    }
+
+    @Override
+    public String serialize(final Object object) {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        try {
+            write(object, body);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Unable to read the snapshot source", e);
+        }
+
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return base64 ? SerializerType.BASE64.name() : SerializerType.TEXT.name();
+    }
+
+    private static void copy(final Object source, final OutputStream out) throws IOException {
+        if (source instanceof Path path) {
+            try (InputStream in = Files.newInputStream(path)) {
+                in.transferTo(out);
+            }
+        } else if (source instanceof InputStream in) {
+            in.transferTo(out);
+        } else if (source instanceof ByteBuffer buffer) {
+            copy(buffer.duplicate(), out);
+        } else if (source instanceof byte[] bytes) {
+            out.write(bytes);
+        } else {
+            throw new IllegalArgumentException("Unsupported snapshot source: " + source.getClass().getName()
+                + ", expected a Path, InputStream, ByteBuffer or byte[]");
+        }
+    }
+
+    private static void copy(final ByteBuffer buffer, final OutputStream out) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+
+            return;
+        }
+
+        final byte[] chunk = new byte[Math.min(CHUNK_SIZE, buffer.remaining())];
+
+        while (buffer.hasRemaining()) {
+            final int length = Math.min(chunk.length, buffer.remaining());
+
+            buffer.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Normalizes {@code \r\n} to {@code \n} and reduces runs of line breaks the way the {@link PlainSnapshotSerializer}
+     * does, i.e. every 3 consecutive line breaks become 2. Line breaks are counted rather than buffered, so long runs don't
+     * grow the memory use. Chunks are scanned for carriage returns and line breaks, and the bytes in between are passed on
+     * in bulk.
+     */
+    private static final class TextOutputStream extends FilterOutputStream {
+        private static final byte[] LINE_BREAKS = "\n".repeat(64).getBytes(StandardCharsets.UTF_8);
+
+        private int lineBreaks;
+        private boolean carriageReturn;
+
+        private TextOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (carriageReturn) {
+                carriageReturn = false;
+
+                if (b != '\n') {
+                    emit('\r');
+                }
+            }
+
+            if (b == '\r') {
+                carriageReturn = true;
+            } else {
+                emit(b);
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            final int end = off + len;
+
+            if (carriageReturn && len > 0) {
+                carriageReturn = false;
+
+                if (b[off] != '\n') {
+                    emit('\r');
+                }
+            }
+
+            int plain = off;
+
+            for (int i = off; i < end; i++) {
+                if (b[i] == '\n') {
+                    writePlain(b, plain, i);
+                    lineBreaks++;
+                    plain = i + 1;
+                } else if (b[i] == '\r' && (i + 1 == end || b[i + 1] == '\n')) {
+                    // Dropped before a line break, or held back until the next chunk shows what follows
+                    writePlain(b, plain, i);
+                    carriageReturn = i + 1 == end;
+                    plain = i + 1;
+                }
+            }
+
+            writePlain(b, plain, end);
+        }
+
+        @Override
+        public void close() throws IOException {
+            releaseCarriageReturn();
+            flushLineBreaks();
+            super.close();
+        }
+
+        /**
+         * Writes a carriage return held back at the end of the written bytes, so a text ending with a carriage return keeps
+         * it rather than having it joined with the line break of the tail.
+         */
+        private void releaseCarriageReturn() throws IOException {
+            if (carriageReturn) {
+                carriageReturn = false;
+                emit('\r');
+            }
+        }
+
+        private void emit(final int b) throws IOException {
+            if (b == '\n') {
+                lineBreaks++;
+
+                return;
+            }
+
+            flushLineBreaks();
+            out.write(b);
+        }
+
+        /**
+         * Writes the given bytes, which contain neither carriage returns nor line breaks, after the pending line breaks.
+         */
+        private void writePlain(final byte[] b, final int from, final int to) throws IOException {
+            if (from < to) {
+                flushLineBreaks();
+                out.write(b, from, to - from);
+            }
+        }
+
+        private void flushLineBreaks() throws IOException {
+            for (int reduced = lineBreaks / 3 * 2 + lineBreaks % 3; reduced > 0; reduced -= LINE_BREAKS.length) {
+                out.write(LINE_BREAKS, 0, Math.min(reduced, LINE_BREAKS.length));
+            }
+
+            lineBreaks = 0;
+        }
+    }
+
+    /**
+     * Leaves the wrapped stream open, so the wrapping encoders can be closed to flush their remaining output.
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        private NonClosingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.Snapshot;
+import io.github.finoid.snapshots.SnapshotSerializerContext;
+import io.github.finoid.testify.core.internal.Precondition;
+import io.github.finoid.testify.snapshot.SnapshotTiming.Phase;
+import org.jspecify.annotations.Nullable;
+
+import java.io.Reader;
+
+/**
+ * Times a snapshot verified through an {@code Expect}, the way {@link SnapshotMatcher#ofStore} times the snapshots of a
+ * {@link SnapshotStore}.
+ * <p>
+ * The serialization is timed by the phases of the wrapped serializer. The library reads and compares the stored snapshot
+ * without reporting back, so the rest of the verification is reported as {@link Phase#COMPARISON}. The test class and
+ * method of the {@link SnapshotEvent} are taken from the context the library serializes with. There is no report to record
+ * into, so these snapshots aren't part of the summary of the slowest snapshots.
+ */
+final class TimedSnapshotSerializer implements SnapshotBodySerializer {
+    private final SnapshotBodySerializer serializer;
+    private final SnapshotTiming timing;
+
+    @Nullable
+    private SnapshotSerializerContext context;
+
+    /**
+     * Starts timing a snapshot serialized by the given serializer.
+     *
+     * @param serializer the serializer of the snapshot body
+     * @throws IllegalArgumentException if serializer is null
+     */
+    TimedSnapshotSerializer(final SnapshotBodySerializer serializer) {
+        this.serializer = Precondition.nonNull(serializer, "Serializer must not be null");
+        this.timing = SnapshotTiming.start();
+    }
+
+    @Override
+    public Snapshot apply(final Object object, final SnapshotSerializerContext gen) {
+        this.context = gen;
+
+        return gen.toSnapshot(serialize(object));
+    }
+
+    @Override
+    public String serialize(final Object object) {
+        final String body = serializer.serialize(object, timing);
+
+        timing.payloadSize(SnapshotHash.encodedLength(body));
+
+        return body;
+    }
+
+    @Override
+    public String describeMismatch(final Reader expected, final Reader actual) {
+        return serializer.describeMismatch(expected, actual);
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return serializer.getOutputFormat();
+    }
+
+    /**
+     * Stops the timing and commits its event. Does nothing if the library never serialized the snapshot.
+     *
+     * @param scenario the scenario, or null if none
+     * @param passed   whether the snapshot matched or was stored
+     */
+    void commit(@Nullable final String scenario, final boolean passed) {
+        final SnapshotSerializerContext serialized = context;
+
+        if (serialized == null) {
+            return;
+        }
+
+        timing.attributeRemainder(Phase.COMPARISON);
+        timing.commit(serialized.getTestClass(), serialized.getTestMethod().getName(), scenario, getOutputFormat(), passed);
+    }
+}
@@ -0,0 +1,435 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Canonicalizes an XML document while streaming it from a {@link XMLStreamReader}, so no DOM is ever built and memory use
+ * only depends on the depth of the document.
+ * <p>
+ * The canonical form is stable across insignificant differences of equal documents:
+ * <ul>
+ *     <li>attributes are sorted by namespace and local name</li>
+ *     <li>namespaces get the prefixes {@code ns1}, {@code ns2}, ... in the order of their first use, regardless of the
+ *     original prefixes or default namespaces, and are declared on the outermost element using them; unused declarations
+ *     are dropped. {@code xsi:type} values are rewritten to the canonical prefixes as well</li>
+ *     <li>elements are indented by two spaces per level, and elements without child elements are written on a single line</li>
+ *     <li>text is trimmed, whitespace-only text, comments and the XML declaration are dropped, and CDATA sections are
+ *     written as escaped text</li>
+ * </ul>
+ * Masked elements keep their attributes, their content is replaced by {@value MaskingJsonGenerator#MASKED_VALUE}. Masked
+ * attributes keep their name, their value is replaced.
+ */
+final class XmlCanonicalizer {
+    private static final String INDENT = "  ";
+    private static final String XSI_TYPE = "type";
+
+    private final XMLStreamReader reader;
+    private final Writer out;
+    private final List<XmlMaskPath> masks;
+
+    private final Map<String, String> prefixes = new HashMap<>();
+    private final Set<String> declaredNamespaces = new HashSet<>();
+    private final Deque<Frame> frames = new ArrayDeque<>();
+
+    private boolean openTag;
+    private boolean empty = true;
+
+    private XmlCanonicalizer(final XMLStreamReader reader, final Writer out, final List<XmlMaskPath> masks) {
+        this.reader = reader;
+        this.out = out;
+        this.masks = masks;
+    }
+
+    /**
+     * Writes the canonical form of the document read by the given reader.
+     *
+     * @param reader the reader positioned at the start of the document, not closed
+     * @param out    the writer to write the canonical document to
+     * @param masks  the paths of the elements and attributes to mask
+     * @throws XMLStreamException if the document isn't well-formed
+     * @throws IOException        if the canonical document can't be written
+     */
+    static void canonicalize(final XMLStreamReader reader, final Writer out, final List<XmlMaskPath> masks) throws XMLStreamException, IOException {
+        new XmlCanonicalizer(reader, out, masks).canonicalize();
+    }
+
+    private void canonicalize() throws XMLStreamException, IOException {
+        frames.push(new Frame(initialStates(), List.of(), ""));
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT -> startElement();
+                case XMLStreamConstants.END_ELEMENT -> endElement();
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA, XMLStreamConstants.SPACE -> text(reader.getText());
+                case XMLStreamConstants.PROCESSING_INSTRUCTION -> processingInstruction();
+                default -> {
+                    // Comments, the DTD and the document boundaries aren't part of the canonical form
+                }
+            }
+        }
+    }
+
+    private List<Integer> initialStates() {
+        final List<Integer> states = new ArrayList<>();
+
+        for (int path = 0; path < masks.size(); path++) {
+            states.add(state(path, 0));
+        }
+
+        return states;
+    }
+
+    private void startElement() throws XMLStreamException, IOException {
+        final Frame parent = currentFrame();
+        final String localName = reader.getLocalName();
+        final int positionByName = parent.childPositions.merge(localName, 1, Integer::sum);
+        final int position = ++parent.children;
+
+        final List<Integer> states = new ArrayList<>();
+        boolean masked = false;
+
+        for (final int state : parent.states) {
+            final XmlMaskPath.Step step = step(state);
+
+            if (step.descendant()) {
+                addState(states, state);
+            }
+
+            if (!step.attribute() && step.matchesName(localName)
+                && (step.position() == 0 || step.position() == (step.name() == null ? position : positionByName))) {
+                if (stepIndex(state) + 1 == masks.get(pathIndex(state)).steps().size()) {
+                    masked = true;
+                } else {
+                    addState(states, state + 1);
+                }
+            }
+        }
+
+        final List<Attribute> attributes = attributes(states);
+        final List<String> namespaces = declareNamespaces(attributes);
+        final String name = qualifiedName(namespace(reader.getNamespaceURI()), localName);
+
+        openChild(parent);
+        out.write('<');
+        out.write(name);
+
+        for (final String namespace : namespaces) {
+            out.write(" xmlns:");
+            out.write(prefixes.get(namespace));
+            out.write("=\"");
+            writeEscaped(namespace, true);
+            out.write('"');
+        }
+
+        for (final Attribute attribute : attributes) {
+            out.write(' ');
+            out.write(qualifiedName(attribute.namespace(), attribute.localName()));
+            out.write("=\"");
+            writeEscaped(attribute.value(), true);
+            out.write('"');
+        }
+
+        if (masked) {
+            out.write('>');
+            out.write(MaskingJsonGenerator.MASKED_VALUE);
+            out.write("</");
+            out.write(name);
+            out.write('>');
+
+            skipContent();
+            declaredNamespaces.removeAll(namespaces);
+
+            return;
+        }
+
+        openTag = true;
+        frames.push(new Frame(states, namespaces, name));
+    }
+
+    private void endElement() throws IOException {
+        final Frame frame = frames.pop();
+
+        if (openTag) {
+            out.write("/>");
+            openTag = false;
+        } else {
+            if (frame.block) {
+                newLine(frames.size() - 1);
+            }
+
+            out.write("</");
+            out.write(frame.name);
+            out.write('>');
+        }
+
+        declaredNamespaces.removeAll(frame.namespaces);
+    }
+
+    private void text(final String text) throws IOException {
+        final String trimmed = text.strip();
+
+        if (trimmed.isEmpty() || frames.size() == 1) {
+            return;
+        }
+
+        final Frame frame = currentFrame();
+
+        if (openTag) {
+            out.write('>');
+            openTag = false;
+        } else {
+            frame.block = true;
+            newLine(frames.size() - 1);
+        }
+
+        writeEscaped(trimmed, false);
+    }
+
+    private void processingInstruction() throws IOException {
+        openChild(currentFrame());
+
+        out.write("<?");
+        out.write(reader.getPITarget());
+
+        final String data = reader.getPIData();
+
+        if (data != null && !data.isBlank()) {
+            out.write(' ');
+            out.write(data.strip());
+        }
+
+        out.write("?>");
+    }
+
+    /**
+     * Starts a new line for a child of the given frame, closing the start tag of the frame if it's still open.
+     */
+    private void openChild(final Frame parent) throws IOException {
+        if (openTag) {
+            out.write('>');
+            openTag = false;
+        }
+
+        parent.block = true;
+
+        if (empty) {
+            empty = false;
+        } else {
+            newLine(frames.size() - 1);
+        }
+    }
+
+    private Frame currentFrame() {
+        return Precondition.nonNull(frames.peek(), "Frame must not be null");
+    }
+
+    private void newLine(final int depth) throws IOException {
+        out.write('\n');
+
+        for (int i = 0; i < depth; i++) {
+            out.write(INDENT);
+        }
+    }
+
+    private void skipContent() throws XMLStreamException {
+        int depth = 1;
+
+        while (depth > 0) {
+            final int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private List<Attribute> attributes(final List<Integer> states) {
+        final List<Attribute> attributes = new ArrayList<>(reader.getAttributeCount());
+
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String namespace = namespace(reader.getAttributeNamespace(i));
+            final String localName = reader.getAttributeLocalName(i);
+            final String value = isMasked(states, localName)
+                ? MaskingJsonGenerator.MASKED_VALUE
+                : reader.getAttributeValue(i);
+
+            attributes.add(new Attribute(namespace, localName, value, typeNamespace(namespace, localName, value)));
+        }
+
+        attributes.sort(Comparator.comparing(Attribute::namespace).thenComparing(Attribute::localName));
+
+        return attributes;
+    }
+
+    private boolean isMasked(final List<Integer> states, final String attributeName) {
+        for (final int state : states) {
+            final XmlMaskPath.Step step = step(state);
+
+            if (step.attribute() && step.matchesName(attributeName)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Resolves the namespace of the prefixed type name of an {@code xsi:type} attribute.
+     */
+    @Nullable
+    private String typeNamespace(final String namespace, final String localName, final String value) {
+        final int colon = value.indexOf(':');
+
+        if (!XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI.equals(namespace) || !XSI_TYPE.equals(localName) || colon < 1) {
+            return null;
+        }
+
+        final String typeNamespace = reader.getNamespaceContext().getNamespaceURI(value.substring(0, colon));
+
+        return typeNamespace == null || typeNamespace.isEmpty() ? null : typeNamespace;
+    }
+
+    /**
+     * Assigns prefixes to the namespaces used by the current element and its attributes, returning the namespaces that
+     * aren't declared by an ancestor yet, in prefix order.
+     */
+    private List<String> declareNamespaces(final List<Attribute> attributes) {
+        final List<String> used = new ArrayList<>();
+
+        used.add(namespace(reader.getNamespaceURI()));
+
+        for (final Attribute attribute : attributes) {
+            used.add(attribute.namespace());
+
+            if (attribute.typeNamespace() != null) {
+                used.add(attribute.typeNamespace());
+            }
+        }
+
+        final List<String> declared = new ArrayList<>();
+
+        for (final String namespace : used) {
+            if (namespace.isEmpty() || XMLConstants.XML_NS_URI.equals(namespace) || !declaredNamespaces.add(namespace)) {
+                continue;
+            }
+
+            prefixes.computeIfAbsent(namespace, ignored -> "ns" + (prefixes.size() + 1));
+            declared.add(namespace);
+        }
+
+        declared.sort(Comparator.comparingInt(namespace -> Integer.parseInt(prefixes.get(namespace).substring(2))));
+
+        for (int i = 0; i < attributes.size(); i++) {
+            final Attribute attribute = attributes.get(i);
+
+            if (attribute.typeNamespace() != null) {
+                final String type = attribute.value().substring(attribute.value().indexOf(':') + 1);
+
+                attributes.set(i, new Attribute(attribute.namespace(), attribute.localName(), prefixes.get(attribute.typeNamespace()) + ":" + type, null));
+            }
+        }
+
+        return declared;
+    }
+
+    private String qualifiedName(final String namespace, final String localName) {
+        if (namespace.isEmpty()) {
+            return localName;
+        }
+
+        return (XMLConstants.XML_NS_URI.equals(namespace) ? XMLConstants.XML_NS_PREFIX : prefixes.get(namespace)) + ":" + localName;
+    }
+
+    private void writeEscaped(final String value, final boolean attribute) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+
+            switch (c) {
+                case '&' -> out.write("&amp;");
+                case '<' -> out.write("&lt;");
+                case '>' -> out.write(attribute ? ">" : "&gt;");
+                case '"' -> out.write(attribute ? "&quot;" : "\"");
+                case '\r' -> out.write("&#xD;");
+                case '\t' -> out.write(attribute ? "&#x9;" : "\t");
+                case '\n' -> out.write(attribute ? "&#xA;" : "\n");
+                default -> out.write(c);
+            }
+        }
+    }
+
+    private XmlMaskPath.Step step(final int state) {
+        return masks.get(pathIndex(state)).steps().get(stepIndex(state));
+    }
+
+    private static void addState(final List<Integer> states, final int state) {
+        if (!states.contains(state)) {
+            states.add(state);
+        }
+    }
+
+    private static String namespace(@Nullable final String namespace) {
+        return namespace == null ? "" : namespace;
+    }
+
+    /**
+     * Encodes the position in a mask path as a single int, the path index in the upper and the step index in the lower
+     * 16 bits, so that {@code state + 1} is the next step of the same path.
+     */
+    private static int state(final int path, final int step) {
+        return path << 16 | step;
+    }
+
+    private static int pathIndex(final int state) {
+        return state >>> 16;
+    }
+
+    private static int stepIndex(final int state) {
+        return state & 0xFFFF;
+    }
+
+    /**
+     * An attribute of the current element.
+     *
+     * @param typeNamespace the namespace of the type name if the attribute is an {@code xsi:type}, otherwise null
+     */
+    private record Attribute(String namespace, String localName, String value, @Nullable String typeNamespace) {
+    }
+
+    /**
+     * The state of an open element.
+     */
+    private static final class Frame {
+        private final List<Integer> states;
+        private final List<String> namespaces;
+        private final String name;
+        private final Map<String, Integer> childPositions = new HashMap<>();
+
+        private int children;
+        private boolean block;
+
+        private Frame(final List<Integer> states, final List<String> namespaces, final String name) {
+            this.states = states;
+            this.namespaces = namespaces;
+            this.name = name;
+        }
+    }
+}
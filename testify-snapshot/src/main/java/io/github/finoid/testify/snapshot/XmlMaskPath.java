@@ -0,0 +1,131 @@
+package io.github.finoid.testify.snapshot;
+
+import org.jspecify.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A mask path compiled from the streamable subset of the XPath syntax.
+ * <p>
+ * A path is absolute and consists of child steps ({@code /name}) and descendant steps ({@code //name}). A step is an
+ * element name or the wildcard {@code *}, optionally followed by a 1-based position predicate, e.g. {@code /orders/order[2]}.
+ * The last step may select attributes instead, e.g. {@code //customer/@id} or {@code //@*}. Names are matched by their local
+ * name, so prefixes in the path are ignored; documents mixing equal local names of different namespaces can't be told apart.
+ *
+ * @param expression the original path expression
+ * @param steps      the compiled steps
+ */
+record XmlMaskPath(String expression, List<Step> steps) {
+    /**
+     * Compiles the given XPath expression.
+     *
+     * @param expression the path expression
+     * @return the compiled path
+     * @throws IllegalArgumentException if the expression is outside the supported subset
+     */
+    static XmlMaskPath compile(final String expression) {
+        final String trimmed = expression.trim();
+        final List<Step> steps = new ArrayList<>();
+
+        int position = 0;
+
+        while (position < trimmed.length()) {
+            if (!trimmed.startsWith("/", position)) {
+                throw invalid(expression);
+            }
+
+            final boolean descendant = trimmed.startsWith("//", position);
+            position += descendant ? 2 : 1;
+
+            int end = position;
+
+            while (end < trimmed.length() && trimmed.charAt(end) != '/') {
+                end++;
+            }
+
+            final Step step = step(trimmed.substring(position, end), descendant);
+
+            if (step == null || !steps.isEmpty() && steps.get(steps.size() - 1).attribute()) {
+                throw invalid(expression);
+            }
+
+            steps.add(step);
+            position = end;
+        }
+
+        if (steps.isEmpty()) {
+            throw invalid(expression);
+        }
+
+        return new XmlMaskPath(expression, List.copyOf(steps));
+    }
+
+    /**
+     * A single step of a path.
+     *
+     * @param descendant whether the step matches at any depth below the previous step, instead of only its children
+     * @param attribute  whether the step selects attributes instead of elements
+     * @param name       the local name to match, or null to match any name
+     * @param position   the 1-based position among the matching siblings, or 0 to match any position
+     */
+    record Step(boolean descendant, boolean attribute, @Nullable String name, int position) {
+        /**
+         * Whether the step matches the given name.
+         *
+         * @param localName the local name of an element or attribute
+         * @return true if the name matches
+         */
+        boolean matchesName(final String localName) {
+            return name == null || name.equals(localName);
+        }
+    }
+
+    @Nullable
+    private static Step step(final String text, final boolean descendant) {
+        final boolean attribute = text.startsWith("@");
+        String test = attribute ? text.substring(1) : text;
+        int position = 0;
+
+        final int predicate = test.indexOf('[');
+
+        if (predicate >= 0) {
+            if (attribute || !test.endsWith("]")) {
+                return null;
+            }
+
+            final String index = test.substring(predicate + 1, test.length() - 1).trim();
+
+            if (index.isEmpty() || index.length() > 9 || !index.chars().allMatch(Character::isDigit) || Integer.parseInt(index) < 1) {
+                return null;
+            }
+
+            position = Integer.parseInt(index);
+            test = test.substring(0, predicate);
+        }
+
+        final String localName = test.substring(test.indexOf(':') + 1);
+
+        if (localName.equals("*")) {
+            return new Step(descendant, attribute, null, position);
+        }
+
+        if (localName.isEmpty() || !isName(localName)) {
+            return null;
+        }
+
+        return new Step(descendant, attribute, localName, position);
+    }
+
+    private static boolean isName(final String name) {
+        if (!Character.isLetter(name.charAt(0)) && name.charAt(0) != '_') {
+            return false;
+        }
+
+        return name.chars().allMatch(c -> Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.');
+    }
+
+    private static IllegalArgumentException invalid(final String expression) {
+        return new IllegalArgumentException("Invalid XML mask path, please verify the path. Path: " + expression);
+    }
+}
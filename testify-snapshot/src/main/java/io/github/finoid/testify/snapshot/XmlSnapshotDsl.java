@@ -2,17 +2,23 @@ package io.github.finoid.testify.snapshot;
 
 import io.github.finoid.snapshots.Expect;
 import io.github.finoid.testify.core.internal.Precondition;
-import io.github.finoid.testify.snapshot.SnapshotDsl.ScenarioSnapshotDsl;
+import io.github.finoid.testify.snapshot.SnapshotDsl.MaskingSnapshotDsl;
+
+import java.util.List;
 
 /**
- * A DSL for snapshotting XML objects with optional masking of fields.
+ * A DSL for snapshotting XML documents with optional masking of elements and attributes.
+ * <p>
+ * Documents are canonicalized while they're streamed, so large SOAP or XML payloads can be snapshotted without building a
+ * DOM. Masked fields are paths in a streamable subset of XPath, see {@link XmlMaskPath}, e.g.
+ * {@code //Header/Timestamp} or {@code /Envelope/Body/order[1]/@id}.
  */
-public class XmlSnapshotDsl extends ScenarioSnapshotDsl {
-    @SuppressWarnings("UnusedVariable") // TODO (nw) temporary
-    private final Expect expect;
+public class XmlSnapshotDsl extends MaskingSnapshotDsl {
+    private final SnapshotMatcher matcher;
+    private List<XmlMaskPath> maskPaths = List.of();
 
-    private XmlSnapshotDsl(final Expect expect) {
-        this.expect = Precondition.nonNull(expect, "Expect must not be null");
+    private XmlSnapshotDsl(final SnapshotMatcher matcher) {
+        this.matcher = Precondition.nonNull(matcher, "Matcher must not be null");
     }
 
     /**
@@ -23,11 +29,61 @@ public class XmlSnapshotDsl extends ScenarioSnapshotDsl {
      * @throws IllegalArgumentException if expect is null
      */
     public static XmlSnapshotDsl ofExpect(final Expect expect) {
-        return new XmlSnapshotDsl(expect);
+        return new XmlSnapshotDsl(SnapshotMatcher.ofExpect(expect));
+    }
+
+    /**
+     * Factory method to create a {@link XmlSnapshotDsl} instance using the given {@link SnapshotMatcher}.
+     *
+     * @param matcher the snapshot matcher
+     * @return a new {@code XmlSnapshotDsl}
+     * @throws IllegalArgumentException if matcher is null
+     */
+    static XmlSnapshotDsl of(final SnapshotMatcher matcher) {
+        return new XmlSnapshotDsl(matcher);
     }
 
+    /**
+     * Configures a single element or attribute to be masked. The path is compiled and validated immediately.
+     *
+     * @param fieldPath the XPath of the element or attribute to mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if fieldPath is null or outside the supported XPath subset
+     */
+    @Override
+    public XmlSnapshotDsl withMaskedField(final String fieldPath) {
+        return withMaskedFields(List.of(Precondition.nonNull(fieldPath, "FieldPath must not be null")));
+    }
+
+    /**
+     * Configures multiple elements or attributes to be masked. The paths are compiled and validated immediately.
+     *
+     * @param fieldPaths the XPaths of the elements and attributes to mask
+     * @return this instance for fluent chaining
+     * @throws IllegalArgumentException if fieldPaths is null or any of the paths is outside the supported XPath subset
+     */
+    @Override
+    public XmlSnapshotDsl withMaskedFields(final List<String> fieldPaths) {
+        this.maskPaths = Precondition.nonNull(fieldPaths, "FieldPaths must not be null")
+            .stream()
+            .map(XmlMaskPath::compile)
+            .toList();
+        this.maskedFieldPaths = List.copyOf(fieldPaths);
+
+        return this;
+    }
+
+    /**
+     * Captures or verifies a snapshot of the given XML document.
+     *
+     * @param toBeSnapshotted a {@link CharSequence}, {@link java.io.Reader}, {@link java.io.InputStream},
+     *                        {@link java.nio.file.Path} or {@code byte[]} holding the document
+     * @param <T>             the type of the document source
+     * @throws IllegalArgumentException if the object isn't a supported document source
+     */
     @Override
-    public <T> void snapshot(T toBeSnapshotted) {
-        throw new UnsupportedOperationException("XML snapshots are not yet supported"); // TODO (nw) support masking
+    @SuppressWarnings("NullAway")
+    public <T> void snapshot(final T toBeSnapshotted) {
+        matcher.match(new XmlSnapshotSerializer(maskPaths), scenario, toBeSnapshotted);
     }
 }
@@ -0,0 +1,100 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.snapshots.serializers.SerializerType;
+import io.github.finoid.testify.core.internal.Precondition;
+import org.jspecify.annotations.Nullable;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Serializes XML documents into their canonical form, see {@link XmlCanonicalizer}.
+ * <p>
+ * Documents are read from a {@link CharSequence}, a {@link Reader}, an {@link InputStream}, a {@link Path} or a
+ * {@code byte[]} and streamed through a StAX reader, so no DOM is built. DTDs and external entities are not processed.
+ */
+final class XmlSnapshotSerializer implements SnapshotBodySerializer {
+    private static final XMLInputFactory INPUT_FACTORY = inputFactory();
+
+    private final List<XmlMaskPath> masks;
+
+    XmlSnapshotSerializer(final List<XmlMaskPath> masks) {
+        this.masks = List.copyOf(Precondition.nonNull(masks, "Masks must not be null"));
+    }
+
+    @Override
+    public String serialize(final Object object) {
+        Precondition.nonNull(object, "Object must not be null");
+
+        final StringWriter canonical = new StringWriter();
+
+        try (InputStream in = inputStream(object)) {
+            final XMLStreamReader reader = in != null
+                ? INPUT_FACTORY.createXMLStreamReader(in)
+                : INPUT_FACTORY.createXMLStreamReader(reader(object));
+
+            try {
+                XmlCanonicalizer.canonicalize(reader, canonical, masks);
+            } finally {
+                reader.close();
+            }
+        } catch (final XMLStreamException | IOException e) {
+            throw new SnapshotExtensionException("Xml snapshotting failed. Cause: " + e.getMessage(), e);
+        }
+
+        return PlainSnapshotSerializer.wrap(canonical.toString());
+    }
+
+    @Override
+    public String getOutputFormat() {
+        return SerializerType.TEXT.name();
+    }
+
+    @Nullable
+    private static InputStream inputStream(final Object object) throws IOException {
+        if (object instanceof Path path) {
+            return Files.newInputStream(path);
+        }
+
+        if (object instanceof byte[] bytes) {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        return object instanceof InputStream in ? new NonClosingInputStream(in) : null;
+    }
+
+    private static Reader reader(final Object object) {
+        if (object instanceof Reader reader) {
+            return reader;
+        }
+
+        if (object instanceof CharSequence text) {
+            return new StringReader(text.toString());
+        }
+
+        throw new IllegalArgumentException("Unsupported XML source: " + object.getClass().getName()
+            + ", expected a CharSequence, Reader, InputStream, Path or byte[]");
+    }
+
+    private static XMLInputFactory inputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newFactory();
+
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        return factory;
+    }
+}
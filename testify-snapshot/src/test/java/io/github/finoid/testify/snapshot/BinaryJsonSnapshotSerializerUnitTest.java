@@ -0,0 +1,148 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.type.UnitTest;
+import io.github.finoid.testify.snapshot.JsonSnapshotSerializer.Options;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tools.jackson.dataformat.cbor.CBORFactory;
+import tools.jackson.dataformat.cbor.CBORMapper;
+import tools.jackson.dataformat.smile.SmileFactory;
+import tools.jackson.dataformat.smile.SmileMapper;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class BinaryJsonSnapshotSerializerUnitTest extends UnitTest {
+    @Test
+    void givenCborPayload_whenSerialize_thenSameBodyAsJsonSnapshotOfDecodedPayload() {
+        var payload = payload();
+        var cbor = new CBORMapper().writeValueAsBytes(payload);
+
+        var serializer = serializer(new CBORFactory(), List.of(), List.of());
+
+        Assertions.assertEquals("""
+            [
+              {
+                "id" : "3f2b8c1e-9a4d-4e6f-8b7a-1c2d3e4f5a6b",
+                "lines" : [
+                  {
+                    "amount" : 12.5,
+                    "sku" : "A-1"
+                  },
+                  {
+                    "amount" : 3,
+                    "sku" : "B-2"
+                  },
+                  null
+                ],
+                "paid" : true,
+                "url" : "/orders/3f2b8c1e-9a4d-4e6f-8b7a-1c2d3e4f5a6b"
+              }
+            ]""", serializer.serialize(cbor));
+        Assertions.assertEquals(new JsonSnapshotSerializer(List.of()).serialize(payload), serializer.serialize(cbor));
+    }
+
+    @Test
+    void givenNestedObjectsInDescendingOrder_whenSerialize_thenSameBodyAsJsonSnapshotOfDecodedPayload() {
+        var innermost = new LinkedHashMap<String, Object>();
+        innermost.put("z", new byte[] {1, 2, 3});
+        innermost.put("a", List.of(Map.of("y", 1), Map.of("x", 2)));
+
+        var inner = new LinkedHashMap<String, Object>();
+        inner.put("c", innermost);
+        inner.put("b", List.of(innermost, "text"));
+
+        var payload = new LinkedHashMap<String, Object>();
+        payload.put("outer", inner);
+        payload.put("first", Map.of("value", inner));
+
+        var cbor = new CBORMapper().writeValueAsBytes(payload);
+
+        Assertions.assertEquals(new JsonSnapshotSerializer(List.of()).serialize(payload),
+            serializer(new CBORFactory(), List.of(), List.of()).serialize(cbor));
+    }
+
+    @Test
+    void givenMasks_whenSerialize_thenSameBodyAsMaskedJsonSnapshotOfDecodedPayload() {
+        var payload = payload();
+        var smile = new SmileMapper().writeValueAsBytes(payload);
+
+        var streamable = List.of("$[0].lines[*].amount");
+        var jsonPathOnly = List.of("$..[?(@.sku == 'B-2')].sku");
+        var partialMasks = List.of(PartialMask.UUID);
+
+        for (var maskedFields : List.of(streamable, jsonPathOnly)) {
+            var expected = new JsonSnapshotSerializer(Options.DEFAULT
+                .withMaskProgram(MaskProgram.of(maskedFields))
+                .withPartialMaskProgram(PartialMaskProgram.of(partialMasks))).serialize(payload);
+
+            Assertions.assertEquals(expected, serializer(new SmileFactory(), maskedFields, partialMasks).serialize(smile));
+        }
+
+        Assertions.assertTrue(serializer(new SmileFactory(), streamable, partialMasks).serialize(smile)
+            .contains("\"url\" : \"/orders/***MASKED***\""));
+    }
+
+    @Test
+    void givenStreamAndBuffer_whenSerialize_thenStreamLeftOpenAndBufferPositionUnchanged() {
+        var cbor = new CBORMapper().writeValueAsBytes(payload());
+        var serializer = serializer(new CBORFactory(), List.of(), List.of());
+
+        var closed = new boolean[1];
+        var stream = new ByteArrayInputStream(cbor) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        var buffer = ByteBuffer.allocate(cbor.length + 2).put((byte) 0).put(cbor).put((byte) 0).position(1).limit(cbor.length + 1);
+
+        Assertions.assertEquals(serializer.serialize(cbor), serializer.serialize(stream));
+        Assertions.assertFalse(closed[0]);
+        Assertions.assertEquals(serializer.serialize(cbor), serializer.serialize(buffer));
+        Assertions.assertEquals(serializer.serialize(cbor), serializer.serialize(buffer.asReadOnlyBuffer()));
+        Assertions.assertEquals(1, buffer.position());
+    }
+
+    @Test
+    void givenUnsupportedSourceOrInvalidPayload_whenSerialize_thenThrows() {
+        var serializer = serializer(new CBORFactory(), List.of(), List.of());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> serializer.serialize("not a payload"));
+        Assertions.assertThrows(SnapshotExtensionException.class, () -> serializer.serialize(new byte[]{(byte) 0xbf, 0x61}));
+    }
+
+    private static BinaryJsonSnapshotSerializer serializer(final tools.jackson.core.TokenStreamFactory format, final List<String> maskedFields,
+                                                          final List<PartialMask> partialMasks) {
+        return new BinaryJsonSnapshotSerializer(format, new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(MaskProgram.of(maskedFields))
+            .withPartialMaskProgram(PartialMaskProgram.of(partialMasks))
+            .withMaskingMode(MaskingMode.STREAMING)));
+    }
+
+    private static Map<String, Object> payload() {
+        var first = new LinkedHashMap<String, Object>();
+        first.put("sku", "A-1");
+        first.put("amount", 12.5);
+
+        var second = new HashMap<String, Object>();
+        second.put("sku", "B-2");
+        second.put("amount", 3);
+        second.put("discount", null);
+
+        var payload = new LinkedHashMap<String, Object>();
+        payload.put("url", "/orders/3f2b8c1e-9a4d-4e6f-8b7a-1c2d3e4f5a6b");
+        payload.put("paid", true);
+        payload.put("lines", Arrays.asList(first, second, null));
+        payload.put("id", "3f2b8c1e-9a4d-4e6f-8b7a-1c2d3e4f5a6b");
+        payload.put("note", null);
+
+        return payload;
+    }
+}
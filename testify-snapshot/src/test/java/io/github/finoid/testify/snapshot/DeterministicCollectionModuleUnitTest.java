@@ -0,0 +1,188 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.type.UnitTest;
+import io.github.finoid.testify.snapshot.DeterministicCollectionModule.NonComparableOrdering;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.SerializationContext;
+import tools.jackson.databind.ValueSerializer;
+import tools.jackson.databind.exc.InvalidDefinitionException;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.module.SimpleModule;
+
+import java.time.DayOfWeek;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class DeterministicCollectionModuleUnitTest extends UnitTest {
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+        .addModule(new DeterministicCollectionModule())
+        .build();
+
+    @Test
+    void givenUnorderedIntegers_whenSerialize_thenSortedWithoutNulls() {
+        var value = new HashSet<>(Arrays.asList(300, null, -1, 42, 7));
+
+        Assertions.assertEquals("[-1,7,42,300]", MAPPER.writeValueAsString(value));
+    }
+
+    @Test
+    void givenUnorderedLongsDoublesAndStrings_whenSerialize_thenSorted() {
+        Assertions.assertEquals("[-3,2,10000000000]", MAPPER.writeValueAsString(Set.of(10_000_000_000L, 2L, -3L)));
+        Assertions.assertEquals("[-0.0,0.0,1.5,\"NaN\"]", MAPPER.writeValueAsString(List.of(Double.NaN, 1.5, 0.0, -0.0)));
+        Assertions.assertEquals("[\"a\",\"b\",\"c\"]", MAPPER.writeValueAsString(Set.of("c", "a", "b")));
+    }
+
+    @Test
+    void givenReverseOrderedSortedSet_whenSerialize_thenNaturalOrder() {
+        var value = new TreeSet<>(Comparator.<String>reverseOrder());
+        value.addAll(List.of("a", "c", "b"));
+
+        Assertions.assertEquals("[\"a\",\"b\",\"c\"]", MAPPER.writeValueAsString(value));
+    }
+
+    @Test
+    void givenOrderedCollections_whenSerialize_thenWrittenAsIs() {
+        Assertions.assertEquals("[\"MONDAY\",\"FRIDAY\"]",
+            MAPPER.writeValueAsString(EnumSet.of(DayOfWeek.FRIDAY, DayOfWeek.MONDAY)));
+        Assertions.assertEquals("[\"a\",\"b\"]", MAPPER.writeValueAsString(new TreeSet<>(Set.of("b", "a"))));
+        Assertions.assertEquals("[1,2,3]", MAPPER.writeValueAsString(new ArrayList<>(List.of(1, 2, 3))));
+        Assertions.assertEquals("[]", MAPPER.writeValueAsString(List.of()));
+    }
+
+    @Test
+    void givenNonComparableElements_whenSerialize_thenOriginalOrder() {
+        var value = Arrays.asList(new Item("b"), null, new Item("a"));
+
+        Assertions.assertEquals("[{\"name\":\"b\"},null,{\"name\":\"a\"}]", MAPPER.writeValueAsString(value));
+        Assertions.assertEquals("[{\"name\":\"b\"},null,{\"name\":\"a\"}]", MAPPER.writeValueAsString(value));
+    }
+
+    @Test
+    void givenMixedComparableElements_whenSerialize_thenOriginalOrder() {
+        var value = Arrays.asList("b", 1, "a");
+
+        Assertions.assertEquals("[\"b\",1,\"a\"]", MAPPER.writeValueAsString(value));
+        Assertions.assertEquals("[\"b\",1,\"a\"]", MAPPER.writeValueAsString(value));
+        Assertions.assertEquals("[\"a\",\"b\",\"c\"]", MAPPER.writeValueAsString(List.of("c", "b", "a")));
+    }
+
+    @Test
+    void givenMutuallyComparableElementsOfDifferentClasses_whenSerialize_thenSorted() {
+        Assertions.assertNotSame(Level.LOW.getClass(), Level.HIGH.getClass());
+
+        Assertions.assertEquals("[\"HIGH\",\"LOW\"]", MAPPER.writeValueAsString(List.of(Level.LOW, Level.HIGH)));
+    }
+
+    @Test
+    void givenCanonicalJsonOrdering_whenSerializeNonComparableElements_thenOrderedByJson() {
+        var mapper = JsonMapper.builder()
+            .addModule(new DeterministicCollectionModule(NonComparableOrdering.CANONICAL_JSON))
+            .build();
+
+        var first = new LinkedHashSet<>(Arrays.asList(new Item("b"), null, new Item("a"), new Item("c")));
+        var second = new LinkedHashSet<>(List.of(new Item("c"), new Item("a"), new Item("b")));
+
+        Assertions.assertEquals("[{\"name\":\"a\"},{\"name\":\"b\"},{\"name\":\"c\"}]", mapper.writeValueAsString(first));
+        Assertions.assertEquals(mapper.writeValueAsString(first), mapper.writeValueAsString(second));
+    }
+
+    @Test
+    void givenCanonicalJsonOrdering_whenSerializeNestedSets_thenInnerSetsOrderedFirst() {
+        var mapper = JsonMapper.builder()
+            .addModule(new DeterministicCollectionModule(NonComparableOrdering.CANONICAL_JSON))
+            .build();
+
+        var value = new LinkedHashSet<>(List.of(
+            new Group(new LinkedHashSet<>(List.of(new Item("z"), new Item("b")))),
+            new Group(new LinkedHashSet<>(List.of(new Item("a"), new Item("y"))))
+        ));
+
+        Assertions.assertEquals(
+            "[{\"items\":[{\"name\":\"a\"},{\"name\":\"y\"}]},{\"items\":[{\"name\":\"b\"},{\"name\":\"z\"}]}]",
+            mapper.writeValueAsString(value));
+    }
+
+    @Test
+    void givenCanonicalJsonOrdering_whenSerialize_thenEachElementSerializedOnce() {
+        var serializations = new AtomicInteger();
+        var mapper = JsonMapper.builder()
+            .addModule(new SimpleModule().addSerializer(Item.class, new ValueSerializer<>() {
+                @Override
+                public void serialize(final Item value, final JsonGenerator gen, final SerializationContext ctxt) {
+                    serializations.incrementAndGet();
+                    gen.writeString(value.name());
+                }
+            }))
+            .addModule(new DeterministicCollectionModule(NonComparableOrdering.CANONICAL_JSON))
+            .build();
+
+        var snapshot = mapper.writeValueAsString(new LinkedHashSet<>(List.of(new Item("c"), new Item("a"), new Item("b"))));
+
+        Assertions.assertEquals("[\"a\",\"b\",\"c\"]", snapshot);
+        Assertions.assertEquals(3, serializations.get());
+    }
+
+    @Test
+    void givenCanonicalJsonOrdering_whenSerializeBinaryElements_thenOrderedByBase64() {
+        var mapper = JsonMapper.builder()
+            .addModule(new DeterministicCollectionModule(NonComparableOrdering.CANONICAL_JSON))
+            .build();
+
+        var value = new LinkedHashSet<>(List.of(new Blob(new byte[] {0}), new Blob(new byte[] {(byte) 0xff})));
+
+        Assertions.assertEquals("[{\"data\":\"/w==\"},{\"data\":\"AA==\"}]", mapper.writeValueAsString(value));
+    }
+
+    @Test
+    void givenCanonicalJsonOrdering_whenSerializeEmbeddedObjects_thenThrows() {
+        var mapper = JsonMapper.builder()
+            .addModule(new SimpleModule().addSerializer(Item.class, new ValueSerializer<>() {
+                @Override
+                public void serialize(final Item value, final JsonGenerator gen, final SerializationContext ctxt) {
+                    gen.writeEmbeddedObject(value);
+                }
+            }))
+            .addModule(new DeterministicCollectionModule(NonComparableOrdering.CANONICAL_JSON))
+            .build();
+
+        var value = new LinkedHashSet<>(List.of(new Item("b"), new Item("a")));
+
+        Assertions.assertThrows(InvalidDefinitionException.class, () -> mapper.writeValueAsString(value));
+    }
+
+    @Test
+    void givenDifferentOrderings_whenGetRegistrationId_thenDistinct() {
+        Assertions.assertEquals(new DeterministicCollectionModule().getRegistrationId(),
+            new DeterministicCollectionModule(NonComparableOrdering.ITERATION_ORDER).getRegistrationId());
+        Assertions.assertNotEquals(new DeterministicCollectionModule().getRegistrationId(),
+            new DeterministicCollectionModule(NonComparableOrdering.CANONICAL_JSON).getRegistrationId());
+    }
+
+    record Item(String name) {
+    }
+
+    record Group(Set<Item> items) {
+    }
+
+    record Blob(byte[] data) {
+    }
+
+    // Constants with a body are instances of classes of their own
+    enum Level {
+        HIGH {
+        },
+        LOW {
+        }
+    }
+}
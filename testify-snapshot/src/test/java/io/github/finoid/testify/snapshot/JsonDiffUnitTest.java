@@ -0,0 +1,109 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.type.UnitTest;
+import io.github.finoid.testify.snapshot.JsonDiff.Difference;
+import io.github.finoid.testify.snapshot.JsonDiff.Kind;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+
+class JsonDiffUnitTest extends UnitTest {
+    @Test
+    void givenEqualDocuments_whenDiff_thenNoDifferences() {
+        var json = "[ {\n  \"id\" : 1,\n  \"tags\" : [ \"a\", \"b\" ]\n} ]";
+
+        Assertions.assertEquals(List.of(), diff(json, json.replace("\n", ""), 10));
+    }
+
+    @Test
+    void givenChangedAddedAndRemovedValues_whenDiff_thenReportedByJsonPointer() {
+        var expected = "[{\"a/b\":1,\"id\":1,\"name\":\"John\",\"tags\":[\"x\",\"y\"]}]";
+        var actual = "[{\"id\":\"1\",\"name\":\"Jane\",\"tags\":[\"x\"],\"zip\":{\"code\":1}}]";
+
+        var differences = diff(expected, actual, 10);
+
+        Assertions.assertEquals(List.of(
+            new Difference("/0/id", Kind.CHANGED, "1", "\"1\""),
+            new Difference("/0/name", Kind.CHANGED, "\"John\"", "\"Jane\""),
+            new Difference("/0/tags/1", Kind.REMOVED, "\"y\"", null),
+            new Difference("/0/a~1b", Kind.REMOVED, "1", null),
+            new Difference("/0/zip", Kind.ADDED, null, "{...}")
+        ), differences);
+    }
+
+    @Test
+    void givenContainerReplacedByScalar_whenDiff_thenContainerSkipped() {
+        var differences = diff("[{\"value\":{\"deep\":[1,2]},\"next\":1}]", "[{\"value\":null,\"next\":2}]", 10);
+
+        Assertions.assertEquals(List.of(
+            new Difference("/0/value", Kind.CHANGED, "{...}", "null"),
+            new Difference("/0/next", Kind.CHANGED, "1", "2")
+        ), differences);
+    }
+
+    @Test
+    void givenMembersInDifferentOrder_whenDiff_thenMembersJoinedByName() {
+        var expected = "[{\"name\":\"John\",\"id\":1,\"amount\":1.50,\"address\":{\"zip\":1,\"city\":\"Oslo\"}}]";
+        var actual = "[{\"address\":{\"city\":\"Bergen\",\"zip\":1},\"amount\":1.5,\"id\":1,\"name\":\"John\"}]";
+
+        var differences = diff(expected, actual, 10);
+
+        Assertions.assertEquals(List.of(
+            new Difference("/0/amount", Kind.CHANGED, "1.50", "1.5"),
+            new Difference("/0/address/city", Kind.CHANGED, "\"Oslo\"", "\"Bergen\"")
+        ), differences);
+    }
+
+    @Test
+    void givenEndlessDocuments_whenDiff_thenStoppedAtMaxDifferences() {
+        var differences = JsonDiff.diff(new EndlessArrayReader('0'), new EndlessArrayReader('1'), 3);
+
+        Assertions.assertEquals(List.of("/0", "/1", "/2"), differences.stream().map(Difference::pointer).toList());
+    }
+
+    @Test
+    void givenDifferences_whenDescribe_thenOneLinePerDifference() {
+        var description = JsonDiff.describe(new StringReader("[{\"id\":1}]"),
+            new StringReader("[{\"id\":2,\"name\":\"John\"}]"), 10);
+
+        Assertions.assertEquals("Found 2 difference(s):\n  /0/id: expected 1 but was 2\n  /0/name: unexpected \"John\"", description);
+    }
+
+    @Test
+    void givenInvalidJson_whenDescribe_thenEmptyDescription() {
+        Assertions.assertEquals("", JsonDiff.describe(new StringReader("[\nnot json\n]"), new StringReader("[\nother\n]"), 10));
+    }
+
+    private static List<Difference> diff(final String expected, final String actual, final int maxDifferences) {
+        return JsonDiff.diff(new StringReader(expected), new StringReader(actual), maxDifferences);
+    }
+
+    /**
+     * An endless JSON array of the given digit, e.g. {@code [0,0,0,...}.
+     */
+    private static final class EndlessArrayReader extends Reader {
+        private final char digit;
+        private long position;
+
+        private EndlessArrayReader(final char digit) {
+            this.digit = digit;
+        }
+
+        @Override
+        public int read(final char[] buffer, final int offset, final int length) {
+            for (int i = offset; i < offset + length; i++, position++) {
+                buffer[i] = position == 0 ? '[' : position % 2 == 1 ? digit : ',';
+            }
+
+            return length;
+        }
+
+        @Override
+        public void close() {
+            // Nothing to close
+        }
+    }
+}
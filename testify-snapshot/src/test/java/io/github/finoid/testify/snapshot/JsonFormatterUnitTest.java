@@ -0,0 +1,72 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.type.UnitTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+
+class JsonFormatterUnitTest extends UnitTest {
+    private static final String JSON = "[{\"name\":\"John \\\"Doe\\\"\",\r\n\"tags\":[\"a,b\",'c:d'],\"nested\":{\"value\":1}}]";
+
+    private static final String EXPECTED = """
+        [
+          {
+            "name" : "John \\"Doe\\"",
+            "tags" : [
+              "a,b",
+              'c:d'
+            ],
+            "nested" : {
+              "value" : 1
+            }
+          }
+        ]""";
+
+    @Test
+    void givenJson_whenPrettyPrint_thenFormatted() {
+        Assertions.assertEquals(EXPECTED, JsonFormatter.prettyPrint(JSON));
+    }
+
+    @Test
+    void givenNestedArrays_whenPrettyPrint_thenComposedOfCanonicalArrayLayout() {
+        var expected = CanonicalPrettyPrinter.arrayStart(1) + CanonicalPrettyPrinter.arrayStart(2) + "0"
+            + CanonicalPrettyPrinter.arrayValueSeparator(2) + "1" + CanonicalPrettyPrinter.arrayEnd(2) + CanonicalPrettyPrinter.arrayEnd(1);
+
+        Assertions.assertEquals(expected, JsonFormatter.prettyPrint("[[0,1]]"));
+    }
+
+    @Test
+    void givenJson_whenPrettyPrintToAppendable_thenSameAsString() throws IOException {
+        var output = new StringBuilder();
+
+        JsonFormatter.prettyPrint(JSON, output);
+
+        Assertions.assertEquals(EXPECTED, output.toString());
+    }
+
+    @Test
+    void givenReader_whenPrettyPrintToWriter_thenSameAsString() throws IOException {
+        var output = new StringWriter();
+
+        JsonFormatter.prettyPrint(new StringReader(JSON), output);
+
+        Assertions.assertEquals(EXPECTED, output.toString());
+    }
+
+    @Test
+    void givenSingleCharacterChunks_whenFormattingWriter_thenStateKeptBetweenChunks() throws IOException {
+        var output = new StringWriter();
+
+        try (Writer writer = JsonFormatter.formattingWriter(output)) {
+            for (final char ch : JSON.toCharArray()) {
+                writer.write(ch);
+            }
+        }
+
+        Assertions.assertEquals(EXPECTED, output.toString());
+    }
+}
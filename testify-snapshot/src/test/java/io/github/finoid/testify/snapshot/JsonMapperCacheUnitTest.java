@@ -0,0 +1,110 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.type.UnitTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.MapperFeature;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.module.SimpleModule;
+import tools.jackson.databind.ser.std.ToStringSerializer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+class JsonMapperCacheUnitTest extends UnitTest {
+    @Test
+    void givenSameConfiguration_whenMapperFor_thenMapperBuiltOnce() {
+        var builds = new AtomicInteger();
+
+        var first = JsonMapperCache.mapperFor(List.of(new DeterministicCollectionModule()), Map.of(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true), () -> {
+            builds.incrementAndGet();
+            return JsonMapper.builder().build();
+        });
+        var second = JsonMapperCache.mapperFor(List.of(new DeterministicCollectionModule()),
+            Map.of(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true), () -> {
+                builds.incrementAndGet();
+                return JsonMapper.builder().build();
+            });
+
+        Assertions.assertSame(first.mapper(), second.mapper());
+        Assertions.assertSame(first.writer(), second.writer());
+        Assertions.assertEquals(1, builds.get());
+    }
+
+    @Test
+    void givenSameCustomModuleInstance_whenMapperFor_thenMapperBuiltOnce() {
+        var module = new SimpleModule("custom").addSerializer(String.class, ToStringSerializer.instance);
+        var builds = new AtomicInteger();
+
+        var first = JsonMapperCache.mapperFor(List.of(module, new DeterministicCollectionModule()), Map.of(), () -> {
+            builds.incrementAndGet();
+            return JsonMapper.builder().build();
+        });
+        var second = JsonMapperCache.mapperFor(List.of(module, new DeterministicCollectionModule()), Map.of(), () -> {
+            builds.incrementAndGet();
+            return JsonMapper.builder().build();
+        });
+
+        Assertions.assertSame(first.mapper(), second.mapper());
+        Assertions.assertEquals(1, builds.get());
+    }
+
+    @Test
+    void givenModules_whenRegistersNothing_thenOnlyEmptyModulesIgnorable() {
+        Assertions.assertTrue(JsonMapperCache.registersNothing(new SimpleModule()));
+        Assertions.assertTrue(JsonMapperCache.registersNothing(new SimpleModule("named")));
+        Assertions.assertFalse(JsonMapperCache.registersNothing(new SimpleModule().addSerializer(String.class, ToStringSerializer.instance)));
+        Assertions.assertFalse(JsonMapperCache.registersNothing(new SimpleModule().setMixInAnnotation(String.class, Object.class)));
+        Assertions.assertFalse(JsonMapperCache.registersNothing(new DeterministicCollectionModule()));
+    }
+
+    @Test
+    void givenSerializersWithNewCustomModules_whenConstructedRepeatedly_thenDefaultMapperNotEvicted() {
+        var builds = new AtomicInteger();
+        var modules = List.of(new DeterministicCollectionModule(), new DeterministicCollectionModule());
+        var features = Map.of(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+
+        var before = JsonMapperCache.mapperFor(modules, features, () -> {
+            builds.incrementAndGet();
+            return JsonMapper.builder().build();
+        });
+
+        IntStream.range(0, 100)
+            .forEach(it -> new JsonSnapshotSerializer(List.of(), new SimpleModule()));
+
+        var after = JsonMapperCache.mapperFor(modules, features, () -> {
+            builds.incrementAndGet();
+            return JsonMapper.builder().build();
+        });
+
+        Assertions.assertSame(before.mapper(), after.mapper());
+        Assertions.assertEquals(1, builds.get());
+    }
+
+    @Test
+    void givenDistinctModulesWithSameName_whenMapperFor_thenDistinctMappersReturned() {
+        var features = Map.of(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+
+        var first = JsonMapperCache.mapperFor(List.of(new SimpleModule("same-name")), features, () -> JsonMapper.builder().build());
+        var second = JsonMapperCache.mapperFor(List.of(new SimpleModule("same-name")), features, () -> JsonMapper.builder().build());
+        var unnamed = JsonMapperCache.mapperFor(List.of(new SimpleModule()), features, () -> JsonMapper.builder().build());
+        var otherUnnamed = JsonMapperCache.mapperFor(List.of(new SimpleModule()), features, () -> JsonMapper.builder().build());
+
+        Assertions.assertNotSame(first.mapper(), second.mapper());
+        Assertions.assertNotSame(unnamed.mapper(), otherUnnamed.mapper());
+    }
+
+    @Test
+    void givenDifferentFeatures_whenMapperFor_thenDistinctMappersReturned() {
+        var module = new SimpleModule("different-features");
+
+        var enabled = JsonMapperCache.mapperFor(List.of(module), Map.of(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true),
+            () -> JsonMapper.builder().build());
+        var disabled = JsonMapperCache.mapperFor(List.of(module), Map.of(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, false),
+            () -> JsonMapper.builder().build());
+
+        Assertions.assertNotSame(enabled.mapper(), disabled.mapper());
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.type.UnitTest;
+import io.github.finoid.testify.snapshot.JsonSnapshotSerializer.Options;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+class JsonSequenceSerializerUnitTest extends UnitTest {
+    @Test
+    void givenStreamAndPublisher_whenSerialize_thenSameBodyAsSnapshotOfList() {
+        var lines = IntStream.range(0, 100)
+            .mapToObj(it -> new Line(it, "order-" + it + "/3f2b8c1e-9a4d-4e6f-8b7a-1c2d3e4f5a6b", "secret-" + it))
+            .toList();
+        var json = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(MaskProgram.of(List.of("$[0][*].secret")))
+            .withPartialMaskProgram(PartialMaskProgram.of(List.of(PartialMask.UUID))));
+
+        var serializer = new JsonSequenceSerializer(json);
+
+        Assertions.assertEquals(json.serialize(lines), serializer.serialize(lines.stream()));
+        Assertions.assertEquals(json.serialize(lines), serializer.serialize(publisher(lines)));
+        Assertions.assertEquals(new JsonSnapshotSerializer(List.of()).serialize(List.of()), serializer.serialize(Stream.empty()));
+    }
+
+    @Test
+    void givenUnsortedComparableAndNullElements_whenSerialize_thenWrittenInIterationOrder() {
+        var json = new JsonSnapshotSerializer(List.of());
+        var serializer = new JsonSequenceSerializer(json);
+
+        var body = serializer.serialize(Stream.of(3, null, 1, 2));
+
+        Assertions.assertEquals("[\n  [\n    3,\n    null,\n    1,\n    2\n  ]\n]", body);
+        Assertions.assertEquals("[\n  [\n    3,\n    1,\n    2\n  ]\n]", serializer.serialize(publisher(List.of(3, 1, 2))));
+        Assertions.assertNotEquals(json.serialize(Arrays.asList(3, null, 1, 2)), body);
+    }
+
+    @Test
+    void givenFailedCondition_whenWrite_thenStoppedAfterElementAndPublisherCancelled() {
+        var serializer = new JsonSequenceSerializer(new JsonSnapshotSerializer(List.of()));
+        var publisher = new CountingPublisher(Long.MAX_VALUE);
+        var written = new int[1];
+
+        var index = serializer.write(publisher, OutputStream.nullOutputStream(), () -> ++written[0] == 5);
+
+        Assertions.assertEquals(4, index);
+        Assertions.assertEquals(5, publisher.requested);
+        Assertions.assertTrue(publisher.cancelled);
+    }
+
+    @Test
+    void givenNonStreamableMaskOrFailingPublisher_whenSerialize_thenThrows() {
+        var nonStreamable = new JsonSnapshotSerializer(List.of("$..[?(@.id == 1)].secret"));
+        var serializer = new JsonSequenceSerializer(new JsonSnapshotSerializer(List.of()));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new JsonSequenceSerializer(nonStreamable));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> serializer.serialize(List.of(1)));
+
+        var error = Assertions.assertThrows(SnapshotExtensionException.class, () -> serializer.serialize(new CountingPublisher(2)));
+
+        Assertions.assertEquals("The publisher failed after 2 elements. Cause: Broken pipeline", error.getMessage());
+    }
+
+    @Test
+    void givenStalledPublisher_whenSerialize_thenFailedAfterTimeoutAndCancelled() {
+        var serializer = new JsonSequenceSerializer(new JsonSnapshotSerializer(List.of()), Duration.ofMillis(50));
+        var cancelled = new AtomicBoolean();
+        Flow.Publisher<Integer> stalled = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(final long n) {
+                // Never signals
+            }
+
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+            }
+        });
+        Flow.Publisher<Integer> unsubscribed = subscriber -> {
+        };
+
+        var stalledError = Assertions.assertThrows(SnapshotExtensionException.class, () -> serializer.serialize(stalled));
+        var unsubscribedError = Assertions.assertThrows(SnapshotExtensionException.class, () -> serializer.serialize(unsubscribed));
+
+        Assertions.assertEquals("The publisher didn't signal the element at index 0 within PT0.05S, neither completing nor failing",
+            stalledError.getMessage());
+        Assertions.assertTrue(cancelled.get());
+        Assertions.assertEquals("The publisher didn't subscribe within PT0.05S", unsubscribedError.getMessage());
+    }
+
+    @Test
+    void givenPublishedThrowable_whenIterate_thenReturnedAsElement() {
+        var failure = new IllegalStateException("Broken pipeline");
+
+        try (var elements = PublisherIterator.subscribe(publisher(List.of(failure)))) {
+            Assertions.assertSame(failure, elements.next());
+            Assertions.assertFalse(elements.hasNext());
+        }
+    }
+
+    private static <T> Flow.Publisher<T> publisher(final List<T> elements) {
+        var publisher = new SubmissionPublisher<T>();
+
+        Thread.ofVirtual().start(() -> {
+            while (!publisher.hasSubscribers()) {
+                Thread.onSpinWait();
+            }
+            elements.forEach(publisher::submit);
+            publisher.close();
+        });
+
+        return publisher;
+    }
+
+    private record Line(int id, String sku, String secret) {
+    }
+
+    /**
+     * Publishes consecutive numbers synchronously on request, failing once the given number of elements has been published.
+     */
+    private static final class CountingPublisher implements Flow.Publisher<Long> {
+        private final long elements;
+
+        private long requested;
+        private boolean cancelled;
+
+        private CountingPublisher(final long elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        public void subscribe(final Flow.Subscriber<? super Long> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(final long n) {
+                    for (long i = 0; i < n && !cancelled; i++) {
+                        if (requested == elements) {
+                            subscriber.onError(new IllegalStateException("Broken pipeline"));
+
+                            return;
+                        }
+
+                        subscriber.onNext(requested++);
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,424 @@
+package io.github.finoid.testify.snapshot;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.type.UnitTest;
+import io.github.finoid.testify.snapshot.DeterministicCollectionModule.NonComparableOrdering;
+import io.github.finoid.testify.snapshot.JsonSnapshotSerializer.Options;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class JsonSnapshotSerializerUnitTest extends UnitTest {
+    private static final Path SNAPSHOTS = Path.of("src/test/java/io/github/finoid/testify/snapshot/__snapshots__");
+
+    private static final Order ORDER = new Order(
+        1,
+        new Customer("John", "secret", new Address("Main Street 1", "12345")),
+        List.of(new Line("apple", 2, "secret-1"), new Line("banana", 3, "secret-2")),
+        Map.of("channel", "web", "token", "secret-3")
+    );
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "$[0].customer.password",
+        "$[0]['customer']['password']",
+        "$[0].customer.address",
+        "$[0].lines[1].secret",
+        "$[0].lines[*].secret",
+        "$[0].lines.*.quantity",
+        "$[0].attributes.token",
+        "$..password",
+        "$..secret",
+        "$[*].customer"
+    })
+    void givenMaskedFieldPath_whenStreamingSerialize_thenSameSnapshotAsJsonPath(final String maskedFieldPath) {
+        var jsonPath = new JsonSnapshotSerializer(List.of(maskedFieldPath), MaskingMode.JSON_PATH);
+        var streaming = new JsonSnapshotSerializer(List.of(maskedFieldPath), MaskingMode.STREAMING);
+
+        Assertions.assertEquals(jsonPath.serialize(ORDER), streaming.serialize(ORDER));
+    }
+
+    @Test
+    void givenUnresolvableMaskedFieldPath_whenStreamingSerialize_thenPathIgnored() {
+        var unmasked = new JsonSnapshotSerializer(List.of());
+        var streaming = new JsonSnapshotSerializer(List.of("$[0].missing.value"), MaskingMode.STREAMING);
+
+        Assertions.assertEquals(unmasked.serialize(ORDER), streaming.serialize(ORDER));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"$[0].customer.missing", "$[0].missing.value", "$[0].lines[*].missing", "$..missing.value"})
+    void givenMaskedFieldPathToMissingLeafOrParent_whenJsonPathSerialize_thenFails(final String maskedFieldPath) {
+        var serializer = new JsonSnapshotSerializer(List.of(maskedFieldPath), MaskingMode.JSON_PATH);
+
+        var exception = Assertions.assertThrows(SnapshotExtensionException.class, () -> serializer.serialize(ORDER));
+
+        Assertions.assertTrue(exception.getMessage().contains("doesn't match any value") && exception.getMessage().contains(maskedFieldPath),
+            exception.getMessage());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"$[0].customer.missing", "$[0].missing.value", "$[0].lines[*].missing", "$..missing.value"})
+    void givenMaskedFieldPathToMissingLeafOrParent_whenStreamingSerialize_thenPathIgnored(final String maskedFieldPath) {
+        var unmasked = new JsonSnapshotSerializer(List.of());
+        var streaming = new JsonSnapshotSerializer(List.of(maskedFieldPath), MaskingMode.STREAMING);
+
+        Assertions.assertEquals(unmasked.serialize(ORDER), streaming.serialize(ORDER));
+    }
+
+    @Test
+    void givenMultipleMaskedFieldPaths_whenStreamingSerialize_thenAllPathsMasked() {
+        var serializer = new JsonSnapshotSerializer(List.of("$[0].customer.password", "$[0].lines[0]"), MaskingMode.STREAMING);
+
+        var snapshot = serializer.serialize(ORDER);
+
+        Assertions.assertTrue(snapshot.contains("\"password\" : \"***MASKED***\""));
+        Assertions.assertFalse(snapshot.contains("apple"));
+        Assertions.assertTrue(snapshot.contains("banana"));
+    }
+
+    @Test
+    void givenOverlappingMaskedFieldPaths_whenStreamingSerialize_thenSameSnapshotAsJsonPath() {
+        var maskedFieldPaths = List.of("$[0].customer.password", "$[0].customer.address.zipCode", "$..secret", "$[0].lines[1]");
+
+        var jsonPath = new JsonSnapshotSerializer(maskedFieldPaths, MaskingMode.JSON_PATH);
+        var streaming = new JsonSnapshotSerializer(maskedFieldPaths, MaskingMode.STREAMING);
+
+        Assertions.assertEquals(jsonPath.serialize(ORDER), streaming.serialize(ORDER));
+    }
+
+    @Test
+    void givenInvalidMaskedFieldPath_whenCreated_thenIllegalArgumentException() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new JsonSnapshotSerializer(List.of("$[0].customer.")));
+    }
+
+    @Test
+    void givenPathOutsideStreamableSubset_whenStreamingSerialize_thenFallsBackToJsonPath() {
+        var maskedFieldPaths = List.of("$[0].lines[?(@.quantity > 2)].name");
+
+        var jsonPath = new JsonSnapshotSerializer(maskedFieldPaths, MaskingMode.JSON_PATH);
+        var streaming = new JsonSnapshotSerializer(maskedFieldPaths, MaskingMode.STREAMING);
+
+        Assertions.assertEquals(jsonPath.serialize(ORDER), streaming.serialize(ORDER));
+        Assertions.assertFalse(streaming.serialize(ORDER).contains("banana"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"SnapshotterUnitTest.snap", "SnapshotterExtensionTest.snap"})
+    void givenExistingSnapshotFile_whenSerialize_thenSameJsonBody(final String snapshotFile) {
+        var file = SnapshotFile.open(SNAPSHOTS.resolve(snapshotFile));
+
+        var jsonBody = file.identifiers().stream()
+            .filter(it -> it.contains("Json"))
+            .sorted()
+            .map(file::body)
+            .findFirst()
+            .orElseThrow();
+
+        Assertions.assertEquals(jsonBody, new JsonSnapshotSerializer(List.of()).serialize(new SnapshotterUnitTest.User(1, "John")));
+    }
+
+    @Test
+    void givenEdgeCaseValues_whenCanonicalSerialize_thenSameSnapshotAsJsonPathRoundTrip() {
+        var values = new EdgeCases(
+            List.of(0.1, 1.0E10, 1.0E-7, -0.0, 0.30000000000000004, 1.2345678901234567E-5, 123456789.12345679, Double.NaN),
+            List.of(1.1f, 3.4028235E38f),
+            List.of(new BigDecimal("1.10"), new BigDecimal("1E+3"), new BigDecimal("12345678901234567890.123")),
+            List.of(Long.MAX_VALUE, Long.MIN_VALUE),
+            List.of("a/b", "tab\tquote\"", "\u0001\u007F\u0085\u00A0", "\u2028\u20AC\u2100", "\uD83D\uDE00", "'single'"),
+            List.of(),
+            Map.of(),
+            Map.of("empty", List.of(), "nested", Map.of("key : value", List.of(Map.of()))),
+            List.of("masked")
+        );
+
+        // A path outside the streamable subset forces the JsonPath round trip
+        var jsonPath = new JsonSnapshotSerializer(List.of("$[0].marker[?(@ == 'masked')]"), MaskingMode.JSON_PATH);
+        var canonical = new JsonSnapshotSerializer(List.of("$[0].marker[0]"), MaskingMode.STREAMING);
+
+        Assertions.assertEquals(jsonPath.serialize(values), canonical.serialize(values));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "password, $..password",
+        "customer.password, $[0].customer.password",
+        "customer.address, $[0].customer.address",
+        "lines.secret, $[0].lines[*].secret",
+        "customer.*, $[0].customer.*"
+    })
+    void givenMaskedPropertyPath_whenSerialize_thenSameSnapshotAsJsonPath(final String propertyPath, final String maskedFieldPath) {
+        var jsonPath = new JsonSnapshotSerializer(List.of(maskedFieldPath), MaskingMode.JSON_PATH);
+        var property = propertyMasking(List.of(PropertyMask.ofPath(propertyPath)));
+
+        Assertions.assertEquals(jsonPath.serialize(ORDER), property.serialize(ORDER));
+    }
+
+    @Test
+    void givenMaskedTypeBelowScope_whenSerialize_thenOnlyValuesBelowScopeMasked() {
+        var createdAt = Instant.parse("2024-01-01T00:00:00Z");
+        var document = new Document(createdAt, new Audit(createdAt, "John", List.of(new Audit(createdAt, "Jane", List.of()))));
+
+        var snapshot = propertyMasking(List.of(PropertyMask.ofType(Instant.class, "audit"))).serialize(document);
+
+        Assertions.assertEquals(1, snapshot.split("2024-01-01T00:00:00Z", -1).length - 1);
+        Assertions.assertEquals(2, snapshot.split(Pattern.quote(MaskingJsonGenerator.MASKED_VALUE), -1).length - 1);
+        Assertions.assertTrue(snapshot.contains("Jane"));
+    }
+
+    @Test
+    void givenMaskedTypeInObjectAndOptionalProperties_whenSerialize_thenValuesOfTypeMasked() {
+        var createdAt = Instant.parse("2024-01-01T00:00:00Z");
+        var event = new Event(createdAt, "created", Optional.of(createdAt), Optional.empty(), List.of(createdAt));
+
+        var snapshot = propertyMasking(List.of(PropertyMask.ofType(Instant.class, ""))).serialize(event);
+
+        Assertions.assertEquals(2, snapshot.split(Pattern.quote(MaskingJsonGenerator.MASKED_VALUE), -1).length - 1);
+        Assertions.assertEquals(1, snapshot.split("2024-01-01T00:00:00Z", -1).length - 1);
+        Assertions.assertTrue(snapshot.contains("\"description\" : \"created\""));
+        Assertions.assertTrue(snapshot.contains("\"deletedAt\" : null"));
+    }
+
+    @Test
+    void givenMaskedAndUnmaskedProperties_whenSerialize_thenEveryGetterCalledOnce() {
+        var counting = new CountingBean();
+
+        var snapshot = propertyMasking(List.of(PropertyMask.ofPath("secret"), PropertyMask.ofType(CharSequence.class, "audit"))).serialize(counting);
+
+        Assertions.assertTrue(snapshot.contains("\"name\" : \"John\""), snapshot);
+        Assertions.assertTrue(snapshot.contains("\"secret\" : \"" + MaskingJsonGenerator.MASKED_VALUE + "\""), snapshot);
+        Assertions.assertEquals(Map.of("secret", 1, "name", 1), counting.calls);
+    }
+
+    @Test
+    void givenUnmatchedPropertyMasks_whenSerialize_thenSameSnapshotAsUnmasked() {
+        var unmasked = new JsonSnapshotSerializer(List.of());
+        var property = propertyMasking(List.of(PropertyMask.ofPath("missing"), PropertyMask.ofType(Instant.class, ""),
+            PropertyMask.ofPath("lines.password")));
+
+        Assertions.assertEquals(unmasked.serialize(ORDER), property.serialize(ORDER));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "$.password", "customer..password", "lines[0].secret", "pass*"})
+    void givenInvalidMaskedPropertyPath_whenCompiled_thenIllegalArgumentException(final String propertyPath) {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PropertyMask.ofPath(propertyPath));
+    }
+
+    @Test
+    void givenPartialMasks_whenStreamingSerialize_thenSameSnapshotAsJsonPath() {
+        var partialMaskProgram = PartialMaskProgram.of(List.of(PartialMask.replacing("secret-\\d"), PartialMask.keepingLast("\\d{5}", 2)));
+
+        var jsonPath = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(MaskProgram.of(List.of("$[0].customer.password")))
+            .withPartialMaskProgram(partialMaskProgram));
+        var streaming = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(MaskProgram.of(List.of("$[0].customer.password")))
+            .withPartialMaskProgram(partialMaskProgram)
+            .withMaskingMode(MaskingMode.STREAMING));
+
+        var snapshot = streaming.serialize(ORDER);
+
+        Assertions.assertEquals(jsonPath.serialize(ORDER), snapshot);
+        Assertions.assertFalse(snapshot.contains("secret-"));
+        Assertions.assertTrue(snapshot.contains("\"zipCode\" : \"***45\""));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "$[0][*].secret", "$[0][7777].name", "$[0][*]", "$[0]"})
+    void givenLargeCollection_whenSerializeInParallel_thenSameSnapshotAsSequential(final String maskedFieldPath) {
+        var masks = maskedFieldPath.isEmpty() ? MaskProgram.EMPTY : MaskProgram.of(List.of(maskedFieldPath));
+        var partialMaskProgram = PartialMaskProgram.of(List.of(PartialMask.keepingLast("secret-\\d+", 1)));
+        var propertyMasks = List.of(PropertyMask.ofPath("quantity"));
+
+        var lines = IntStream.range(0, 10_000).mapToObj(it -> new Line("line-" + it, it, "secret-" + it)).toList();
+        var numbers = IntStream.range(0, 10_000).mapToObj(it -> it % 100 == 0 ? null : 10_000 - it).collect(Collectors.toCollection(HashSet::new));
+
+        var sequential = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(masks)
+            .withPropertyMasks(propertyMasks)
+            .withPartialMaskProgram(partialMaskProgram)
+            .withMaskingMode(MaskingMode.STREAMING));
+        var parallel = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(masks)
+            .withPropertyMasks(propertyMasks)
+            .withPartialMaskProgram(partialMaskProgram)
+            .withMaskingMode(MaskingMode.STREAMING)
+            .withParallelThreshold(1000));
+
+        Assertions.assertEquals(sequential.serialize(lines), parallel.serialize(lines));
+        Assertions.assertEquals(sequential.serialize(numbers), parallel.serialize(numbers));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "$[0][*].lines[1]", "$..secret", "$[0][5000].attributes"})
+    void givenNestedCollectionsWithNulls_whenSerializeInParallel_thenSameSnapshotAsSequential(final String maskedFieldPath) {
+        var masks = maskedFieldPath.isEmpty() ? MaskProgram.EMPTY : MaskProgram.of(List.of(maskedFieldPath));
+        var partialMaskProgram = PartialMaskProgram.of(List.of(PartialMask.keepingLast("secret-\\d+", 1)));
+
+        var orders = IntStream.range(0, 10_000)
+            .mapToObj(it -> it % 7 == 0 ? null : new Order(it, new Customer("customer-" + it, it % 3 == 0 ? null : "secret-" + it, null),
+                it % 5 == 0 ? List.of() : List.of(new Line("line-" + it, it, "secret-" + it), new Line(null, it, null)),
+                it % 2 == 0 ? Map.of("token", "secret-" + it, "empty", "") : Map.of()))
+            .toList();
+        var nested = IntStream.range(0, 10_000)
+            .mapToObj(it -> it % 11 == 0 ? List.<Integer>of() : Arrays.asList(it, null, it % 13))
+            .toList();
+
+        var sequential = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(masks)
+            .withPartialMaskProgram(partialMaskProgram)
+            .withMaskingMode(MaskingMode.STREAMING));
+        var parallel = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(masks)
+            .withPartialMaskProgram(partialMaskProgram)
+            .withMaskingMode(MaskingMode.STREAMING)
+            .withParallelThreshold(1000));
+
+        Assertions.assertEquals(sequential.serialize(orders), parallel.serialize(orders));
+        Assertions.assertEquals(sequential.serialize(nested), parallel.serialize(nested));
+    }
+
+    @Test
+    void givenCollectionOrderedByCanonicalJson_whenSerializeInParallel_thenSerializedSequentially() {
+        var lines = IntStream.range(0, 5_000).mapToObj(it -> new Line("line-" + it, it, "secret-" + it)).collect(Collectors.toCollection(HashSet::new));
+
+        var sequential = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskingMode(MaskingMode.STREAMING)
+            .withNonComparableOrdering(NonComparableOrdering.CANONICAL_JSON));
+        var parallel = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskingMode(MaskingMode.STREAMING)
+            .withNonComparableOrdering(NonComparableOrdering.CANONICAL_JSON)
+            .withParallelThreshold(1000));
+
+        Assertions.assertEquals(sequential.serialize(lines), parallel.serialize(lines));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"JSON_PATH", "STREAMING"})
+    void givenCanonicalJsonOrderingAndMaskedFields_whenSerialize_thenOrderedAsWrittenMasked(final MaskingMode maskingMode) {
+        var serializer = new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(MaskProgram.of(List.of("$[0].tags[*].id")))
+            .withMaskingMode(maskingMode)
+            .withNonComparableOrdering(NonComparableOrdering.CANONICAL_JSON));
+
+        var snapshot = serializer.serialize(new Tags(new HashSet<>(List.of(
+            new Tag("3", "a"), new Tag("2", "b"), new Tag("1", "c")))));
+
+        Assertions.assertEquals("""
+            [
+              {
+                "tags" : [
+                  {
+                    "id" : "***MASKED***",
+                    "name" : "a"
+                  },
+                  {
+                    "id" : "***MASKED***",
+                    "name" : "b"
+                  },
+                  {
+                    "id" : "***MASKED***",
+                    "name" : "c"
+                  }
+                ]
+              }
+            ]""", snapshot);
+    }
+
+    @Test
+    void givenCanonicalJsonOrderingAndPartialMasks_whenSerialize_thenOrderedAsWrittenMasked() {
+        var serializer = new JsonSnapshotSerializer(Options.DEFAULT
+            .withPartialMaskProgram(PartialMaskProgram.of(List.of(PartialMask.UUID)))
+            .withMaskingMode(MaskingMode.STREAMING)
+            .withNonComparableOrdering(NonComparableOrdering.CANONICAL_JSON));
+
+        var snapshot = serializer.serialize(new HashSet<>(List.of(
+            new Tag("ffffffff-0000-0000-0000-000000000000 a", "x"),
+            new Tag("00000000-0000-0000-0000-000000000000 b", "x"))));
+
+        Assertions.assertTrue(snapshot.indexOf("***MASKED*** a") < snapshot.indexOf("***MASKED*** b"), snapshot);
+    }
+
+    @Test
+    void givenCanonicalJsonOrderingAndNonStreamableMaskedFields_whenCreate_thenThrows() {
+        var masks = MaskProgram.of(List.of("$[0].lines[?(@.quantity > 2)]"));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new JsonSnapshotSerializer(Options.DEFAULT
+            .withMaskProgram(masks)
+            .withNonComparableOrdering(NonComparableOrdering.CANONICAL_JSON)));
+    }
+
+    private static JsonSnapshotSerializer propertyMasking(final List<PropertyMask> propertyMasks) {
+        return new JsonSnapshotSerializer(Options.DEFAULT.withPropertyMasks(propertyMasks));
+    }
+
+    record Event(Object timestamp, Object description, Optional<Instant> updatedAt, Optional<Instant> deletedAt,
+                 List<Instant> history) {
+    }
+
+    static final class CountingBean {
+        @JsonIgnore
+        private final Map<String, Integer> calls = new TreeMap<>();
+
+        @JsonProperty("name")
+        public String getName() {
+            calls.merge("name", 1, Integer::sum);
+
+            return "John";
+        }
+
+        @JsonProperty("secret")
+        public String getSecret() {
+            calls.merge("secret", 1, Integer::sum);
+
+            return "secret";
+        }
+    }
+
+    record Document(Instant createdAt, Audit audit) {
+    }
+
+    record Audit(Instant createdAt, String user, List<Audit> history) {
+    }
+
+    record Order(int id, Customer customer, List<Line> lines, Map<String, String> attributes) {
+    }
+
+    record Customer(String name, String password, Address address) {
+    }
+
+    record Address(String street, String zipCode) {
+    }
+
+    record Tags(Set<Tag> tags) {
+    }
+
+    record Tag(String id, String name) {
+    }
+
+    record Line(String name, int quantity, String secret) {
+    }
+
+    record EdgeCases(List<Double> doubles, List<Float> floats, List<BigDecimal> decimals, List<Long> longs, List<String> strings,
+                     List<String> emptyList, Map<String, String> emptyMap, Map<String, Object> nested, List<String> marker) {
+    }
+}
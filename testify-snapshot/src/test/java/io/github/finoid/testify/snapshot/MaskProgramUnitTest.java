@@ -0,0 +1,47 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.type.UnitTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+class MaskProgramUnitTest extends UnitTest {
+    @Test
+    void givenSamePaths_whenOf_thenCompiledOnce() {
+        var first = MaskProgram.of(List.of("$[0].customer.password", "$..secret"));
+        var second = MaskProgram.of(List.of("$[0].customer.password", "$..secret"));
+
+        Assertions.assertSame(first, second);
+    }
+
+    @Test
+    void givenInvalidPath_whenOf_thenIllegalArgumentException() {
+        var exception = Assertions.assertThrows(IllegalArgumentException.class, () -> MaskProgram.of(List.of("$[0].customer.")));
+
+        Assertions.assertTrue(exception.getMessage().contains("$[0].customer."));
+    }
+
+    @Test
+    void givenFilterPath_whenOf_thenNotStreamable() {
+        var program = MaskProgram.of(List.of("$[0].customer.password", "$[0].lines[?(@.quantity > 2)]"));
+
+        Assertions.assertFalse(program.isStreamable());
+        Assertions.assertEquals(2, program.jsonPaths().size());
+    }
+
+    @Test
+    void givenMergedPaths_whenStepping_thenOnlyMatchingLocationsMasked() {
+        var root = MaskProgram.of(List.of("$[0].customer.password", "$[0].customer.address.zipCode", "$..secret"))
+            .rootState();
+
+        var customer = root.element(0).property("customer");
+
+        Assertions.assertFalse(customer.isMasked());
+        Assertions.assertTrue(customer.property("password").isMasked());
+        Assertions.assertTrue(customer.property("address").property("zipCode").isMasked());
+        Assertions.assertFalse(customer.property("address").property("street").isMasked());
+        Assertions.assertTrue(root.element(1).property("lines").element(3).property("secret").isMasked());
+        Assertions.assertFalse(root.element(1).property("customer").property("password").isMasked());
+    }
+}
@@ -0,0 +1,102 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.type.UnitTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+
+class PartialMaskProgramUnitTest extends UnitTest {
+    private static final PartialMaskProgram PRESETS =
+        PartialMaskProgram.of(List.of(PartialMask.UUID, PartialMask.TIMESTAMP, PartialMask.CARD_NUMBER));
+
+    @Test
+    void givenSameMasks_whenOf_thenCompiledOnce() {
+        var first = PartialMaskProgram.of(List.of(PartialMask.UUID, PartialMask.replacing("secret-\\d+")));
+        var second = PartialMaskProgram.of(List.of(PartialMask.UUID, PartialMask.replacing("secret-\\d+")));
+
+        Assertions.assertSame(first, second);
+    }
+
+    @Test
+    void givenValuesWithSeveralMatches_whenApply_thenOnlyMatchedPartsMasked() {
+        var matcher = PRESETS.matcher();
+
+        Assertions.assertNotNull(matcher);
+        Assertions.assertEquals("/orders/***MASKED***/lines/***MASKED***",
+            PRESETS.apply(matcher, "/orders/3f2b8c1e-9a4d-4e6f-8b7a-1c2d3e4f5a6b/lines/0a1b2c3d-4e5f-4a6b-8c7d-9e0f1a2b3c4d"));
+        Assertions.assertEquals("Created at ***MASKED*** by John",
+            PRESETS.apply(matcher, "Created at 2024-01-01T12:30:00.123+01:00 by John"));
+        Assertions.assertEquals("Paid with **** **** **** 1111, ref 12345",
+            PRESETS.apply(matcher, "Paid with 4111 1111 1111 1111, ref 12345"));
+        Assertions.assertEquals("************4242", PRESETS.apply(matcher, "4242424242424242"));
+    }
+
+    @Test
+    void givenValueWithoutMatch_whenApply_thenSameInstance() {
+        var value = "Nothing to mask in 2024";
+
+        Assertions.assertSame(value, PRESETS.apply(PRESETS.matcher(), value));
+    }
+
+    @Test
+    void givenRulesWithCapturingGroups_whenApply_thenMatchedRuleApplied() {
+        var program = PartialMaskProgram.of(List.of(
+            PartialMask.replacing("(token)=(\\w+)"),
+            PartialMask.keepingLast("(?<iban>SE\\d{2})\\d{20}", 2)));
+
+        Assertions.assertEquals("***MASKED***&**********************66",
+            program.apply(program.matcher(), "token=abc&SE4550000000058398257466"));
+    }
+
+    @Test
+    void givenNamedGroupOfSameNameInSeveralRules_whenOf_thenIllegalArgumentException() {
+        var masks = List.of(PartialMask.replacing("(?<id>\\d+)-\\k<id>"), PartialMask.replacing("(?<id>[a-z]+)"));
+
+        var exception = Assertions.assertThrows(IllegalArgumentException.class, () -> PartialMaskProgram.of(masks));
+
+        Assertions.assertTrue(exception.getMessage().contains("named group id"), exception.getMessage());
+    }
+
+    @Test
+    void givenNamedBackReference_whenApply_thenReferencesGroupOfSameRule() {
+        var program = PartialMaskProgram.of(List.of(PartialMask.replacing("(x)y"), PartialMask.replacing("(?<twice>\\d)\\k<twice>")));
+
+        Assertions.assertEquals("a***MASKED***12", program.apply(program.matcher(), "a1112"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"\\b", "(?=\\d)", "a??(?=1)", "\\d*(?<= )"})
+    void givenPatternMatchingEmptyPartOfValue_whenApply_thenIllegalArgumentException(final String regex) {
+        var program = PartialMaskProgram.of(List.of(PartialMask.UUID, PartialMask.replacing(regex)));
+
+        var exception = Assertions.assertThrows(IllegalArgumentException.class, () -> program.apply(program.matcher(), "order 1234 5"));
+
+        Assertions.assertTrue(exception.getMessage().contains("empty part") && exception.getMessage().contains(regex),
+            exception.getMessage());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"(a)\\1", "(?<id>a)-\\1", "(a)(b)[c]\\2"})
+    void givenNumberedBackReference_whenCreated_thenIllegalArgumentException(final String regex) {
+        var exception = Assertions.assertThrows(IllegalArgumentException.class, () -> PartialMask.replacing(regex));
+
+        Assertions.assertTrue(exception.getMessage().contains("numbered back references"), exception.getMessage());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"\\\\1", "\\Q\\1\\E", "a\\01"})
+    void givenEscapedBackslashOrOctalEscape_whenCreated_thenAccepted(final String regex) {
+        Assertions.assertEquals(regex, PartialMask.replacing(regex).regex());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"[a-", "a*", "(x)?"})
+    void givenInvalidPattern_whenCreated_thenIllegalArgumentException(final String regex) {
+        var exception = Assertions.assertThrows(IllegalArgumentException.class, () -> PartialMask.replacing(regex));
+
+        Assertions.assertTrue(exception.getMessage().contains(regex));
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.type.UnitTest;
+import io.github.finoid.testify.snapshot.SnapshotReport.Sample;
+import io.github.finoid.testify.snapshot.SnapshotTiming.Phase;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+class SnapshotReportUnitTest extends UnitTest {
+    private static final PlainSnapshotSerializer TEXT = PlainSnapshotSerializer.text();
+
+    @TempDir
+    private Path outputDir;
+
+    @Test
+    void givenMoreSnapshotsThanLimit_whenRecorded_thenSlowestKeptSlowestFirst() {
+        var report = new SnapshotReport(SnapshotReportUnitTest.class, 2);
+
+        for (final int millis : List.of(10, 40, 20, 30)) {
+            var timing = SnapshotTiming.start();
+
+            timing.time(Phase.SERIALIZATION, () -> pause(millis));
+            report.record("test" + millis, "test", null, "TEXT", true, timing);
+        }
+
+        var slowest = report.slowest();
+
+        Assertions.assertEquals(List.of("test40", "test30"), slowest.stream().map(Sample::identifier).toList());
+        Assertions.assertTrue(slowest.getFirst().describe().contains("test40 (serialization "));
+    }
+
+    @Test
+    void givenRecording_whenSnapshotVerified_thenEventWithPhasesCommitted(final TestInfo testInfo) throws IOException {
+        var store = new SnapshotStore(SnapshotReportUnitTest.class, new SnapshotSettings(outputDir, "__snapshots__", null, false));
+        var matcher = SnapshotMatcher.ofStore(store, testInfo.getTestMethod().orElseThrow());
+        var file = outputDir.resolve("snapshot.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(SnapshotEvent.NAME);
+            recording.start();
+
+            matcher.match(TEXT, "scenario", "value");
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        var events = RecordingFile.readAllEvents(file)
+            .stream()
+            .filter(it -> it.getEventType().getName().equals(SnapshotEvent.NAME))
+            .toList();
+
+        Assertions.assertEquals(1, events.size());
+
+        RecordedEvent event = events.getFirst();
+
+        Assertions.assertEquals(SnapshotReportUnitTest.class.getName(), event.getString("testClass"));
+        Assertions.assertEquals("scenario", event.getString("scenario"));
+        Assertions.assertEquals("[\nvalue\n]".length(), event.getLong("payloadSize"));
+        Assertions.assertTrue(event.getBoolean("passed"));
+        Assertions.assertTrue(event.getDuration().toNanos() >= event.getDuration("serialization").toNanos());
+    }
+
+    private static Object pause(final int millis) {
+        LockSupport.parkNanos(millis * 1_000_000L);
+
+        return millis;
+    }
+}
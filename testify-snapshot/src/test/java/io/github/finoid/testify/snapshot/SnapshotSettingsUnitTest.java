@@ -0,0 +1,65 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.Snapshot;
+import io.github.finoid.snapshots.comparators.SnapshotComparator;
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.type.UnitTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+
+class SnapshotSettingsUnitTest extends UnitTest {
+    @Test
+    void givenDefaultExpectProperties_whenUnsupportedKeys_thenNoneReported() throws IOException {
+        var properties = new Properties();
+
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(SnapshotSettings.PROPERTIES_FILE)) {
+            properties.load(inputStream);
+        }
+
+        Assertions.assertEquals(List.of(), SnapshotSettings.unsupportedKeys(properties));
+        Assertions.assertSame(SnapshotFallbackComparison.NONE, SnapshotFallbackComparison.of(properties.getProperty("comparator"),
+            properties.getProperty("reporters"), getClass().getClassLoader()));
+    }
+
+    @Test
+    void givenCustomSerializers_whenUnsupportedKeys_thenReportedSorted() {
+        var properties = new Properties();
+
+        properties.setProperty("serializer", "com.example.CustomSerializer");
+        properties.setProperty("serializer.json", " io.github.finoid.snapshots.jackson2.serializers.v1.JacksonSnapshotSerializer ");
+        properties.setProperty("serializer.custom", "com.example.CustomSerializer");
+        properties.setProperty("comparator", "com.example.CustomComparator");
+        properties.setProperty("snapshot-dir", "__custom__");
+
+        Assertions.assertEquals(List.of("serializer", "serializer.custom"), SnapshotSettings.unsupportedKeys(properties));
+    }
+
+    @Test
+    void givenCustomComparator_whenFallbackComparisonOf_thenComparatorInstantiated() {
+        var fallback = SnapshotFallbackComparison.of(IgnoringCaseComparator.class.getName(), "", getClass().getClassLoader());
+
+        Assertions.assertInstanceOf(IgnoringCaseComparator.class, fallback.comparator());
+        Assertions.assertEquals(List.of(), fallback.reporters());
+        Assertions.assertTrue(fallback.matches("test[scenario]", "[\nvalue\n]", "[\nVALUE\n]"));
+    }
+
+    @Test
+    void givenUnknownComparator_whenFallbackComparisonOf_thenSnapshotExtensionException() {
+        var exception = Assertions.assertThrows(SnapshotExtensionException.class,
+            () -> SnapshotFallbackComparison.of("com.example.Missing", "", getClass().getClassLoader()));
+
+        Assertions.assertTrue(exception.getMessage().contains("comparator=com.example.Missing"), exception.getMessage());
+    }
+
+    public static class IgnoringCaseComparator implements SnapshotComparator {
+        @Override
+        public boolean matches(final Snapshot previous, final Snapshot current) {
+            return previous.getBody().equalsIgnoreCase(current.getBody());
+        }
+    }
+}
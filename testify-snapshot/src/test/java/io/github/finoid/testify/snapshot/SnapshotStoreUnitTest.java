@@ -0,0 +1,776 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.Snapshot;
+import io.github.finoid.snapshots.comparators.SnapshotComparator;
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.snapshots.exceptions.SnapshotMatchException;
+import io.github.finoid.snapshots.reporters.SnapshotReporter;
+import io.github.finoid.testify.core.type.UnitTest;
+import io.github.finoid.testify.snapshot.SnapshotSettings.Layout;
+import org.jspecify.annotations.Nullable;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opentest4j.AssertionFailedError;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class SnapshotStoreUnitTest extends UnitTest {
+    private static final Path SNAPSHOTS = Path.of("src/test/java/io/github/finoid/testify/snapshot/__snapshots__");
+
+    private static final String PREFIX = SnapshotStoreUnitTest.class.getName();
+    private static final PlainSnapshotSerializer TEXT = PlainSnapshotSerializer.text();
+
+    @TempDir
+    private Path outputDir;
+
+    @Test
+    void givenNewSnapshots_whenFlush_thenWrittenSortedInSnapshotFormat() throws IOException {
+        var store = store(null, false);
+
+        store.verify(PREFIX + ".second", "[\n2\n]", TEXT);
+        store.verify(PREFIX + ".first", "[\n1\n]", TEXT);
+
+        Assertions.assertFalse(Files.exists(snapshotFile()));
+
+        store.flush();
+
+        var expected = entry(PREFIX + ".first", "[\n1\n]") + "\n\n\n" + entry(PREFIX + ".second", "[\n2\n]");
+
+        Assertions.assertEquals(expected, Files.readString(snapshotFile()));
+    }
+
+    @Test
+    void givenStoredSnapshot_whenVerifyEqualBody_thenMatched() throws IOException {
+        write(PREFIX + ".test=[\nvalue\n]");
+
+        Assertions.assertDoesNotThrow(() -> store(null, false).verify(PREFIX + ".test", "[\nvalue\n]", TEXT));
+    }
+
+    @Test
+    void givenStoredSnapshot_whenVerifyDifferentBody_thenAssertionFailedErrorThrown() throws IOException {
+        write(PREFIX + ".test=[\nvalue\n]");
+
+        var store = store(null, false);
+
+        var error = Assertions.assertThrows(AssertionFailedError.class, () -> store.verify(PREFIX + ".test", "[\nother\n]", TEXT));
+
+        Assertions.assertEquals("[\nvalue\n]", error.getExpected().getValue());
+        Assertions.assertEquals("[\nother\n]", error.getActual().getValue());
+    }
+
+    @Test
+    void givenUpdateFilter_whenVerifyDifferentBody_thenOnlyMatchingSnapshotsUpdated() throws IOException {
+        write(PREFIX + ".test=[\nvalue\n]\n\n\n" + PREFIX + ".other=[\nvalue\n]");
+
+        var store = store("UnitTest.test", false);
+
+        store.verify(PREFIX + ".test", "[\nupdated\n]", TEXT);
+
+        Assertions.assertThrows(AssertionFailedError.class, () -> store.verify(PREFIX + ".other", "[\nupdated\n]", TEXT));
+
+        store.flush();
+
+        Assertions.assertEquals(PREFIX + ".other=[\nvalue\n]\n\n\n" + entry(PREFIX + ".test", "[\nupdated\n]"),
+            Files.readString(snapshotFile()));
+    }
+
+    @Test
+    void givenBufferedSnapshot_whenVerifiedAgain_thenMatchedAgainstBufferedBody() throws IOException {
+        var store = store(null, false);
+
+        store.verify(PREFIX + ".test", "[\nvalue\n]", TEXT);
+
+        Assertions.assertDoesNotThrow(() -> store.verify(PREFIX + ".test", "[\nvalue\n]", TEXT));
+
+        var error = Assertions.assertThrows(AssertionFailedError.class, () -> store.verify(PREFIX + ".test", "[\nother\n]", TEXT));
+
+        Assertions.assertEquals("[\nvalue\n]", error.getExpected().getValue());
+
+        store.flush();
+
+        try (var files = Files.list(snapshotFile().getParent())) {
+            Assertions.assertEquals(List.of(snapshotFile()), files.toList());
+        }
+    }
+
+    @Test
+    void givenConcurrentVerificationsAndFlushes_whenFlushed_thenNoSnapshotLost() throws IOException {
+        var first = store(null, false);
+        var second = store(null, false);
+
+        IntStream.range(0, 200)
+            .parallel()
+            .forEach(i -> (i % 2 == 0 ? first : second).verify(PREFIX + ".test" + i, "[\n" + i + "\n]", TEXT));
+
+        CompletableFuture.allOf(CompletableFuture.runAsync(first::flush), CompletableFuture.runAsync(second::flush))
+            .join();
+
+        Assertions.assertEquals(200, SnapshotFile.open(snapshotFile()).identifiers().size());
+    }
+
+    @Test
+    void givenSlowVerification_whenOtherIdentifiersVerified_thenNotBlocked() {
+        var store = store(null, false);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        var slow = CompletableFuture.runAsync(() -> store.verify(PREFIX + ".slow", out -> {
+            started.countDown();
+            await(release);
+            out.write("[\nslow\n]".getBytes(StandardCharsets.UTF_8));
+        }));
+
+        await(started);
+
+        IntStream.range(0, 100).forEach(i -> store.verify(PREFIX + ".fast" + i, "[\n" + i + "\n]", TEXT));
+
+        release.countDown();
+        slow.join();
+        store.flush();
+
+        Assertions.assertEquals(101, SnapshotFile.open(snapshotFile()).identifiers().size());
+    }
+
+    @Test
+    void givenCiEnvironment_whenVerifyMissingSnapshot_thenSnapshotMatchExceptionThrown() {
+        var store = store(null, true);
+
+        Assertions.assertThrows(SnapshotMatchException.class, () -> store.verify(PREFIX + ".test", "[\nvalue\n]", TEXT));
+        Assertions.assertFalse(Files.exists(snapshotFile()));
+    }
+
+    @Test
+    void givenUpdateOnCiEnvironment_whenVerifyMismatchingSnapshot_thenRejectedWithMismatch() throws IOException {
+        write(PREFIX + ".test=[\nvalue\n]");
+
+        var store = store("", true);
+
+        Assertions.assertDoesNotThrow(() -> store.verify(PREFIX + ".test", "[\nvalue\n]", TEXT));
+
+        var rejected = Assertions.assertThrows(SnapshotExtensionException.class,
+            () -> store.verify(PREFIX + ".test", "[\nchanged\n]", TEXT));
+        var streamed = Assertions.assertThrows(SnapshotExtensionException.class,
+            () -> store.verify(PREFIX + ".test", out -> out.write("[\nchanged\n]".getBytes(StandardCharsets.UTF_8))));
+
+        for (var exception : List.of(rejected, streamed)) {
+            Assertions.assertTrue(exception.getMessage().startsWith("Updating snapshots on a CI environment is not allowed"), exception.getMessage());
+            Assertions.assertTrue(exception.getMessage().contains("Error on: " + PREFIX + ".test"), exception.getMessage());
+        }
+    }
+
+    @Test
+    void givenUnverifiedSnapshot_whenValidate_thenOrphansFailOnlyIfRequested() throws IOException {
+        write(PREFIX + ".test=[\nvalue\n]\n\n\n" + PREFIX + ".orphan=[\nvalue\n]");
+
+        var store = store(null, false);
+
+        store.verify(PREFIX + ".test", "[\nvalue\n]", TEXT);
+
+        Assertions.assertDoesNotThrow(() -> store.validate(false));
+        Assertions.assertThrows(SnapshotMatchException.class, () -> store.validate(true));
+    }
+
+    @Test
+    void givenScenariosAndCrlfLineEndings_whenOpen_thenIndexedByIdentifier() throws IOException {
+        write(PREFIX + ".test[a=b]=[\r\nfirst\r\n]\r\n\r\n\r\n" + PREFIX + ".test=[\r\nsecond\r\n]\r\n");
+
+        var file = SnapshotFile.open(snapshotFile());
+
+        Assertions.assertEquals(Set.of(PREFIX + ".test[a=b]", PREFIX + ".test"), file.identifiers());
+        Assertions.assertEquals("[\nfirst\n]", file.body(PREFIX + ".test[a=b]"));
+        Assertions.assertTrue(file.matches(PREFIX + ".test", "[\nsecond\n]".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void givenExistingSnapshotFileWithoutHeaders_whenRewritten_thenOnlyWrittenSnapshotGetsHeader() throws IOException {
+        var existing = SnapshotFile.open(SNAPSHOTS.resolve("SnapshotterUnitTest.snap"));
+        var copy = outputDir.resolve("SnapshotterUnitTest.snap");
+
+        Files.copy(existing.path(), copy);
+
+        var file = SnapshotFile.open(copy);
+
+        Assertions.assertEquals(5, file.identifiers().size());
+
+        file.write(Map.of());
+
+        Assertions.assertEquals(Files.readString(existing.path()).strip(), Files.readString(copy));
+
+        file.write(Map.of(PREFIX + ".added", SnapshotFile.Entry.of("[\nadded\n]", SnapshotHash.of("[\nadded\n]"))));
+
+        var rewritten = SnapshotFile.open(copy);
+
+        Assertions.assertArrayEquals(SnapshotHash.of("[\nadded\n]"), rewritten.hash(PREFIX + ".added"));
+
+        for (var identifier : existing.identifiers()) {
+            Assertions.assertEquals(existing.body(identifier), rewritten.body(identifier));
+            Assertions.assertNull(rewritten.hash(identifier));
+        }
+    }
+
+    @Test
+    void givenHeaderLengthNotMatchingEditedBody_whenVerify_thenHeaderDroppedAndBodyCompared() throws IOException {
+        write(PREFIX + ".edited={\n  \"sha256\": \"" + HexFormat.of().formatHex(SnapshotHash.of("[\nvalue\n]")) + "\",\n  \"length\": 9\n}[\nedited\n]\n\n\n"
+            + entry(PREFIX + ".valid", "[\nvalue\n]"));
+
+        var file = SnapshotFile.open(snapshotFile());
+
+        Assertions.assertNull(file.hash(PREFIX + ".edited"));
+        Assertions.assertEquals("[\nedited\n]", file.body(PREFIX + ".edited"));
+        Assertions.assertArrayEquals(SnapshotHash.of("[\nvalue\n]"), file.hash(PREFIX + ".valid"));
+
+        var store = store(null, false);
+
+        Assertions.assertThrows(AssertionFailedError.class, () -> store.verify(PREFIX + ".edited", "[\nvalue\n]", TEXT));
+        Assertions.assertDoesNotThrow(() -> store.verify(PREFIX + ".edited", "[\nedited\n]", TEXT));
+    }
+
+    @Test
+    void givenStaleHashOfBodyOfSameLength_whenVerify_thenBodyComparedAndHeaderRewrittenOnFlush() throws IOException {
+        write(PREFIX + ".stale={\n  \"sha256\": \"" + "0".repeat(64) + "\",\n  \"length\": 9\n}[\nvalue\n]\n\n\n"
+            + entry(PREFIX + ".valid", "[\nvalue\n]"));
+
+        Assertions.assertArrayEquals(new byte[32], SnapshotFile.open(snapshotFile()).hash(PREFIX + ".stale"));
+
+        var store = store(null, false);
+
+        Assertions.assertDoesNotThrow(() -> store.verify(PREFIX + ".stale", "[\nvalue\n]", TEXT));
+        Assertions.assertThrows(AssertionFailedError.class, () -> store.verify(PREFIX + ".stale", "[\nedited\n]", TEXT));
+
+        store.flush();
+
+        Assertions.assertArrayEquals(SnapshotHash.of("[\nvalue\n]"), SnapshotFile.open(snapshotFile()).hash(PREFIX + ".stale"));
+    }
+
+    @Test
+    void givenBodyEditedKeepingHeader_whenRewritten_thenHeaderCarriedForwardUntilVerified() throws IOException {
+        write(edited(PREFIX + ".edited") + "\n\n\n" + entry(PREFIX + ".valid", "[\nvalue\n]"));
+
+        SnapshotFile.open(snapshotFile()).write(Map.of(PREFIX + ".valid", SnapshotFile.Entry.of("[\nother\n]", SnapshotHash.of("[\nother\n]"))));
+
+        var rewritten = SnapshotFile.open(snapshotFile());
+
+        Assertions.assertEquals("[\nedits\n]", rewritten.body(PREFIX + ".edited"));
+        Assertions.assertArrayEquals(SnapshotHash.of("[\nvalue\n]"), rewritten.hash(PREFIX + ".edited"));
+
+        var store = store(null, false);
+
+        store.verify(PREFIX + ".edited", "[\nedits\n]", TEXT);
+        store.flush();
+
+        Assertions.assertArrayEquals(SnapshotHash.of("[\nedits\n]"), SnapshotFile.open(snapshotFile()).hash(PREFIX + ".edited"));
+    }
+
+    @Test
+    void givenUnchangedCompressedSnapshot_whenRewritten_thenHeaderHashCarriedForward() throws IOException {
+        var large = "[\n" + "value\n".repeat(50) + "]";
+        var file = SnapshotFile.open(snapshotFile(), 100);
+
+        file.write(Map.of(PREFIX + ".large", SnapshotFile.Entry.of(large, new byte[32])));
+        file.write(Map.of(PREFIX + ".small", SnapshotFile.Entry.of("[\nsmall\n]", SnapshotHash.of("[\nsmall\n]"))));
+
+        var rewritten = SnapshotFile.open(snapshotFile(), 100);
+
+        Assertions.assertEquals(large, rewritten.body(PREFIX + ".large"));
+        Assertions.assertArrayEquals(new byte[32], rewritten.hash(PREFIX + ".large"));
+    }
+
+    @Test
+    void givenBodyEditedKeepingHeader_whenVerifyOnCiOrUpdate_thenBodyComparedAgainstHeader() throws IOException {
+        write(edited(PREFIX + ".edited"));
+
+        Assertions.assertDoesNotThrow(() -> store(null, false).verify(PREFIX + ".edited", "[\nvalue\n]", TEXT));
+
+        var error = Assertions.assertThrows(AssertionFailedError.class,
+            () -> store(null, true).verify(PREFIX + ".edited", "[\nvalue\n]", TEXT));
+
+        Assertions.assertTrue(error.getMessage().contains("edited without updating the hash in its header"), error.getMessage());
+
+        var store = store("UnitTest.edited", false);
+
+        store.verify(PREFIX + ".edited", "[\nvalue\n]", TEXT);
+        store.flush();
+
+        Assertions.assertEquals(entry(PREFIX + ".edited", "[\nvalue\n]"), Files.readString(snapshotFile()));
+    }
+
+    @Test
+    void givenSnapshotWithoutHeader_whenVerifyEqualBody_thenHeaderOnlyAddedOnUpdate() throws IOException {
+        write(PREFIX + ".legacy=[\nvalue\n]");
+
+        for (var ci : List.of(true, false)) {
+            var store = store(null, ci);
+
+            store.verify(PREFIX + ".legacy", "[\nvalue\n]", TEXT);
+            store.flush();
+
+            Assertions.assertEquals(PREFIX + ".legacy=[\nvalue\n]", Files.readString(snapshotFile()));
+        }
+
+        var store = store("UnitTest.legacy", false);
+
+        store.verify(PREFIX + ".legacy", "[\nvalue\n]", TEXT);
+        store.flush();
+
+        Assertions.assertEquals(PREFIX + ".legacy=[\nvalue\n]", Files.readString(snapshotFile()));
+
+        store.verify(PREFIX + ".legacy", "[\nupdated\n]", TEXT);
+        store.flush();
+
+        Assertions.assertEquals(entry(PREFIX + ".legacy", "[\nupdated\n]"), Files.readString(snapshotFile()));
+    }
+
+    @Test
+    void givenLargeStreamedSnapshot_whenVerifiedAfterFlush_thenComparedChunkByChunk() throws IOException {
+        var serializer = StreamSnapshotSerializer.base64();
+        var artifact = new byte[1 << 20];
+        new Random(42).nextBytes(artifact);
+
+        var store = store(null, false);
+        store.verify(PREFIX + ".stream", out -> serializer.write(new ByteArrayInputStream(artifact), out));
+        store.verify(PREFIX + ".stream", out -> serializer.write(ByteBuffer.wrap(artifact), out));
+        store.flush();
+
+        var reopened = store(null, false);
+        Assertions.assertDoesNotThrow(() -> reopened.verify(PREFIX + ".stream", out -> serializer.write(artifact, out)));
+
+        artifact[1000] ^= 1;
+
+        var error = Assertions.assertThrows(AssertionFailedError.class,
+            () -> reopened.verify(PREFIX + ".stream", out -> serializer.write(new ByteArrayInputStream(artifact), out)));
+
+        Assertions.assertTrue(error.getMessage().contains("The bodies differ at byte offset 1336 "), error.getMessage());
+    }
+
+    @Test
+    void givenStoredTextSnapshot_whenVerifyStreamedText_thenMatchedAgainstSameBody() throws IOException {
+        write(entry(PREFIX + ".text", TEXT.serialize("a\nb")));
+
+        var store = store(null, false);
+
+        Assertions.assertDoesNotThrow(() -> store.verify(PREFIX + ".text", out -> StreamSnapshotSerializer.text().write("a\r\nb".getBytes(StandardCharsets.UTF_8), out)));
+        Assertions.assertThrows(AssertionFailedError.class,
+            () -> store.verify(PREFIX + ".text", out -> StreamSnapshotSerializer.text().write("a\nb\n".getBytes(StandardCharsets.UTF_8), out)));
+    }
+
+    @Test
+    void givenStoredBase64Snapshot_whenVerifyStreamedBase64_thenMatchedAgainstSameBody() throws IOException {
+        var artifact = new byte[1000];
+        new Random(7).nextBytes(artifact);
+
+        write(entry(PREFIX + ".base64", PlainSnapshotSerializer.base64().serialize(artifact)));
+
+        var store = store(null, false);
+
+        Assertions.assertDoesNotThrow(() -> store.verify(PREFIX + ".base64", out -> StreamSnapshotSerializer.base64().write(artifact, out)));
+    }
+
+    @Test
+    void givenStoredSequence_whenVerifyEachWithDifferentElement_thenFailedFastWithElementIndex() {
+        var serializer = new JsonSequenceSerializer(new JsonSnapshotSerializer(List.of()));
+
+        var store = store(null, false);
+        store.verifyEach(PREFIX + ".sequence", out -> serializer.write(IntStream.range(0, 1000).boxed(), out, out::failed), "JSON", SnapshotTiming.NONE);
+        store.flush();
+
+        var reopened = store(null, false);
+        var consumed = new int[1];
+        var changed = IntStream.range(0, 1000).map(it -> it == 10 ? -1 : it).boxed().peek(it -> consumed[0]++);
+
+        var error = Assertions.assertThrows(AssertionFailedError.class,
+            () -> reopened.verifyEach(PREFIX + ".sequence", out -> serializer.write(changed, out, out::failed), "JSON", SnapshotTiming.NONE));
+
+        Assertions.assertTrue(error.getMessage().contains("in the element at index 10. The remaining elements haven't been compared"), error.getMessage());
+        Assertions.assertEquals(11, consumed[0]);
+        Assertions.assertDoesNotThrow(() -> reopened.verify(PREFIX + ".sequence",
+            new JsonSnapshotSerializer(List.of()).serialize(IntStream.range(0, 1000).boxed().toList()), TEXT));
+    }
+
+    @Test
+    void givenCompressThreshold_whenFlush_thenLargeBodiesCompressedIntoSidecar() throws IOException {
+        var large = "[\n" + "{\"id\": 1, \"name\": \"John\"},\n".repeat(10_000) + "]";
+
+        var store = compressingStore(1024);
+        store.verify(PREFIX + ".large", large, TEXT);
+        store.verify(PREFIX + ".small", "[\nsmall\n]", TEXT);
+        store.flush();
+
+        var content = Files.readString(snapshotFile());
+        var sidecars = SnapshotFile.sidecars(snapshotFile());
+        var sidecar = sidecars.get(0);
+
+        Assertions.assertEquals(1, sidecars.size());
+        Assertions.assertTrue(content.contains("\"deflate\": \""), content);
+        Assertions.assertTrue(content.endsWith(entry(PREFIX + ".small", "[\nsmall\n]")), content);
+        Assertions.assertTrue(Files.size(sidecar) < large.length() / 100);
+
+        var file = SnapshotFile.open(snapshotFile());
+
+        Assertions.assertEquals(large, file.body(PREFIX + ".large"));
+        Assertions.assertTrue(file.matches(PREFIX + ".large", large.getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertFalse(file.matches(PREFIX + ".large", large.replace("John", "Jane").getBytes(StandardCharsets.UTF_8)));
+
+        var reopened = compressingStore(1024);
+
+        Assertions.assertDoesNotThrow(() -> reopened.verify(PREFIX + ".large", large, TEXT));
+        Assertions.assertDoesNotThrow(() -> reopened.verify(PREFIX + ".large",
+            out -> out.write(large.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void givenCompressedSnapshots_whenRewrittenWithoutThreshold_thenDecompressedAndSidecarDeleted() throws IOException {
+        var large = "[\n" + "row\n".repeat(1_000) + "]";
+
+        var store = compressingStore(100);
+        store.verify(PREFIX + ".large", large, TEXT);
+        store.flush();
+
+        Assertions.assertEquals(1, SnapshotFile.sidecars(snapshotFile()).size());
+
+        var uncompressed = store(null, false);
+        uncompressed.verify(PREFIX + ".other", "[\nother\n]", TEXT);
+        uncompressed.flush();
+
+        Assertions.assertEquals(entry(PREFIX + ".large", large) + "\n\n\n" + entry(PREFIX + ".other", "[\nother\n]"),
+            Files.readString(snapshotFile()));
+        Assertions.assertEquals(List.of(), SnapshotFile.sidecars(snapshotFile()));
+    }
+
+    @Test
+    void givenCompressedSnapshots_whenRewritten_thenNewSidecarVersionAndPreviouslyOpenedFileStillReadable() throws IOException {
+        var large = "[\n" + "row\n".repeat(1_000) + "]";
+        var changed = "[\n" + "line\n".repeat(1_000) + "]";
+
+        var store = compressingStore(100);
+        store.verify(PREFIX + ".large", large, TEXT);
+        store.flush();
+
+        var previous = SnapshotFile.open(snapshotFile());
+        var previousSidecars = SnapshotFile.sidecars(snapshotFile());
+
+        SnapshotFile.open(snapshotFile(), 100).write(Map.of(PREFIX + ".large", SnapshotFile.Entry.of(changed, SnapshotHash.of(changed))));
+
+        var sidecars = SnapshotFile.sidecars(snapshotFile());
+
+        Assertions.assertEquals(1, sidecars.size());
+        Assertions.assertNotEquals(previousSidecars, sidecars);
+        Assertions.assertEquals(large, previous.body(PREFIX + ".large"));
+        Assertions.assertEquals(changed, SnapshotFile.open(snapshotFile()).body(PREFIX + ".large"));
+    }
+
+    @Test
+    void givenSidecarWithoutVersion_whenOpenAndRewritten_thenReadAndMigrated() throws IOException {
+        var large = "[\n" + "row\n".repeat(1_000) + "]";
+
+        var store = compressingStore(100);
+        store.verify(PREFIX + ".large", large, TEXT);
+        store.flush();
+
+        var sidecar = SnapshotFile.sidecars(snapshotFile()).get(0);
+        var unversioned = snapshotFile().resolveSibling(snapshotFile().getFileName() + SnapshotFile.SIDECAR_EXTENSION);
+
+        Files.move(sidecar, unversioned);
+        Files.writeString(snapshotFile(), Files.readString(snapshotFile()).replaceFirst("\"deflate\": \"[0-9a-f]+:", "\"deflate\": \""));
+
+        Assertions.assertEquals(large, SnapshotFile.open(snapshotFile()).body(PREFIX + ".large"));
+
+        var reopened = compressingStore(100);
+        reopened.verify(PREFIX + ".other", "[\nother\n]", TEXT);
+        reopened.flush();
+
+        Assertions.assertEquals(List.of(sidecar), SnapshotFile.sidecars(snapshotFile()));
+        Assertions.assertEquals(large, SnapshotFile.open(snapshotFile()).body(PREFIX + ".large"));
+    }
+
+    @Test
+    void givenPointerWithoutOrWithUnknownDictionary_whenRead_thenFirstDictionaryUsedOrRejected() throws IOException {
+        var large = "[\n" + "row\n".repeat(1_000) + "]";
+
+        var store = compressingStore(100);
+        store.verify(PREFIX + ".large", large, TEXT);
+        store.flush();
+
+        var content = Files.readString(snapshotFile());
+
+        Assertions.assertTrue(content.contains("\",\n  \"dictionary\": 1\n}"), content);
+
+        Files.writeString(snapshotFile(), content.replace(",\n  \"dictionary\": 1", ""));
+
+        Assertions.assertEquals(large, SnapshotFile.open(snapshotFile()).body(PREFIX + ".large"));
+
+        Files.writeString(snapshotFile(), content.replace("\"dictionary\": 1", "\"dictionary\": 99"));
+
+        var file = SnapshotFile.open(snapshotFile());
+        var exception = Assertions.assertThrows(SnapshotExtensionException.class, () -> file.body(PREFIX + ".large"));
+
+        Assertions.assertTrue(exception.getMessage().contains("unknown dictionary 99"), exception.getMessage());
+    }
+
+    @Test
+    void givenShardedLayout_whenFlush_thenOneFilePerSnapshotAndOrphansListedFromDirectory() throws IOException {
+        var longScenario = "x".repeat(300);
+        var identifiers = Set.of(PREFIX + ".first", PREFIX + ".second[a/b: ü]", PREFIX + ".third[" + longScenario + "]");
+
+        var store = shardedStore();
+        identifiers.forEach(identifier -> store.verify(identifier, "[\n" + identifier + "\n]", TEXT));
+        store.flush();
+
+        var directory = outputDir.resolve("io/github/finoid/testify/snapshot/__snapshots__/SnapshotStoreUnitTest");
+
+        Assertions.assertEquals(entry(PREFIX + ".first", "[\n" + PREFIX + ".first\n]"), Files.readString(directory.resolve("first.snap")));
+        Assertions.assertTrue(Files.exists(directory.resolve("second[a%2Fb%3A%20%C3%BC].snap")));
+        Assertions.assertFalse(Files.exists(snapshotFile()));
+
+        var reopened = shardedStore();
+
+        Assertions.assertEquals(identifiers, reopened.storage().identifiers());
+
+        reopened.verify(PREFIX + ".second[a/b: ü]", "[\n" + PREFIX + ".second[a/b: ü]\n]", TEXT);
+
+        Assertions.assertThrows(AssertionFailedError.class, () -> reopened.verify(PREFIX + ".first", "[\nchanged\n]", TEXT));
+        Assertions.assertThrows(SnapshotMatchException.class, () -> reopened.validate(true));
+    }
+
+    @Test
+    void givenShardedIdentifiersDifferingInCase_whenFlush_thenOnlyCollidingFileNameSuffixed() throws IOException {
+        var identifiers = Set.of(PREFIX + ".givenInput", PREFIX + ".giveninput", PREFIX + ".given^Input");
+
+        var store = shardedStore();
+        identifiers.forEach(identifier -> store.verify(identifier, "[\n" + identifier + "\n]", TEXT));
+        store.flush();
+
+        var directory = outputDir.resolve("io/github/finoid/testify/snapshot/__snapshots__/SnapshotStoreUnitTest");
+        var suffixed = "giveninput~" + HexFormat.of().withUpperCase().formatHex(SnapshotHash.of("giveninput")).substring(0, 16) + ".snap";
+
+        try (var files = Files.list(directory)) {
+            var fileNames = files.map(file -> file.getFileName().toString()).collect(Collectors.toSet());
+
+            Assertions.assertEquals(Set.of("givenInput.snap", "given%5EInput.snap", suffixed), fileNames);
+            Assertions.assertEquals(3, fileNames.stream().map(it -> it.toLowerCase(Locale.ROOT)).distinct().count());
+        }
+
+        Assertions.assertEquals(identifiers, shardedStore().storage().identifiers());
+
+        Files.delete(directory.resolve("givenInput.snap"));
+
+        var reopened = shardedStore();
+
+        Assertions.assertDoesNotThrow(() -> reopened.verify(PREFIX + ".giveninput", "[\n" + PREFIX + ".giveninput\n]", TEXT));
+        Assertions.assertThrows(AssertionFailedError.class, () -> reopened.verify(PREFIX + ".giveninput", "[\nchanged\n]", TEXT));
+    }
+
+    @Test
+    void givenContentAddressedLayout_whenEqualBodiesFlushed_thenStoredOnceAndDeletedWithLastReference() throws IOException {
+        var body = "[\nshared\n]";
+        var hash = HexFormat.of().formatHex(SnapshotHash.of(body));
+        var blob = outputDir.resolve("__snapshots__/blobs/" + hash.substring(0, 2) + "/" + hash + ".snap");
+
+        var store = contentAddressedStore(SnapshotStoreUnitTest.class);
+        store.verify(PREFIX + ".first", body, TEXT);
+        store.verify(PREFIX + ".second", body, TEXT);
+        store.flush();
+
+        var other = contentAddressedStore(SnapshotUsageUnitTest.class);
+        other.verify(SnapshotUsageUnitTest.class.getName() + ".test", body, TEXT);
+        other.flush();
+
+        Assertions.assertEquals(entry(hash, body), Files.readString(blob));
+        Assertions.assertEquals(PREFIX + ".first=" + hash + "\n" + PREFIX + ".second=" + hash + "\n",
+            Files.readString(outputDir.resolve("io/github/finoid/testify/snapshot/__snapshots__/SnapshotStoreUnitTest.refs")));
+
+        var reopened = contentAddressedStore(SnapshotStoreUnitTest.class);
+
+        Assertions.assertEquals(Set.of(PREFIX + ".first", PREFIX + ".second"), reopened.storage().identifiers());
+        Assertions.assertArrayEquals(SnapshotHash.of(body), reopened.storage().hash(PREFIX + ".first"));
+        Assertions.assertEquals(body, reopened.storage().body(PREFIX + ".second"));
+
+        reopened.storage().write(Map.of(PREFIX + ".first", SnapshotFile.Entry.of("[\nfirst\n]", SnapshotHash.of("[\nfirst\n]")),
+            PREFIX + ".second", SnapshotFile.Entry.of("[\nsecond\n]", SnapshotHash.of("[\nsecond\n]"))));
+
+        Assertions.assertTrue(Files.exists(blob));
+
+        other.storage().write(Map.of(SnapshotUsageUnitTest.class.getName() + ".test",
+            SnapshotFile.Entry.of("[\nother\n]", SnapshotHash.of("[\nother\n]"))));
+
+        Assertions.assertFalse(Files.exists(blob));
+        Assertions.assertEquals("[\nfirst\n]", contentAddressedStore(SnapshotStoreUnitTest.class).storage().body(PREFIX + ".first"));
+    }
+
+    @Test
+    void givenContentAddressedLayout_whenBodiesSwappedInOneWrite_thenBothBlobsKept() {
+        var first = SnapshotFile.Entry.of("[\nfirst\n]", SnapshotHash.of("[\nfirst\n]"));
+        var second = SnapshotFile.Entry.of("[\nsecond\n]", SnapshotHash.of("[\nsecond\n]"));
+
+        var storage = contentAddressedStore(SnapshotStoreUnitTest.class).storage();
+        storage.write(Map.of(PREFIX + ".a", first, PREFIX + ".b", second));
+        storage.write(Map.of(PREFIX + ".a", second, PREFIX + ".b", first));
+
+        var reopened = contentAddressedStore(SnapshotStoreUnitTest.class).storage();
+
+        Assertions.assertEquals("[\nsecond\n]", reopened.body(PREFIX + ".a"));
+        Assertions.assertEquals("[\nfirst\n]", reopened.body(PREFIX + ".b"));
+    }
+
+    @Test
+    void givenContentAddressedOrphanMatchingUpdateFilter_whenFlushRemovingOrphans_thenReferenceAndBlobRemoved() throws IOException {
+        var orphan = "[\norphan\n]";
+        var hash = HexFormat.of().formatHex(SnapshotHash.of(orphan));
+        var blob = outputDir.resolve("__snapshots__/blobs/" + hash.substring(0, 2) + "/" + hash + ".snap");
+
+        var store = contentAddressedStore(SnapshotStoreUnitTest.class);
+        store.verify(PREFIX + ".kept", "[\nkept\n]", TEXT);
+        store.verify(PREFIX + ".orphan", orphan, TEXT);
+        store.flush();
+
+        Assertions.assertTrue(Files.exists(blob));
+
+        var settings = new SnapshotSettings(outputDir, "__snapshots__", PREFIX, false, 0, Layout.CONTENT_ADDRESSED, 0, true,
+            SnapshotFallbackComparison.NONE);
+
+        var notUpdated = contentAddressedStore(SnapshotStoreUnitTest.class);
+        notUpdated.verify(PREFIX + ".kept", "[\nkept\n]", TEXT);
+        notUpdated.flush(true);
+
+        Assertions.assertTrue(Files.exists(blob));
+
+        var partialRun = new SnapshotStore(SnapshotStoreUnitTest.class, settings);
+        partialRun.verify(PREFIX + ".kept", "[\nkept\n]", TEXT);
+        partialRun.flush(false);
+
+        Assertions.assertTrue(Files.exists(blob));
+
+        var rebaselined = new SnapshotStore(SnapshotStoreUnitTest.class, settings);
+        rebaselined.verify(PREFIX + ".kept", "[\nkept\n]", TEXT);
+        rebaselined.flush(true);
+
+        Assertions.assertDoesNotThrow(() -> rebaselined.validate(true));
+        Assertions.assertFalse(Files.exists(blob));
+        Assertions.assertEquals(Set.of(PREFIX + ".kept"), contentAddressedStore(SnapshotStoreUnitTest.class).storage().identifiers());
+    }
+
+    @Test
+    void givenSubsetOfMethodsRunUnderUpdateMode_whenFlush_thenUnverifiedSnapshotsKept() throws IOException {
+        write(entry(PREFIX + ".run", "[\nvalue\n]") + "\n\n\n" + entry(PREFIX + ".notRun", "[\nvalue\n]"));
+
+        for (final boolean removeOrphans : new boolean[]{false, true}) {
+            var store = new SnapshotStore(SnapshotStoreUnitTest.class,
+                new SnapshotSettings(outputDir, "__snapshots__", "", false, 0, Layout.FILE, 0, removeOrphans, SnapshotFallbackComparison.NONE));
+
+            store.verify(PREFIX + ".run", "[\nupdated\n]", TEXT);
+            store.flush(false);
+
+            Assertions.assertEquals(Set.of(PREFIX + ".run", PREFIX + ".notRun"), SnapshotFile.open(snapshotFile()).identifiers());
+        }
+
+        var notOptedIn = store("", false);
+        notOptedIn.verify(PREFIX + ".run", "[\nupdated\n]", TEXT);
+        notOptedIn.flush(true);
+
+        Assertions.assertEquals(Set.of(PREFIX + ".run", PREFIX + ".notRun"), SnapshotFile.open(snapshotFile()).identifiers());
+    }
+
+    @Test
+    void givenConfiguredComparatorAndReporter_whenVerifyBodyDifferingByteByByte_thenConsultedOnMismatchOnly() throws IOException {
+        write(entry(PREFIX + ".test", "[\nvalue\n]"));
+
+        SnapshotComparator ignoringCase = (expected, actual) -> expected.getBody().equalsIgnoreCase(actual.getBody());
+        SnapshotReporter reporter = new SnapshotReporter() {
+            @Override
+            public boolean supportsFormat(final String outputFormat) {
+                return "TEXT".equals(outputFormat);
+            }
+
+            @Override
+            public void report(final Snapshot previous, final Snapshot current) {
+                throw new AssertionFailedError("Reported " + current.getIdentifier(), previous.getBody(), current.getBody());
+            }
+        };
+
+        var store = new SnapshotStore(SnapshotStoreUnitTest.class, new SnapshotSettings(outputDir, "__snapshots__", null, false, 0,
+            Layout.FILE, 0, false, new SnapshotFallbackComparison(ignoringCase, List.of(reporter))));
+
+        Assertions.assertDoesNotThrow(() -> store.verify(PREFIX + ".test", "[\nVALUE\n]", TEXT));
+        Assertions.assertDoesNotThrow(() -> store.verify(PREFIX + ".test", out -> out.write("[\nValue\n]".getBytes(StandardCharsets.UTF_8))));
+
+        var error = Assertions.assertThrows(AssertionFailedError.class, () -> store.verify(PREFIX + ".test", "[\nother\n]", TEXT));
+        var streamed = Assertions.assertThrows(AssertionFailedError.class,
+            () -> store.verify(PREFIX + ".test", out -> out.write("[\nother\n]".getBytes(StandardCharsets.UTF_8))));
+
+        for (var reported : List.of(error, streamed)) {
+            Assertions.assertEquals("Reported " + PREFIX + ".test", reported.getMessage());
+            Assertions.assertEquals("[\nvalue\n]", reported.getExpected().getValue());
+            Assertions.assertEquals("[\nother\n]", reported.getActual().getValue());
+        }
+    }
+
+    @Test
+    void givenLastSnapshotRemoved_whenWrite_thenSnapshotFileDeleted() throws IOException {
+        write(entry(PREFIX + ".orphan", "[\nvalue\n]"));
+
+        SnapshotFile.open(snapshotFile()).write(Map.of(), Set.of(PREFIX + ".orphan"));
+
+        Assertions.assertFalse(Files.exists(snapshotFile()));
+    }
+
+    private SnapshotStore store(@Nullable final String updateSnapshot, final boolean ci) {
+        return new SnapshotStore(SnapshotStoreUnitTest.class, new SnapshotSettings(outputDir, "__snapshots__", updateSnapshot, ci));
+    }
+
+    private SnapshotStore shardedStore() {
+        return new SnapshotStore(SnapshotStoreUnitTest.class, new SnapshotSettings(outputDir, "__snapshots__", null, false, 0, Layout.SHARDED));
+    }
+
+    private SnapshotStore contentAddressedStore(final Class<?> testClass) {
+        return new SnapshotStore(testClass, new SnapshotSettings(outputDir, "__snapshots__", null, false, 0, Layout.CONTENT_ADDRESSED));
+    }
+
+    private SnapshotStore compressingStore(final int compressThreshold) {
+        return new SnapshotStore(SnapshotStoreUnitTest.class, new SnapshotSettings(outputDir, "__snapshots__", null, false, compressThreshold, Layout.FILE));
+    }
+
+    private static void await(final CountDownLatch latch) {
+        try {
+            Assertions.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String entry(final String identifier, final String body) {
+        return identifier + "={\n  \"sha256\": \"" + HexFormat.of().formatHex(SnapshotHash.of(body)) + "\",\n  \"length\": "
+            + SnapshotHash.encodedLength(body) + "\n}" + body;
+    }
+
+    // A body edited to the same length, keeping the header of the body [\nvalue\n]
+    private static String edited(final String identifier) {
+        return identifier + "={\n  \"sha256\": \"" + HexFormat.of().formatHex(SnapshotHash.of("[\nvalue\n]")) + "\",\n  \"length\": 9\n}[\nedits\n]";
+    }
+
+    private Path snapshotFile() {
+        return outputDir.resolve("io/github/finoid/testify/snapshot/__snapshots__/SnapshotStoreUnitTest.snap");
+    }
+
+    private void write(final String content) throws IOException {
+        Files.createDirectories(snapshotFile().getParent());
+        Files.writeString(snapshotFile(), content);
+    }
+}
@@ -0,0 +1,43 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.type.UnitTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class SnapshotUsageUnitTest extends UnitTest {
+    @Test
+    void givenMarkedIdentifiers_whenUnused_thenOnlyUnmarkedStoredIdentifiersSorted() {
+        var usage = SnapshotUsage.of(Set.of("c", "a", "b", "d"));
+
+        usage.mark("b");
+        usage.mark("b");
+        usage.mark("new");
+        usage.mark("d");
+
+        Assertions.assertEquals(List.of("a", "c"), usage.unused());
+    }
+
+    @Test
+    void givenIdentifiersSpanningSeveralWords_whenMarkedInParallel_thenUnusedAcrossWords() {
+        var identifiers = IntStream.range(0, 200)
+            .mapToObj(it -> String.format("test%03d", it))
+            .collect(Collectors.toSet());
+        var usage = SnapshotUsage.of(identifiers);
+
+        identifiers.parallelStream()
+            .filter(it -> !it.equals("test063") && !it.equals("test064") && !it.equals("test199"))
+            .forEach(usage::mark);
+
+        Assertions.assertEquals(List.of("test063", "test064", "test199"), usage.unused());
+    }
+
+    @Test
+    void givenNoStoredIdentifiers_whenUnused_thenEmpty() {
+        Assertions.assertEquals(List.of(), SnapshotUsage.of(Set.of()).unused());
+    }
+}
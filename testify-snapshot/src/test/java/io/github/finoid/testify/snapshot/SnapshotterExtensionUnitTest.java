@@ -1,22 +1,27 @@
 package io.github.finoid.testify.snapshot;
 
-import io.github.finoid.snapshots.SnapshotVerifier;
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
 import io.github.finoid.snapshots.exceptions.SnapshotMatchException;
 import io.github.finoid.testify.core.type.UnitTest;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Optional;
 
 class SnapshotterExtensionUnitTest extends UnitTest {
     @Mock
-    private SnapshotVerifier verifier;
+    private ExtensionContext.Store extensionStore;
     @Mock(answer = org.mockito.Answers.RETURNS_DEEP_STUBS)
     private ParameterContext parameterContext;
     @Mock
@@ -48,12 +53,91 @@ class SnapshotterExtensionUnitTest extends UnitTest {
         Mockito.when(extensionContext.getTestMethod())
             .thenReturn(Optional.of(mockedMethod));
 
+        Mockito.when(extensionContext.getTestClass())
+            .thenReturn(Optional.of(SnapshotterExtensionUnitTest.class));
+        Mockito.when(extensionContext.getStore(Mockito.any()))
+            .thenReturn(extensionStore);
+
+        unit.beforeAll(extensionContext);
+
+        var state = ArgumentCaptor.forClass(Object.class);
+
+        Mockito.verify(extensionStore).put(Mockito.any(), state.capture());
+        Mockito.when(extensionStore.get(Mockito.any(), Mockito.any()))
+            .thenAnswer(it -> state.getValue());
+
         var resolvedParameter = unit.resolveParameter(parameterContext, extensionContext);
 
         Assertions.assertNotNull(resolvedParameter);
         Assertions.assertInstanceOf(Snapshotter.class, resolvedParameter);
     }
 
+    @Test
+    void givenSnapshotterNeverMatched_whenAfterAll_thenSnapshotStoreNeverOpened() {
+        Mockito.when(extensionContext.getTestMethod())
+            .thenReturn(Optional.of(Mockito.mock(Method.class)));
+        Mockito.when(extensionContext.getTestClass())
+            .thenReturn(Optional.of(SnapshotterExtensionUnitTest.class));
+        Mockito.when(extensionContext.getStore(Mockito.any()))
+            .thenReturn(extensionStore);
+
+        try (var snapshotStore = Mockito.mockStatic(SnapshotStore.class)) {
+            unit.beforeAll(extensionContext);
+
+            var state = ArgumentCaptor.forClass(Object.class);
+
+            Mockito.verify(extensionStore).put(Mockito.any(), state.capture());
+            Mockito.when(extensionStore.get(Mockito.any(), Mockito.any()))
+                .thenAnswer(it -> state.getValue());
+
+            unit.resolveParameter(parameterContext, extensionContext);
+            unit.afterAll(extensionContext);
+
+            snapshotStore.verifyNoInteractions();
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"first;second;third, false, true", "first;second, false, false", "first;second;third, true, false"})
+    void givenExecutedTestMethods_whenAfterAll_thenOrphansOnlyRemovableAfterCompleteRun(final String executed, final boolean failed,
+                                                                                       final boolean completeRun) {
+        var store = Mockito.mock(SnapshotStore.class, Mockito.RETURNS_DEEP_STUBS);
+
+        Mockito.when(extensionContext.getTestClass())
+            .thenReturn(Optional.of(Fixture.class));
+        Mockito.when(extensionContext.getStore(Mockito.any()))
+            .thenReturn(extensionStore);
+        Mockito.when(extensionContext.getExecutionException())
+            .thenReturn(failed ? Optional.of(new IllegalStateException()) : Optional.empty());
+
+        try (var snapshotStore = Mockito.mockStatic(SnapshotStore.class)) {
+            snapshotStore.when(() -> SnapshotStore.of(Fixture.class))
+                .thenReturn(store);
+
+            unit.beforeAll(extensionContext);
+
+            var state = ArgumentCaptor.forClass(Object.class);
+
+            Mockito.verify(extensionStore).put(Mockito.any(), state.capture());
+            Mockito.when(extensionStore.get(Mockito.any(), Mockito.any()))
+                .thenAnswer(it -> state.getValue());
+
+            for (final String methodName : executed.split(";")) {
+                Mockito.when(extensionContext.getTestMethod())
+                    .thenReturn(Arrays.stream(Fixture.class.getDeclaredMethods()).filter(it -> it.getName().equals(methodName)).findFirst());
+
+                unit.beforeTestExecution(extensionContext);
+                ((Snapshotter) unit.resolveParameter(parameterContext, extensionContext)).plain()
+                    .snapshot(methodName);
+                unit.afterTestExecution(extensionContext);
+            }
+
+            unit.afterAll(extensionContext);
+        }
+
+        Mockito.verify(store).flush(completeRun);
+    }
+
     @Test
     void givenNoTestMethod_whenResolveParameter_thenSnapshotMatchExceptionThrown() {
         Mockito.when(extensionContext.getTestMethod())
@@ -61,4 +145,30 @@ class SnapshotterExtensionUnitTest extends UnitTest {
 
         Assertions.assertThrows(SnapshotMatchException.class, () -> unit.resolveParameter(parameterContext, extensionContext));
     }
-}
\ No newline at end of file
+
+    @Test
+    void givenNoBeforeAll_whenResolveParameter_thenSnapshotExtensionExceptionThrown() {
+        Mockito.when(extensionContext.getTestMethod())
+            .thenReturn(Optional.of(Mockito.mock(Method.class)));
+        Mockito.when(extensionContext.getStore(Mockito.any()))
+            .thenReturn(extensionStore);
+
+        Assertions.assertThrows(SnapshotExtensionException.class, () -> unit.resolveParameter(parameterContext, extensionContext));
+    }
+
+    @SuppressWarnings("unused")
+    private static class Fixture {
+        @Test
+        void first() {
+        }
+
+        @Test
+        void second() {
+        }
+
+        @ParameterizedTest
+        @ValueSource(strings = "value")
+        void third(final String value) {
+        }
+    }
+}
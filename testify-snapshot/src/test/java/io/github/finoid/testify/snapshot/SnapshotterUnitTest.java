@@ -5,13 +5,24 @@ import io.github.finoid.snapshots.SnapshotVerifier;
 import io.github.finoid.snapshots.config.PropertyResolvingSnapshotConfig;
 import io.github.finoid.snapshots.exceptions.SnapshotMatchException;
 import io.github.finoid.testify.core.type.UnitTest;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
 
 class SnapshotterUnitTest extends UnitTest {
     private static final SnapshotVerifier SNAPSHOT_VERIFIER = new SnapshotVerifier(new PropertyResolvingSnapshotConfig(), SnapshotterUnitTest.class, true);
 
+    @TempDir
+    private Path outputDir;
+
     @AfterAll
     static void afterAll() {
         SNAPSHOT_VERIFIER.validateSnapshots();
@@ -42,8 +53,45 @@ class SnapshotterUnitTest extends UnitTest {
     }
 
     @Test
-    void xml() {
-        // TODO (nw) to be implemented
+    void givenXmlDocumentToBeSerialized_whenXmlSnapshot_thenSuccessfulXmlSnapshotTaken(TestInfo testInfo) {
+        var snapshotter = givenSnapshotVerifier(testInfo);
+
+        snapshotter.xml()
+            .withMaskedField("//created")
+            .snapshot("<user name=\"John\" id=\"1\"><created>2024-01-01</created></user>");
+    }
+
+    @Test
+    void givenRecording_whenSnapshotThroughExpect_thenEventWithPhasesCommitted(TestInfo testInfo) throws IOException {
+        var snapshotter = givenSnapshotVerifier(testInfo);
+        var file = outputDir.resolve("snapshot.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(SnapshotEvent.NAME);
+            recording.start();
+
+            snapshotter.plain()
+                .snapshot(new User(1, "John"));
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        var events = RecordingFile.readAllEvents(file)
+            .stream()
+            .filter(it -> it.getEventType().getName().equals(SnapshotEvent.NAME))
+            .toList();
+
+        Assertions.assertEquals(1, events.size());
+
+        RecordedEvent event = events.getFirst();
+
+        Assertions.assertEquals(SnapshotterUnitTest.class.getName(), event.getString("testClass"));
+        Assertions.assertEquals(testInfo.getTestMethod().orElseThrow().getName(), event.getString("testMethod"));
+        Assertions.assertEquals("[\nUser[id=1, name=John]\n]".length(), event.getLong("payloadSize"));
+        Assertions.assertTrue(event.getBoolean("passed"));
+        Assertions.assertTrue(event.getDuration().toNanos()
+            >= event.getDuration("serialization").toNanos() + event.getDuration("comparison").toNanos());
     }
 
     private Snapshotter givenSnapshotVerifier(final TestInfo testInfo) {
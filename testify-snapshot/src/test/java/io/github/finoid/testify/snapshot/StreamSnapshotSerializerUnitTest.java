@@ -0,0 +1,101 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.testify.core.type.UnitTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+class StreamSnapshotSerializerUnitTest extends UnitTest {
+    @TempDir
+    private Path directory;
+
+    @Test
+    void givenBinaryFile_whenSerializeBase64_thenEncodedOnSingleLine() throws IOException {
+        var content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        var file = Files.write(directory.resolve("export.pdf"), content);
+
+        var body = StreamSnapshotSerializer.base64().serialize(file);
+
+        var encoded = body.substring(2, body.length() - 2);
+
+        Assertions.assertTrue(body.startsWith("[\n") && body.endsWith("\n]"));
+        Assertions.assertFalse(encoded.contains("\n"), body);
+        Assertions.assertArrayEquals(content, Base64.getDecoder().decode(encoded));
+    }
+
+    @Test
+    void givenSameBytes_whenSerializeBase64_thenSameBodyAsPlainSerializer() {
+        for (int length : new int[]{0, 1, 2, 57, 58, 1000}) {
+            var content = new byte[length];
+            new Random(length).nextBytes(content);
+
+            Assertions.assertEquals(PlainSnapshotSerializer.base64().serialize(content),
+                StreamSnapshotSerializer.base64().serialize(content));
+        }
+    }
+
+    @Test
+    void givenSameContentFromDifferentSources_whenSerialize_thenSameBody() {
+        var content = "id;name\n1;John\n".getBytes(StandardCharsets.UTF_8);
+        var direct = ByteBuffer.allocateDirect(content.length).put(content).flip();
+
+        var serializer = StreamSnapshotSerializer.base64();
+
+        Assertions.assertEquals(serializer.serialize(content), serializer.serialize(new ByteArrayInputStream(content)));
+        Assertions.assertEquals(serializer.serialize(content), serializer.serialize(direct));
+        Assertions.assertEquals(0, direct.position());
+    }
+
+    @Test
+    void givenTextWithCrlfAndLineBreakRuns_whenSerializeText_thenSameBodyAsPlainSerializer() {
+        var text = "a\r\nb\n\n\nc\n\n\n\n\nd\r\n\r\n\r\n\re";
+
+        var body = StreamSnapshotSerializer.text().serialize(text.getBytes(StandardCharsets.UTF_8));
+
+        Assertions.assertEquals(PlainSnapshotSerializer.text().serialize(text.replace("\r\n", "\n")), body);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7, 8192})
+    void givenTextReadInChunks_whenSerializeText_thenSameBodyAsPlainSerializer(final int chunkSize) {
+        var text = "\r\na\r\nb\rc\r\r\n" + "\n".repeat(300) + "d\r\n\r\n\r\n\re\r";
+
+        var body = StreamSnapshotSerializer.text().serialize(new ChunkedInputStream(text.getBytes(StandardCharsets.UTF_8), chunkSize));
+
+        Assertions.assertEquals(PlainSnapshotSerializer.text().serialize(text.replace("\r\n", "\n")), body);
+    }
+
+    @Test
+    void givenUnsupportedSource_whenSerialize_thenIllegalArgumentExceptionThrown() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> StreamSnapshotSerializer.base64().serialize("text"));
+    }
+
+    private static final class ChunkedInputStream extends ByteArrayInputStream {
+        private final int chunkSize;
+
+        private ChunkedInputStream(final byte[] content, final int chunkSize) {
+            super(content);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public synchronized int read(final byte[] b, final int off, final int len) {
+            return super.read(b, off, Math.min(len, chunkSize));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.finoid.testify.snapshot;
+
+import io.github.finoid.snapshots.exceptions.SnapshotExtensionException;
+import io.github.finoid.testify.core.type.UnitTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+class XmlSnapshotSerializerUnitTest extends UnitTest {
+    @Test
+    void givenEquivalentDocuments_whenSerialize_thenSameCanonicalBody() {
+        var prefixed = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <!-- generated -->
+            <soap:Envelope xmlns:soap="http://schemas.xmlsoap.org/soap/envelope/" xmlns:unused="urn:unused">
+                <soap:Body>
+                    <order xmlns="urn:orders" status="open" id="1"><item><![CDATA[A & B]]></item><empty></empty></order>
+                </soap:Body>
+            </soap:Envelope>""";
+        var defaulted = """
+            <Envelope xmlns="http://schemas.xmlsoap.org/soap/envelope/"><Body>
+              <o:order xmlns:o="urn:orders" id="1" status="open">
+                <o:item>A &amp; B</o:item>
+                <o:empty/>
+              </o:order>
+            </Body></Envelope>""";
+
+        var serializer = new XmlSnapshotSerializer(List.of());
+
+        Assertions.assertEquals("""
+            [
+            <ns1:Envelope xmlns:ns1="http://schemas.xmlsoap.org/soap/envelope/">
+              <ns1:Body>
+                <ns2:order xmlns:ns2="urn:orders" id="1" status="open">
+                  <ns2:item>A &amp; B</ns2:item>
+                  <ns2:empty/>
+                </ns2:order>
+              </ns1:Body>
+            </ns1:Envelope>
+            ]""", serializer.serialize(prefixed));
+        Assertions.assertEquals(serializer.serialize(prefixed), serializer.serialize(new ByteArrayInputStream(defaulted.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void givenMaskPaths_whenSerialize_thenElementsAndAttributesMaskedWhileStreaming() {
+        var xml = """
+            <orders xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance" xmlns:t="urn:types">
+              <order id="1" xsi:type="t:Order"><created>2024-01-01</created><lines><line>a</line></lines></order>
+              <order id="2"><created>2024-01-02</created><secret><key>k</key></secret></order>
+            </orders>""";
+
+        var serializer = new XmlSnapshotSerializer(List.of(
+            XmlMaskPath.compile("//created"),
+            XmlMaskPath.compile("/orders/order[2]/@id"),
+            XmlMaskPath.compile("/orders/*/secret")));
+
+        Assertions.assertEquals("""
+            [
+            <orders>
+              <order xmlns:ns1="http://www.w3.org/2001/XMLSchema-instance" xmlns:ns2="urn:types" id="1" ns1:type="ns2:Order">
+                <created>***MASKED***</created>
+                <lines>
+                  <line>a</line>
+                </lines>
+              </order>
+              <order id="***MASKED***">
+                <created>***MASKED***</created>
+                <secret>***MASKED***</secret>
+              </order>
+            </orders>
+            ]""", serializer.serialize(xml));
+    }
+
+    @Test
+    void givenMixedContent_whenSerialize_thenTextIndentedBetweenChildren() {
+        var body = new XmlSnapshotSerializer(List.of()).serialize("<p>Hello <b>World</b> again</p>");
+
+        Assertions.assertEquals("[\n<p>Hello\n  <b>World</b>\n  again\n</p>\n]", body);
+    }
+
+    @Test
+    void givenExternalEntity_whenSerialize_thenNotResolved() {
+        var xml = "<!DOCTYPE a [<!ENTITY e SYSTEM \"file:///etc/passwd\">]><a>&e;</a>";
+
+        Assertions.assertThrows(SnapshotExtensionException.class, () -> new XmlSnapshotSerializer(List.of()).serialize(xml));
+    }
+
+    @Test
+    void givenUnsupportedMaskPath_whenCompile_thenIllegalArgumentExceptionThrown() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> XmlMaskPath.compile("order/id"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> XmlMaskPath.compile("//order[@id='1']"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> XmlMaskPath.compile("//@id/name"));
+    }
+}